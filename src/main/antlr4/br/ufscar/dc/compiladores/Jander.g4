@@ -34,6 +34,7 @@ RETORNE : 'retorne';
 CONSTANTE : 'constante';
 VERDADEIRO : 'verdadeiro';
 FALSO : 'falso';
+IMPORTE : 'importe';
 
 OP_REL	:	'>' | '>=' | '<' | '<=' | '<>' | '='
 	;
@@ -54,7 +55,10 @@ NUM_REAL:
 IDENT:
     ('a'..'z'|'A'..'Z'|'_')('a'..'z'|'A'..'Z'|'0'..'9'|'_')*;
 
-PONTUACAO: ',' | '..' | '<-' | '^' | '&' | '.'
+// '^' tem token próprio para que o semântico teste ponteiros pelo tipo do token
+CIRCUNFLEXO: '^';
+
+PONTUACAO: ',' | '..' | '<-' | '&' | '.'
 	;
 
 CADEIA:
@@ -87,7 +91,9 @@ FECHABRACKET: ']'
     ;
 ERRO: .;
 
-programa : declaracoes 'algoritmo' corpo 'fim_algoritmo' EOF;
+programa : importacao* declaracoes 'algoritmo' corpo 'fim_algoritmo' EOF;
+biblioteca : importacao* declaracoes EOF;
+importacao : 'importe' CADEIA;
 declaracoes : decl_local_global*;
 decl_local_global : declaracao_local | declaracao_global;
 declaracao_local : 'declare' variavel
@@ -125,25 +131,19 @@ item_selecao : constantes ':' cmd*;
 constantes : numero_intervalo (',' numero_intervalo)*;
 numero_intervalo : op_unario? NUM_INT ('..' op_unario? NUM_INT)?;
 op_unario : '-';
-exp_aritmetica : termo (op1 termo)*;
-termo : fator (op2 fator)*;
-fator : parcela (op3 parcela)*;
-op1 : '+' | '-';
-op2 : '*' | '/';
-op3 : '%';
-parcela : op_unario? parcela_unario | parcela_nao_unario;
-parcela_unario : '^'? identificador
-			| IDENT '(' expressao (',' expressao)* ')'
-			| NUM_INT
-			| NUM_REAL
-			| '(' expressao ')';
-parcela_nao_unario : '&' identificador | CADEIA;
-exp_relacional : exp_aritmetica (op_relacional exp_aritmetica)?;
-op_relacional : '=' | '<>' | '>=' | '<=' | '>' | '<';
-expressao : termo_logico (op_logico_1 termo_logico)*;
-termo_logico : fator_logico (op_logico_2 fator_logico)*;
-fator_logico : 'nao'? parcela_logica;
-parcela_logica : ('verdadeiro' | 'falso')
-			| exp_relacional;
-op_logico_1 : 'ou';
-op_logico_2 : 'e';  
\ No newline at end of file
+// Expressões em regras recursivas à esquerda: um nó por operador ou operando.
+// Alternativas anteriores têm precedência maior; os operadores binários associam à esquerda.
+exp_aritmetica : op_unario? '^'? identificador # expIdentificador
+			| op_unario? IDENT '(' expressao (',' expressao)* ')' # expChamada
+			| op_unario? NUM_INT # expInteiro
+			| op_unario? NUM_REAL # expReal
+			| op_unario? '(' expressao ')' # expParenteses
+			| '&' identificador # expEndereco
+			| CADEIA # expCadeia
+			| exp_aritmetica '%' exp_aritmetica # expModulo
+			| exp_aritmetica op=('*' | '/') exp_aritmetica # expMultiplicativa
+			| exp_aritmetica op=('+' | '-') exp_aritmetica # expAditiva;
+expressao : 'nao'? ('verdadeiro' | 'falso') # expLogica
+			| nao='nao'? exp_aritmetica (op=('=' | '<>' | '>=' | '<=' | '>' | '<') exp_aritmetica)? # expRelacional
+			| expressao 'e' expressao # expE
+			| expressao 'ou' expressao # expOu;  
\ No newline at end of file
@@ -0,0 +1,129 @@
+package br.ufscar.dc.compiladores;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mede quanta memória a análise semântica aloca, como o profiler "gc" do JMH: bytes alocados pela thread
+ * (com.sun.management.ThreadMXBean) por operação, taxa de alocação e coletas durante a medição. Uma operação é
+ * a análise semântica de um programa já analisado sintaticamente; o léxico e o parser ficam de fora.
+ *
+ * Uso: java -cp JanderLexico-1.0-SNAPSHOT-jar-with-dependencies.jar br.ufscar.dc.compiladores.AllocationBenchmark
+ *      [iteracoes] [programa.txt ...]
+ *
+ * Sem programas, usa um gerado aqui com GERADO_LINHAS linhas de usos de identificadores (variáveis simples,
+ * campos de registro, arranjos, ponteiros, leia e chamadas), sem erros: é o caminho quente em que caminhos de
+ * acesso ("var.campo") e textos de erro não devem ser montados. Cada programa roda AQUECIMENTO iterações sem
+ * medir e depois iteracoes (padrão 50). Para comparar builds, rode a mesma linha de comando em cada uma.
+ */
+public class AllocationBenchmark {
+    static final int AQUECIMENTO = 20;
+    static final int GERADO_LINHAS = 22_000;
+
+    public static void main(String[] args) throws IOException {
+        int iteracoes = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        List<CharStream> programas = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) programas.add(CharStreams.fromFileName(args[i]));
+        if (programas.isEmpty()) programas.add(CharStreams.fromString(programa(GERADO_LINHAS), "gerado"));
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().threadId();
+
+        PrintWriter out = new PrintWriter(System.out, true);
+        out.printf("%-20s %8s %12s %10s %12s %8s %10s%n", "programa", "linhas", "MB/op", "ms/op", "MB/s", "gc", "gc ms");
+        for (CharStream cs : programas) {
+            JanderParser parser = new JanderParser(new CommonTokenStream(new JanderLexer(cs)));
+            parser.removeErrorListeners();
+            JanderParser.ProgramaContext tree = parser.programa();
+            if (parser.getNumberOfSyntaxErrors() > 0) {
+                out.println(cs.getSourceName() + ": erro sintatico, ignorado");
+                continue;
+            }
+
+            for (int i = 0; i < AQUECIMENTO; i++) analisar(tree);
+            System.gc();
+            long gcCount = gcCount(), gcMillis = gcMillis();
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long inicio = System.nanoTime();
+            for (int i = 0; i < iteracoes; i++) analisar(tree);
+            long nanos = System.nanoTime() - inicio;
+            bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+            out.printf("%-20s %8d %12.2f %10.2f %12.1f %8d %10d%n", cs.getSourceName(), tree.stop.getLine(),
+                bytes / 1e6 / iteracoes, nanos / 1e6 / iteracoes, bytes / 1e6 / (nanos / 1e9),
+                gcCount() - gcCount, gcMillis() - gcMillis);
+        }
+        out.flush();
+    }
+
+    private static void analisar(JanderParser.ProgramaContext tree) {
+        JanderSemantico semantico = new JanderSemantico(new PrintWriter(Writer.nullWriter()));
+        semantico.visit(tree);
+        if (semantico.hasErrors()) {
+            throw new IllegalStateException("erro semantico: " + JanderSemanticoUtils.semanticErrors().get(0));
+        }
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, gc.getCollectionCount());
+        return n;
+    }
+
+    private static long gcMillis() {
+        long ms = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) ms += Math.max(0, gc.getCollectionTime());
+        return ms;
+    }
+
+    // Declarações seguidas de comandos que usam cada forma de identificador, até ter linhas linhas
+    static String programa(int linhas) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("tipo ponto: registro\n    x, y: inteiro\n    nome: literal\nfim_registro\n");
+        sb.append("procedimento mova(var p: ponto, d: inteiro)\n    p.x <- p.x + d\nfim_procedimento\n");
+        sb.append("algoritmo\n");
+        sb.append("    declare a, b, c: inteiro\n");
+        sb.append("    declare r: real\n");
+        sb.append("    declare s: literal\n");
+        sb.append("    declare p, q: ponto\n");
+        sb.append("    declare v[100]: inteiro\n");
+        sb.append("    declare pa: ^inteiro\n");
+        sb.append("    pa <- &a\n");
+        int n = 11;
+        for (int i = 0; n < linhas; i++) {
+            switch (i % 6) {
+                case 0:
+                    sb.append("    a <- b + c * ").append(i % 100).append('\n');
+                    break;
+                case 1:
+                    sb.append("    p.x <- q.y + v[").append(i % 100).append("] - a\n");
+                    break;
+                case 2:
+                    sb.append("    ^pa <- p.y + ^pa\n");
+                    break;
+                case 3:
+                    sb.append("    leia(b, p.nome, v[c])\n");
+                    break;
+                case 4:
+                    sb.append("    r <- r * 2.0 + a\n");
+                    break;
+                default:
+                    sb.append("    mova(p, q.x)\n");
+                    break;
+            }
+            n++;
+        }
+        sb.append("    escreva(a, p.x, r, s)\nfim_algoritmo\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,854 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import br.ufscar.dc.compiladores.JanderParser.*;
+
+/**
+ * Análise de limites de arranjos por interpretação abstrata com intervalos.
+ *
+ * As dimensões constantes de cada arranjo (v[10], m[N][N + 1] com N constante) são registradas por
+ * escopo. Cada rotina e o corpo principal são interpretados sobre a árvore (a linguagem é estruturada):
+ * cada variável inteira simples tem um intervalo [lo, hi], condições de 'se'/'enquanto' e o limite do
+ * 'para' refinam os intervalos, e laços iteram até estabilizar, com alargamento (widening) na cabeça.
+ * Depois disso o corpo do laço é percorrido uma última vez para classificar os acessos:
+ *
+ * - índice dentro de 0 .. n-1 em qualquer execução: acesso seguro (provenSafe, para um gerador de código
+ *   omitir a verificação em tempo de execução);
+ * - índice sempre fora: aviso "indice i fora dos limites de v (0 a 9)";
+ * - nos demais casos nada é dito.
+ *
+ * Chamadas de rotina, escritas através de ponteiros e leia(^p) tornam desconhecidas as variáveis que podem
+ * alterar (globais, com '&' aplicado, argumentos 'var'). Variáveis ainda não inicializadas valem qualquer valor.
+ */
+public class ArrayBoundsAnalysis {
+    private static final long NEG_INF = Long.MIN_VALUE;
+    private static final long POS_INF = Long.MAX_VALUE;
+    private static final long[] TOP = {NEG_INF, POS_INF};
+
+    private final Map<String, boolean[]> varParameters;
+    private final List<Warning> warnings = new ArrayList<>();
+    private final Set<Exp_aritmeticaContext> safe = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<String> safeAccesses = new ArrayList<>();
+    private int accesses = 0;
+
+    // Escopo global: dimensões dos arranjos, constantes inteiras e variáveis inteiras (rastreadas só no corpo principal)
+    private final Map<String, long[]> globalArrays = new HashMap<>();
+    private final Map<String, Long> globalConstants = new HashMap<>();
+    private final List<String> globalIntegers = new ArrayList<>();
+
+    private ArrayBoundsAnalysis(Map<String, boolean[]> varParameters) {
+        this.varParameters = varParameters;
+    }
+
+    /** Analisa o programa inteiro (coleta os fatos das rotinas) */
+    public static ArrayBoundsAnalysis analyze(ProgramaContext ctx) {
+        return analyze(ctx, RoutineFacts.collect(ctx));
+    }
+
+    /** Como analyze(ctx), com os fatos das rotinas já coletados (pelo passo "routine-facts" do PassManager) */
+    // Rotinas sem nenhum acesso indexado (facts.indexing) não são interpretadas
+    static ArrayBoundsAnalysis analyze(ProgramaContext ctx, RoutineFacts facts) {
+        ArrayBoundsAnalysis analysis = new ArrayBoundsAnalysis(facts.varParameters);
+        for (Decl_local_globalContext d : ctx.declaracoes().decl_local_global()) {
+            if (d.declaracao_local() != null) {
+                analysis.declareGlobal(d.declaracao_local());
+            } else if (d.declaracao_global() != null && d.declaracao_global().IDENT() != null
+                       && facts.indexing.contains(d.declaracao_global())) {
+                Declaracao_globalContext g = d.declaracao_global();
+                Scope scope = analysis.new Scope(false, facts.addressTaken(g));
+                scope.parameters(g.parametros());
+                scope.declare(g.declaracao_local());
+                scope.run(g.cmd());
+            }
+        }
+        if (ctx.corpo() != null && facts.indexingOutsideRoutines) {
+            Scope scope = analysis.new Scope(true, facts.addressTakenAnywhere);
+            scope.declare(ctx.corpo().declaracao_local());
+            scope.run(ctx.corpo().cmd());
+        }
+        analysis.warnings.sort(Comparator.comparingInt(w -> w.line));
+        return analysis;
+    }
+
+    /** Resultado vazio (programa com erros sintáticos) */
+    static ArrayBoundsAnalysis empty() {
+        return new ArrayBoundsAnalysis(Map.of());
+    }
+
+    /** Avisos de acessos sempre fora dos limites ("Linha N: aviso: ..."), em ordem de linha */
+    public List<String> warnings() {
+        List<String> messages = new ArrayList<>(warnings.size());
+        for (Warning w : warnings) messages.add("Linha " + w.line + ": aviso: " + w.message);
+        return messages;
+    }
+
+    /** Se o índice (uma expressão de dimensao num acesso) está sempre dentro dos limites */
+    public boolean provenSafe(Exp_aritmeticaContext index) {
+        return safe.contains(index);
+    }
+
+    /** Acessos provados seguros, "Linha N: v[i]", na ordem em que foram analisados */
+    public List<String> safeAccesses() {
+        return Collections.unmodifiableList(safeAccesses);
+    }
+
+    /** Índices analisados (acessos a arranjos com dimensões conhecidas ou não) */
+    public int accessCount() {
+        return accesses;
+    }
+
+    private static final class Warning {
+        final int line;
+        final String message;
+
+        Warning(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
+
+    private void declareGlobal(Declaracao_localContext d) {
+        if (d.variavel() != null) {
+            VariavelContext v = d.variavel();
+            for (IdentificadorContext id : v.identificador()) {
+                if (id.IDENT(0) == null) continue;
+                String name = id.IDENT(0).getText();
+                if (!id.dimensao().exp_aritmetica().isEmpty()) {
+                    globalArrays.put(name, dimensions(id.dimensao(), globalConstants::get));
+                } else if (isInteger(v.tipo())) {
+                    globalIntegers.add(name);
+                }
+            }
+        } else if (d.IDENT() != null && d.valor_constante() != null && d.valor_constante().NUM_INT() != null) {
+            Long value = parse(d.valor_constante().NUM_INT().getText(), false);
+            if (value != null) globalConstants.put(d.IDENT().getText(), value);
+        }
+    }
+
+    private static boolean isInteger(TipoContext t) {
+        return t != null && t.tipo_estendido() != null && t.tipo_estendido().CIRCUNFLEXO() == null
+            && t.tipo_estendido().tipo_basico_ident().tipo_basico() != null
+            && t.tipo_estendido().tipo_basico_ident().tipo_basico().INTEIRO() != null;
+    }
+
+    // Tamanho de cada dimensão; -1 se não for uma expressão constante positiva
+    private static long[] dimensions(DimensaoContext dims, Function<String, Long> constants) {
+        List<Exp_aritmeticaContext> exps = dims.exp_aritmetica();
+        long[] sizes = new long[exps.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            long[] v = constantValue(exps.get(i), constants);
+            sizes[i] = v != null && v[0] == v[1] && v[0] > 0 ? v[0] : -1;
+        }
+        return sizes;
+    }
+
+    private static long[] constantValue(Exp_aritmeticaContext e, Function<String, Long> constants) {
+        long[] v = new Evaluator() {
+            @Override
+            long[] variable(String name) {
+                Long c = constants.apply(name);
+                return c == null ? TOP : new long[] {c, c};
+            }
+        }.eval(e);
+        return v[0] == NEG_INF || v[1] == POS_INF ? null : v;
+    }
+
+    private static Long parse(String digits, boolean negative) {
+        try {
+            long v = Long.parseLong(digits);
+            return negative ? -v : v;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------- intervalos
+
+    private static long add(long a, long b, boolean low) {
+        if (a == NEG_INF || b == NEG_INF) return low || (a != POS_INF && b != POS_INF) ? NEG_INF : POS_INF;
+        if (a == POS_INF || b == POS_INF) return POS_INF;
+        long r = a + b;
+        if (((a ^ r) & (b ^ r)) < 0) return a < 0 ? NEG_INF : POS_INF;
+        return r;
+    }
+
+    private static long neg(long a) {
+        return a == NEG_INF ? POS_INF : a == POS_INF ? NEG_INF : -a;
+    }
+
+    private static long mul(long a, long b) {
+        if (a == 0 || b == 0) return 0;
+        boolean negative = (a < 0) != (b < 0);
+        if (a == NEG_INF || a == POS_INF || b == NEG_INF || b == POS_INF) return negative ? NEG_INF : POS_INF;
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        if ((hi == 0 && lo >= 0) || (hi == -1 && lo < 0)) return lo;
+        return negative ? NEG_INF : POS_INF;
+    }
+
+    // Divisão inteira truncada; o divisor não contém zero
+    private static long div(long a, long b) {
+        if (b == NEG_INF || b == POS_INF) return 0;
+        if (a == NEG_INF || a == POS_INF) return (a < 0) != (b < 0) ? NEG_INF : POS_INF;
+        if (a == Long.MIN_VALUE && b == -1) return POS_INF;
+        return a / b;
+    }
+
+    private static long[] binary(long[] a, long[] b, String op) {
+        switch (op) {
+            case "+":
+                return new long[] {add(a[0], b[0], true), add(a[1], b[1], false)};
+            case "-":
+                return new long[] {add(a[0], neg(b[1]), true), add(a[1], neg(b[0]), false)};
+            case "*": {
+                long p1 = mul(a[0], b[0]), p2 = mul(a[0], b[1]), p3 = mul(a[1], b[0]), p4 = mul(a[1], b[1]);
+                return new long[] {Math.min(Math.min(p1, p2), Math.min(p3, p4)), Math.max(Math.max(p1, p2), Math.max(p3, p4))};
+            }
+            case "/": {
+                if (b[0] <= 0 && b[1] >= 0) return TOP;
+                long q1 = div(a[0], b[0]), q2 = div(a[0], b[1]), q3 = div(a[1], b[0]), q4 = div(a[1], b[1]);
+                return new long[] {Math.min(Math.min(q1, q2), Math.min(q3, q4)), Math.max(Math.max(q1, q2), Math.max(q3, q4))};
+            }
+            case "%": {
+                if (b[0] <= 0 && b[1] >= 0) return TOP;
+                long m = Math.max(neg(b[0]) == POS_INF ? POS_INF : Math.abs(b[0]), b[1] == POS_INF ? POS_INF : Math.abs(b[1]));
+                long bound = m == POS_INF ? POS_INF : m - 1;
+                // O resto tem o sinal do dividendo e módulo menor que o do dividendo e o do divisor
+                if (a[0] >= 0) return new long[] {0, Math.min(a[1], bound)};
+                if (a[1] <= 0) return new long[] {Math.max(a[0], neg(bound)), 0};
+                return new long[] {neg(bound), bound};
+            }
+            default:
+                return TOP;
+        }
+    }
+
+    // Avaliação de expressões inteiras; variable() dá o intervalo de um nome simples
+    private abstract static class Evaluator {
+        abstract long[] variable(String name);
+
+        long[] eval(Exp_aritmeticaContext e) {
+            if (JanderSemanticoUtils.isChain(e)) {
+                // Cadeia de operadores de mesma precedência: sem recursão na espinha esquerda
+                List<Exp_aritmeticaContext> chain = JanderSemanticoUtils.chain(e);
+                long[] v = eval((Exp_aritmeticaContext) chain.get(0).getChild(0));
+                for (Exp_aritmeticaContext node : chain) {
+                    long[] right = eval((Exp_aritmeticaContext) node.getChild(2));
+                    v = binary(v, right, node.getChild(1).getText());
+                }
+                return v;
+            }
+            long[] v;
+            Op_unarioContext unary;
+            if (e instanceof ExpInteiroContext) {
+                ExpInteiroContext n = (ExpInteiroContext) e;
+                Long value = parse(n.NUM_INT().getText(), false);
+                v = value == null ? TOP : new long[] {value, value};
+                unary = n.op_unario();
+            } else if (e instanceof ExpIdentificadorContext) {
+                ExpIdentificadorContext id = (ExpIdentificadorContext) e;
+                v = id.CIRCUNFLEXO() == null ? simple(id.identificador()) : TOP;
+                unary = id.op_unario();
+            } else if (e instanceof ExpParentesesContext) {
+                ExpParentesesContext p = (ExpParentesesContext) e;
+                Exp_aritmeticaContext inner = arithmetic(p.expressao());
+                v = inner != null ? eval(inner) : TOP;
+                unary = p.op_unario();
+            } else {
+                return TOP; // chamadas, reais, cadeias, endereços
+            }
+            return unary == null ? v : new long[] {neg(v[1]), neg(v[0])};
+        }
+
+        long[] simple(IdentificadorContext id) {
+            if (id == null || id.IDENT(0) == null || id.IDENT(1) != null || !id.dimensao().exp_aritmetica().isEmpty()) return TOP;
+            return variable(id.IDENT(0).getText());
+        }
+    }
+
+    // A expressão aritmética isolada dentro de uma expressão (sem comparação nem 'nao'); null se não for
+    private static Exp_aritmeticaContext arithmetic(ExpressaoContext e) {
+        if (!(e instanceof ExpRelacionalContext)) return null;
+        ExpRelacionalContext rel = (ExpRelacionalContext) e;
+        if (rel.op != null || rel.nao != null || rel.exp_aritmetica().size() != 1) return null;
+        return rel.exp_aritmetica(0);
+    }
+
+    // ---------------------------------------------------------------- interpretação de uma rotina
+
+    // Estado abstrato: long[2 * variáveis] com (lo, hi) de cada uma; null quando o ponto é inalcançável
+    private final class Scope extends Evaluator {
+        final boolean main;
+        final Set<String> addressTaken;
+        final Map<String, Integer> slots = new HashMap<>();
+        final Set<String> localNames = new HashSet<>();
+        final Map<String, long[]> arrays = new HashMap<>();
+        final Map<String, Long> constants = new HashMap<>();
+        int[] havocOnCall = new int[0];   // globais e variáveis com '&': qualquer chamada pode alterá-las
+        int[] havocOnPointer = new int[0]; // variáveis com '&': escritas através de ponteiros podem alterá-las
+
+        final Map<ParserRuleContext, long[][]> loops = new IdentityHashMap<>(); // laço -> {entrada, invariante}
+        long[] state;     // estado atual da interpretação
+        boolean recording; // classifica os acessos (só na última passada de cada laço)
+
+        Scope(boolean main, Set<String> addressTaken) {
+            this.main = main;
+            this.addressTaken = addressTaken;
+            if (main) {
+                for (String g : globalIntegers) slot(g);
+            }
+        }
+
+        int slot(String name) {
+            Integer s = slots.get(name);
+            if (s != null) return s;
+            s = slots.size();
+            slots.put(name, s);
+            return s;
+        }
+
+        void parameters(ParametrosContext ps) {
+            if (ps == null) return;
+            for (ParametroContext p : ps.parametro()) {
+                for (IdentificadorContext id : p.identificador()) {
+                    if (id.IDENT(0) == null) continue;
+                    String name = id.IDENT(0).getText();
+                    localNames.add(name);
+                    if (!id.dimensao().exp_aritmetica().isEmpty()) {
+                        arrays.put(name, dimensions(id.dimensao(), this::constant));
+                    } else if (p.tipo_estendido() != null && p.tipo_estendido().CIRCUNFLEXO() == null
+                               && p.tipo_estendido().tipo_basico_ident().tipo_basico() != null
+                               && p.tipo_estendido().tipo_basico_ident().tipo_basico().INTEIRO() != null) {
+                        slot(name);
+                    }
+                }
+            }
+        }
+
+        void declare(List<Declaracao_localContext> decls) {
+            for (Declaracao_localContext d : decls) {
+                if (d.variavel() != null) {
+                    for (IdentificadorContext id : d.variavel().identificador()) {
+                        if (id.IDENT(0) == null) continue;
+                        String name = id.IDENT(0).getText();
+                        localNames.add(name);
+                        if (!id.dimensao().exp_aritmetica().isEmpty()) {
+                            arrays.put(name, dimensions(id.dimensao(), this::constant));
+                        } else if (isInteger(d.variavel().tipo())) {
+                            slot(name);
+                        }
+                    }
+                } else if (d.IDENT() != null) {
+                    String name = d.IDENT().getText();
+                    localNames.add(name);
+                    if (d.valor_constante() != null && d.valor_constante().NUM_INT() != null) {
+                        Long value = parse(d.valor_constante().NUM_INT().getText(), false);
+                        if (value != null) constants.put(name, value);
+                    }
+                }
+            }
+        }
+
+        // Constante visível com o nome dado (locais escondem as globais de mesmo nome); null se não houver
+        Long constant(String name) {
+            Long c = constants.get(name);
+            return c == null && !localNames.contains(name) ? globalConstants.get(name) : c;
+        }
+
+        void run(List<CmdContext> cmds) {
+            List<Integer> onCall = new ArrayList<>();
+            List<Integer> onPointer = new ArrayList<>();
+            for (Map.Entry<String, Integer> e : slots.entrySet()) {
+                boolean global = main && !localNames.contains(e.getKey());
+                boolean escaped = addressTaken.contains(e.getKey());
+                if (global || escaped) onCall.add(e.getValue());
+                if (escaped) onPointer.add(e.getValue());
+            }
+            havocOnCall = toArray(onCall);
+            havocOnPointer = toArray(onPointer);
+
+            long[] entry = new long[2 * slots.size()];
+            for (int s = 0; s < slots.size(); s++) {
+                entry[2 * s] = NEG_INF;
+                entry[2 * s + 1] = POS_INF;
+            }
+            state = entry;
+            recording = true;
+            commands(cmds);
+        }
+
+        // ------------------------------------------------------------ nomes
+
+        @Override
+        long[] variable(String name) {
+            Integer s = slots.get(name);
+            if (s != null) {
+                return state == null ? TOP : new long[] {state[2 * s], state[2 * s + 1]};
+            }
+            Long c = constant(name);
+            return c == null ? TOP : new long[] {c, c};
+        }
+
+        long[] arrayDimensions(String name) {
+            long[] dims = arrays.get(name);
+            if (dims == null && !localNames.contains(name)) dims = globalArrays.get(name);
+            return dims;
+        }
+
+        // Variável rastreada escrita por 'x <- ...', leia(x) ou 'para x'; -1 se não for
+        int target(IdentificadorContext id) {
+            if (id == null || id.IDENT(0) == null || id.IDENT(1) != null || !id.dimensao().exp_aritmetica().isEmpty()) return -1;
+            Integer s = slots.get(id.IDENT(0).getText());
+            return s == null ? -1 : s;
+        }
+
+        void set(int s, long[] v) {
+            if (state == null || s < 0) return;
+            state[2 * s] = v[0];
+            state[2 * s + 1] = v[1];
+        }
+
+        void havoc(int[] slotsToForget) {
+            for (int s : slotsToForget) set(s, TOP);
+        }
+
+        // ------------------------------------------------------------ comandos
+
+        void commands(List<CmdContext> cmds) {
+            for (CmdContext c : cmds) {
+                if (state == null) return; // depois de 'retorne'
+                command(c);
+            }
+        }
+
+        void command(CmdContext c) {
+            if (c.cmdAtribuicao() != null) atribuicao(c.cmdAtribuicao());
+            else if (c.cmdLeia() != null) leia(c.cmdLeia());
+            else if (c.cmdEscreva() != null) expressions(c.cmdEscreva());
+            else if (c.cmdChamada() != null) expressions(c.cmdChamada());
+            else if (c.cmdRetorne() != null) retorne(c.cmdRetorne());
+            else if (c.cmdSe() != null) se(c.cmdSe());
+            else if (c.cmdCaso() != null) caso(c.cmdCaso());
+            else if (c.cmdPara() != null) para(c.cmdPara());
+            else if (c.cmdEnquanto() != null) enquanto(c.cmdEnquanto());
+            else if (c.cmdFaca() != null) faca(c.cmdFaca());
+        }
+
+        void atribuicao(CmdAtribuicaoContext ctx) {
+            expressions(ctx);
+            if (ctx.CIRCUNFLEXO() != null) {
+                havoc(havocOnPointer);
+            } else if (ctx.expressao() != null) {
+                int s = target(ctx.identificador());
+                if (s >= 0) {
+                    Exp_aritmeticaContext e = arithmetic(ctx.expressao());
+                    set(s, e != null ? eval(e) : TOP);
+                }
+            }
+        }
+
+        void leia(CmdLeiaContext ctx) {
+            expressions(ctx);
+            boolean caret = false;
+            for (int i = 0; i < ctx.getChildCount(); i++) {
+                ParseTree child = ctx.getChild(i);
+                if (JanderSemanticoUtils.isToken(child, JanderParser.CIRCUNFLEXO)) {
+                    caret = true;
+                } else if (child instanceof IdentificadorContext) {
+                    if (caret) havoc(havocOnPointer);
+                    else set(target((IdentificadorContext) child), TOP);
+                    caret = false;
+                }
+            }
+        }
+
+        void retorne(CmdRetorneContext ctx) {
+            expressions(ctx);
+            state = null;
+        }
+
+        void se(CmdSeContext ctx) {
+            expressions(ctx.expressao());
+            long[] before = state;
+            state = refine(copy(before), ctx.expressao(), true);
+            boolean senao = false;
+            long[] thenState = null;
+            for (int i = 0; i < ctx.getChildCount(); i++) {
+                ParseTree child = ctx.getChild(i);
+                if (child instanceof CmdContext) {
+                    if (state != null) command((CmdContext) child);
+                } else if (JanderSemanticoUtils.isToken(child, JanderParser.SENAO)) {
+                    senao = true;
+                    thenState = state;
+                    state = refine(copy(before), ctx.expressao(), false);
+                }
+            }
+            if (senao) {
+                state = join(thenState, state);
+            } else {
+                state = join(state, refine(copy(before), ctx.expressao(), false));
+            }
+        }
+
+        void caso(CmdCasoContext ctx) {
+            expressions(ctx.exp_aritmetica());
+            long[] before = state;
+            int selector = -1;
+            if (ctx.exp_aritmetica() instanceof ExpIdentificadorContext) {
+                ExpIdentificadorContext id = (ExpIdentificadorContext) ctx.exp_aritmetica();
+                if (id.CIRCUNFLEXO() == null && id.op_unario() == null) selector = target(id.identificador());
+            }
+            long[] after = null;
+            for (Item_selecaoContext item : ctx.selecao().item_selecao()) {
+                state = copy(before);
+                if (selector >= 0 && state != null) {
+                    // O seletor está em algum dos intervalos do item
+                    long[] hull = hull(item.constantes());
+                    state = meet(state, selector, hull[0], hull[1]);
+                }
+                if (state != null) commands(item.cmd());
+                after = join(after, state);
+            }
+            state = copy(before);
+            if (ctx.SENAO() != null) commands(ctx.cmd());
+            state = join(after, state);
+        }
+
+        long[] hull(ConstantesContext ctx) {
+            long lo = POS_INF, hi = NEG_INF;
+            for (Numero_intervaloContext n : ctx.numero_intervalo()) {
+                boolean negative = false;
+                for (int i = 0; i < n.getChildCount(); i++) {
+                    ParseTree child = n.getChild(i);
+                    if (child instanceof Op_unarioContext) {
+                        negative = true;
+                    } else if (JanderSemanticoUtils.isToken(child, JanderParser.NUM_INT)) {
+                        Long v = parse(child.getText(), negative);
+                        if (v == null) return TOP;
+                        lo = Math.min(lo, v);
+                        hi = Math.max(hi, v);
+                        negative = false;
+                    }
+                }
+            }
+            return lo > hi ? TOP : new long[] {lo, hi};
+        }
+
+        // para x <- a ate b: x vai de a a b, com incremento de 1
+        void para(CmdParaContext ctx) {
+            if (ctx.exp_aritmetica().size() < 2 || ctx.IDENT() == null) return;
+            expressions(ctx.exp_aritmetica(0));
+            expressions(ctx.exp_aritmetica(1));
+            Integer boxed = slots.get(ctx.IDENT().getText());
+            int s = boxed == null ? -1 : boxed;
+            set(s, eval(ctx.exp_aritmetica(0)));
+
+            long[] head = invariant(ctx, state, h -> {
+                state = enterBody(h, s, ctx.exp_aritmetica(1));
+                if (state != null) commands(ctx.cmd());
+                if (state != null && s >= 0) set(s, binary(variable(ctx.IDENT().getText()), new long[] {1, 1}, "+"));
+                return state;
+            });
+            if (recording && head != null) {
+                state = enterBody(copy(head), s, ctx.exp_aritmetica(1));
+                if (state != null) commands(ctx.cmd());
+            }
+
+            // Saída: x > b
+            state = copy(head);
+            if (state != null && s >= 0) {
+                long[] bound = eval(ctx.exp_aritmetica(1));
+                state = meet(state, s, add(bound[0], 1, true), POS_INF);
+            }
+        }
+
+        long[] enterBody(long[] head, int s, Exp_aritmeticaContext limit) {
+            if (head == null || s < 0) return head;
+            state = head;
+            long[] bound = eval(limit);
+            return meet(head, s, NEG_INF, bound[1]);
+        }
+
+        void enquanto(CmdEnquantoContext ctx) {
+            long[] head = invariant(ctx, state, h -> {
+                state = h;
+                expressions(ctx.expressao());
+                state = refine(state, ctx.expressao(), true);
+                if (state != null) commands(ctx.cmd());
+                return state;
+            });
+            state = copy(head);
+            expressions(ctx.expressao());
+            long[] cond = state;
+            if (recording && cond != null) {
+                state = refine(copy(cond), ctx.expressao(), true);
+                if (state != null) commands(ctx.cmd());
+            }
+            state = refine(copy(cond), ctx.expressao(), false);
+        }
+
+        // faca ... ate cond: o corpo roda ao menos uma vez; a condição não refina (só o laço)
+        void faca(CmdFacaContext ctx) {
+            long[] head = invariant(ctx, state, h -> {
+                state = h;
+                commands(ctx.cmd());
+                if (state != null) expressions(ctx.expressao());
+                return state;
+            });
+            state = copy(head);
+            commands(ctx.cmd());
+            if (state != null) expressions(ctx.expressao());
+        }
+
+        // Invariante na cabeça de um laço: ponto fixo com alargamento de head = entry U body(head), sem
+        // classificar acessos. Cada laço guarda o último invariante: se a entrada cabe na entrada já vista,
+        // ele vale de novo; senão a iteração recomeça dele. Assim laços aninhados não recalculam tudo
+        // a cada passada do laço de fora.
+        long[] invariant(ParserRuleContext loop, long[] entry, UnaryOperator<long[]> body) {
+            if (entry == null) return null;
+            long[][] cached = loops.get(loop);
+            if (cached != null && within(entry, cached[0])) return cached[1];
+            boolean outer = recording;
+            recording = false;
+            long[] head = cached == null ? entry.clone() : join(copy(cached[1]), entry);
+            while (true) {
+                long[] next = widen(head, join(copy(head), body.apply(copy(head))));
+                if (Arrays.equals(next, head)) break;
+                head = next;
+            }
+            recording = outer;
+            loops.put(loop, new long[][] {cached == null ? entry.clone() : join(copy(cached[0]), entry), head});
+            return head;
+        }
+
+        // ------------------------------------------------------------ expressões
+
+        // Classifica os acessos a arranjos de uma parte de comando e aplica os efeitos das chamadas nela;
+        // não desce em comandos aninhados. Sem recursão, para expressões longas.
+        void expressions(ParseTree root) {
+            if (root == null || state == null) return;
+            List<IdentificadorContext> indexed = new ArrayList<>();
+            boolean calls = false;
+            Deque<ParseTree> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                ParseTree t = stack.pop();
+                if (t instanceof CmdContext) continue;
+                if (t instanceof IdentificadorContext && !((IdentificadorContext) t).dimensao().exp_aritmetica().isEmpty()) {
+                    indexed.add((IdentificadorContext) t);
+                }
+                if (t instanceof ExpChamadaContext || t instanceof CmdChamadaContext) {
+                    calls = true;
+                    call(t);
+                }
+                for (int i = t.getChildCount() - 1; i >= 0; i--) stack.push(t.getChild(i));
+            }
+            // Chamadas podem alterar índices lidos antes ou depois delas: ficam desconhecidos antes de classificar
+            if (calls) havoc(havocOnCall);
+            if (recording) {
+                for (IdentificadorContext id : indexed) access(id);
+            }
+        }
+
+        void call(ParseTree t) {
+            String name;
+            List<ExpressaoContext> args;
+            if (t instanceof ExpChamadaContext) {
+                ExpChamadaContext c = (ExpChamadaContext) t;
+                if (c.IDENT() == null) return;
+                name = c.IDENT().getText();
+                args = c.expressao();
+            } else {
+                CmdChamadaContext c = (CmdChamadaContext) t;
+                if (c.IDENT() == null) return;
+                name = c.IDENT().getText();
+                args = c.expressao();
+            }
+            boolean[] var = varParameters.get(name);
+            for (int i = 0; i < args.size(); i++) {
+                // Argumento 'var' (ou de rotina importada, sem assinatura conhecida): a rotina pode alterá-lo
+                if (var != null && (i >= var.length || !var[i])) continue;
+                Exp_aritmeticaContext e = arithmetic(args.get(i));
+                if (e instanceof ExpIdentificadorContext && ((ExpIdentificadorContext) e).CIRCUNFLEXO() == null) {
+                    set(target(((ExpIdentificadorContext) e).identificador()), TOP);
+                }
+            }
+        }
+
+        void access(IdentificadorContext id) {
+            List<Exp_aritmeticaContext> indexes = id.dimensao().exp_aritmetica();
+            accesses += indexes.size();
+            if (id.IDENT(0) == null || id.IDENT(1) != null) return; // campos de registro não são rastreados
+            String name = id.IDENT(0).getText();
+            long[] dims = arrayDimensions(name);
+            if (dims == null) return;
+            for (int d = 0; d < indexes.size() && d < dims.length; d++) {
+                if (dims[d] < 0) continue;
+                Exp_aritmeticaContext index = indexes.get(d);
+                long[] v = eval(index);
+                if (v[0] >= 0 && v[1] <= dims[d] - 1) {
+                    safe.add(index);
+                    safeAccesses.add("Linha " + id.start.getLine() + ": " + name + "[" + text(index) + "]");
+                } else if (v[1] < 0 || v[0] > dims[d] - 1) {
+                    Token t = index.getStart();
+                    warnings.add(new Warning(t.getLine(), "indice " + text(index) + " fora dos limites de " + name
+                        + " (0 a " + (dims[d] - 1) + ")"));
+                }
+            }
+        }
+
+        // ------------------------------------------------------------ condições
+
+        // Estado em que a condição tem o valor dado; null se for impossível
+        long[] refine(long[] s, ExpressaoContext cond, boolean truth) {
+            if (s == null || cond == null) return s;
+            if ((cond instanceof ExpEContext && truth) || (cond instanceof ExpOuContext && !truth)) {
+                // Todos os operandos têm o mesmo valor
+                List<ExpressaoContext> chain = JanderSemanticoUtils.chain(cond);
+                s = refine(s, (ExpressaoContext) chain.get(0).getChild(0), truth);
+                for (ExpressaoContext node : chain) s = refine(s, (ExpressaoContext) node.getChild(2), truth);
+                return s;
+            }
+            if (!(cond instanceof ExpRelacionalContext)) return s;
+            ExpRelacionalContext rel = (ExpRelacionalContext) cond;
+            if (rel.nao != null) truth = !truth;
+            if (rel.op == null) {
+                if (rel.exp_aritmetica().size() == 1 && rel.exp_aritmetica(0) instanceof ExpParentesesContext) {
+                    ExpParentesesContext p = (ExpParentesesContext) rel.exp_aritmetica(0);
+                    if (p.op_unario() == null) return refine(s, p.expressao(), truth);
+                }
+                return s;
+            }
+            if (rel.exp_aritmetica().size() != 2) return s;
+            String op = truth ? rel.op.getText() : negate(rel.op.getText());
+            long[] saved = state;
+            state = s;
+            long[] left = eval(rel.exp_aritmetica(0));
+            long[] right = eval(rel.exp_aritmetica(1));
+            state = saved;
+            s = compare(s, variableOf(rel.exp_aritmetica(0)), op, right);
+            if (s != null) s = compare(s, variableOf(rel.exp_aritmetica(1)), swap(op), left);
+            return s;
+        }
+
+        int variableOf(Exp_aritmeticaContext e) {
+            if (!(e instanceof ExpIdentificadorContext)) return -1;
+            ExpIdentificadorContext id = (ExpIdentificadorContext) e;
+            return id.CIRCUNFLEXO() == null && id.op_unario() == null ? target(id.identificador()) : -1;
+        }
+
+        // x op v
+        long[] compare(long[] s, int x, String op, long[] v) {
+            if (x < 0) return s;
+            switch (op) {
+                case "<": return meet(s, x, NEG_INF, add(v[1], -1, false));
+                case "<=": return meet(s, x, NEG_INF, v[1]);
+                case ">": return meet(s, x, add(v[0], 1, true), POS_INF);
+                case ">=": return meet(s, x, v[0], POS_INF);
+                case "=": return meet(s, x, v[0], v[1]);
+                case "<>":
+                    if (v[0] == v[1]) {
+                        if (s[2 * x] == v[0] && s[2 * x] != POS_INF) return meet(s, x, v[0] + 1, POS_INF);
+                        if (s[2 * x + 1] == v[0] && s[2 * x + 1] != NEG_INF) return meet(s, x, NEG_INF, v[0] - 1);
+                    }
+                    return s;
+                default:
+                    return s;
+            }
+        }
+    }
+
+    private static String negate(String op) {
+        switch (op) {
+            case "<": return ">=";
+            case "<=": return ">";
+            case ">": return "<=";
+            case ">=": return "<";
+            case "=": return "<>";
+            case "<>": return "=";
+            default: return op;
+        }
+    }
+
+    // a op b  <=>  b swap(op) a
+    private static String swap(String op) {
+        switch (op) {
+            case "<": return ">";
+            case "<=": return ">=";
+            case ">": return "<";
+            case ">=": return "<=";
+            default: return op;
+        }
+    }
+
+    private static long[] meet(long[] s, int x, long lo, long hi) {
+        long l = Math.max(s[2 * x], lo);
+        long h = Math.min(s[2 * x + 1], hi);
+        if (l > h) return null;
+        s[2 * x] = l;
+        s[2 * x + 1] = h;
+        return s;
+    }
+
+    // a contido em b
+    private static boolean within(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i += 2) {
+            if (a[i] < b[i] || a[i + 1] > b[i + 1]) return false;
+        }
+        return true;
+    }
+
+    private static long[] copy(long[] s) {
+        return s == null ? null : s.clone();
+    }
+
+    // Junta a em b quando os dois existem (a é modificado)
+    private static long[] join(long[] a, long[] b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        for (int i = 0; i < a.length; i += 2) {
+            a[i] = Math.min(a[i], b[i]);
+            a[i + 1] = Math.max(a[i + 1], b[i + 1]);
+        }
+        return a;
+    }
+
+    // Limites que ainda crescem vão direto ao infinito
+    private static long[] widen(long[] old, long[] next) {
+        if (old == null || next == null) return next;
+        long[] w = new long[old.length];
+        for (int i = 0; i < old.length; i += 2) {
+            w[i] = next[i] < old[i] ? NEG_INF : old[i];
+            w[i + 1] = next[i + 1] > old[i + 1] ? POS_INF : old[i + 1];
+        }
+        return w;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] a = new int[list.size()];
+        for (int i = 0; i < a.length; i++) a[i] = list.get(i);
+        return a;
+    }
+
+    private static String text(ParserRuleContext e) {
+        return JanderSemanticoUtils.isChain(e) ? JanderSemanticoUtils.chainText(JanderSemanticoUtils.chain(e)) : e.getText();
+    }
+}
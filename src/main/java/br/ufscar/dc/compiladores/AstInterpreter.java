@@ -0,0 +1,2264 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import br.ufscar.dc.compiladores.Bytecode.ArrayInit;
+import br.ufscar.dc.compiladores.Bytecode.Cell;
+import br.ufscar.dc.compiladores.Bytecode.Layout;
+import br.ufscar.dc.compiladores.Bytecode.Rec;
+import br.ufscar.dc.compiladores.JanderParser.*;
+
+import static br.ufscar.dc.compiladores.Bytecode.*;
+
+/**
+ * Interpretador de árvore para programas LA já verificados (sem erros sintáticos nem semânticos), para
+ * scripts curtos: a árvore de nós sai de um único percurso dos contextos do JanderParser, sem inferência de
+ * tipos, alocação de registradores nem geração de código, e começa a executar logo depois do semântico.
+ *
+ * - Variáveis moram em bancos indexados por slot em cada ativação (int[], double[] e Object[], como os
+ *   registradores da BytecodeVM), nunca em mapas; registros, arranjos e ponteiros usam os mesmos valores da
+ *   VM (Rec, Cell, arranjos achatados), criados pelos mesmos Layout e ArrayInit.
+ * - Operadores, comparações, o menos unário e os argumentos de escreva nascem não especializados: na
+ *   primeira execução olham os valores dos operandos e se trocam na árvore (replace) pela versão do tipo
+ *   encontrado (soma de inteiros, soma de reais, concatenação de literais...), que daí em diante executa sem
+ *   caixas nem testes de tipo. Como o programa foi verificado, o tipo de um nó nunca muda depois.
+ * - Cada comando devolve se executou um retorne, e os blocos e laços param por aí, sem exceções.
+ * - Erros de execução têm as mensagens e as linhas da BytecodeVM; a execução roda numa thread com pilha
+ *   própria, porque cada chamada de rotina ocupa vários quadros Java.
+ *
+ * Rotinas importadas (importe) não podem ser executadas: chamá-las gera IllegalArgumentException.
+ */
+public final class AstInterpreter {
+    // Pilha da thread de execução: com ela, a recursão vai mais ou menos tão fundo quanto na BytecodeVM
+    private static final long STACK_SIZE = 256L << 20;
+
+    // ---------------------------------------------------------------- tipos e símbolos
+
+    private static final int INTEGER = 0, REAL_T = 1, LITERAL = 2, LOGICAL = 3, RECORD = 4, POINTER = 5;
+
+    private static final class Type {
+        final int kind;
+        final Type target;        // POINTER
+        final RecordType record;  // RECORD
+
+        Type(int kind, Type target, RecordType record) {
+            this.kind = kind;
+            this.target = target;
+            this.record = record;
+        }
+
+        int bank() {
+            return kind == INTEGER || kind == LOGICAL ? INT : kind == REAL_T ? REAL : REF;
+        }
+    }
+
+    private static final Type INTEGER_TYPE = new Type(INTEGER, null, null);
+    private static final Type REAL_TYPE = new Type(REAL_T, null, null);
+    private static final Type LITERAL_TYPE = new Type(LITERAL, null, null);
+    private static final Type LOGICAL_TYPE = new Type(LOGICAL, null, null);
+
+    private static final class RecordType {
+        final Map<String, Field> fields = new LinkedHashMap<>();
+        Layout layout;
+    }
+
+    private static final class Field {
+        final Type type;
+        final int[] dims; // null se não for arranjo
+        final int bank, slot;
+
+        Field(Type type, int[] dims, int bank, int slot) {
+            this.type = type;
+            this.dims = dims;
+            this.bank = bank;
+            this.slot = slot;
+        }
+    }
+
+    private static final int LOCAL = 0, GLOBAL = 1, REFERENCE = 2, CONSTANT = 3;
+
+    private static final class Var {
+        final int storage;
+        final Type type;
+        final int[] dims;
+        final int slot;
+        final Object constant; // Integer (inteiro e logico), Double ou String
+
+        Var(int storage, Type type, int[] dims, int slot, Object constant) {
+            this.storage = storage;
+            this.type = type;
+            this.dims = dims;
+            this.slot = slot;
+            this.constant = constant;
+        }
+
+        int bank() {
+            return dims != null || storage == REFERENCE ? REF : type.bank();
+        }
+    }
+
+    // ---------------------------------------------------------------- estado em tempo de execução
+
+    // Entrada e saída de uma execução
+    private static final class Execution {
+        final BytecodeVM.Output output;
+        final BytecodeVM.Input input;
+
+        Execution(InputStream in, OutputStream out) {
+            this.output = new BytecodeVM.Output(out);
+            this.input = new BytecodeVM.Input(in, output);
+        }
+    }
+
+    // Variáveis de uma ativação, por banco e slot; o quadro das globais é o mesmo em todas
+    private static final class Frame {
+        final int[] ints;
+        final double[] reals;
+        final Object[] refs;
+        final Frame globals;
+        final Execution exec;
+
+        // Resultado da função, escrito por retorne
+        int resultInt;
+        double resultReal;
+        Object resultRef;
+
+        Frame(int ints, int reals, Object[] refInit, Frame globals, Execution exec) {
+            this.ints = new int[ints];
+            this.reals = new double[reals];
+            this.refs = new Object[refInit.length];
+            for (int i = 0; i < refInit.length; i++) if (refInit[i] != null) refs[i] = initial(refInit[i]);
+            this.globals = globals != null ? globals : this;
+            this.exec = exec;
+        }
+
+        Object bank(int bank) {
+            return bank == INT ? ints : bank == REAL ? reals : refs;
+        }
+    }
+
+    // Uma rotina: tamanho dos bancos, onde cada parâmetro é recebido e o corpo (montado depois da assinatura)
+    private static final class Routine {
+        final String name;
+        int ints, reals;
+        Object[] refInit = new Object[0]; // valor inicial de cada slot de referência ("", Layout, ArrayInit ou null)
+        final List<Integer> paramKinds = new ArrayList<>(); // INT, REAL, REF, RECORD (copiado) ou BY_REFERENCE
+        final List<Integer> paramSlots = new ArrayList<>();
+        final List<Layout> paramLayouts = new ArrayList<>();
+        final Type result; // null em procedimentos e no algoritmo
+        Block body;
+
+        Routine(String name, Type result) {
+            this.name = name;
+            this.result = result;
+        }
+
+        int resultKind() {
+            return result == null ? NONE : result.kind == RECORD ? COPIED : result.bank();
+        }
+
+        void invoke(Frame f) {
+            if (body.execute(f)) return;
+            // Função que chega ao fim sem 'retorne': devolve zero, "" ou um registro vazio
+            if (result != null && result.bank() == REF) f.resultRef = initial(initialValue(result));
+        }
+    }
+
+    // Como a bank() dos tipos, mais registros (copiados na passagem) e parâmetros 'var' (um Cell)
+    private static final int COPIED = 3, BY_REFERENCE = 4;
+
+    /** Falha detectada pelo interpretador (índice fora dos limites); a linha é a do comando que a causou */
+    private static final class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Failure(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    // Erro de execução do comando da linha line para uma exceção do programa (como a BytecodeVM as traduz)
+    private static RuntimeException failure(Throwable e, int line) {
+        if (e instanceof ArithmeticException) return BytecodeVM.error(line, "divisao por zero");
+        if (e instanceof NullPointerException) return BytecodeVM.error(line, "ponteiro sem endereco");
+        if (e instanceof StackOverflowError) return BytecodeVM.error(line, "recursao profunda demais");
+        return BytecodeVM.error(line, e.getMessage());
+    }
+
+    private static Failure outOfBounds(int index, int length) {
+        return new Failure("indice " + index + " fora dos limites (0 a " + (length - 1) + ")");
+    }
+
+    // ---------------------------------------------------------------- nós
+
+    private abstract static class Node {
+        Node parent;
+
+        <T extends Node> T adopt(T child) {
+            if (child != null) child.parent = this;
+            return child;
+        }
+
+        <T extends Node> T[] adoptAll(T[] children) {
+            for (T c : children) adopt(c);
+            return children;
+        }
+
+        // Põe replacement no lugar deste nó, no campo do pai que apontava para ele
+        <T extends Node> T replace(T replacement) {
+            replacement.parent = parent;
+            parent.replaceChild(this, replacement);
+            return replacement;
+        }
+
+        void replaceChild(Node child, Node replacement) {
+            throw new IllegalStateException("no sem filhos substituiveis: " + getClass().getSimpleName());
+        }
+
+        static void replaceIn(Expr[] children, Node child, Node replacement) {
+            for (int i = 0; i < children.length; i++) if (children[i] == child) children[i] = (Expr) replacement;
+        }
+    }
+
+    // ------------------------------------------------------------ expressões
+
+    // execute devolve o valor em caixa; os nós de tipo conhecido sobrescrevem a versão sem caixa do seu tipo
+    private abstract static class Expr extends Node {
+        abstract Object execute(Frame f);
+
+        // Um real vira inteiro como no (int) da JVM, nas atribuições, argumentos e retornos inteiros
+        int executeInt(Frame f) {
+            Object v = execute(f);
+            return v instanceof Double ? (int) (double) (Double) v : (Integer) v;
+        }
+
+        double executeReal(Frame f) {
+            Object v = execute(f);
+            return v instanceof Integer ? (double) (Integer) v : (Double) v;
+        }
+    }
+
+    private abstract static class IntExpr extends Expr {
+        @Override
+        abstract int executeInt(Frame f);
+
+        @Override
+        Object execute(Frame f) {
+            return executeInt(f);
+        }
+
+        @Override
+        double executeReal(Frame f) {
+            return executeInt(f);
+        }
+    }
+
+    private abstract static class RealExpr extends Expr {
+        @Override
+        abstract double executeReal(Frame f);
+
+        @Override
+        Object execute(Frame f) {
+            return executeReal(f);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return (int) executeReal(f);
+        }
+    }
+
+    private static final class IntConst extends IntExpr {
+        final int value;
+
+        IntConst(int value) {
+            this.value = value;
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return value;
+        }
+    }
+
+    private static final class RealConst extends RealExpr {
+        final double value;
+
+        RealConst(double value) {
+            this.value = value;
+        }
+
+        @Override
+        double executeReal(Frame f) {
+            return value;
+        }
+    }
+
+    private static final class RefConst extends Expr {
+        final Object value;
+
+        RefConst(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame f) {
+            return value;
+        }
+    }
+
+    // Variáveis locais simples: leitura direta do banco do quadro
+    private static final class LocalInt extends IntExpr {
+        final int slot;
+
+        LocalInt(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return f.ints[slot];
+        }
+    }
+
+    private static final class LocalReal extends RealExpr {
+        final int slot;
+
+        LocalReal(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        double executeReal(Frame f) {
+            return f.reals[slot];
+        }
+    }
+
+    private static final class LocalRef extends Expr {
+        final int slot;
+
+        LocalRef(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Frame f) {
+            return f.refs[slot];
+        }
+    }
+
+    // Leitura de um lugar qualquer (global, elemento, campo, através de um Cell)
+    private static final class ReadInt extends IntExpr {
+        Place place;
+
+        ReadInt(Place place) {
+            this.place = adopt(place);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return place.getInt(f);
+        }
+    }
+
+    private static final class ReadReal extends RealExpr {
+        Place place;
+
+        ReadReal(Place place) {
+            this.place = adopt(place);
+        }
+
+        @Override
+        double executeReal(Frame f) {
+            return place.getReal(f);
+        }
+    }
+
+    private static final class ReadRef extends Expr {
+        Place place;
+
+        ReadRef(Place place) {
+            this.place = adopt(place);
+        }
+
+        @Override
+        Object execute(Frame f) {
+            return place.getRef(f);
+        }
+    }
+
+    // &x e argumentos 'var'
+    private static final class Address extends Expr {
+        Place place;
+
+        Address(Place place) {
+            this.place = adopt(place);
+        }
+
+        @Override
+        Object execute(Frame f) {
+            return place.locate(f);
+        }
+    }
+
+    // -------------------------------------------------------- operadores
+
+    private abstract static class Unary extends Expr {
+        Expr operand;
+
+        Unary(Expr operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (operand == child) operand = (Expr) replacement;
+        }
+    }
+
+    private abstract static class UnaryInt extends IntExpr {
+        Expr operand;
+
+        UnaryInt(Expr operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (operand == child) operand = (Expr) replacement;
+        }
+    }
+
+    private abstract static class Binary extends Expr {
+        Expr left, right;
+
+        Binary(Expr left, Expr right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) left = (Expr) replacement;
+            else if (right == child) right = (Expr) replacement;
+        }
+    }
+
+    private abstract static class BinaryInt extends IntExpr {
+        Expr left, right;
+
+        BinaryInt(Expr left, Expr right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) left = (Expr) replacement;
+            else if (right == child) right = (Expr) replacement;
+        }
+
+        abstract int apply(int a, int b);
+    }
+
+    private abstract static class BinaryReal extends RealExpr {
+        Expr left, right;
+
+        BinaryReal(Expr left, Expr right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) left = (Expr) replacement;
+            else if (right == child) right = (Expr) replacement;
+        }
+
+        abstract double apply(double a, double b);
+    }
+
+    // + - * / %: ainda sem tipo; na primeira execução vira a versão dos valores que recebeu
+    private static final class UninitializedArithmetic extends Binary {
+        final String op;
+
+        UninitializedArithmetic(String op, Expr left, Expr right) {
+            super(left, right);
+            this.op = op;
+        }
+
+        @Override
+        Object execute(Frame f) {
+            Object a = left.execute(f), b = right.execute(f);
+            if (a instanceof String) {
+                replace(new Concat(left, right));
+                return ((String) a).concat((String) b);
+            }
+            if (a instanceof Double || b instanceof Double) {
+                if (op.equals("%")) throw new IllegalStateException("% entre reais");
+                BinaryReal n = replace(realOperator(op, left, right));
+                return n.apply(((Number) a).doubleValue(), ((Number) b).doubleValue());
+            }
+            BinaryInt n = replace(intOperator(op, left, right));
+            return n.apply((Integer) a, (Integer) b);
+        }
+    }
+
+    private static BinaryInt intOperator(String op, Expr left, Expr right) {
+        switch (op) {
+            case "+": return new IntAdd(left, right);
+            case "-": return new IntSub(left, right);
+            case "*": return new IntMul(left, right);
+            case "/": return new IntDiv(left, right);
+            default: return new IntMod(left, right);
+        }
+    }
+
+    private static BinaryReal realOperator(String op, Expr left, Expr right) {
+        switch (op) {
+            case "+": return new RealAdd(left, right);
+            case "-": return new RealSub(left, right);
+            case "*": return new RealMul(left, right);
+            default: return new RealDiv(left, right);
+        }
+    }
+
+    // Cada operador especializado implementa executeInt/executeReal por conta própria (e não via apply),
+    // para que o JIT veja uma operação só em cada método
+    private static final class IntAdd extends BinaryInt {
+        IntAdd(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return left.executeInt(f) + right.executeInt(f);
+        }
+
+        @Override
+        int apply(int a, int b) {
+            return a + b;
+        }
+    }
+
+    private static final class IntSub extends BinaryInt {
+        IntSub(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return left.executeInt(f) - right.executeInt(f);
+        }
+
+        @Override
+        int apply(int a, int b) {
+            return a - b;
+        }
+    }
+
+    private static final class IntMul extends BinaryInt {
+        IntMul(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return left.executeInt(f) * right.executeInt(f);
+        }
+
+        @Override
+        int apply(int a, int b) {
+            return a * b;
+        }
+    }
+
+    private static final class IntDiv extends BinaryInt {
+        IntDiv(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return left.executeInt(f) / right.executeInt(f);
+        }
+
+        @Override
+        int apply(int a, int b) {
+            return a / b;
+        }
+    }
+
+    private static final class IntMod extends BinaryInt {
+        IntMod(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return left.executeInt(f) % right.executeInt(f);
+        }
+
+        @Override
+        int apply(int a, int b) {
+            return a % b;
+        }
+    }
+
+    private static final class RealAdd extends BinaryReal {
+        RealAdd(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        double executeReal(Frame f) {
+            return left.executeReal(f) + right.executeReal(f);
+        }
+
+        @Override
+        double apply(double a, double b) {
+            return a + b;
+        }
+    }
+
+    private static final class RealSub extends BinaryReal {
+        RealSub(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        double executeReal(Frame f) {
+            return left.executeReal(f) - right.executeReal(f);
+        }
+
+        @Override
+        double apply(double a, double b) {
+            return a - b;
+        }
+    }
+
+    private static final class RealMul extends BinaryReal {
+        RealMul(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        double executeReal(Frame f) {
+            return left.executeReal(f) * right.executeReal(f);
+        }
+
+        @Override
+        double apply(double a, double b) {
+            return a * b;
+        }
+    }
+
+    private static final class RealDiv extends BinaryReal {
+        RealDiv(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        double executeReal(Frame f) {
+            return left.executeReal(f) / right.executeReal(f);
+        }
+
+        @Override
+        double apply(double a, double b) {
+            return a / b;
+        }
+    }
+
+    private static final class Concat extends Binary {
+        Concat(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        Object execute(Frame f) {
+            return ((String) left.execute(f)).concat((String) right.execute(f));
+        }
+    }
+
+    // Menos unário: vira NegInt ou NegReal na primeira execução
+    private static final class UninitializedNegate extends Unary {
+        UninitializedNegate(Expr operand) {
+            super(operand);
+        }
+
+        @Override
+        Object execute(Frame f) {
+            Object v = operand.execute(f);
+            if (v instanceof Double) {
+                replace(new NegReal(operand));
+                return -(Double) v;
+            }
+            replace(new NegInt(operand));
+            return -(Integer) v;
+        }
+    }
+
+    private static final class NegInt extends UnaryInt {
+        NegInt(Expr operand) {
+            super(operand);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return -operand.executeInt(f);
+        }
+    }
+
+    private static final class NegReal extends RealExpr {
+        Expr operand;
+
+        NegReal(Expr operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (operand == child) operand = (Expr) replacement;
+        }
+
+        @Override
+        double executeReal(Frame f) {
+            return -operand.executeReal(f);
+        }
+    }
+
+    // -------------------------------------------------------- expressões lógicas (0 ou 1)
+
+    private static final int LT = 0, LE = 1, GT = 2, GE = 3, EQ = 4, NE = 5;
+
+    private static int relational(String op) {
+        switch (op) {
+            case "<": return LT;
+            case "<=": return LE;
+            case ">": return GT;
+            case ">=": return GE;
+            case "=": return EQ;
+            default: return NE;
+        }
+    }
+
+    // Oposto de um operador relacional; não vale entre reais (com NaN, a < b e a >= b são ambos falsos)
+    private static int negate(int op) {
+        switch (op) {
+            case LT: return GE;
+            case LE: return GT;
+            case GT: return LE;
+            case GE: return LT;
+            case EQ: return NE;
+            default: return EQ;
+        }
+    }
+
+    // Comparação ainda sem tipo: vira IntCompare, RealCompare ou StringCompare; 'nao' vem junto
+    private static final class UninitializedCompare extends Binary {
+        final int op;
+        final boolean not;
+
+        UninitializedCompare(int op, boolean not, Expr left, Expr right) {
+            super(left, right);
+            this.op = op;
+            this.not = not;
+        }
+
+        @Override
+        Object execute(Frame f) {
+            Object a = left.execute(f), b = right.execute(f);
+            if (a instanceof String || b instanceof String) {
+                // Entre literais não há NaN: 'nao' vira o operador oposto
+                StringCompare n = replace(new StringCompare(not ? negate(op) : op, left, right));
+                return n.apply(a, b);
+            }
+            if (a instanceof Double || b instanceof Double) {
+                RealCompare n = replace(new RealCompare(op, not, left, right));
+                return n.apply(((Number) a).doubleValue(), ((Number) b).doubleValue());
+            }
+            IntCompare n = replace(new IntCompare(not ? negate(op) : op, left, right));
+            return n.apply((Integer) a, (Integer) b);
+        }
+    }
+
+    private static final class IntCompare extends BinaryInt {
+        final int op;
+
+        IntCompare(int op, Expr left, Expr right) {
+            super(left, right);
+            this.op = op;
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return apply(left.executeInt(f), right.executeInt(f));
+        }
+
+        @Override
+        int apply(int a, int b) {
+            boolean r;
+            switch (op) {
+                case LT: r = a < b; break;
+                case LE: r = a <= b; break;
+                case GT: r = a > b; break;
+                case GE: r = a >= b; break;
+                case EQ: r = a == b; break;
+                default: r = a != b;
+            }
+            return r ? 1 : 0;
+        }
+    }
+
+    private static final class RealCompare extends IntExpr {
+        final int op;
+        final boolean not;
+        Expr left, right;
+
+        RealCompare(int op, boolean not, Expr left, Expr right) {
+            this.op = op;
+            this.not = not;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) left = (Expr) replacement;
+            else if (right == child) right = (Expr) replacement;
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return apply(left.executeReal(f), right.executeReal(f));
+        }
+
+        int apply(double a, double b) {
+            boolean r;
+            switch (op) {
+                case LT: r = a < b; break;
+                case LE: r = a <= b; break;
+                case GT: r = a > b; break;
+                case GE: r = a >= b; break;
+                case EQ: r = a == b; break;
+                default: r = a != b;
+            }
+            return r != not ? 1 : 0;
+        }
+    }
+
+    // '=' e '<>' com equals; a ordem com String.compareTo, como a BytecodeVM
+    private static final class StringCompare extends IntExpr {
+        final int op;
+        Expr left, right;
+
+        StringCompare(int op, Expr left, Expr right) {
+            this.op = op;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) left = (Expr) replacement;
+            else if (right == child) right = (Expr) replacement;
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return apply(left.execute(f), right.execute(f));
+        }
+
+        int apply(Object a, Object b) {
+            int c = op == EQ || op == NE ? (a.equals(b) ? 0 : 1) : ((String) a).compareTo((String) b);
+            boolean r;
+            switch (op) {
+                case LT: r = c < 0; break;
+                case LE: r = c <= 0; break;
+                case GT: r = c > 0; break;
+                case GE: r = c >= 0; break;
+                case EQ: r = c == 0; break;
+                default: r = c != 0;
+            }
+            return r ? 1 : 0;
+        }
+    }
+
+    private static final class Not extends UnaryInt {
+        Not(Expr operand) {
+            super(operand);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            return operand.executeInt(f) == 0 ? 1 : 0;
+        }
+    }
+
+    // 'e' e 'ou' com curto-circuito sobre todos os operandos da cadeia
+    private static final class And extends IntExpr {
+        final Expr[] operands;
+
+        And(Expr[] operands) {
+            this.operands = adoptAll(operands);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            replaceIn(operands, child, replacement);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            for (Expr e : operands) if (e.executeInt(f) == 0) return 0;
+            return 1;
+        }
+    }
+
+    private static final class Or extends IntExpr {
+        final Expr[] operands;
+
+        Or(Expr[] operands) {
+            this.operands = adoptAll(operands);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            replaceIn(operands, child, replacement);
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            for (Expr e : operands) if (e.executeInt(f) != 0) return 1;
+            return 0;
+        }
+    }
+
+    // -------------------------------------------------------- chamadas
+
+    private static final class Call extends Expr {
+        final Routine routine;
+        final Expr[] args;
+
+        Call(Routine routine, Expr[] args) {
+            this.routine = routine;
+            this.args = adoptAll(args);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            replaceIn(args, child, replacement);
+        }
+
+        // Os argumentos são avaliados no quadro de quem chama e escritos direto nos slots dos parâmetros
+        Frame invoke(Frame f) {
+            Routine r = routine;
+            Frame callee = new Frame(r.ints, r.reals, r.refInit, f.globals, f.exec);
+            for (int k = 0; k < args.length; k++) {
+                int slot = r.paramSlots.get(k);
+                switch (r.paramKinds.get(k)) {
+                    case INT: callee.ints[slot] = args[k].executeInt(f); break;
+                    case REAL: callee.reals[slot] = args[k].executeReal(f); break;
+                    case COPIED: callee.refs[slot] = r.paramLayouts.get(k).copy((Rec) args[k].execute(f)); break;
+                    default: callee.refs[slot] = args[k].execute(f);
+                }
+            }
+            r.invoke(callee);
+            return callee;
+        }
+
+        @Override
+        Object execute(Frame f) {
+            Frame callee = invoke(f);
+            switch (routine.resultKind()) {
+                case INT: return callee.resultInt;
+                case REAL: return callee.resultReal;
+                case NONE: return 0;
+                default: return callee.resultRef;
+            }
+        }
+
+        @Override
+        int executeInt(Frame f) {
+            Frame callee = invoke(f);
+            return routine.resultKind() == REAL ? (int) callee.resultReal : callee.resultInt;
+        }
+
+        @Override
+        double executeReal(Frame f) {
+            Frame callee = invoke(f);
+            return routine.resultKind() == INT ? callee.resultInt : callee.resultReal;
+        }
+    }
+
+    // ------------------------------------------------------------ lugares
+
+    // Onde mora um valor: leitura e escrita no banco do tipo, e locate para o endereço (um Cell)
+    private abstract static class Place extends Node {
+        final Type type;
+        final int[] dims; // arranjo ainda não indexado
+        final int bank;
+
+        Place(Type type, int[] dims, int bank) {
+            this.type = type;
+            this.dims = dims;
+            this.bank = bank;
+        }
+
+        abstract int getInt(Frame f);
+
+        abstract void setInt(Frame f, int v);
+
+        abstract double getReal(Frame f);
+
+        abstract void setReal(Frame f, double v);
+
+        abstract Object getRef(Frame f);
+
+        abstract void setRef(Frame f, Object v);
+
+        abstract Cell locate(Frame f);
+    }
+
+    private static final class LocalPlace extends Place {
+        final int slot;
+
+        LocalPlace(Type type, int[] dims, int bank, int slot) {
+            super(type, dims, bank);
+            this.slot = slot;
+        }
+
+        @Override
+        int getInt(Frame f) {
+            return f.ints[slot];
+        }
+
+        @Override
+        void setInt(Frame f, int v) {
+            f.ints[slot] = v;
+        }
+
+        @Override
+        double getReal(Frame f) {
+            return f.reals[slot];
+        }
+
+        @Override
+        void setReal(Frame f, double v) {
+            f.reals[slot] = v;
+        }
+
+        @Override
+        Object getRef(Frame f) {
+            return f.refs[slot];
+        }
+
+        @Override
+        void setRef(Frame f, Object v) {
+            f.refs[slot] = v;
+        }
+
+        @Override
+        Cell locate(Frame f) {
+            return new Cell(f.bank(bank), slot);
+        }
+    }
+
+    private static final class GlobalPlace extends Place {
+        final int slot;
+
+        GlobalPlace(Type type, int[] dims, int bank, int slot) {
+            super(type, dims, bank);
+            this.slot = slot;
+        }
+
+        @Override
+        int getInt(Frame f) {
+            return f.globals.ints[slot];
+        }
+
+        @Override
+        void setInt(Frame f, int v) {
+            f.globals.ints[slot] = v;
+        }
+
+        @Override
+        double getReal(Frame f) {
+            return f.globals.reals[slot];
+        }
+
+        @Override
+        void setReal(Frame f, double v) {
+            f.globals.reals[slot] = v;
+        }
+
+        @Override
+        Object getRef(Frame f) {
+            return f.globals.refs[slot];
+        }
+
+        @Override
+        void setRef(Frame f, Object v) {
+            f.globals.refs[slot] = v;
+        }
+
+        @Override
+        Cell locate(Frame f) {
+            return new Cell(f.globals.bank(bank), slot);
+        }
+    }
+
+    // v[i][j]: cada índice é verificado na sua dimensão antes de achatado
+    private static final class ElementPlace extends Place {
+        Place array;
+        final Expr[] indices;
+        final int[] lengths;
+
+        ElementPlace(Type type, Place array, Expr[] indices, int[] lengths) {
+            super(type, null, type.bank());
+            this.array = adopt(array);
+            this.indices = adoptAll(indices);
+            this.lengths = lengths;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            replaceIn(indices, child, replacement);
+        }
+
+        int index(Frame f) {
+            int flat = 0;
+            for (int k = 0; k < indices.length; k++) {
+                int i = indices[k].executeInt(f), n = lengths[k];
+                if (i < 0 || i >= n) throw outOfBounds(i, n);
+                flat = flat * n + i;
+            }
+            return flat;
+        }
+
+        @Override
+        int getInt(Frame f) {
+            int[] a = (int[]) array.getRef(f);
+            return a[index(f)];
+        }
+
+        @Override
+        void setInt(Frame f, int v) {
+            int[] a = (int[]) array.getRef(f);
+            a[index(f)] = v;
+        }
+
+        @Override
+        double getReal(Frame f) {
+            double[] a = (double[]) array.getRef(f);
+            return a[index(f)];
+        }
+
+        @Override
+        void setReal(Frame f, double v) {
+            double[] a = (double[]) array.getRef(f);
+            a[index(f)] = v;
+        }
+
+        @Override
+        Object getRef(Frame f) {
+            Object[] a = (Object[]) array.getRef(f);
+            return a[index(f)];
+        }
+
+        @Override
+        void setRef(Frame f, Object v) {
+            Object[] a = (Object[]) array.getRef(f);
+            a[index(f)] = v;
+        }
+
+        @Override
+        Cell locate(Frame f) {
+            Object a = array.getRef(f);
+            return new Cell(a, index(f));
+        }
+    }
+
+    private static final class FieldPlace extends Place {
+        Place record;
+        final int slot;
+
+        FieldPlace(Field field, Place record) {
+            super(field.type, field.dims, field.bank);
+            this.record = adopt(record);
+            this.slot = field.slot;
+        }
+
+        @Override
+        int getInt(Frame f) {
+            return ((Rec) record.getRef(f)).ints[slot];
+        }
+
+        @Override
+        void setInt(Frame f, int v) {
+            ((Rec) record.getRef(f)).ints[slot] = v;
+        }
+
+        @Override
+        double getReal(Frame f) {
+            return ((Rec) record.getRef(f)).reals[slot];
+        }
+
+        @Override
+        void setReal(Frame f, double v) {
+            ((Rec) record.getRef(f)).reals[slot] = v;
+        }
+
+        @Override
+        Object getRef(Frame f) {
+            return ((Rec) record.getRef(f)).refs[slot];
+        }
+
+        @Override
+        void setRef(Frame f, Object v) {
+            ((Rec) record.getRef(f)).refs[slot] = v;
+        }
+
+        @Override
+        Cell locate(Frame f) {
+            Rec r = (Rec) record.getRef(f);
+            return new Cell(bank == INT ? r.ints : bank == REAL ? r.reals : r.refs, slot);
+        }
+    }
+
+    // ^p e parâmetros 'var': o valor de pointer é um Cell
+    private static final class DerefPlace extends Place {
+        Place pointer;
+
+        DerefPlace(Type type, Place pointer) {
+            super(type, null, type.bank());
+            this.pointer = adopt(pointer);
+        }
+
+        @Override
+        int getInt(Frame f) {
+            Cell c = (Cell) pointer.getRef(f);
+            return ((int[]) c.base)[c.index];
+        }
+
+        @Override
+        void setInt(Frame f, int v) {
+            Cell c = (Cell) pointer.getRef(f);
+            ((int[]) c.base)[c.index] = v;
+        }
+
+        @Override
+        double getReal(Frame f) {
+            Cell c = (Cell) pointer.getRef(f);
+            return ((double[]) c.base)[c.index];
+        }
+
+        @Override
+        void setReal(Frame f, double v) {
+            Cell c = (Cell) pointer.getRef(f);
+            ((double[]) c.base)[c.index] = v;
+        }
+
+        @Override
+        Object getRef(Frame f) {
+            Cell c = (Cell) pointer.getRef(f);
+            return ((Object[]) c.base)[c.index];
+        }
+
+        @Override
+        void setRef(Frame f, Object v) {
+            Cell c = (Cell) pointer.getRef(f);
+            ((Object[]) c.base)[c.index] = v;
+        }
+
+        @Override
+        Cell locate(Frame f) {
+            return (Cell) pointer.getRef(f);
+        }
+    }
+
+    // ------------------------------------------------------------ comandos
+
+    private abstract static class Stmt extends Node {
+        int line;
+
+        // true se executou um retorne: a rotina termina e os comandos seguintes ficam para trás
+        abstract boolean execute(Frame f);
+    }
+
+    // Sequência de comandos; exceções do programa viram erros de execução com a linha do comando
+    private static final class Block extends Stmt {
+        final Stmt[] stmts;
+
+        Block(Stmt[] stmts) {
+            this.stmts = adoptAll(stmts);
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            int i = 0;
+            try {
+                for (; i < stmts.length; i++) if (stmts[i].execute(f)) return true;
+                return false;
+            } catch (ArithmeticException | NullPointerException | NoSuchElementException | Failure | StackOverflowError e) {
+                throw failure(e, stmts[i].line);
+            }
+        }
+    }
+
+    private static final class AssignLocalInt extends Stmt {
+        final int slot;
+        Expr value;
+
+        AssignLocalInt(int slot, Expr value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (value == child) value = (Expr) replacement;
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            f.ints[slot] = value.executeInt(f);
+            return false;
+        }
+    }
+
+    private static final class AssignLocalReal extends Stmt {
+        final int slot;
+        Expr value;
+
+        AssignLocalReal(int slot, Expr value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (value == child) value = (Expr) replacement;
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            f.reals[slot] = value.executeReal(f);
+            return false;
+        }
+    }
+
+    private static final class AssignLocalRef extends Stmt {
+        final int slot;
+        Expr value;
+
+        AssignLocalRef(int slot, Expr value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (value == child) value = (Expr) replacement;
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            f.refs[slot] = value.execute(f);
+            return false;
+        }
+    }
+
+    // Atribuição a um lugar qualquer: o valor é avaliado antes do lugar, como na BytecodeVM
+    private static final class Assign extends Stmt {
+        Place place;
+        Expr value;
+        final Layout copy; // registros são copiados; null nos demais tipos
+
+        Assign(Place place, Expr value, Layout copy) {
+            this.place = adopt(place);
+            this.value = adopt(value);
+            this.copy = copy;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (value == child) value = (Expr) replacement;
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            switch (place.bank) {
+                case INT: place.setInt(f, value.executeInt(f)); break;
+                case REAL: place.setReal(f, value.executeReal(f)); break;
+                default:
+                    Object v = value.execute(f);
+                    place.setRef(f, copy != null ? copy.copy((Rec) v) : v);
+            }
+            return false;
+        }
+    }
+
+    private static final int UNKNOWN = -1;
+
+    // Cada argumento descobre na primeira execução se é inteiro, real ou literal
+    private static final class Write extends Stmt {
+        final Expr[] args;
+        final int[] banks;
+
+        Write(Expr[] args) {
+            this.args = adoptAll(args);
+            this.banks = new int[args.length];
+            java.util.Arrays.fill(banks, UNKNOWN);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            replaceIn(args, child, replacement);
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            BytecodeVM.Output out = f.exec.output;
+            for (int i = 0; i < args.length; i++) {
+                switch (banks[i]) {
+                    case INT: out.writeInt(args[i].executeInt(f)); break;
+                    case REAL: out.writeReal(args[i].executeReal(f)); break;
+                    case REF: out.writeString((String) args[i].execute(f)); break;
+                    default: first(out, i, args[i].execute(f));
+                }
+            }
+            return false;
+        }
+
+        private void first(BytecodeVM.Output out, int i, Object v) {
+            if (v instanceof Integer) {
+                banks[i] = INT;
+                out.writeInt((Integer) v);
+            } else if (v instanceof Double) {
+                banks[i] = REAL;
+                out.writeReal((Double) v);
+            } else {
+                banks[i] = REF;
+                out.writeString((String) v);
+            }
+        }
+    }
+
+    // O lugar de cada variável é obtido antes da leitura do valor, como na BytecodeVM
+    private static final class Read extends Stmt {
+        final Place[] places;
+
+        Read(Place[] places) {
+            this.places = adoptAll(places);
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            BytecodeVM.Input in = f.exec.input;
+            for (Place p : places) {
+                Cell c = p.locate(f);
+                switch (p.type.kind) {
+                    case INTEGER: case LOGICAL: ((int[]) c.base)[c.index] = in.readInt(); break;
+                    case REAL_T: ((double[]) c.base)[c.index] = in.readReal(); break;
+                    default: ((Object[]) c.base)[c.index] = in.readWord();
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class If extends Stmt {
+        Expr condition;
+        final Block then, otherwise;
+
+        If(Expr condition, Block then, Block otherwise) {
+            this.condition = adopt(condition);
+            this.then = adopt(then);
+            this.otherwise = adopt(otherwise);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (condition == child) condition = (Expr) replacement;
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            if (condition.executeInt(f) != 0) return then.execute(f);
+            return otherwise != null && otherwise.execute(f);
+        }
+    }
+
+    private static final class While extends Stmt {
+        Expr condition;
+        final Block body;
+
+        While(Expr condition, Block body) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (condition == child) condition = (Expr) replacement;
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            while (condition.executeInt(f) != 0) if (body.execute(f)) return true;
+            return false;
+        }
+    }
+
+    // faca ... ate c: erros em c têm a linha de c
+    private static final class DoUntil extends Stmt {
+        final Block body;
+        Expr condition;
+        final int conditionLine;
+
+        DoUntil(Block body, Expr condition, int conditionLine) {
+            this.body = adopt(body);
+            this.condition = adopt(condition);
+            this.conditionLine = conditionLine;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (condition == child) condition = (Expr) replacement;
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            do {
+                if (body.execute(f)) return true;
+            } while (!done(f));
+            return false;
+        }
+
+        private boolean done(Frame f) {
+            try {
+                return condition.executeInt(f) != 0;
+            } catch (ArithmeticException | NullPointerException | NoSuchElementException | Failure | StackOverflowError e) {
+                throw failure(e, conditionLine);
+            }
+        }
+    }
+
+    // para i <- a ate b: como for (i = a; i <= b; i++), com b reavaliado a cada volta
+    private static final class For extends Stmt {
+        Place variable;
+        Expr start, limit;
+        final Block body;
+
+        For(Place variable, Expr start, Expr limit, Block body) {
+            this.variable = adopt(variable);
+            this.start = adopt(start);
+            this.limit = adopt(limit);
+            this.body = adopt(body);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (start == child) start = (Expr) replacement;
+            else if (limit == child) limit = (Expr) replacement;
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            Place i = variable;
+            i.setInt(f, start.executeInt(f));
+            while (true) {
+                int last = limit.executeInt(f);
+                if (i.getInt(f) > last) return false;
+                if (body.execute(f)) return true;
+                i.setInt(f, i.getInt(f) + 1);
+            }
+        }
+    }
+
+    // caso: intervalos na ordem do fonte; um valor em mais de um item fica com o primeiro
+    private static final class Case extends Stmt {
+        Expr selector;
+        final int[] lo, hi, item;
+        final Block[] items;
+        final Block otherwise;
+
+        Case(Expr selector, int[] lo, int[] hi, int[] item, Block[] items, Block otherwise) {
+            this.selector = adopt(selector);
+            this.lo = lo;
+            this.hi = hi;
+            this.item = item;
+            this.items = adoptAll(items);
+            this.otherwise = adopt(otherwise);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (selector == child) selector = (Expr) replacement;
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            int v = selector.executeInt(f);
+            for (int k = 0; k < lo.length; k++) {
+                if (v >= lo[k] && v <= hi[k]) return items[item[k]].execute(f);
+            }
+            return otherwise.execute(f);
+        }
+    }
+
+    private static final class CallStmt extends Stmt {
+        final Call call;
+
+        CallStmt(Call call) {
+            this.call = adopt(call);
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            call.invoke(f);
+            return false;
+        }
+    }
+
+    private static final class ReturnStmt extends Stmt {
+        Expr value;   // null em procedimentos e no algoritmo
+        final int kind;
+        final Layout copy;
+
+        ReturnStmt(Expr value, int kind, Layout copy) {
+            this.value = adopt(value);
+            this.kind = kind;
+            this.copy = copy;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (value == child) value = (Expr) replacement;
+        }
+
+        @Override
+        boolean execute(Frame f) {
+            switch (kind) {
+                case INT: f.resultInt = value.executeInt(f); break;
+                case REAL: f.resultReal = value.executeReal(f); break;
+                case REF: f.resultRef = value.execute(f); break;
+                case COPIED: f.resultRef = copy.copy((Rec) value.execute(f)); break;
+                default:
+            }
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------- montagem da árvore
+
+    private final Map<String, Var> globals = new HashMap<>();
+    private final Map<String, Type> globalTypes = new HashMap<>();
+    private final Map<String, Routine> routines = new HashMap<>();
+    private final int[] globalCount = new int[3];
+    private final List<Object> globalRefInit = new ArrayList<>();
+    private Routine main;
+
+    private AstInterpreter() {
+    }
+
+    /** Monta a árvore do programa; IllegalArgumentException se ele usar algo que não dá para executar */
+    public static AstInterpreter build(ProgramaContext tree) {
+        AstInterpreter interpreter = new AstInterpreter();
+        interpreter.program(tree);
+        return interpreter;
+    }
+
+    private void program(ProgramaContext tree) {
+        List<Declaracao_globalContext> declared = new ArrayList<>();
+        for (Decl_local_globalContext d : tree.declaracoes().decl_local_global()) {
+            if (d.declaracao_local() != null) {
+                declare(d.declaracao_local(), null);
+            } else {
+                Declaracao_globalContext g = d.declaracao_global();
+                declared.add(g);
+                Type result = g.tipo_estendido() != null ? extended(g.tipo_estendido(), globalTypes) : null;
+                routines.put(g.IDENT().getText(), new Routine(g.IDENT().getText(), result));
+                List<Boolean> flags = new ArrayList<>();
+                if (g.parametros() != null) {
+                    for (ParametroContext p : g.parametros().parametro()) {
+                        for (int i = 0; i < p.identificador().size(); i++) flags.add(p.VAR() != null);
+                    }
+                }
+                byReference.put(g.IDENT().getText(), flags);
+            }
+        }
+        main = new Routine("algoritmo", null);
+        new Builder(main).body(tree.corpo().declaracao_local(), tree.corpo().cmd());
+        for (Declaracao_globalContext g : declared) {
+            Builder b = new Builder(routines.get(g.IDENT().getText()));
+            b.parameters(g.parametros());
+            b.body(g.declaracao_local(), g.cmd());
+        }
+    }
+
+    /**
+     * Executa o programa com a entrada e a saída dadas; a saída é descarregada mesmo se houver erro de
+     * execução (BytecodeVM.ExecutionError, com a mensagem da VM).
+     */
+    public void run(InputStream in, OutputStream out) {
+        Throwable[] thrown = new Throwable[1];
+        Thread t = new Thread(null, () -> {
+            try {
+                execute(in, out);
+            } catch (RuntimeException | Error e) {
+                thrown[0] = e;
+            }
+        }, "algoritmo", STACK_SIZE);
+        t.start();
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("execucao interrompida", e);
+        }
+        if (thrown[0] instanceof RuntimeException) throw (RuntimeException) thrown[0];
+        if (thrown[0] instanceof Error) throw (Error) thrown[0];
+    }
+
+    private void execute(InputStream in, OutputStream out) {
+        Execution exec = new Execution(in, out);
+        Frame globalFrame = new Frame(globalCount[INT], globalCount[REAL], globalRefInit.toArray(), null, exec);
+        try {
+            main.invoke(new Frame(main.ints, main.reals, main.refInit, globalFrame, exec));
+        } finally {
+            exec.output.flush();
+        }
+    }
+
+    // ---------------------------------------------------------------- declarações e tipos
+
+    // Declara no escopo global (b == null) ou no da rotina sendo montada
+    private void declare(Declaracao_localContext d, Builder b) {
+        Map<String, Type> types = b == null ? globalTypes : b.types;
+        Map<String, Var> scope = b == null ? globals : b.locals;
+        int kind = d.getStart().getType();
+        if (kind == JanderParser.TIPO) {
+            types.put(d.IDENT().getText(), type(d.tipo(), types));
+        } else if (kind == JanderParser.CONSTANTE) {
+            Type t = basic(d.tipo_basico());
+            scope.put(d.IDENT().getText(), new Var(CONSTANT, t, null, -1, constantValue(d.valor_constante(), t)));
+        } else {
+            VariavelContext v = d.variavel();
+            Type t = type(v.tipo(), types);
+            for (IdentificadorContext id : v.identificador()) {
+                int[] dims = dimensions(id.dimensao(), b);
+                Object init = dims != null ? arrayInit(t, dims) : initialValue(t);
+                int bank = dims != null ? REF : t.bank();
+                if (b == null) {
+                    int slot = globalCount[bank]++;
+                    globals.put(id.IDENT(0).getText(), new Var(GLOBAL, t, dims, slot, null));
+                    if (bank == REF) globalRefInit.add(init);
+                } else {
+                    int slot = b.local(bank);
+                    b.locals.put(id.IDENT(0).getText(), new Var(LOCAL, t, dims, slot, null));
+                    if (bank == REF) b.refInit.set(slot, init);
+                }
+            }
+        }
+    }
+
+    private Type type(TipoContext t, Map<String, Type> types) {
+        return t.registro() != null ? record(t.registro(), types) : extended(t.tipo_estendido(), types);
+    }
+
+    private Type extended(Tipo_estendidoContext t, Map<String, Type> types) {
+        Tipo_basico_identContext b = t.tipo_basico_ident();
+        Type base;
+        if (b.tipo_basico() != null) {
+            base = basic(b.tipo_basico());
+        } else {
+            String name = b.IDENT().getText();
+            base = types.get(name);
+            if (base == null) base = globalTypes.get(name);
+            if (base == null) throw unsupported(t, "tipo " + name + " nao declarado");
+        }
+        return t.CIRCUNFLEXO() != null ? new Type(POINTER, base, null) : base;
+    }
+
+    private static Type basic(Tipo_basicoContext t) {
+        switch (t.getText()) {
+            case "inteiro": return INTEGER_TYPE;
+            case "real": return REAL_TYPE;
+            case "literal": return LITERAL_TYPE;
+            default: return LOGICAL_TYPE;
+        }
+    }
+
+    private Type record(RegistroContext r, Map<String, Type> types) {
+        RecordType record = new RecordType();
+        int[] count = new int[3];
+        List<Object> refInit = new ArrayList<>();
+        for (VariavelContext v : r.variavel()) {
+            Type t = type(v.tipo(), types);
+            for (IdentificadorContext id : v.identificador()) {
+                int[] dims = dimensions(id.dimensao(), null);
+                int bank = dims != null ? REF : t.bank();
+                record.fields.put(id.IDENT(0).getText(), new Field(t, dims, bank, count[bank]++));
+                if (bank == REF) refInit.add(dims != null ? arrayInit(t, dims) : initialValue(t));
+            }
+        }
+        record.layout = new Layout("registro", count[INT], count[REAL], refInit.toArray());
+        return new Type(RECORD, null, record);
+    }
+
+    // Valor inicial de uma variável de referência ("" para literais, um registro novo), ou null
+    private static Object initialValue(Type t) {
+        if (t.kind == LITERAL) return "";
+        if (t.kind == RECORD) return t.record.layout;
+        return null;
+    }
+
+    private static ArrayInit arrayInit(Type element, int[] dims) {
+        long length = 1;
+        for (int d : dims) length *= d;
+        int kind;
+        switch (element.kind) {
+            case INTEGER: case LOGICAL: kind = ELEM_INT; break;
+            case REAL_T: kind = ELEM_REAL; break;
+            case LITERAL: kind = ELEM_LITERAL; break;
+            case RECORD: kind = ELEM_RECORD; break;
+            default: kind = ELEM_POINTER;
+        }
+        return new ArrayInit(kind, (int) Math.min(length, Integer.MAX_VALUE), element.record != null ? element.record.layout : null);
+    }
+
+    // Dimensões constantes de uma declaração (v[10][N]); null se não for arranjo
+    private int[] dimensions(DimensaoContext d, Builder b) {
+        List<Exp_aritmeticaContext> exps = d.exp_aritmetica();
+        if (exps.isEmpty()) return null;
+        int[] dims = new int[exps.size()];
+        for (int i = 0; i < dims.length; i++) {
+            dims[i] = constantInt(exps.get(i), b);
+            if (dims[i] < 0) throw unsupported(exps.get(i), "dimensao negativa");
+        }
+        return dims;
+    }
+
+    private int constantInt(Exp_aritmeticaContext e, Builder b) {
+        if (JanderSemanticoUtils.isChain(e)) {
+            List<Exp_aritmeticaContext> chain = JanderSemanticoUtils.chain(e);
+            int v = constantInt((Exp_aritmeticaContext) chain.get(0).getChild(0), b);
+            for (Exp_aritmeticaContext node : chain) {
+                Integer folded = fold(v, constantInt((Exp_aritmeticaContext) node.getChild(2), b), node.getChild(1).getText());
+                if (folded == null) throw unsupported(e, "divisao por zero na dimensao");
+                v = folded;
+            }
+            return v;
+        }
+        Integer value = null;
+        boolean negative = false;
+        if (e instanceof ExpInteiroContext) {
+            value = parseInt(((ExpInteiroContext) e).NUM_INT().getText());
+            negative = ((ExpInteiroContext) e).op_unario() != null;
+        } else if (e instanceof ExpIdentificadorContext) {
+            ExpIdentificadorContext id = (ExpIdentificadorContext) e;
+            String name = id.identificador().IDENT(0).getText();
+            Var v = b != null ? b.lookup(name) : globals.get(name);
+            if (v != null && v.storage == CONSTANT && v.constant instanceof Integer) value = (Integer) v.constant;
+            negative = id.op_unario() != null;
+        } else if (e instanceof ExpParentesesContext) {
+            ExpParentesesContext p = (ExpParentesesContext) e;
+            ExpressaoContext inner = p.expressao();
+            if (inner instanceof ExpRelacionalContext && ((ExpRelacionalContext) inner).op == null
+                && ((ExpRelacionalContext) inner).nao == null) {
+                value = constantInt(((ExpRelacionalContext) inner).exp_aritmetica(0), b);
+            }
+            negative = p.op_unario() != null;
+        }
+        if (value == null) throw unsupported(e, "dimensao de arranjo nao constante: " + e.getText());
+        return negative ? -value : value;
+    }
+
+    private static Integer fold(int a, int b, String op) {
+        switch (op) {
+            case "+": return a + b;
+            case "-": return a - b;
+            case "*": return a * b;
+            case "/": return b == 0 ? null : a / b;
+            default: return b == 0 ? null : a % b;
+        }
+    }
+
+    // Inteiros do fonte maiores que int dão a volta, como na conversão do C
+    private static int parseInt(String digits) {
+        return new BigInteger(digits).intValue();
+    }
+
+    private static Object constantValue(Valor_constanteContext v, Type t) {
+        if (v.CADEIA() != null) return string(v.CADEIA().getText());
+        if (v.NUM_INT() != null) {
+            int i = parseInt(v.NUM_INT().getText());
+            return t.kind == REAL_T ? (Object) (double) i : (Object) i;
+        }
+        if (v.NUM_REAL() != null) {
+            double d = Double.parseDouble(v.NUM_REAL().getText());
+            return t.kind == REAL_T ? (Object) d : (Object) (int) d;
+        }
+        return v.getText().equals("verdadeiro") ? 1 : 0;
+    }
+
+    private static String string(String token) {
+        return token.substring(1, token.length() - 1).replace("\\'", "'");
+    }
+
+    private static IllegalArgumentException unsupported(ParserRuleContext where, String message) {
+        return new IllegalArgumentException("Linha " + where.getStart().getLine() + ": nao e possivel executar: " + message);
+    }
+
+    // ---------------------------------------------------------------- rotinas
+
+    // Monta o corpo de uma rotina, alocando um slot por variável em cada banco
+    private final class Builder {
+        final Routine routine;
+        final Map<String, Var> locals = new HashMap<>();
+        final Map<String, Type> types = new HashMap<>();
+        final List<Object> refInit = new ArrayList<>();
+        final int[] next = new int[3];
+
+        Builder(Routine routine) {
+            this.routine = routine;
+        }
+
+        Var lookup(String name) {
+            Var v = locals.get(name);
+            return v != null ? v : globals.get(name);
+        }
+
+        int local(int bank) {
+            if (bank == REF) refInit.add(null);
+            return next[bank]++;
+        }
+
+        void parameters(ParametrosContext ps) {
+            if (ps == null) return;
+            for (ParametroContext p : ps.parametro()) {
+                Type t = extended(p.tipo_estendido(), types);
+                boolean byReference = p.VAR() != null;
+                for (IdentificadorContext id : p.identificador()) {
+                    int slot = local(byReference ? REF : t.bank());
+                    locals.put(id.IDENT(0).getText(), new Var(byReference ? REFERENCE : LOCAL, t, null, slot, null));
+                    routine.paramSlots.add(slot);
+                    routine.paramKinds.add(byReference ? BY_REFERENCE : t.kind == RECORD ? COPIED : t.bank());
+                    routine.paramLayouts.add(t.kind == RECORD ? t.record.layout : null);
+                }
+            }
+        }
+
+        void body(List<Declaracao_localContext> declarations, List<CmdContext> cmds) {
+            for (Declaracao_localContext d : declarations) declare(d, this);
+            routine.body = block(cmds);
+            routine.ints = next[INT];
+            routine.reals = next[REAL];
+            routine.refInit = refInit.toArray();
+        }
+
+        // ------------------------------------------------------------ comandos
+
+        Block block(List<CmdContext> cmds) {
+            Stmt[] stmts = new Stmt[cmds.size()];
+            for (int i = 0; i < stmts.length; i++) stmts[i] = command(cmds.get(i));
+            return new Block(stmts);
+        }
+
+        Stmt command(CmdContext c) {
+            Stmt s;
+            if (c.cmdAtribuicao() != null) s = assignment(c.cmdAtribuicao());
+            else if (c.cmdEscreva() != null) s = new Write(values(c.cmdEscreva().expressao()));
+            else if (c.cmdLeia() != null) s = read(c.cmdLeia());
+            else if (c.cmdSe() != null) s = conditional(c.cmdSe());
+            else if (c.cmdEnquanto() != null) s = new While(value(c.cmdEnquanto().expressao()), block(c.cmdEnquanto().cmd()));
+            else if (c.cmdPara() != null) s = forLoop(c.cmdPara());
+            else if (c.cmdFaca() != null) s = doLoop(c.cmdFaca());
+            else if (c.cmdCaso() != null) s = caseOf(c.cmdCaso());
+            else if (c.cmdChamada() != null) s = new CallStmt(call(c.cmdChamada().IDENT(), c.cmdChamada().expressao(), c));
+            else s = ret(c.cmdRetorne());
+            s.line = c.getStart().getLine();
+            return s;
+        }
+
+        Stmt assignment(CmdAtribuicaoContext a) {
+            Expr v = value(a.expressao());
+            Place p = place(a.identificador(), a.CIRCUNFLEXO() != null);
+            Layout copy = p.dims == null && p.type.kind == RECORD ? p.type.record.layout : null;
+            if (p instanceof LocalPlace && copy == null) {
+                int slot = ((LocalPlace) p).slot;
+                switch (p.bank) {
+                    case INT: return new AssignLocalInt(slot, v);
+                    case REAL: return new AssignLocalReal(slot, v);
+                    default: return new AssignLocalRef(slot, v);
+                }
+            }
+            return new Assign(p, v, copy);
+        }
+
+        Stmt read(CmdLeiaContext l) {
+            List<Place> places = new ArrayList<>();
+            boolean deref = false;
+            for (ParseTree child : l.children) {
+                if (JanderSemanticoUtils.isToken(child, JanderParser.CIRCUNFLEXO)) {
+                    deref = true;
+                } else if (child instanceof IdentificadorContext) {
+                    Place p = place((IdentificadorContext) child, deref);
+                    int kind = p.dims != null ? RECORD : p.type.kind;
+                    if (kind != INTEGER && kind != LOGICAL && kind != REAL_T && kind != LITERAL) {
+                        throw unsupported(l, "leia de " + child.getText());
+                    }
+                    places.add(p);
+                    deref = false;
+                }
+            }
+            return new Read(places.toArray(new Place[0]));
+        }
+
+        Stmt conditional(CmdSeContext s) {
+            List<CmdContext> then = new ArrayList<>(), alternative = new ArrayList<>();
+            boolean inElse = false;
+            for (ParseTree child : s.children) {
+                if (JanderSemanticoUtils.isToken(child, JanderParser.SENAO)) inElse = true;
+                else if (child instanceof CmdContext) (inElse ? alternative : then).add((CmdContext) child);
+            }
+            return new If(value(s.expressao()), block(then), s.SENAO() != null ? block(alternative) : null);
+        }
+
+        Stmt doLoop(CmdFacaContext f) {
+            return new DoUntil(block(f.cmd()), value(f.expressao()), f.expressao().getStart().getLine());
+        }
+
+        Stmt forLoop(CmdParaContext p) {
+            Place i = variable(p.IDENT().getText(), p);
+            if (i.dims != null || i.bank != INT) throw unsupported(p, "variavel de controle nao inteira");
+            return new For(i, arithmetic(p.exp_aritmetica(0)), arithmetic(p.exp_aritmetica(1)), block(p.cmd()));
+        }
+
+        Stmt caseOf(CmdCasoContext c) {
+            List<Item_selecaoContext> items = c.selecao().item_selecao();
+            List<long[]> ranges = new ArrayList<>(); // {lo, hi, item}
+            Block[] bodies = new Block[items.size()];
+            for (int k = 0; k < items.size(); k++) {
+                for (Numero_intervaloContext n : items.get(k).constantes().numero_intervalo()) {
+                    long[] r = interval(n, k);
+                    if (r[0] <= r[1]) ranges.add(r);
+                }
+                bodies[k] = block(items.get(k).cmd());
+            }
+            int[] lo = new int[ranges.size()], hi = new int[ranges.size()], item = new int[ranges.size()];
+            for (int k = 0; k < lo.length; k++) {
+                lo[k] = (int) ranges.get(k)[0];
+                hi[k] = (int) ranges.get(k)[1];
+                item[k] = (int) ranges.get(k)[2];
+            }
+            return new Case(arithmetic(c.exp_aritmetica()), lo, hi, item, bodies, block(c.cmd()));
+        }
+
+        // lo .. hi de um numero_intervalo, limitados ao intervalo de int
+        long[] interval(Numero_intervaloContext n, int item) {
+            List<Long> values = new ArrayList<>();
+            boolean negative = false;
+            for (ParseTree child : n.children) {
+                if (child instanceof Op_unarioContext) negative = true;
+                else if (JanderSemanticoUtils.isToken(child, JanderParser.NUM_INT)) {
+                    BigInteger v = new BigInteger(child.getText());
+                    if (negative) v = v.negate();
+                    values.add(v.max(BigInteger.valueOf(Integer.MIN_VALUE)).min(BigInteger.valueOf(Integer.MAX_VALUE)).longValue());
+                    negative = false;
+                }
+            }
+            long lo = values.get(0), hi = values.size() > 1 ? values.get(1) : lo;
+            return new long[] {lo, hi, item};
+        }
+
+        Stmt ret(CmdRetorneContext r) {
+            Type t = routine.result;
+            if (t == null) return new ReturnStmt(null, NONE, null);
+            return new ReturnStmt(value(r.expressao()), routine.resultKind(), t.kind == RECORD ? t.record.layout : null);
+        }
+
+        // ------------------------------------------------------------ expressões
+
+        Expr[] values(List<ExpressaoContext> exps) {
+            Expr[] values = new Expr[exps.size()];
+            for (int i = 0; i < values.length; i++) values[i] = value(exps.get(i));
+            return values;
+        }
+
+        Expr value(ExpressaoContext e) {
+            if (e instanceof ExpLogicaContext) {
+                boolean v = JanderSemanticoUtils.isToken(e.getChild(e.getChildCount() - 1), JanderParser.VERDADEIRO);
+                if (e.getChildCount() > 1) v = !v;
+                return new IntConst(v ? 1 : 0);
+            }
+            if (e instanceof ExpRelacionalContext) {
+                ExpRelacionalContext rel = (ExpRelacionalContext) e;
+                Expr left = arithmetic(rel.exp_aritmetica(0));
+                if (rel.op == null) return rel.nao != null ? new Not(left) : left;
+                return new UninitializedCompare(relational(rel.op.getText()), rel.nao != null, left, arithmetic(rel.exp_aritmetica(1)));
+            }
+            List<ExpressaoContext> chain = JanderSemanticoUtils.chain(e);
+            Expr[] operands = new Expr[chain.size() + 1];
+            operands[0] = value((ExpressaoContext) chain.get(0).getChild(0));
+            for (int i = 0; i < chain.size(); i++) operands[i + 1] = value((ExpressaoContext) chain.get(i).getChild(2));
+            return e instanceof ExpOuContext ? new Or(operands) : new And(operands);
+        }
+
+        Expr arithmetic(Exp_aritmeticaContext e) {
+            if (JanderSemanticoUtils.isChain(e)) {
+                // Cadeia de operadores de mesma precedência: sem recursão na espinha esquerda
+                List<Exp_aritmeticaContext> chain = JanderSemanticoUtils.chain(e);
+                Expr v = arithmetic((Exp_aritmeticaContext) chain.get(0).getChild(0));
+                for (Exp_aritmeticaContext node : chain) {
+                    v = new UninitializedArithmetic(node.getChild(1).getText(), v, arithmetic((Exp_aritmeticaContext) node.getChild(2)));
+                }
+                return v;
+            }
+            if (e instanceof ExpInteiroContext) {
+                ExpInteiroContext n = (ExpInteiroContext) e;
+                int v = parseInt(n.NUM_INT().getText());
+                return new IntConst(n.op_unario() != null ? -v : v);
+            }
+            if (e instanceof ExpRealContext) {
+                ExpRealContext n = (ExpRealContext) e;
+                double v = Double.parseDouble(n.NUM_REAL().getText());
+                return new RealConst(n.op_unario() != null ? -v : v);
+            }
+            if (e instanceof ExpCadeiaContext) return new RefConst(string(((ExpCadeiaContext) e).CADEIA().getText()));
+            if (e instanceof ExpIdentificadorContext) {
+                ExpIdentificadorContext id = (ExpIdentificadorContext) e;
+                return minus(identifier(id.identificador(), id.CIRCUNFLEXO() != null), id.op_unario() != null);
+            }
+            if (e instanceof ExpChamadaContext) {
+                ExpChamadaContext c = (ExpChamadaContext) e;
+                return minus(call(c.IDENT(), c.expressao(), c), c.op_unario() != null);
+            }
+            if (e instanceof ExpParentesesContext) {
+                ExpParentesesContext p = (ExpParentesesContext) e;
+                return minus(value(p.expressao()), p.op_unario() != null);
+            }
+            if (e instanceof ExpEnderecoContext) return new Address(place(((ExpEnderecoContext) e).identificador(), false));
+            throw unsupported(e, "expressao " + e.getText());
+        }
+
+        Expr minus(Expr e, boolean negative) {
+            return negative ? new UninitializedNegate(e) : e;
+        }
+
+        Expr identifier(IdentificadorContext id, boolean deref) {
+            Var v = lookup(id.IDENT(0).getText());
+            if (v != null && v.storage == CONSTANT) {
+                if (v.constant instanceof Integer) return new IntConst((Integer) v.constant);
+                if (v.constant instanceof Double) return new RealConst((Double) v.constant);
+                return new RefConst(v.constant);
+            }
+            Place p = place(id, deref);
+            if (p instanceof LocalPlace) {
+                int slot = ((LocalPlace) p).slot;
+                switch (p.bank) {
+                    case INT: return new LocalInt(slot);
+                    case REAL: return new LocalReal(slot);
+                    default: return new LocalRef(slot);
+                }
+            }
+            switch (p.bank) {
+                case INT: return new ReadInt(p);
+                case REAL: return new ReadReal(p);
+                default: return new ReadRef(p);
+            }
+        }
+
+        Call call(TerminalNode ident, List<ExpressaoContext> args, ParserRuleContext where) {
+            String name = ident.getText();
+            Routine r = routines.get(name);
+            if (r == null) throw unsupported(where, "rotina " + name + " nao declarada no programa (importada?)");
+            Expr[] values = new Expr[args.size()];
+            for (int k = 0; k < values.length; k++) {
+                IdentificadorContext id = lvalue(args.get(k));
+                if (byReference(name, k)) {
+                    if (id == null) throw unsupported(args.get(k), "argumento 'var' que nao e variavel: " + args.get(k).getText());
+                    values[k] = new Address(place(id, ((ExpIdentificadorContext) id.getParent()).CIRCUNFLEXO() != null));
+                } else {
+                    values[k] = value(args.get(k));
+                }
+            }
+            return new Call(r, values);
+        }
+
+        // O identificador de um argumento que é só uma variável (para parâmetros 'var'), ou null
+        IdentificadorContext lvalue(ExpressaoContext e) {
+            if (!(e instanceof ExpRelacionalContext)) return null;
+            ExpRelacionalContext rel = (ExpRelacionalContext) e;
+            if (rel.op != null || rel.nao != null || !(rel.exp_aritmetica(0) instanceof ExpIdentificadorContext)) return null;
+            ExpIdentificadorContext id = (ExpIdentificadorContext) rel.exp_aritmetica(0);
+            return id.op_unario() == null ? id.identificador() : null;
+        }
+
+        // ------------------------------------------------------------ lugares
+
+        Place variable(String name, ParserRuleContext where) {
+            Var v = lookup(name);
+            if (v == null || v.storage == CONSTANT) throw unsupported(where, name + " nao e uma variavel");
+            switch (v.storage) {
+                case LOCAL: return new LocalPlace(v.type, v.dims, v.bank(), v.slot);
+                case GLOBAL: return new GlobalPlace(v.type, v.dims, v.bank(), v.slot);
+                default: return new DerefPlace(v.type, new LocalPlace(null, null, REF, v.slot));
+            }
+        }
+
+        // a.b.c[i], com '^' opcional; em v.x[i] com v arranjo de registros, o índice é de v
+        Place place(IdentificadorContext id, boolean deref) {
+            Place p = variable(id.IDENT(0).getText(), id);
+            int parts = JanderSemanticoUtils.identPartCount(id);
+            DimensaoContext dims = id.dimensao();
+            boolean indexed = false;
+            if (parts > 1 && p.dims != null) {
+                p = index(p, dims);
+                indexed = true;
+            }
+            for (int i = 1; i < parts; i++) {
+                String fieldName = id.IDENT(i).getText();
+                if (p.type.kind != RECORD || p.dims != null) throw unsupported(id, "campo " + fieldName + " de " + id.getText());
+                Field f = p.type.record.fields.get(fieldName);
+                if (f == null) throw unsupported(id, "campo " + fieldName + " de " + id.getText());
+                p = new FieldPlace(f, p);
+            }
+            if (!indexed && !dims.exp_aritmetica().isEmpty()) p = index(p, dims);
+            if (deref) {
+                if (p.type.kind != POINTER) throw unsupported(id, "^ de " + id.getText());
+                p = new DerefPlace(p.type.target, p);
+            }
+            return p;
+        }
+
+        Place index(Place p, DimensaoContext d) {
+            List<Exp_aritmeticaContext> exps = d.exp_aritmetica();
+            if (p.dims == null || exps.size() != p.dims.length) throw unsupported(d, "indexacao de " + d.getParent().getText());
+            Expr[] indices = new Expr[exps.size()];
+            for (int k = 0; k < indices.length; k++) indices[k] = arithmetic(exps.get(k));
+            return new ElementPlace(p.type, p, indices, p.dims);
+        }
+    }
+
+    // Se o k-ésimo parâmetro da rotina é 'var', pela declaração (a rotina pode ainda não ter sido montada)
+    private final Map<String, List<Boolean>> byReference = new HashMap<>();
+
+    private boolean byReference(String routine, int k) {
+        List<Boolean> flags = byReference.get(routine);
+        return flags != null && k < flags.size() && flags.get(k);
+    }
+}
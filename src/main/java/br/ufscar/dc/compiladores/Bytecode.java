@@ -0,0 +1,357 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Programa LA compilado para a máquina virtual de registradores (BytecodeVM), gerado pelo BytecodeCompiler.
+ *
+ * Cada rotina tem três bancos de registradores, sem boxing: int[] (inteiro e logico, como 0/1), double[]
+ * (real) e Object[] (literal como String, registros, arranjos e ponteiros). Os parâmetros ocupam os primeiros
+ * registradores de cada banco, na ordem da assinatura; depois vêm as variáveis locais e os temporários.
+ * As variáveis globais ficam em três bancos à parte, acessados por GxLOAD/GxSTORE.
+ *
+ * O código de cada rotina é um int[]: o opcode seguido dos operandos (registradores, constantes inteiras,
+ * índices nas tabelas de constantes e desvios como posições absolutas). lines[pc] é a linha do fonte da
+ * instrução que começa em pc, para as mensagens de erro de execução.
+ */
+public final class Bytecode {
+    // Bancos de registradores (e classe de cada parâmetro e do resultado das funções)
+    public static final int INT = 0, REAL = 1, REF = 2;
+    public static final int NONE = -1; // procedimentos
+
+    // Tipos de elemento de arranjo (ArrayInit)
+    static final int ELEM_INT = 0, ELEM_REAL = 1, ELEM_LITERAL = 2, ELEM_RECORD = 3, ELEM_POINTER = 4;
+
+    // ---------------------------------------------------------------- opcodes
+    // d: registrador de destino; a, b, s: registradores lidos; k: constante; t: desvio; slot: global
+
+    static final int ICONST = 1;   // d k
+    static final int IMOV = 2;     // d s
+    static final int IADD = 3;     // d a b
+    static final int ISUB = 4;
+    static final int IMUL = 5;
+    static final int IDIV = 6;
+    static final int IMOD = 7;
+    static final int IADDK = 8;    // d a k
+    static final int INEG = 9;     // d a
+    static final int DCONST = 10;  // d k (índice em realConstants)
+    static final int DMOV = 11;
+    static final int DADD = 12;
+    static final int DSUB = 13;
+    static final int DMUL = 14;
+    static final int DDIV = 15;
+    static final int DNEG = 16;
+    static final int I2D = 17;     // d(real) s(int)
+    static final int D2I = 18;     // d(int) s(real), truncando
+    static final int RCONST = 19;  // d k (índice em constants)
+    static final int RMOV = 20;
+    static final int SCAT = 21;    // d a b: concatenação de literais
+    static final int ILT = 22;     // d a b: d = a < b ? 1 : 0
+    static final int ILE = 23;
+    static final int IGT = 24;
+    static final int IGE = 25;
+    static final int IEQ = 26;
+    static final int INE = 27;
+    static final int DLT = 28;
+    static final int DLE = 29;
+    static final int DGT = 30;
+    static final int DGE = 31;
+    static final int DEQ = 32;
+    static final int DNE = 33;
+    static final int SEQ = 34;
+    static final int SNE = 35;
+    static final int NOT = 36;     // d a
+    static final int JMP = 37;     // t
+    static final int JZ = 38;      // a t
+    static final int JNZ = 39;     // a t
+    static final int JILT = 40;    // a b t: desvia se a < b
+    static final int JILE = 41;
+    static final int JIGT = 42;
+    static final int JIGE = 43;
+    static final int JIEQ = 44;
+    static final int JINE = 45;
+    static final int SWITCH = 46;  // s lo hi default t(lo) .. t(hi)
+    static final int JRANGE = 47;  // s lo hi t: desvia se lo <= s <= hi
+    static final int GILOAD = 48;  // d slot
+    static final int GISTORE = 49; // slot s
+    static final int GDLOAD = 50;
+    static final int GDSTORE = 51;
+    static final int GRLOAD = 52;
+    static final int GRSTORE = 53;
+    static final int NEWARR = 54;  // d k (ArrayInit em constants)
+    static final int AILOAD = 55;  // d arr i
+    static final int AISTORE = 56; // arr i s
+    static final int ADLOAD = 57;
+    static final int ADSTORE = 58;
+    static final int ARLOAD = 59;
+    static final int ARSTORE = 60;
+    static final int CHECK = 61;   // i n: erro se i fora de 0 .. n-1
+    static final int NEWREC = 62;  // d k (Layout em constants)
+    static final int FILOAD = 63;  // d rec f
+    static final int FISTORE = 64; // rec f s
+    static final int FDLOAD = 65;
+    static final int FDSTORE = 66;
+    static final int FRLOAD = 67;
+    static final int FRSTORE = 68;
+    static final int COPY = 69;    // d s k: cópia profunda de um registro (Layout em constants)
+    static final int ADDRL = 70;   // d banco registrador: endereço de uma variável local
+    static final int ADDRG = 71;   // d banco slot: de uma global
+    static final int ADDRA = 72;   // d arr i: de um elemento de arranjo
+    static final int ADDRF = 73;   // d banco rec f: de um campo de registro
+    static final int PILOAD = 74;  // d p
+    static final int PISTORE = 75; // p s
+    static final int PDLOAD = 76;
+    static final int PDSTORE = 77;
+    static final int PRLOAD = 78;
+    static final int PRSTORE = 79;
+    static final int CALL = 80;    // rotina d n a1 .. an (d ignorado em procedimentos)
+    static final int RETI = 81;    // s
+    static final int RETD = 82;
+    static final int RETR = 83;
+    static final int RET = 84;
+    static final int READI = 85;   // d
+    static final int READD = 86;
+    static final int READS = 87;
+    static final int WRITEI = 88;  // s
+    static final int WRITED = 89;
+    static final int WRITES = 90;
+    static final int IMULK = 91;   // d a k
+    static final int IDIVK = 92;
+    static final int IMODK = 93;
+    static final int IMADK = 94;   // d a k b: d = a * k + b (índice de arranjo multidimensional)
+    static final int SLT = 95;     // d a b: ordem entre literais (compareTo)
+    static final int SLE = 96;
+    static final int SGT = 97;
+    static final int SGE = 98;
+
+    private static final String[] NAMES = new String[99];
+    private static final int[] OPERANDS = new int[99];
+
+    private static void def(int op, String name, int operands) {
+        NAMES[op] = name;
+        OPERANDS[op] = operands;
+    }
+
+    static {
+        def(ICONST, "ICONST", 2); def(IMOV, "IMOV", 2); def(IADD, "IADD", 3); def(ISUB, "ISUB", 3);
+        def(IMUL, "IMUL", 3); def(IDIV, "IDIV", 3); def(IMOD, "IMOD", 3); def(IADDK, "IADDK", 3);
+        def(INEG, "INEG", 2); def(DCONST, "DCONST", 2); def(DMOV, "DMOV", 2); def(DADD, "DADD", 3);
+        def(DSUB, "DSUB", 3); def(DMUL, "DMUL", 3); def(DDIV, "DDIV", 3); def(DNEG, "DNEG", 2);
+        def(I2D, "I2D", 2); def(D2I, "D2I", 2); def(RCONST, "RCONST", 2); def(RMOV, "RMOV", 2);
+        def(SCAT, "SCAT", 3); def(ILT, "ILT", 3); def(ILE, "ILE", 3); def(IGT, "IGT", 3);
+        def(IGE, "IGE", 3); def(IEQ, "IEQ", 3); def(INE, "INE", 3); def(DLT, "DLT", 3);
+        def(DLE, "DLE", 3); def(DGT, "DGT", 3); def(DGE, "DGE", 3); def(DEQ, "DEQ", 3);
+        def(DNE, "DNE", 3); def(SEQ, "SEQ", 3); def(SNE, "SNE", 3); def(NOT, "NOT", 2);
+        def(JMP, "JMP", 1); def(JZ, "JZ", 2); def(JNZ, "JNZ", 2); def(JILT, "JILT", 3);
+        def(JILE, "JILE", 3); def(JIGT, "JIGT", 3); def(JIGE, "JIGE", 3); def(JIEQ, "JIEQ", 3);
+        def(JINE, "JINE", 3); def(SWITCH, "SWITCH", 4); def(JRANGE, "JRANGE", 4);
+        def(GILOAD, "GILOAD", 2); def(GISTORE, "GISTORE", 2); def(GDLOAD, "GDLOAD", 2);
+        def(GDSTORE, "GDSTORE", 2); def(GRLOAD, "GRLOAD", 2); def(GRSTORE, "GRSTORE", 2);
+        def(NEWARR, "NEWARR", 2); def(AILOAD, "AILOAD", 3); def(AISTORE, "AISTORE", 3);
+        def(ADLOAD, "ADLOAD", 3); def(ADSTORE, "ADSTORE", 3); def(ARLOAD, "ARLOAD", 3);
+        def(ARSTORE, "ARSTORE", 3); def(CHECK, "CHECK", 2); def(NEWREC, "NEWREC", 2);
+        def(FILOAD, "FILOAD", 3); def(FISTORE, "FISTORE", 3); def(FDLOAD, "FDLOAD", 3);
+        def(FDSTORE, "FDSTORE", 3); def(FRLOAD, "FRLOAD", 3); def(FRSTORE, "FRSTORE", 3);
+        def(COPY, "COPY", 3); def(ADDRL, "ADDRL", 3); def(ADDRG, "ADDRG", 3); def(ADDRA, "ADDRA", 3);
+        def(ADDRF, "ADDRF", 4); def(PILOAD, "PILOAD", 2); def(PISTORE, "PISTORE", 2);
+        def(PDLOAD, "PDLOAD", 2); def(PDSTORE, "PDSTORE", 2); def(PRLOAD, "PRLOAD", 2);
+        def(PRSTORE, "PRSTORE", 2); def(CALL, "CALL", 3); def(RETI, "RETI", 1); def(RETD, "RETD", 1);
+        def(RETR, "RETR", 1); def(RET, "RET", 0); def(READI, "READI", 1); def(READD, "READD", 1);
+        def(READS, "READS", 1); def(WRITEI, "WRITEI", 1); def(WRITED, "WRITED", 1); def(WRITES, "WRITES", 1);
+        def(IMULK, "IMULK", 3); def(IDIVK, "IDIVK", 3); def(IMODK, "IMODK", 3);
+        def(IMADK, "IMADK", 4); def(SLT, "SLT", 3); def(SLE, "SLE", 3); def(SGT, "SGT", 3);
+        def(SGE, "SGE", 3);
+    }
+
+    /** Tamanho da instrução em pc, contando o opcode (SWITCH e CALL têm operandos variáveis) */
+    static int length(int[] code, int pc) {
+        int op = code[pc];
+        if (op == SWITCH) return 5 + code[pc + 3] - code[pc + 2] + 1;
+        if (op == CALL) return 4 + code[pc + 3];
+        return 1 + OPERANDS[op];
+    }
+
+    // Instruções cujo primeiro operando é o registrador escrito (e que não desviam)
+    static boolean writesFirstOperand(int op) {
+        return op >= ICONST && op <= NOT || op == GILOAD || op == GDLOAD || op == GRLOAD || op == NEWARR
+            || op == AILOAD || op == ADLOAD || op == ARLOAD || op == NEWREC || op == FILOAD || op == FDLOAD
+            || op == FRLOAD || op >= COPY && op <= ADDRF || op == PILOAD || op == PDLOAD || op == PRLOAD
+            || op >= READI && op <= READS || op >= IMULK && op <= IMADK;
+    }
+
+    // ---------------------------------------------------------------- programa
+
+    /** Uma rotina compilada; a rotina 0 é o corpo principal (que também cria as globais) */
+    static final class Routine {
+        final String name;
+        final int[] code;
+        final int[] lines;
+        final int ints, reals, refs;   // tamanho de cada banco de registradores
+        final byte[] params;           // banco de cada parâmetro ('var' e ponteiros em REF)
+        final int result;              // banco do resultado, ou NONE
+        // Estado inicial dos bancos real e de referência: os registradores de constantes já preenchidos
+        final double[] realFrame;
+        final Object[] refFrame;
+
+        Routine(String name, int[] code, int[] lines, int ints, int reals, int refs, byte[] params, int result,
+                double[] realFrame, Object[] refFrame) {
+            this.name = name;
+            this.code = code;
+            this.lines = lines;
+            this.ints = ints;
+            this.reals = reals;
+            this.refs = refs;
+            this.params = params;
+            this.result = result;
+            this.realFrame = realFrame;
+            this.refFrame = refFrame;
+        }
+    }
+
+    final Routine[] routines;
+    final Object[] constants;      // literais (String), Layouts e ArrayInits
+    final double[] realConstants;
+    final int globalInts, globalReals, globalRefs;
+
+    Bytecode(List<Routine> routines, List<Object> constants, double[] realConstants,
+             int globalInts, int globalReals, int globalRefs) {
+        this.routines = routines.toArray(new Routine[0]);
+        this.constants = constants.toArray();
+        this.realConstants = realConstants;
+        this.globalInts = globalInts;
+        this.globalReals = globalReals;
+        this.globalRefs = globalRefs;
+    }
+
+    /** Total de instruções (posições de código) de todas as rotinas */
+    public int size() {
+        int n = 0;
+        for (Routine r : routines) n += r.code.length;
+        return n;
+    }
+
+    /** Listagem legível do código, uma instrução por linha */
+    public String disassemble() {
+        StringBuilder sb = new StringBuilder();
+        for (Routine r : routines) {
+            sb.append(r.name).append(" (int ").append(r.ints).append(", real ").append(r.reals)
+              .append(", ref ").append(r.refs).append(")\n");
+            for (int i = 0; i < r.reals; i++) {
+                if (Double.doubleToRawLongBits(r.realFrame[i]) != 0) sb.append("        d").append(i).append(" = ").append(r.realFrame[i]).append('\n');
+            }
+            for (int i = 0; i < r.refs; i++) {
+                if (r.refFrame[i] != null) sb.append("        r").append(i).append(" = \"").append(r.refFrame[i]).append("\"\n");
+            }
+            for (int pc = 0; pc < r.code.length; pc += length(r.code, pc)) {
+                sb.append(String.format("%6d  %-8s", pc, NAMES[r.code[pc]]));
+                int n = length(r.code, pc);
+                for (int i = 1; i < n; i++) sb.append(' ').append(r.code[pc + i]);
+                sb.append("   ; linha ").append(r.lines[pc]).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    // ---------------------------------------------------------------- valores em tempo de execução
+
+    /** Valor de um registro: campos inteiros/lógicos, reais e de referência em bancos separados */
+    static final class Rec {
+        final int[] ints;
+        final double[] reals;
+        final Object[] refs;
+
+        Rec(int[] ints, double[] reals, Object[] refs) {
+            this.ints = ints;
+            this.reals = reals;
+            this.refs = refs;
+        }
+    }
+
+    /** Ponteiro (ou parâmetro 'var'): uma posição de um int[], double[] ou Object[] */
+    static final class Cell {
+        final Object base;
+        final int index;
+
+        Cell(Object base, int index) {
+            this.base = base;
+            this.index = index;
+        }
+    }
+
+    /** Formato de um tipo registro: tamanho dos bancos e o valor inicial de cada campo de referência */
+    static final class Layout {
+        final String name;
+        final int ints, reals;
+        final Object[] refInit; // "" (literal), Layout (registro), ArrayInit (arranjo) ou null (ponteiro)
+
+        Layout(String name, int ints, int reals, Object[] refInit) {
+            this.name = name;
+            this.ints = ints;
+            this.reals = reals;
+            this.refInit = refInit;
+        }
+
+        Rec create() {
+            Object[] refs = new Object[refInit.length];
+            for (int i = 0; i < refs.length; i++) refs[i] = initial(refInit[i]);
+            return new Rec(new int[ints], new double[reals], refs);
+        }
+
+        // Atribuição de registros copia os campos, inclusive registros e arranjos aninhados
+        Rec copy(Rec r) {
+            Object[] refs = new Object[refInit.length];
+            for (int i = 0; i < refs.length; i++) refs[i] = copyValue(refInit[i], r.refs[i]);
+            return new Rec(r.ints.clone(), r.reals.clone(), refs);
+        }
+    }
+
+    /** Arranjo (com as dimensões achatadas em length) a criar na declaração de uma variável ou campo */
+    static final class ArrayInit {
+        final int element;
+        final int length;
+        final Layout layout; // ELEM_RECORD
+
+        ArrayInit(int element, int length, Layout layout) {
+            this.element = element;
+            this.length = length;
+            this.layout = layout;
+        }
+
+        Object create() {
+            switch (element) {
+                case ELEM_INT: return new int[length];
+                case ELEM_REAL: return new double[length];
+                default:
+                    Object[] a = new Object[length];
+                    if (element == ELEM_LITERAL) Arrays.fill(a, "");
+                    else if (element == ELEM_RECORD) for (int i = 0; i < length; i++) a[i] = layout.create();
+                    return a;
+            }
+        }
+
+        Object copy(Object value) {
+            switch (element) {
+                case ELEM_INT: return ((int[]) value).clone();
+                case ELEM_REAL: return ((double[]) value).clone();
+                case ELEM_RECORD:
+                    Object[] a = ((Object[]) value).clone();
+                    for (int i = 0; i < a.length; i++) a[i] = layout.copy((Rec) a[i]);
+                    return a;
+                default: return ((Object[]) value).clone();
+            }
+        }
+    }
+
+    static Object initial(Object init) {
+        if (init instanceof Layout) return ((Layout) init).create();
+        if (init instanceof ArrayInit) return ((ArrayInit) init).create();
+        return init;
+    }
+
+    static Object copyValue(Object init, Object value) {
+        if (init instanceof Layout) return ((Layout) init).copy((Rec) value);
+        if (init instanceof ArrayInit) return ((ArrayInit) init).copy(value);
+        return value;
+    }
+}
@@ -0,0 +1,1348 @@
+package br.ufscar.dc.compiladores;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import br.ufscar.dc.compiladores.Bytecode.ArrayInit;
+import br.ufscar.dc.compiladores.Bytecode.Layout;
+import br.ufscar.dc.compiladores.Bytecode.Routine;
+import br.ufscar.dc.compiladores.JanderParser.*;
+
+import static br.ufscar.dc.compiladores.Bytecode.*;
+
+/**
+ * Compila a árvore de um programa LA já verificado (sem erros sintáticos nem semânticos) para Bytecode.
+ *
+ * - Variáveis simples moram em registradores do banco do seu tipo; arranjos (com as dimensões achatadas),
+ *   registros e literais são referências. Parâmetros 'var' recebem um Cell com o endereço do argumento.
+ * - Temporários são alocados em pilha acima das variáveis de cada banco e liberados logo depois da
+ *   instrução que os consome; o resultado de uma expressão atribuída a uma variável local é escrito
+ *   direto no registrador dela, sem IMOV.
+ * - Condições de 'se', 'enquanto', 'faca' e 'para' viram desvios (com curto-circuito para 'e'/'ou');
+ *   comparações entre inteiros usam os desvios fundidos JIxx. Laços testam a condição no fim.
+ * - 'caso' vira uma tabela de saltos (SWITCH) quando as constantes são densas, ou uma série de JRANGE.
+ * - Índices de arranjos multidimensionais são verificados (CHECK) antes de achatados, exceto os que a
+ *   ArrayBoundsAnalysis provou seguros; nos unidimensionais basta a verificação da própria JVM.
+ * - Constantes reais e literais escritas no corpo de uma rotina ocupam registradores fixos, já preenchidos
+ *   no estado inicial da rotina (Routine.realFrame/refFrame), em vez de um DCONST/RCONST a cada uso.
+ *
+ * Rotinas e tipos importados (importe) não podem ser executados: usá-los gera IllegalArgumentException.
+ */
+public final class BytecodeCompiler {
+    // ---------------------------------------------------------------- tipos e símbolos
+
+    private static final int INTEGER = 0, REAL_T = 1, LITERAL = 2, LOGICAL = 3, RECORD = 4, POINTER = 5;
+
+    private static final class Type {
+        final int kind;
+        final Type target;        // POINTER
+        final RecordType record;  // RECORD
+
+        Type(int kind, Type target, RecordType record) {
+            this.kind = kind;
+            this.target = target;
+            this.record = record;
+        }
+
+        int bank() {
+            return kind == INTEGER || kind == LOGICAL ? INT : kind == REAL_T ? REAL : REF;
+        }
+
+        boolean integral() {
+            return kind == INTEGER || kind == LOGICAL;
+        }
+    }
+
+    private static final Type INTEGER_TYPE = new Type(INTEGER, null, null);
+    private static final Type REAL_TYPE = new Type(REAL_T, null, null);
+    private static final Type LITERAL_TYPE = new Type(LITERAL, null, null);
+    private static final Type LOGICAL_TYPE = new Type(LOGICAL, null, null);
+
+    private static final class RecordType {
+        final Map<String, Field> fields = new LinkedHashMap<>();
+        Layout layout;
+        int constant; // índice do layout em constants
+    }
+
+    private static final class Field {
+        final Type type;
+        final int[] dims; // null se não for arranjo
+        final int bank, slot;
+
+        Field(Type type, int[] dims, int bank, int slot) {
+            this.type = type;
+            this.dims = dims;
+            this.bank = bank;
+            this.slot = slot;
+        }
+    }
+
+    private static final int LOCAL = 0, GLOBAL = 1, REFERENCE = 2, CONSTANT = 3;
+
+    private static final class Var {
+        final int storage;
+        final Type type;
+        final int[] dims;
+        final int slot;
+        final Object constant; // Integer (inteiro e logico), Double ou String
+
+        Var(int storage, Type type, int[] dims, int slot, Object constant) {
+            this.storage = storage;
+            this.type = type;
+            this.dims = dims;
+            this.slot = slot;
+            this.constant = constant;
+        }
+
+        int bank() {
+            return dims != null || storage == REFERENCE ? REF : type.bank();
+        }
+    }
+
+    private static final class Signature {
+        final int index;
+        final List<Type> params = new ArrayList<>();
+        final List<Boolean> byReference = new ArrayList<>();
+        final Type result; // null em procedimentos
+
+        Signature(int index, Type result) {
+            this.index = index;
+            this.result = result;
+        }
+    }
+
+    // ---------------------------------------------------------------- estado do programa
+
+    private final ArrayBoundsAnalysis bounds;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<String, Integer> stringConstants = new HashMap<>();
+    private final List<Double> realConstants = new ArrayList<>();
+    private final Map<Long, Integer> realConstantIndex = new HashMap<>();
+    private final Map<String, Var> globals = new HashMap<>();
+    private final Map<String, Type> globalTypes = new HashMap<>();
+    private final Map<String, Signature> signatures = new HashMap<>();
+    private final int[] globalCount = new int[3];
+    private final Map<Integer, Object> globalInits = new LinkedHashMap<>(); // slot de referência -> valor inicial
+
+    private BytecodeCompiler(ArrayBoundsAnalysis bounds) {
+        this.bounds = bounds;
+    }
+
+    /** Compila o programa, usando a análise de limites para omitir verificações de índices */
+    public static Bytecode compile(ProgramaContext tree) {
+        return compile(tree, ArrayBoundsAnalysis.analyze(tree));
+    }
+
+    /** Como compile(tree), com a análise de limites já feita (pelo passo "bounds" do PassManager) */
+    public static Bytecode compile(ProgramaContext tree, ArrayBoundsAnalysis bounds) {
+        return new BytecodeCompiler(bounds).program(tree);
+    }
+
+    private Bytecode program(ProgramaContext tree) {
+        List<Declaracao_globalContext> routines = new ArrayList<>();
+        for (Decl_local_globalContext d : tree.declaracoes().decl_local_global()) {
+            if (d.declaracao_local() != null) {
+                declare(d.declaracao_local(), null);
+            } else {
+                Declaracao_globalContext g = d.declaracao_global();
+                routines.add(g);
+                signatures.put(g.IDENT().getText(), signature(g, routines.size()));
+            }
+        }
+
+        List<Routine> compiled = new ArrayList<>();
+        RoutineCompiler main = new RoutineCompiler("algoritmo", null);
+        main.line = tree.getStart().getLine();
+        compiled.add(main.body(tree.corpo().declaracao_local(), tree.corpo().cmd()));
+        for (Declaracao_globalContext g : routines) {
+            RoutineCompiler rc = new RoutineCompiler(g.IDENT().getText(), signatures.get(g.IDENT().getText()));
+            rc.line = g.getStart().getLine();
+            rc.parameters(g.parametros());
+            compiled.add(rc.body(g.declaracao_local(), g.cmd()));
+        }
+
+        double[] reals = new double[realConstants.size()];
+        for (int i = 0; i < reals.length; i++) reals[i] = realConstants.get(i);
+        return new Bytecode(compiled, constants, reals, globalCount[INT], globalCount[REAL], globalCount[REF]);
+    }
+
+    private Signature signature(Declaracao_globalContext g, int index) {
+        Type result = g.tipo_estendido() != null ? extended(g.tipo_estendido(), globalTypes) : null;
+        Signature s = new Signature(index, result);
+        if (g.parametros() != null) {
+            for (ParametroContext p : g.parametros().parametro()) {
+                Type t = extended(p.tipo_estendido(), globalTypes);
+                for (int i = 0; i < p.identificador().size(); i++) {
+                    s.params.add(t);
+                    s.byReference.add(p.VAR() != null);
+                }
+            }
+        }
+        return s;
+    }
+
+    // ---------------------------------------------------------------- declarações e tipos
+
+    // Declara no escopo global (rc == null) ou no da rotina sendo compilada
+    private void declare(Declaracao_localContext d, RoutineCompiler rc) {
+        Map<String, Type> types = rc == null ? globalTypes : rc.types;
+        Map<String, Var> scope = rc == null ? globals : rc.locals;
+        int kind = d.getStart().getType();
+        if (kind == JanderParser.TIPO) {
+            types.put(d.IDENT().getText(), type(d.tipo(), types));
+        } else if (kind == JanderParser.CONSTANTE) {
+            Type t = basic(d.tipo_basico());
+            scope.put(d.IDENT().getText(), new Var(CONSTANT, t, null, -1, constantValue(d.valor_constante(), t)));
+        } else {
+            VariavelContext v = d.variavel();
+            Type t = type(v.tipo(), types);
+            for (IdentificadorContext id : v.identificador()) {
+                int[] dims = dimensions(id.dimensao(), rc);
+                Object init = dims != null ? arrayInit(t, dims) : initial(t);
+                int bank = dims != null ? REF : t.bank();
+                if (rc == null) {
+                    int slot = globalCount[bank]++;
+                    globals.put(id.IDENT(0).getText(), new Var(GLOBAL, t, dims, slot, null));
+                    if (init != null) globalInits.put(slot, init);
+                } else {
+                    int slot = rc.local(bank);
+                    rc.locals.put(id.IDENT(0).getText(), new Var(LOCAL, t, dims, slot, null));
+                    if (init != null) rc.initLocal(slot, init);
+                }
+            }
+        }
+    }
+
+    private Type type(TipoContext t, Map<String, Type> types) {
+        return t.registro() != null ? record(t.registro(), types) : extended(t.tipo_estendido(), types);
+    }
+
+    private Type extended(Tipo_estendidoContext t, Map<String, Type> types) {
+        Tipo_basico_identContext b = t.tipo_basico_ident();
+        Type base;
+        if (b.tipo_basico() != null) {
+            base = basic(b.tipo_basico());
+        } else {
+            String name = b.IDENT().getText();
+            base = types.get(name);
+            if (base == null) base = globalTypes.get(name);
+            if (base == null) throw unsupported(t, "tipo " + name + " nao declarado");
+        }
+        return t.CIRCUNFLEXO() != null ? new Type(POINTER, base, null) : base;
+    }
+
+    private static Type basic(Tipo_basicoContext t) {
+        switch (t.getText()) {
+            case "inteiro": return INTEGER_TYPE;
+            case "real": return REAL_TYPE;
+            case "literal": return LITERAL_TYPE;
+            default: return LOGICAL_TYPE;
+        }
+    }
+
+    private Type record(RegistroContext r, Map<String, Type> types) {
+        RecordType record = new RecordType();
+        int[] count = new int[3];
+        List<Object> refInit = new ArrayList<>();
+        for (VariavelContext v : r.variavel()) {
+            Type t = type(v.tipo(), types);
+            for (IdentificadorContext id : v.identificador()) {
+                int[] dims = dimensions(id.dimensao(), null);
+                int bank = dims != null ? REF : t.bank();
+                record.fields.put(id.IDENT(0).getText(), new Field(t, dims, bank, count[bank]++));
+                if (bank == REF) refInit.add(dims != null ? arrayInit(t, dims) : initial(t));
+            }
+        }
+        record.layout = new Layout("registro", count[INT], count[REAL], refInit.toArray());
+        record.constant = constant(record.layout);
+        return new Type(RECORD, null, record);
+    }
+
+    // Valor inicial de uma variável de referência ("" para literais, um registro novo), ou null
+    private static Object initial(Type t) {
+        if (t.kind == LITERAL) return "";
+        if (t.kind == RECORD) return t.record.layout;
+        return null;
+    }
+
+    private ArrayInit arrayInit(Type element, int[] dims) {
+        long length = 1;
+        for (int d : dims) length *= d;
+        int kind;
+        switch (element.kind) {
+            case INTEGER: case LOGICAL: kind = ELEM_INT; break;
+            case REAL_T: kind = ELEM_REAL; break;
+            case LITERAL: kind = ELEM_LITERAL; break;
+            case RECORD: kind = ELEM_RECORD; break;
+            default: kind = ELEM_POINTER;
+        }
+        return new ArrayInit(kind, (int) Math.min(length, Integer.MAX_VALUE), element.record != null ? element.record.layout : null);
+    }
+
+    // Dimensões constantes de uma declaração (v[10][N]); null se não for arranjo
+    private int[] dimensions(DimensaoContext d, RoutineCompiler rc) {
+        List<Exp_aritmeticaContext> exps = d.exp_aritmetica();
+        if (exps.isEmpty()) return null;
+        int[] dims = new int[exps.size()];
+        for (int i = 0; i < dims.length; i++) {
+            dims[i] = constantInt(exps.get(i), rc);
+            if (dims[i] < 0) throw unsupported(exps.get(i), "dimensao negativa");
+        }
+        return dims;
+    }
+
+    private int constantInt(Exp_aritmeticaContext e, RoutineCompiler rc) {
+        if (JanderSemanticoUtils.isChain(e)) {
+            List<Exp_aritmeticaContext> chain = JanderSemanticoUtils.chain(e);
+            int v = constantInt((Exp_aritmeticaContext) chain.get(0).getChild(0), rc);
+            for (Exp_aritmeticaContext node : chain) {
+                int right = constantInt((Exp_aritmeticaContext) node.getChild(2), rc);
+                Integer folded = fold(v, right, node.getChild(1).getText());
+                if (folded == null) throw unsupported(e, "divisao por zero na dimensao");
+                v = folded;
+            }
+            return v;
+        }
+        Integer value = null;
+        boolean negative = false;
+        if (e instanceof ExpInteiroContext) {
+            value = parseInt(((ExpInteiroContext) e).NUM_INT().getText());
+            negative = ((ExpInteiroContext) e).op_unario() != null;
+        } else if (e instanceof ExpIdentificadorContext) {
+            ExpIdentificadorContext id = (ExpIdentificadorContext) e;
+            Var v = rc != null ? rc.lookup(id.identificador().IDENT(0).getText()) : globals.get(id.identificador().IDENT(0).getText());
+            if (v != null && v.storage == CONSTANT && v.constant instanceof Integer) value = (Integer) v.constant;
+            negative = id.op_unario() != null;
+        } else if (e instanceof ExpParentesesContext) {
+            ExpParentesesContext p = (ExpParentesesContext) e;
+            ExpressaoContext inner = p.expressao();
+            if (inner instanceof ExpRelacionalContext && ((ExpRelacionalContext) inner).op == null
+                && ((ExpRelacionalContext) inner).nao == null) {
+                value = constantInt(((ExpRelacionalContext) inner).exp_aritmetica(0), rc);
+            }
+            negative = p.op_unario() != null;
+        }
+        if (value == null) throw unsupported(e, "dimensao de arranjo nao constante: " + e.getText());
+        return negative ? -value : value;
+    }
+
+    private static Integer fold(int a, int b, String op) {
+        switch (op) {
+            case "+": return a + b;
+            case "-": return a - b;
+            case "*": return a * b;
+            case "/": return b == 0 ? null : a / b;
+            default: return b == 0 ? null : a % b;
+        }
+    }
+
+    // Inteiros do fonte maiores que int dão a volta, como na conversão do C
+    private static int parseInt(String digits) {
+        return new BigInteger(digits).intValue();
+    }
+
+    private static Object constantValue(Valor_constanteContext v, Type t) {
+        if (v.CADEIA() != null) return string(v.CADEIA().getText());
+        if (v.NUM_INT() != null) {
+            int i = parseInt(v.NUM_INT().getText());
+            return t.kind == REAL_T ? (Object) (double) i : (Object) i;
+        }
+        if (v.NUM_REAL() != null) {
+            double d = Double.parseDouble(v.NUM_REAL().getText());
+            return t.kind == REAL_T ? (Object) d : (Object) (int) d;
+        }
+        return v.getText().equals("verdadeiro") ? 1 : 0;
+    }
+
+    private static String string(String token) {
+        return token.substring(1, token.length() - 1).replace("\\'", "'");
+    }
+
+    private int constant(Object value) {
+        if (value instanceof String) {
+            return stringConstants.computeIfAbsent((String) value, s -> {
+                constants.add(s);
+                return constants.size() - 1;
+            });
+        }
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private int realConstant(double value) {
+        return realConstantIndex.computeIfAbsent(Double.doubleToRawLongBits(value), bits -> {
+            realConstants.add(value);
+            return realConstants.size() - 1;
+        });
+    }
+
+    private static IllegalArgumentException unsupported(ParserRuleContext where, String message) {
+        return new IllegalArgumentException("Linha " + where.getStart().getLine() + ": nao e possivel executar: " + message);
+    }
+
+    // ---------------------------------------------------------------- rotinas
+
+    // Desvio ainda sem destino: as posições a corrigir quando o rótulo for fixado
+    private static final class Label {
+        int pos = -1;
+        final List<Integer> refs = new ArrayList<>();
+    }
+
+    // Resultado de uma expressão: um registrador do banco do tipo, ou uma constante inteira ainda não carregada
+    private static final class Value {
+        final Type type;
+        final int reg;
+        final boolean constant;
+        final int value;
+
+        Value(Type type, int reg) {
+            this.type = type;
+            this.reg = reg;
+            this.constant = false;
+            this.value = 0;
+        }
+
+        Value(Type type, int value, boolean constant) {
+            this.type = type;
+            this.reg = -1;
+            this.constant = constant;
+            this.value = value;
+        }
+    }
+
+    private static final int REGISTER = 0, GLOBAL_SLOT = 1, ELEMENT = 2, FIELD = 3, CELL = 4;
+
+    // Onde mora um valor: registrador local, global, elemento de arranjo, campo de registro ou através de um Cell
+    private static final class Place {
+        final int kind;
+        final Type type;
+        final int[] dims; // arranjo ainda não indexado
+        final int bank;
+        final int a, b;   // registrador/slot; arranjo e índice; registro e campo; Cell
+
+        Place(int kind, Type type, int[] dims, int bank, int a, int b) {
+            this.kind = kind;
+            this.type = type;
+            this.dims = dims;
+            this.bank = bank;
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    // Limite de registradores fixos de constantes por banco em cada rotina; as demais usam DCONST/RCONST
+    private static final int MAX_CONSTANT_REGS = 256;
+
+    private final class RoutineCompiler {
+        final String name;
+        final Signature signature;
+        final Map<String, Var> locals = new HashMap<>();
+        final Map<String, Type> types = new HashMap<>();
+        final List<Byte> params = new ArrayList<>();
+
+        int[] code = new int[64];
+        int[] lines = new int[64];
+        int size;
+        int line;
+
+        final int[] next = new int[3];
+        final int[] max = new int[3];
+        int[] base = new int[3]; // primeiro temporário de cada banco
+
+        // Registradores fixos das constantes reais (pelos bits) e literais do corpo
+        final Map<Long, Integer> realRegs = new HashMap<>();
+        final Map<String, Integer> stringRegs = new HashMap<>();
+
+        // Operando de destino da última instrução e seu banco, se nenhum desvio chega depois dela (-1 senão)
+        int lastDest = -1;
+        int lastBank;
+
+        RoutineCompiler(String name, Signature signature) {
+            this.name = name;
+            this.signature = signature;
+        }
+
+        Var lookup(String name) {
+            Var v = locals.get(name);
+            return v != null ? v : globals.get(name);
+        }
+
+        int local(int bank) {
+            int slot = next[bank]++;
+            if (next[bank] > max[bank]) max[bank] = next[bank];
+            return slot;
+        }
+
+        void parameters(ParametrosContext ps) {
+            if (ps == null) return;
+            for (ParametroContext p : ps.parametro()) {
+                Type t = extended(p.tipo_estendido(), types);
+                boolean byReference = p.VAR() != null;
+                for (IdentificadorContext id : p.identificador()) {
+                    int bank = byReference ? REF : t.bank();
+                    locals.put(id.IDENT(0).getText(), new Var(byReference ? REFERENCE : LOCAL, t, null, local(bank), null));
+                    params.add((byte) bank);
+                }
+            }
+        }
+
+        Routine body(List<Declaracao_localContext> declarations, List<CmdContext> cmds) {
+            for (Declaracao_localContext d : declarations) {
+                line = d.getStart().getLine();
+                declare(d, this);
+            }
+            reserveConstants(cmds);
+            base = next.clone();
+            // Os globais são iniciados pelo algoritmo, já com as constantes nos seus registradores fixos
+            if (signature == null) globalInits.forEach(this::initGlobal);
+            commands(cmds);
+            resetTemps();
+            if (signature == null || signature.result == null) {
+                emit(RET);
+            } else {
+                // Função que chega ao fim sem 'retorne': devolve zero, "" ou um registro vazio
+                Type t = signature.result;
+                int r = temp(t.bank());
+                if (t.bank() == INT) emit(ICONST, r, 0);
+                else if (t.bank() == REAL) emit(DCONST, r, realConstant(0));
+                else if (initial(t) != null) initRegister(r, initial(t));
+                emit(RETI + t.bank(), r);
+            }
+            byte[] p = new byte[params.size()];
+            for (int i = 0; i < p.length; i++) p[i] = params.get(i);
+            double[] realFrame = new double[max[REAL]];
+            realRegs.forEach((bits, r) -> realFrame[r] = Double.longBitsToDouble(bits));
+            Object[] refFrame = new Object[max[REF]];
+            stringRegs.forEach((text, r) -> refFrame[r] = text);
+            return new Routine(name, Arrays.copyOf(code, size), Arrays.copyOf(lines, size), max[INT], max[REAL], max[REF], p,
+                signature == null || signature.result == null ? NONE : signature.result.bank(), realFrame, refFrame);
+        }
+
+        // Um registrador fixo para cada constante real ou literal do corpo (até MAX_CONSTANT_REGS por banco)
+        void reserveConstants(List<CmdContext> cmds) {
+            ArrayDeque<ParseTree> pending = new ArrayDeque<>(cmds);
+            while (!pending.isEmpty()) {
+                ParseTree t = pending.pop();
+                Object c = null;
+                if (t instanceof ExpRealContext) {
+                    ExpRealContext n = (ExpRealContext) t;
+                    double v = Double.parseDouble(n.NUM_REAL().getText());
+                    c = n.op_unario() != null ? -v : v;
+                } else if (t instanceof ExpCadeiaContext) {
+                    c = string(((ExpCadeiaContext) t).CADEIA().getText());
+                } else if (t instanceof ExpIdentificadorContext) {
+                    Var v = lookup(((ExpIdentificadorContext) t).identificador().IDENT(0).getText());
+                    if (v != null && v.storage == CONSTANT) c = v.constant;
+                }
+                if (c instanceof Double && realRegs.size() < MAX_CONSTANT_REGS) {
+                    realRegs.computeIfAbsent(Double.doubleToRawLongBits((Double) c), bits -> local(REAL));
+                } else if (c instanceof String && stringRegs.size() < MAX_CONSTANT_REGS) {
+                    stringRegs.computeIfAbsent((String) c, text -> local(REF));
+                }
+                for (int i = t.getChildCount() - 1; i >= 0; i--) pending.push(t.getChild(i));
+            }
+        }
+
+        // Registrador com a constante: o fixo da rotina ou, se não houver, um temporário carregado agora
+        int realConstantReg(double value) {
+            Integer r = realRegs.get(Double.doubleToRawLongBits(value));
+            if (r != null) return r;
+            int d = temp(REAL);
+            def(REAL, DCONST, d, realConstant(value));
+            return d;
+        }
+
+        int stringConstantReg(String text) {
+            Integer r = stringRegs.get(text);
+            if (r != null) return r;
+            int d = temp(REF);
+            def(REF, RCONST, d, constant(text));
+            return d;
+        }
+
+        void initLocal(int slot, Object init) {
+            initRegister(slot, init);
+        }
+
+        void initGlobal(int slot, Object init) {
+            int t = temp(REF);
+            initRegister(t, init);
+            emit(GRSTORE, slot, t);
+            resetTemps();
+        }
+
+        void initRegister(int r, Object init) {
+            if (init instanceof String) def(REF, RCONST, r, constant(init));
+            else if (init instanceof Layout) def(REF, NEWREC, r, constant(init));
+            else def(REF, NEWARR, r, constant(init));
+        }
+
+        // ------------------------------------------------------------ emissão
+
+        void emit(int... instr) {
+            if (size + instr.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, size + instr.length));
+                lines = Arrays.copyOf(lines, code.length);
+            }
+            lines[size] = line;
+            System.arraycopy(instr, 0, code, size, instr.length);
+            size += instr.length;
+            lastDest = -1;
+        }
+
+        // Instrução que escreve o registrador do primeiro operando, no banco dado
+        void def(int bank, int... instr) {
+            int at = size;
+            emit(instr);
+            lastDest = at + 1;
+            lastBank = bank;
+        }
+
+        void jump(Label target, int... instr) {
+            emit(instr);
+            refer(target, size - 1);
+        }
+
+        void refer(Label target, int operand) {
+            if (target.pos >= 0) code[operand] = target.pos;
+            else target.refs.add(operand);
+        }
+
+        void bind(Label l) {
+            l.pos = size;
+            for (int r : l.refs) code[r] = size;
+            lastDest = -1;
+        }
+
+        int temp(int bank) {
+            return local(bank);
+        }
+
+        int[] mark() {
+            return next.clone();
+        }
+
+        void release(int[] mark) {
+            System.arraycopy(mark, 0, next, 0, 3);
+        }
+
+        void resetTemps() {
+            release(base);
+        }
+
+        boolean isTemp(int bank, int r) {
+            return r >= base[bank];
+        }
+
+        // ------------------------------------------------------------ comandos
+
+        void commands(List<CmdContext> cmds) {
+            for (CmdContext c : cmds) command(c);
+        }
+
+        void command(CmdContext c) {
+            line = c.getStart().getLine();
+            resetTemps();
+            if (c.cmdAtribuicao() != null) assignment(c.cmdAtribuicao());
+            else if (c.cmdEscreva() != null) write(c.cmdEscreva());
+            else if (c.cmdLeia() != null) read(c.cmdLeia());
+            else if (c.cmdSe() != null) conditional(c.cmdSe());
+            else if (c.cmdEnquanto() != null) whileLoop(c.cmdEnquanto());
+            else if (c.cmdPara() != null) forLoop(c.cmdPara());
+            else if (c.cmdFaca() != null) doLoop(c.cmdFaca());
+            else if (c.cmdCaso() != null) caseOf(c.cmdCaso());
+            else if (c.cmdChamada() != null) call(c.cmdChamada().IDENT(), c.cmdChamada().expressao(), c);
+            else if (c.cmdRetorne() != null) ret(c.cmdRetorne());
+        }
+
+        void assignment(CmdAtribuicaoContext a) {
+            Value v = value(a.expressao());
+            Place p = place(a.identificador(), a.CIRCUNFLEXO() != null);
+            store(p, convert(v, p.type));
+        }
+
+        void write(CmdEscrevaContext w) {
+            for (ExpressaoContext e : w.expressao()) {
+                int[] mark = mark();
+                Value v = value(e);
+                switch (v.type.kind) {
+                    case INTEGER: case LOGICAL: emit(WRITEI, reg(v)); break;
+                    case REAL_T: emit(WRITED, v.reg); break;
+                    case LITERAL: emit(WRITES, v.reg); break;
+                    default: throw unsupported(e, "escreva de " + e.getText());
+                }
+                release(mark);
+            }
+        }
+
+        void read(CmdLeiaContext l) {
+            boolean deref = false;
+            for (ParseTree child : l.children) {
+                if (JanderSemanticoUtils.isToken(child, JanderParser.CIRCUNFLEXO)) {
+                    deref = true;
+                } else if (child instanceof IdentificadorContext) {
+                    int[] mark = mark();
+                    Place p = place((IdentificadorContext) child, deref);
+                    int t = temp(p.type.bank());
+                    switch (p.type.kind) {
+                        case INTEGER: case LOGICAL: def(INT, READI, t); break;
+                        case REAL_T: def(REAL, READD, t); break;
+                        case LITERAL: def(REF, READS, t); break;
+                        default: throw unsupported(l, "leia de " + child.getText());
+                    }
+                    store(p, t);
+                    release(mark);
+                    deref = false;
+                }
+            }
+        }
+
+        void conditional(CmdSeContext s) {
+            Label otherwise = new Label();
+            branch(s.expressao(), false, otherwise);
+            List<CmdContext> then = new ArrayList<>(), alternative = new ArrayList<>();
+            boolean inElse = false;
+            for (ParseTree child : s.children) {
+                if (JanderSemanticoUtils.isToken(child, JanderParser.SENAO)) inElse = true;
+                else if (child instanceof CmdContext) (inElse ? alternative : then).add((CmdContext) child);
+            }
+            commands(then);
+            if (s.SENAO() != null) {
+                Label end = new Label();
+                jump(end, JMP, 0);
+                bind(otherwise);
+                commands(alternative);
+                bind(end);
+            } else {
+                bind(otherwise);
+            }
+        }
+
+        void whileLoop(CmdEnquantoContext w) {
+            Label body = new Label(), test = new Label();
+            jump(test, JMP, 0);
+            bind(body);
+            commands(w.cmd());
+            bind(test);
+            line = w.getStart().getLine();
+            resetTemps();
+            branch(w.expressao(), true, body);
+        }
+
+        void doLoop(CmdFacaContext f) {
+            Label body = new Label();
+            bind(body);
+            commands(f.cmd());
+            line = f.expressao().getStart().getLine();
+            resetTemps();
+            branch(f.expressao(), false, body);
+        }
+
+        // para i <- a ate b: como for (i = a; i <= b; i++), com b reavaliado a cada volta
+        void forLoop(CmdParaContext p) {
+            Place i = variable(p.IDENT().getText(), p);
+            store(i, convert(arithmetic(p.exp_aritmetica(0)), i.type));
+            // Limite constante: carregado uma vez, num registrador reservado durante o laço
+            int constantLimit = -1;
+            if (isConstant(p.exp_aritmetica(1))) {
+                resetTemps();
+                constantLimit = reg(arithmetic(p.exp_aritmetica(1)));
+                base[INT]++;
+            }
+            Label body = new Label(), test = new Label();
+            jump(test, JMP, 0);
+            bind(body);
+            commands(p.cmd());
+            line = p.getStart().getLine();
+            resetTemps();
+            if (i.kind == REGISTER) {
+                def(INT, IADDK, i.a, i.a, 1);
+            } else {
+                int t = temp(INT);
+                def(INT, IADDK, t, load(i), 1);
+                store(i, t);
+            }
+            bind(test);
+            resetTemps();
+            int limit = constantLimit >= 0 ? constantLimit : reg(arithmetic(p.exp_aritmetica(1)));
+            jump(body, JILE, load(i), limit, 0);
+            if (constantLimit >= 0) base[INT]--;
+        }
+
+        // Inteiro literal ou constante inteira
+        boolean isConstant(Exp_aritmeticaContext e) {
+            if (e instanceof ExpInteiroContext) return true;
+            if (!(e instanceof ExpIdentificadorContext) || ((ExpIdentificadorContext) e).CIRCUNFLEXO() != null) return false;
+            IdentificadorContext id = ((ExpIdentificadorContext) e).identificador();
+            if (JanderSemanticoUtils.identPartCount(id) > 1 || !id.dimensao().exp_aritmetica().isEmpty()) return false;
+            Var v = lookup(id.IDENT(0).getText());
+            return v != null && v.storage == CONSTANT && v.constant instanceof Integer;
+        }
+
+        void caseOf(CmdCasoContext c) {
+            int s = reg(arithmetic(c.exp_aritmetica()));
+            List<Item_selecaoContext> items = c.selecao().item_selecao();
+            List<long[]> ranges = new ArrayList<>(); // {lo, hi, item}
+            long min = Long.MAX_VALUE, max = Long.MIN_VALUE, covered = 0;
+            for (int k = 0; k < items.size(); k++) {
+                for (Numero_intervaloContext n : items.get(k).constantes().numero_intervalo()) {
+                    long[] r = interval(n, k);
+                    if (r[0] > r[1]) continue;
+                    ranges.add(r);
+                    min = Math.min(min, r[0]);
+                    max = Math.max(max, r[1]);
+                    covered += r[1] - r[0] + 1;
+                }
+            }
+
+            Label otherwise = new Label(), end = new Label();
+            Label[] targets = new Label[items.size()];
+            for (int k = 0; k < targets.length; k++) targets[k] = new Label();
+            long span = max - min + 1;
+            if (!ranges.isEmpty() && span <= 4096 && span <= 4 * covered + 16) {
+                // Tabela de saltos; valores em mais de um item ficam com o primeiro
+                int n = (int) span;
+                int[] instr = new int[5 + n];
+                instr[0] = SWITCH;
+                instr[1] = s;
+                instr[2] = (int) min;
+                instr[3] = (int) max;
+                emit(instr);
+                int table = size - n;
+                refer(otherwise, table - 1);
+                boolean[] done = new boolean[n];
+                for (long[] r : ranges) {
+                    for (long v = r[0]; v <= r[1]; v++) {
+                        int at = (int) (v - min);
+                        if (done[at]) continue;
+                        done[at] = true;
+                        refer(targets[(int) r[2]], table + at);
+                    }
+                }
+                for (int at = 0; at < n; at++) if (!done[at]) refer(otherwise, table + at);
+            } else {
+                for (long[] r : ranges) jump(targets[(int) r[2]], JRANGE, s, (int) r[0], (int) r[1], 0);
+                jump(otherwise, JMP, 0);
+            }
+            for (int k = 0; k < items.size(); k++) {
+                bind(targets[k]);
+                commands(items.get(k).cmd());
+                jump(end, JMP, 0);
+            }
+            bind(otherwise);
+            commands(c.cmd());
+            bind(end);
+        }
+
+        // lo .. hi de um numero_intervalo, limitados ao intervalo de int
+        long[] interval(Numero_intervaloContext n, int item) {
+            List<Long> values = new ArrayList<>();
+            boolean negative = false;
+            for (ParseTree child : n.children) {
+                if (child instanceof Op_unarioContext) negative = true;
+                else if (JanderSemanticoUtils.isToken(child, JanderParser.NUM_INT)) {
+                    BigInteger v = new BigInteger(child.getText());
+                    if (negative) v = v.negate();
+                    values.add(Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, v.max(BigInteger.valueOf(Long.MIN_VALUE))
+                        .min(BigInteger.valueOf(Long.MAX_VALUE)).longValue())));
+                    negative = false;
+                }
+            }
+            long lo = values.get(0), hi = values.size() > 1 ? values.get(1) : lo;
+            return new long[] {lo, hi, item};
+        }
+
+        void ret(CmdRetorneContext r) {
+            if (signature == null || signature.result == null) {
+                emit(RET);
+                return;
+            }
+            Type t = signature.result;
+            emit(RETI + t.bank(), convert(value(r.expressao()), t));
+        }
+
+        // ------------------------------------------------------------ condições
+
+        // Desvia para target se e avaliar para 'when'; senão segue em frente
+        void branch(ExpressaoContext e, boolean when, Label target) {
+            if (e instanceof ExpOuContext || e instanceof ExpEContext) {
+                boolean or = e instanceof ExpOuContext;
+                List<ExpressaoContext> operands = operands(e);
+                if (or == when) {
+                    // 'ou' desviando se verdadeiro, 'e' desviando se falso: qualquer operando decide
+                    for (ExpressaoContext o : operands) branch(o, when, target);
+                } else {
+                    Label skip = new Label();
+                    for (int i = 0; i < operands.size() - 1; i++) branch(operands.get(i), !when, skip);
+                    branch(operands.get(operands.size() - 1), when, target);
+                    bind(skip);
+                }
+                return;
+            }
+            if (e instanceof ExpLogicaContext) {
+                boolean v = JanderSemanticoUtils.isToken(e.getChild(e.getChildCount() - 1), JanderParser.VERDADEIRO);
+                if (e.getChildCount() > 1) v = !v;
+                if (v == when) jump(target, JMP, 0);
+                return;
+            }
+            ExpRelacionalContext rel = (ExpRelacionalContext) e;
+            boolean w = rel.nao != null ? !when : when;
+            int[] mark = mark();
+            if (rel.op == null) {
+                Exp_aritmeticaContext a = rel.exp_aritmetica(0);
+                if (a instanceof ExpParentesesContext && ((ExpParentesesContext) a).op_unario() == null) {
+                    branch(((ExpParentesesContext) a).expressao(), w, target);
+                    return;
+                }
+                Value v = arithmetic(a);
+                if (v.constant) {
+                    if ((v.value != 0) == w) jump(target, JMP, 0);
+                    return;
+                }
+                jump(target, w ? JNZ : JZ, v.reg, 0);
+                release(mark);
+                return;
+            }
+            Value left = arithmetic(rel.exp_aritmetica(0));
+            Value right = arithmetic(rel.exp_aritmetica(1));
+            String op = w ? rel.op.getText() : negate(rel.op.getText());
+            if (left.type.integral() && right.type.integral()) {
+                int a = reg(left), b = reg(right);
+                release(mark);
+                jump(target, fusedJump(op), a, b, 0);
+            } else {
+                // Entre reais o operador não pode ser trocado pelo oposto: com NaN, a < b e a >= b são ambos falsos
+                int r = compare(left, right, rel.op.getText(), rel);
+                release(mark);
+                jump(target, w ? JNZ : JZ, r, 0);
+            }
+        }
+
+        List<ExpressaoContext> operands(ExpressaoContext e) {
+            List<ExpressaoContext> chain = JanderSemanticoUtils.chain(e);
+            List<ExpressaoContext> operands = new ArrayList<>();
+            operands.add((ExpressaoContext) chain.get(0).getChild(0));
+            for (ExpressaoContext node : chain) operands.add((ExpressaoContext) node.getChild(2));
+            return operands;
+        }
+
+        // Valor lógico (0/1) de uma expressão
+        Value value(ExpressaoContext e) {
+            if (e instanceof ExpLogicaContext) {
+                boolean v = JanderSemanticoUtils.isToken(e.getChild(e.getChildCount() - 1), JanderParser.VERDADEIRO);
+                if (e.getChildCount() > 1) v = !v;
+                return new Value(LOGICAL_TYPE, v ? 1 : 0, true);
+            }
+            if (e instanceof ExpRelacionalContext) {
+                ExpRelacionalContext rel = (ExpRelacionalContext) e;
+                int[] mark = mark();
+                if (rel.op == null) {
+                    Value v = arithmetic(rel.exp_aritmetica(0));
+                    if (rel.nao == null) return v;
+                    if (v.constant) return new Value(LOGICAL_TYPE, v.value == 0 ? 1 : 0, true);
+                    release(mark);
+                    int d = temp(INT);
+                    def(INT, NOT, d, v.reg);
+                    return new Value(LOGICAL_TYPE, d);
+                }
+                Value left = arithmetic(rel.exp_aritmetica(0));
+                Value right = arithmetic(rel.exp_aritmetica(1));
+                String op = rel.nao == null ? rel.op.getText() : negate(rel.op.getText());
+                if (left.type.integral() && right.type.integral()) {
+                    int a = reg(left), b = reg(right);
+                    release(mark);
+                    int d = temp(INT);
+                    def(INT, ILT + relational(op), d, a, b);
+                    return new Value(LOGICAL_TYPE, d);
+                }
+                int r = compare(left, right, rel.op.getText(), rel);
+                if (rel.nao == null) return new Value(LOGICAL_TYPE, r);
+                def(INT, NOT, r, r);
+                return new Value(LOGICAL_TYPE, r);
+            }
+            // 'e' / 'ou': curto-circuito
+            Label no = new Label(), end = new Label();
+            branch(e, false, no);
+            int d = temp(INT);
+            emit(ICONST, d, 1);
+            jump(end, JMP, 0);
+            bind(no);
+            emit(ICONST, d, 0);
+            bind(end);
+            return new Value(LOGICAL_TYPE, d);
+        }
+
+        // Comparação com reais ou literais, num registrador inteiro novo
+        int compare(Value left, Value right, String op, ParserRuleContext where) {
+            int d;
+            if (left.type.kind == LITERAL || right.type.kind == LITERAL) {
+                int a = left.reg, b = right.reg;
+                d = temp(INT);
+                if (op.equals("=") || op.equals("<>")) def(INT, op.equals("=") ? SEQ : SNE, d, a, b);
+                else def(INT, SLT + relational(op), d, a, b);
+            } else if (left.type.kind == REAL_T || right.type.kind == REAL_T) {
+                int a = realReg(left), b = realReg(right);
+                d = temp(INT);
+                def(INT, DLT + relational(op), d, a, b);
+            } else {
+                throw unsupported(where, "comparacao entre " + where.getText());
+            }
+            return d;
+        }
+
+        // ------------------------------------------------------------ expressões aritméticas
+
+        Value arithmetic(Exp_aritmeticaContext e) {
+            if (JanderSemanticoUtils.isChain(e)) {
+                // Cadeia de operadores de mesma precedência: sem recursão na espinha esquerda
+                List<Exp_aritmeticaContext> chain = JanderSemanticoUtils.chain(e);
+                int[] mark = mark();
+                Value v = arithmetic((Exp_aritmeticaContext) chain.get(0).getChild(0));
+                for (Exp_aritmeticaContext node : chain) {
+                    Value right = arithmetic((Exp_aritmeticaContext) node.getChild(2));
+                    v = binary(v, right, node.getChild(1).getText(), mark);
+                }
+                return v;
+            }
+            if (e instanceof ExpInteiroContext) {
+                ExpInteiroContext n = (ExpInteiroContext) e;
+                int v = parseInt(n.NUM_INT().getText());
+                return new Value(INTEGER_TYPE, n.op_unario() != null ? -v : v, true);
+            }
+            if (e instanceof ExpRealContext) {
+                ExpRealContext n = (ExpRealContext) e;
+                double v = Double.parseDouble(n.NUM_REAL().getText());
+                return new Value(REAL_TYPE, realConstantReg(n.op_unario() != null ? -v : v));
+            }
+            if (e instanceof ExpCadeiaContext) {
+                return new Value(LITERAL_TYPE, stringConstantReg(string(((ExpCadeiaContext) e).CADEIA().getText())));
+            }
+            if (e instanceof ExpIdentificadorContext) {
+                ExpIdentificadorContext id = (ExpIdentificadorContext) e;
+                return minus(identifier(id.identificador(), id.CIRCUNFLEXO() != null), id.op_unario() != null);
+            }
+            if (e instanceof ExpChamadaContext) {
+                ExpChamadaContext c = (ExpChamadaContext) e;
+                return minus(call(c.IDENT(), c.expressao(), c), c.op_unario() != null);
+            }
+            if (e instanceof ExpParentesesContext) {
+                ExpParentesesContext p = (ExpParentesesContext) e;
+                return minus(value(p.expressao()), p.op_unario() != null);
+            }
+            if (e instanceof ExpEnderecoContext) {
+                Place p = place(((ExpEnderecoContext) e).identificador(), false);
+                return new Value(new Type(POINTER, p.type, null), address(p));
+            }
+            throw unsupported(e, "expressao " + e.getText());
+        }
+
+        Value identifier(IdentificadorContext id, boolean deref) {
+            Var v = lookup(id.IDENT(0).getText());
+            if (v != null && v.storage == CONSTANT) {
+                if (v.constant instanceof Integer) return new Value(v.type, (Integer) v.constant, true);
+                if (v.constant instanceof Double) return new Value(REAL_TYPE, realConstantReg((Double) v.constant));
+                return new Value(LITERAL_TYPE, stringConstantReg((String) v.constant));
+            }
+            Place p = place(id, deref);
+            return new Value(p.type, load(p));
+        }
+
+        Value minus(Value v, boolean negative) {
+            if (!negative) return v;
+            if (v.constant) return new Value(v.type, -v.value, true);
+            int d;
+            if (v.type.kind == REAL_T) {
+                d = isTemp(REAL, v.reg) ? v.reg : temp(REAL);
+                def(REAL, DNEG, d, v.reg);
+            } else {
+                d = isTemp(INT, v.reg) ? v.reg : temp(INT);
+                def(INT, INEG, d, v.reg);
+            }
+            return new Value(v.type, d);
+        }
+
+        // left op right; os temporários acima de mark morrem com a instrução
+        Value binary(Value left, Value right, String op, int[] mark) {
+            if (left.type.kind == LITERAL) {
+                release(mark);
+                int d = temp(REF);
+                def(REF, SCAT, d, left.reg, right.reg);
+                return new Value(LITERAL_TYPE, d);
+            }
+            if (left.type.kind == REAL_T || right.type.kind == REAL_T) {
+                int a = realReg(left), b = realReg(right);
+                release(mark);
+                int d = temp(REAL);
+                int opcode = op.equals("+") ? DADD : op.equals("-") ? DSUB : op.equals("*") ? DMUL : DDIV;
+                def(REAL, opcode, d, a, b);
+                return new Value(REAL_TYPE, d);
+            }
+            if (left.constant && right.constant) {
+                Integer folded = fold(left.value, right.value, op);
+                if (folded != null) return new Value(INTEGER_TYPE, folded, true);
+            }
+            if (right.constant && (op.equals("+") || op.equals("-") && right.value != Integer.MIN_VALUE)) {
+                int a = reg(left);
+                release(mark);
+                int d = temp(INT);
+                def(INT, IADDK, d, a, op.equals("+") ? right.value : -right.value);
+                return new Value(INTEGER_TYPE, d);
+            }
+            if (right.constant && !op.equals("-")) {
+                int a = reg(left);
+                release(mark);
+                int d = temp(INT);
+                def(INT, op.equals("*") ? IMULK : op.equals("/") ? IDIVK : IMODK, d, a, right.value);
+                return new Value(INTEGER_TYPE, d);
+            }
+            if (left.constant && (op.equals("+") || op.equals("*"))) {
+                int b = reg(right);
+                release(mark);
+                int d = temp(INT);
+                def(INT, op.equals("+") ? IADDK : IMULK, d, b, left.value);
+                return new Value(INTEGER_TYPE, d);
+            }
+            int a = reg(left), b = reg(right);
+            release(mark);
+            int d = temp(INT);
+            int opcode;
+            switch (op) {
+                case "+": opcode = IADD; break;
+                case "-": opcode = ISUB; break;
+                case "*": opcode = IMUL; break;
+                case "/": opcode = IDIV; break;
+                default: opcode = IMOD;
+            }
+            def(INT, opcode, d, a, b);
+            return new Value(INTEGER_TYPE, d);
+        }
+
+        // Registrador com o valor (carrega constantes inteiras)
+        int reg(Value v) {
+            if (!v.constant) return v.reg;
+            int d = temp(INT);
+            def(INT, ICONST, d, v.value);
+            return d;
+        }
+
+        int realReg(Value v) {
+            if (v.type.kind == REAL_T) return v.reg;
+            if (v.constant) return realConstantReg(v.value);
+            int d = temp(REAL);
+            def(REAL, I2D, d, v.reg);
+            return d;
+        }
+
+        // Valor convertido para o tipo de destino de uma atribuição, parâmetro ou retorno
+        int convert(Value v, Type target) {
+            switch (target.kind) {
+                case INTEGER: case LOGICAL:
+                    if (v.type.kind == REAL_T) {
+                        int d = temp(INT);
+                        def(INT, D2I, d, v.reg);
+                        return d;
+                    }
+                    return reg(v);
+                case REAL_T:
+                    return realReg(v);
+                case RECORD: {
+                    int d = temp(REF);
+                    def(REF, COPY, d, v.reg, target.record.constant);
+                    return d;
+                }
+                default:
+                    return v.reg;
+            }
+        }
+
+        // ------------------------------------------------------------ chamadas
+
+        Value call(TerminalNode ident, List<ExpressaoContext> args, ParserRuleContext where) {
+            String name = ident.getText();
+            Signature s = signatures.get(name);
+            if (s == null) throw unsupported(where, "rotina " + name + " nao declarada no programa (importada?)");
+            if (s.params.size() != args.size()) throw unsupported(where, "numero de argumentos de " + name);
+            int[] mark = mark();
+            int[] instr = new int[4 + args.size()];
+            instr[0] = CALL;
+            instr[1] = s.index;
+            instr[3] = args.size();
+            for (int k = 0; k < args.size(); k++) {
+                if (s.byReference.get(k)) {
+                    IdentificadorContext id = lvalue(args.get(k));
+                    if (id == null) throw unsupported(args.get(k), "argumento 'var' que nao e variavel: " + args.get(k).getText());
+                    instr[4 + k] = address(place(id, ((ExpIdentificadorContext) id.getParent()).CIRCUNFLEXO() != null));
+                } else {
+                    instr[4 + k] = convert(value(args.get(k)), s.params.get(k));
+                }
+            }
+            release(mark);
+            int d = s.result != null ? temp(s.result.bank()) : 0;
+            instr[2] = d;
+            emit(instr);
+            if (s.result == null) return new Value(INTEGER_TYPE, 0, true);
+            lastDest = size - instr.length + 2;
+            lastBank = s.result.bank();
+            return new Value(s.result, d);
+        }
+
+        // O identificador de um argumento que é só uma variável (para parâmetros 'var'), ou null
+        IdentificadorContext lvalue(ExpressaoContext e) {
+            if (!(e instanceof ExpRelacionalContext)) return null;
+            ExpRelacionalContext rel = (ExpRelacionalContext) e;
+            if (rel.op != null || rel.nao != null || !(rel.exp_aritmetica(0) instanceof ExpIdentificadorContext)) return null;
+            ExpIdentificadorContext id = (ExpIdentificadorContext) rel.exp_aritmetica(0);
+            return id.op_unario() == null ? id.identificador() : null;
+        }
+
+        // ------------------------------------------------------------ lugares
+
+        Place variable(String name, ParserRuleContext where) {
+            Var v = lookup(name);
+            if (v == null || v.storage == CONSTANT) throw unsupported(where, name + " nao e uma variavel");
+            switch (v.storage) {
+                case LOCAL: return new Place(REGISTER, v.type, v.dims, v.bank(), v.slot, 0);
+                case GLOBAL: return new Place(GLOBAL_SLOT, v.type, v.dims, v.bank(), v.slot, 0);
+                default: return new Place(CELL, v.type, null, v.type.bank(), v.slot, 0);
+            }
+        }
+
+        // a.b.c[i], com '^' opcional; em v.x[i] com v arranjo de registros, o índice é de v
+        Place place(IdentificadorContext id, boolean deref) {
+            Place p = variable(id.IDENT(0).getText(), id);
+            int parts = JanderSemanticoUtils.identPartCount(id);
+            DimensaoContext dims = id.dimensao();
+            boolean indexed = false;
+            if (parts > 1 && p.dims != null) {
+                p = index(p, dims);
+                indexed = true;
+            }
+            for (int i = 1; i < parts; i++) {
+                String fieldName = id.IDENT(i).getText();
+                if (p.type.kind != RECORD || p.dims != null) throw unsupported(id, "campo " + fieldName + " de " + id.getText());
+                Field f = p.type.record.fields.get(fieldName);
+                if (f == null) throw unsupported(id, "campo " + fieldName + " de " + id.getText());
+                p = new Place(FIELD, f.type, f.dims, f.bank, load(p), f.slot);
+            }
+            if (!indexed && !dims.exp_aritmetica().isEmpty()) p = index(p, dims);
+            if (deref) {
+                if (p.type.kind != POINTER) throw unsupported(id, "^ de " + id.getText());
+                p = new Place(CELL, p.type.target, null, p.type.target.bank(), load(p), 0);
+            }
+            return p;
+        }
+
+        Place index(Place p, DimensaoContext d) {
+            List<Exp_aritmeticaContext> exps = d.exp_aritmetica();
+            if (p.dims == null || exps.size() != p.dims.length) throw unsupported(d, "indexacao de " + d.getParent().getText());
+            int array = load(p);
+            Value index = null;
+            for (int k = 0; k < exps.size(); k++) {
+                Value v = arithmetic(exps.get(k));
+                int n = p.dims[k];
+                if (v.constant && (v.value < 0 || v.value >= n) || !v.constant && p.dims.length > 1 && !bounds.provenSafe(exps.get(k))) {
+                    emit(CHECK, reg(v), n);
+                }
+                if (k == 0) {
+                    index = v;
+                } else if (index.constant && v.constant) {
+                    index = new Value(INTEGER_TYPE, index.value * n + v.value, true);
+                } else {
+                    int scaled = temp(INT);
+                    if (index.constant) {
+                        emit(IADDK, scaled, v.reg, index.value * n);
+                    } else if (v.constant) {
+                        emit(IMULK, scaled, reg(index), n);
+                        emit(IADDK, scaled, scaled, v.value);
+                    } else {
+                        emit(IMADK, scaled, reg(index), n, v.reg);
+                    }
+                    index = new Value(INTEGER_TYPE, scaled);
+                }
+            }
+            Type t = p.type;
+            return new Place(ELEMENT, t, null, t.bank(), array, reg(index));
+        }
+
+        int load(Place p) {
+            if (p.kind == REGISTER) return p.a;
+            int d = temp(p.bank);
+            switch (p.kind) {
+                case GLOBAL_SLOT: def(p.bank, GILOAD + 2 * p.bank, d, p.a); break;
+                case ELEMENT: def(p.bank, AILOAD + 2 * p.bank, d, p.a, p.b); break;
+                case FIELD: def(p.bank, FILOAD + 2 * p.bank, d, p.a, p.b); break;
+                default: def(p.bank, PILOAD + 2 * p.bank, d, p.a);
+            }
+            return d;
+        }
+
+        void store(Place p, int src) {
+            switch (p.kind) {
+                case REGISTER:
+                    if (src == p.a) return;
+                    if (lastDest >= 0 && lastBank == p.bank && code[lastDest] == src && isTemp(p.bank, src)) {
+                        code[lastDest] = p.a; // a última instrução escreve direto na variável
+                        lastDest = -1;
+                        return;
+                    }
+                    emit(p.bank == INT ? IMOV : p.bank == REAL ? DMOV : RMOV, p.a, src);
+                    break;
+                case GLOBAL_SLOT: emit(GISTORE + 2 * p.bank, p.a, src); break;
+                case ELEMENT: emit(AISTORE + 2 * p.bank, p.a, p.b, src); break;
+                case FIELD: emit(FISTORE + 2 * p.bank, p.a, p.b, src); break;
+                default: emit(PISTORE + 2 * p.bank, p.a, src);
+            }
+        }
+
+        int address(Place p) {
+            if (p.kind == CELL) return p.a;
+            int d = temp(REF);
+            switch (p.kind) {
+                case REGISTER: def(REF, ADDRL, d, p.bank, p.a); break;
+                case GLOBAL_SLOT: def(REF, ADDRG, d, p.bank, p.a); break;
+                case ELEMENT: def(REF, ADDRA, d, p.a, p.b); break;
+                default: def(REF, ADDRF, d, p.bank, p.a, p.b);
+            }
+            return d;
+        }
+    }
+
+    // ---------------------------------------------------------------- operadores
+
+    private static String negate(String op) {
+        switch (op) {
+            case "<": return ">=";
+            case "<=": return ">";
+            case ">": return "<=";
+            case ">=": return "<";
+            case "=": return "<>";
+            default: return "=";
+        }
+    }
+
+    // Deslocamento do operador a partir de ILT/DLT (e de JILT nos desvios)
+    private static int relational(String op) {
+        switch (op) {
+            case "<": return 0;
+            case "<=": return 1;
+            case ">": return 2;
+            case ">=": return 3;
+            case "=": return 4;
+            default: return 5;
+        }
+    }
+
+    private static int fusedJump(String op) {
+        return JILT + relational(op);
+    }
+}
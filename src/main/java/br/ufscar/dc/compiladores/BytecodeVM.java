@@ -0,0 +1,471 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+import br.ufscar.dc.compiladores.Bytecode.ArrayInit;
+import br.ufscar.dc.compiladores.Bytecode.Cell;
+import br.ufscar.dc.compiladores.Bytecode.Layout;
+import br.ufscar.dc.compiladores.Bytecode.Rec;
+import br.ufscar.dc.compiladores.Bytecode.Routine;
+
+import static br.ufscar.dc.compiladores.Bytecode.*;
+
+/**
+ * Máquina virtual de registradores que executa um Bytecode.
+ *
+ * execute() é um único laço de despacho (switch sobre o int[] da rotina) com o código, os bancos de
+ * registradores e as globais em variáveis locais: o switch denso vira uma tabela de saltos e o método
+ * fica abaixo do limite de tamanho do JIT. Instruções raras (chamadas, cópias, erros) ficam em métodos
+ * auxiliares para o laço continuar pequeno. Cada chamada aloca os bancos da rotina chamada e executa por
+ * recursão em Java.
+ *
+ * A entrada e a saída usam buffers próprios de bytes: leia lê números e literais (uma palavra, como
+ * scanf("%s")) sem Scanner e escreva formata inteiros sem criar Strings; reais saem como printf("%f").
+ * A saída é descarregada quando o buffer enche, antes de bloquear esperando entrada e no fim.
+ */
+public final class BytecodeVM {
+    /** Erro em tempo de execução: "Linha N: erro de execucao: ..." */
+    public static final class ExecutionError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ExecutionError(String message) {
+            super(message, null, false, false); // sem pilha: pode ser criado no fundo de uma recursão
+        }
+    }
+
+    private final Bytecode program;
+    private final Output output;
+    private final Input input;
+    private final int[] globalInts;
+    private final double[] globalReals;
+    private final Object[] globalRefs;
+
+    // Resultado da última função que retornou
+    private int resultInt;
+    private double resultReal;
+    private Object resultRef;
+
+    public BytecodeVM(Bytecode program, InputStream in, OutputStream out) {
+        this.program = program;
+        this.output = new Output(out);
+        this.input = new Input(in, output);
+        this.globalInts = new int[program.globalInts];
+        this.globalReals = new double[program.globalReals];
+        this.globalRefs = new Object[program.globalRefs];
+    }
+
+    /** Executa o corpo principal; a saída é descarregada mesmo se houver erro de execução */
+    public void run() {
+        Routine main = program.routines[0];
+        try {
+            execute(main, new int[main.ints], main.realFrame.clone(), main.refFrame.clone());
+        } finally {
+            output.flush();
+        }
+    }
+
+    private void execute(Routine r, int[] I, double[] D, Object[] R) {
+        final int[] code = r.code;
+        final int[] GI = globalInts;
+        final double[] GD = globalReals;
+        final Object[] GR = globalRefs;
+        final Object[] K = program.constants;
+        final double[] KD = program.realConstants;
+        int pc = 0;
+        try {
+            while (true) {
+                switch (code[pc]) {
+                    case ICONST: I[code[pc + 1]] = code[pc + 2]; pc += 3; break;
+                    case IMOV: I[code[pc + 1]] = I[code[pc + 2]]; pc += 3; break;
+                    case IADD: I[code[pc + 1]] = I[code[pc + 2]] + I[code[pc + 3]]; pc += 4; break;
+                    case ISUB: I[code[pc + 1]] = I[code[pc + 2]] - I[code[pc + 3]]; pc += 4; break;
+                    case IMUL: I[code[pc + 1]] = I[code[pc + 2]] * I[code[pc + 3]]; pc += 4; break;
+                    case IDIV: I[code[pc + 1]] = I[code[pc + 2]] / I[code[pc + 3]]; pc += 4; break;
+                    case IMOD: I[code[pc + 1]] = I[code[pc + 2]] % I[code[pc + 3]]; pc += 4; break;
+                    case IADDK: I[code[pc + 1]] = I[code[pc + 2]] + code[pc + 3]; pc += 4; break;
+                    case IMULK: I[code[pc + 1]] = I[code[pc + 2]] * code[pc + 3]; pc += 4; break;
+                    case IDIVK: I[code[pc + 1]] = I[code[pc + 2]] / code[pc + 3]; pc += 4; break;
+                    case IMODK: I[code[pc + 1]] = I[code[pc + 2]] % code[pc + 3]; pc += 4; break;
+                    case IMADK: I[code[pc + 1]] = I[code[pc + 2]] * code[pc + 3] + I[code[pc + 4]]; pc += 5; break;
+                    case INEG: I[code[pc + 1]] = -I[code[pc + 2]]; pc += 3; break;
+
+                    case DCONST: D[code[pc + 1]] = KD[code[pc + 2]]; pc += 3; break;
+                    case DMOV: D[code[pc + 1]] = D[code[pc + 2]]; pc += 3; break;
+                    case DADD: D[code[pc + 1]] = D[code[pc + 2]] + D[code[pc + 3]]; pc += 4; break;
+                    case DSUB: D[code[pc + 1]] = D[code[pc + 2]] - D[code[pc + 3]]; pc += 4; break;
+                    case DMUL: D[code[pc + 1]] = D[code[pc + 2]] * D[code[pc + 3]]; pc += 4; break;
+                    case DDIV: D[code[pc + 1]] = D[code[pc + 2]] / D[code[pc + 3]]; pc += 4; break;
+                    case DNEG: D[code[pc + 1]] = -D[code[pc + 2]]; pc += 3; break;
+                    case I2D: D[code[pc + 1]] = I[code[pc + 2]]; pc += 3; break;
+                    case D2I: I[code[pc + 1]] = (int) D[code[pc + 2]]; pc += 3; break;
+
+                    case RCONST: R[code[pc + 1]] = K[code[pc + 2]]; pc += 3; break;
+                    case RMOV: R[code[pc + 1]] = R[code[pc + 2]]; pc += 3; break;
+                    case SCAT: R[code[pc + 1]] = ((String) R[code[pc + 2]]).concat((String) R[code[pc + 3]]); pc += 4; break;
+
+                    case ILT: I[code[pc + 1]] = I[code[pc + 2]] < I[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case ILE: I[code[pc + 1]] = I[code[pc + 2]] <= I[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case IGT: I[code[pc + 1]] = I[code[pc + 2]] > I[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case IGE: I[code[pc + 1]] = I[code[pc + 2]] >= I[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case IEQ: I[code[pc + 1]] = I[code[pc + 2]] == I[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case INE: I[code[pc + 1]] = I[code[pc + 2]] != I[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case DLT: I[code[pc + 1]] = D[code[pc + 2]] < D[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case DLE: I[code[pc + 1]] = D[code[pc + 2]] <= D[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case DGT: I[code[pc + 1]] = D[code[pc + 2]] > D[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case DGE: I[code[pc + 1]] = D[code[pc + 2]] >= D[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case DEQ: I[code[pc + 1]] = D[code[pc + 2]] == D[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case DNE: I[code[pc + 1]] = D[code[pc + 2]] != D[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case SEQ: I[code[pc + 1]] = R[code[pc + 2]].equals(R[code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                    case SNE: I[code[pc + 1]] = R[code[pc + 2]].equals(R[code[pc + 3]]) ? 0 : 1; pc += 4; break;
+                    case SLT: I[code[pc + 1]] = compare(R[code[pc + 2]], R[code[pc + 3]]) < 0 ? 1 : 0; pc += 4; break;
+                    case SLE: I[code[pc + 1]] = compare(R[code[pc + 2]], R[code[pc + 3]]) <= 0 ? 1 : 0; pc += 4; break;
+                    case SGT: I[code[pc + 1]] = compare(R[code[pc + 2]], R[code[pc + 3]]) > 0 ? 1 : 0; pc += 4; break;
+                    case SGE: I[code[pc + 1]] = compare(R[code[pc + 2]], R[code[pc + 3]]) >= 0 ? 1 : 0; pc += 4; break;
+                    case NOT: I[code[pc + 1]] = I[code[pc + 2]] == 0 ? 1 : 0; pc += 3; break;
+
+                    case JMP: pc = code[pc + 1]; break;
+                    case JZ: pc = I[code[pc + 1]] == 0 ? code[pc + 2] : pc + 3; break;
+                    case JNZ: pc = I[code[pc + 1]] != 0 ? code[pc + 2] : pc + 3; break;
+                    case JILT: pc = I[code[pc + 1]] < I[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case JILE: pc = I[code[pc + 1]] <= I[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case JIGT: pc = I[code[pc + 1]] > I[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case JIGE: pc = I[code[pc + 1]] >= I[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case JIEQ: pc = I[code[pc + 1]] == I[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case JINE: pc = I[code[pc + 1]] != I[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case SWITCH: {
+                        int v = I[code[pc + 1]], lo = code[pc + 2];
+                        pc = v < lo || v > code[pc + 3] ? code[pc + 4] : code[pc + 5 + v - lo];
+                        break;
+                    }
+                    case JRANGE: {
+                        int v = I[code[pc + 1]];
+                        pc = v >= code[pc + 2] && v <= code[pc + 3] ? code[pc + 4] : pc + 5;
+                        break;
+                    }
+
+                    case GILOAD: I[code[pc + 1]] = GI[code[pc + 2]]; pc += 3; break;
+                    case GISTORE: GI[code[pc + 1]] = I[code[pc + 2]]; pc += 3; break;
+                    case GDLOAD: D[code[pc + 1]] = GD[code[pc + 2]]; pc += 3; break;
+                    case GDSTORE: GD[code[pc + 1]] = D[code[pc + 2]]; pc += 3; break;
+                    case GRLOAD: R[code[pc + 1]] = GR[code[pc + 2]]; pc += 3; break;
+                    case GRSTORE: GR[code[pc + 1]] = R[code[pc + 2]]; pc += 3; break;
+
+                    case NEWARR: R[code[pc + 1]] = ((ArrayInit) K[code[pc + 2]]).create(); pc += 3; break;
+                    case AILOAD: I[code[pc + 1]] = ((int[]) R[code[pc + 2]])[I[code[pc + 3]]]; pc += 4; break;
+                    case AISTORE: ((int[]) R[code[pc + 1]])[I[code[pc + 2]]] = I[code[pc + 3]]; pc += 4; break;
+                    case ADLOAD: D[code[pc + 1]] = ((double[]) R[code[pc + 2]])[I[code[pc + 3]]]; pc += 4; break;
+                    case ADSTORE: ((double[]) R[code[pc + 1]])[I[code[pc + 2]]] = D[code[pc + 3]]; pc += 4; break;
+                    case ARLOAD: R[code[pc + 1]] = ((Object[]) R[code[pc + 2]])[I[code[pc + 3]]]; pc += 4; break;
+                    case ARSTORE: ((Object[]) R[code[pc + 1]])[I[code[pc + 2]]] = R[code[pc + 3]]; pc += 4; break;
+                    case CHECK: {
+                        int i = I[code[pc + 1]];
+                        if (i < 0 || i >= code[pc + 2]) throw outOfBounds(r, pc, i, code[pc + 2]);
+                        pc += 3;
+                        break;
+                    }
+
+                    case NEWREC: R[code[pc + 1]] = ((Layout) K[code[pc + 2]]).create(); pc += 3; break;
+                    case FILOAD: I[code[pc + 1]] = ((Rec) R[code[pc + 2]]).ints[code[pc + 3]]; pc += 4; break;
+                    case FISTORE: ((Rec) R[code[pc + 1]]).ints[code[pc + 2]] = I[code[pc + 3]]; pc += 4; break;
+                    case FDLOAD: D[code[pc + 1]] = ((Rec) R[code[pc + 2]]).reals[code[pc + 3]]; pc += 4; break;
+                    case FDSTORE: ((Rec) R[code[pc + 1]]).reals[code[pc + 2]] = D[code[pc + 3]]; pc += 4; break;
+                    case FRLOAD: R[code[pc + 1]] = ((Rec) R[code[pc + 2]]).refs[code[pc + 3]]; pc += 4; break;
+                    case FRSTORE: ((Rec) R[code[pc + 1]]).refs[code[pc + 2]] = R[code[pc + 3]]; pc += 4; break;
+                    case COPY: R[code[pc + 1]] = ((Layout) K[code[pc + 3]]).copy((Rec) R[code[pc + 2]]); pc += 4; break;
+
+                    case ADDRL: R[code[pc + 1]] = new Cell(bank(code[pc + 2], I, D, R), code[pc + 3]); pc += 4; break;
+                    case ADDRG: R[code[pc + 1]] = new Cell(bank(code[pc + 2], GI, GD, GR), code[pc + 3]); pc += 4; break;
+                    case ADDRA: R[code[pc + 1]] = new Cell(R[code[pc + 2]], I[code[pc + 3]]); pc += 4; break;
+                    case ADDRF: {
+                        Rec rec = (Rec) R[code[pc + 3]];
+                        R[code[pc + 1]] = new Cell(bank(code[pc + 2], rec.ints, rec.reals, rec.refs), code[pc + 4]);
+                        pc += 5;
+                        break;
+                    }
+                    case PILOAD: { Cell c = (Cell) R[code[pc + 2]]; I[code[pc + 1]] = ((int[]) c.base)[c.index]; pc += 3; break; }
+                    case PISTORE: { Cell c = (Cell) R[code[pc + 1]]; ((int[]) c.base)[c.index] = I[code[pc + 2]]; pc += 3; break; }
+                    case PDLOAD: { Cell c = (Cell) R[code[pc + 2]]; D[code[pc + 1]] = ((double[]) c.base)[c.index]; pc += 3; break; }
+                    case PDSTORE: { Cell c = (Cell) R[code[pc + 1]]; ((double[]) c.base)[c.index] = D[code[pc + 2]]; pc += 3; break; }
+                    case PRLOAD: { Cell c = (Cell) R[code[pc + 2]]; R[code[pc + 1]] = ((Object[]) c.base)[c.index]; pc += 3; break; }
+                    case PRSTORE: { Cell c = (Cell) R[code[pc + 1]]; ((Object[]) c.base)[c.index] = R[code[pc + 2]]; pc += 3; break; }
+
+                    case CALL: pc = call(code, pc, I, D, R); break;
+                    case RETI: resultInt = I[code[pc + 1]]; return;
+                    case RETD: resultReal = D[code[pc + 1]]; return;
+                    case RETR: resultRef = R[code[pc + 1]]; return;
+                    case RET: return;
+
+                    case READI: I[code[pc + 1]] = input.readInt(); pc += 2; break;
+                    case READD: D[code[pc + 1]] = input.readReal(); pc += 2; break;
+                    case READS: R[code[pc + 1]] = input.readWord(); pc += 2; break;
+                    case WRITEI: output.writeInt(I[code[pc + 1]]); pc += 2; break;
+                    case WRITED: output.writeReal(D[code[pc + 1]]); pc += 2; break;
+                    case WRITES: output.writeString((String) R[code[pc + 1]]); pc += 2; break;
+
+                    default: throw new IllegalStateException("opcode invalido " + code[pc] + " em " + r.name + ", posicao " + pc);
+                }
+            }
+        } catch (ArithmeticException e) {
+            throw error(r, pc, "divisao por zero");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw outOfBounds(r, pc, I, R);
+        } catch (NullPointerException e) {
+            throw error(r, pc, "ponteiro sem endereco");
+        } catch (NoSuchElementException e) {
+            throw error(r, pc, e.getMessage());
+        } catch (StackOverflowError e) {
+            throw error(r, pc, "recursao profunda demais");
+        }
+    }
+
+    private static Object bank(int bank, int[] ints, double[] reals, Object[] refs) {
+        return bank == INT ? ints : bank == REAL ? reals : refs;
+    }
+
+    // Copia os argumentos para os bancos da rotina chamada, na ordem dos parâmetros de cada banco
+    private int call(int[] code, int pc, int[] I, double[] D, Object[] R) {
+        Routine callee = program.routines[code[pc + 1]];
+        int n = code[pc + 3];
+        int[] ci = new int[callee.ints];
+        double[] cd = callee.realFrame.clone();
+        Object[] cr = callee.refFrame.clone();
+        byte[] params = callee.params;
+        int ii = 0, di = 0, ri = 0;
+        for (int k = 0; k < n; k++) {
+            int src = code[pc + 4 + k];
+            switch (params[k]) {
+                case INT: ci[ii++] = I[src]; break;
+                case REAL: cd[di++] = D[src]; break;
+                default: cr[ri++] = R[src];
+            }
+        }
+        execute(callee, ci, cd, cr);
+        int d = code[pc + 2];
+        switch (callee.result) {
+            case INT: I[d] = resultInt; break;
+            case REAL: D[d] = resultReal; break;
+            case REF: R[d] = resultRef; resultRef = null; break;
+            default:
+        }
+        return pc + 4 + n;
+    }
+
+    private static ExecutionError error(Routine r, int pc, String message) {
+        return error(r.lines[pc], message);
+    }
+
+    static ExecutionError error(int line, String message) {
+        return new ExecutionError("Linha " + line + ": erro de execucao: " + message);
+    }
+
+    private static ExecutionError outOfBounds(Routine r, int pc, int index, int length) {
+        return error(r, pc, "indice " + index + " fora dos limites (0 a " + (length - 1) + ")");
+    }
+
+    // Índice e tamanho do arranjo da instrução que falhou, para a mensagem
+    private static ExecutionError outOfBounds(Routine r, int pc, int[] I, Object[] R) {
+        int[] code = r.code;
+        int op = code[pc];
+        if (op == AILOAD || op == ADLOAD || op == ARLOAD) {
+            return outOfBounds(r, pc, I[code[pc + 3]], Array.getLength(R[code[pc + 2]]));
+        }
+        if (op == AISTORE || op == ADSTORE || op == ARSTORE) {
+            return outOfBounds(r, pc, I[code[pc + 2]], Array.getLength(R[code[pc + 1]]));
+        }
+        return error(r, pc, "indice fora dos limites");
+    }
+
+    // Ordem entre literais (<, <=, >, >=): a de String.compareTo, como no JvmBackend e no AstInterpreter
+    static int compare(Object a, Object b) {
+        return ((String) a).compareTo((String) b);
+    }
+
+    // ---------------------------------------------------------------- entrada e saída
+
+    /** Saída em bytes (UTF-8) com buffer próprio */
+    static final class Output {
+        private final OutputStream out;
+        private final byte[] buf = new byte[1 << 16];
+        private int pos;
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeInt(int v) {
+            if (pos + 11 > buf.length) flush();
+            if (v == Integer.MIN_VALUE) {
+                writeString(Integer.toString(v));
+                return;
+            }
+            if (v < 0) {
+                buf[pos++] = '-';
+                v = -v;
+            }
+            int end = pos + digits(v);
+            int i = end;
+            do {
+                buf[--i] = (byte) ('0' + v % 10);
+                v /= 10;
+            } while (v != 0);
+            pos = end;
+        }
+
+        private static int digits(int v) {
+            int n = 1;
+            while (v >= 10) {
+                v /= 10;
+                n++;
+            }
+            return n;
+        }
+
+        void writeReal(double v) {
+            writeString(formatReal(v));
+        }
+
+        void writeString(String s) {
+            int n = s.length();
+            if (n > buf.length - pos) {
+                flush();
+                if (n > buf.length / 4) {
+                    write(s.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    // Fora do ASCII: o resto da cadeia vai codificado de uma vez
+                    byte[] rest = s.substring(i).getBytes(StandardCharsets.UTF_8);
+                    if (rest.length > buf.length - pos) flush();
+                    if (rest.length > buf.length - pos) write(rest);
+                    else {
+                        System.arraycopy(rest, 0, buf, pos, rest.length);
+                        pos += rest.length;
+                    }
+                    return;
+                }
+                buf[pos++] = (byte) c;
+            }
+        }
+
+        private void write(byte[] bytes) {
+            try {
+                out.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void flush() {
+            try {
+                out.write(buf, 0, pos);
+                out.flush();
+                pos = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Como printf("%f"): seis casas, arredondando o valor binário exato para o par mais próximo
+    static String formatReal(double v) {
+        if (Double.isNaN(v)) return "nan";
+        if (Double.isInfinite(v)) return v > 0 ? "inf" : "-inf";
+        String s = new BigDecimal(v).setScale(6, RoundingMode.HALF_EVEN).toPlainString();
+        boolean negative = v < 0 || v == 0 && 1 / v < 0;
+        return negative && s.charAt(0) != '-' ? "-" + s : s;
+    }
+
+    /** Entrada em bytes com buffer próprio; palavras separadas por espaços, tabulações e quebras de linha */
+    static final class Input {
+        private final InputStream in;
+        private final Output output;
+        private final byte[] buf = new byte[1 << 16];
+        private int pos, limit;
+        private byte[] word = new byte[64];
+
+        Input(InputStream in, Output output) {
+            this.in = in;
+            this.output = output;
+        }
+
+        private int next() {
+            if (pos == limit) {
+                output.flush(); // o programa pode ter escrito um pedido de entrada
+                try {
+                    limit = in.read(buf, 0, buf.length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buf[pos++] & 0xff;
+        }
+
+        private static boolean space(int c) {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+        }
+
+        private int skipSpaces(String what) {
+            int c = next();
+            while (space(c)) c = next();
+            if (c == -1) throw new NoSuchElementException("fim da entrada ao ler " + what);
+            return c;
+        }
+
+        int readInt() {
+            int c = skipSpaces("um inteiro");
+            boolean negative = c == '-';
+            if (c == '-' || c == '+') c = next();
+            if (c < '0' || c > '9') throw new InputMismatchException("valor inteiro invalido na entrada");
+            int v = 0;
+            while (c >= '0' && c <= '9') {
+                v = v * 10 + (c - '0');
+                c = next();
+            }
+            if (c != -1) pos--; // o separador fica para a próxima leitura
+            return negative ? -v : v;
+        }
+
+        double readReal() {
+            String w = word("um real");
+            try {
+                return Double.parseDouble(w);
+            } catch (NumberFormatException e) {
+                throw new InputMismatchException("valor real invalido na entrada: " + w);
+            }
+        }
+
+        String readWord() {
+            return word("um literal");
+        }
+
+        private String word(String what) {
+            int c = skipSpaces(what);
+            int n = 0;
+            while (c != -1 && !space(c)) {
+                if (n == word.length) word = Arrays.copyOf(word, n * 2);
+                word[n++] = (byte) c;
+                c = next();
+            }
+            if (c != -1) pos--;
+            return new String(word, 0, n, StandardCharsets.UTF_8);
+        }
+    }
+}
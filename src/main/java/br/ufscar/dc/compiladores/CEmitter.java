@@ -0,0 +1,1163 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import br.ufscar.dc.compiladores.JanderParser.*;
+
+/**
+ * Traduz um programa LA já verificado (sem erros sintáticos nem semânticos) para C. Cada declaração, cabeçalho
+ * de rotina e comando é escrito na saída assim que é gerado; o programa C nunca fica inteiro na memória.
+ *
+ * - inteiro e logico viram int, real vira double e literal vira const char * (imutável, como na BytecodeVM;
+ *   NULL vale ""). Registros viram structs, com o nome do tipo ou la_registroN se forem anônimos, e são
+ *   copiados por valor na atribuição; arranjos viram arranjos do C.
+ * - '^' e '&' viram ponteiros do C; parâmetros 'var' recebem o endereço do argumento.
+ * - 'caso' vira switch, com 'case a ... b' (extensão do gcc e do clang) nos intervalos; valores em mais de um
+ *   item ficam com o primeiro, como na BytecodeVM.
+ * - escreva e leia usam o stdio com buffer; a saída pendente é enviada antes de cada leitura.
+ * - Erros de execução têm as mensagens da BytecodeVM: índices são verificados (exceto os que a
+ *   ArrayBoundsAnalysis provou seguros), assim como divisões inteiras por zero e ponteiros sem endereço.
+ * - Estouros inteiros dão a volta como na JVM, desde que o C seja compilado com -fwrapv.
+ * - Cada rotina conta as chamadas em andamento; mais de 100000 dá "recursao profunda demais", o erro da
+ *   BytecodeVM quando a pilha estoura.
+ *
+ * Nomes que coincidem com palavras reservadas ou nomes da biblioteca do C, ou que terminam em '_', ganham
+ * um '_' no fim. Rotinas e tipos importados (importe) não podem ser traduzidos: usá-los gera IllegalArgumentException.
+ */
+public final class CEmitter {
+    // ---------------------------------------------------------------- tipos e símbolos
+
+    private static final int INTEGER = 0, REAL_T = 1, LITERAL = 2, LOGICAL = 3, RECORD = 4, POINTER = 5;
+
+    private static final class Type {
+        final int kind;
+        final Type target;        // POINTER
+        final RecordType record;  // RECORD
+
+        Type(int kind, Type target, RecordType record) {
+            this.kind = kind;
+            this.target = target;
+            this.record = record;
+        }
+
+        boolean integral() {
+            return kind == INTEGER || kind == LOGICAL;
+        }
+    }
+
+    private static final Type INTEGER_TYPE = new Type(INTEGER, null, null);
+    private static final Type REAL_TYPE = new Type(REAL_T, null, null);
+    private static final Type LITERAL_TYPE = new Type(LITERAL, null, null);
+    private static final Type LOGICAL_TYPE = new Type(LOGICAL, null, null);
+
+    private static final class RecordType {
+        final String name; // nome do typedef
+        final Map<String, Field> fields = new LinkedHashMap<>();
+
+        RecordType(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Field {
+        final Type type;
+        final int[] dims; // null se não for arranjo
+        final String name;
+
+        Field(Type type, int[] dims, String name) {
+            this.type = type;
+            this.dims = dims;
+            this.name = name;
+        }
+    }
+
+    private static final int LOCAL = 0, GLOBAL = 1, REFERENCE = 2, CONSTANT = 3;
+
+    private static final class Var {
+        final int storage;
+        final Type type;
+        final int[] dims;
+        final String name;     // nome no C
+        final Object constant; // Integer (inteiro e logico), Double ou String
+
+        Var(int storage, Type type, int[] dims, String name, Object constant) {
+            this.storage = storage;
+            this.type = type;
+            this.dims = dims;
+            this.name = name;
+            this.constant = constant;
+        }
+    }
+
+    private static final class Signature {
+        final String name;
+        final List<Type> params = new ArrayList<>();
+        final List<Boolean> byReference = new ArrayList<>();
+        final Type result; // null em procedimentos
+
+        Signature(String name, Type result) {
+            this.name = name;
+            this.result = result;
+        }
+    }
+
+    // Expressão já traduzida; constant tem o valor das expressões inteiras constantes
+    private static final class Exp {
+        final String code;
+        final Type type;
+        final Integer constant;
+
+        Exp(String code, Type type) {
+            this(code, type, null);
+        }
+
+        Exp(String code, Type type, Integer constant) {
+            this.code = code;
+            this.type = type;
+            this.constant = constant;
+        }
+    }
+
+    // Lugar atribuível: variável, elemento, campo ou o alvo de um ponteiro
+    private static final class Place {
+        final String code;
+        final Type type;
+        final int[] dims; // arranjo ainda não indexado
+
+        Place(String code, Type type, int[] dims) {
+            this.code = code;
+            this.type = type;
+            this.dims = dims;
+        }
+    }
+
+    // ---------------------------------------------------------------- nomes do C
+
+    private static final Set<String> RESERVED = new HashSet<>(Arrays.asList(
+        // Palavras reservadas (C23 e extensões do gcc)
+        "auto", "break", "case", "char", "const", "continue", "default", "do", "double", "else", "enum", "extern",
+        "float", "for", "goto", "if", "inline", "int", "long", "register", "restrict", "return", "short", "signed",
+        "sizeof", "static", "struct", "switch", "typedef", "union", "unsigned", "void", "volatile", "while", "asm",
+        "typeof", "typeof_unqual", "bool", "true", "false", "nullptr", "alignas", "alignof", "constexpr",
+        "static_assert", "thread_local", "main",
+        // <stdio.h>
+        "FILE", "fpos_t", "size_t", "NULL", "BUFSIZ", "EOF", "FOPEN_MAX", "FILENAME_MAX", "L_tmpnam", "SEEK_CUR",
+        "SEEK_END", "SEEK_SET", "TMP_MAX", "stderr", "stdin", "stdout", "remove", "rename", "tmpfile", "tmpnam",
+        "fclose", "fflush", "fopen", "freopen", "setbuf", "setvbuf", "fprintf", "fscanf", "printf", "scanf",
+        "snprintf", "sprintf", "sscanf", "vfprintf", "vfscanf", "vprintf", "vscanf", "vsnprintf", "vsprintf",
+        "vsscanf", "fgetc", "fgets", "fputc", "fputs", "getc", "getchar", "gets", "putc", "putchar", "puts",
+        "ungetc", "fread", "fwrite", "fgetpos", "fseek", "fsetpos", "ftell", "rewind", "clearerr", "feof", "ferror",
+        "perror",
+        // <stdlib.h>
+        "EXIT_FAILURE", "EXIT_SUCCESS", "MB_CUR_MAX", "RAND_MAX", "div_t", "ldiv_t", "lldiv_t", "wchar_t", "atof",
+        "atoi", "atol", "atoll", "strtod", "strtof", "strtold", "strtol", "strtoll", "strtoul", "strtoull", "rand",
+        "srand", "aligned_alloc", "calloc", "free", "malloc", "realloc", "abort", "atexit", "at_quick_exit", "exit",
+        "quick_exit", "getenv", "system", "bsearch", "qsort", "abs", "labs", "llabs", "div", "ldiv", "lldiv",
+        "mblen", "mbtowc", "wctomb", "mbstowcs", "wcstombs",
+        // <string.h>
+        "memcpy", "memmove", "strcpy", "strncpy", "strcat", "strncat", "memcmp", "strcmp", "strcoll", "strncmp",
+        "strxfrm", "memchr", "strchr", "strcspn", "strpbrk", "strrchr", "strspn", "strstr", "strtok", "memset",
+        "strerror", "strlen"));
+
+    // Nome no C de um identificador LA. Como só ganham '_' os reservados e os que já terminam em '_',
+    // dois nomes LA diferentes nunca dão o mesmo nome no C.
+    private static String name(String ident) {
+        boolean clash = RESERVED.contains(ident) || ident.startsWith("_") || ident.startsWith("la_") || ident.endsWith("_");
+        return clash ? ident + "_" : ident;
+    }
+
+    // ---------------------------------------------------------------- runtime
+
+    private static final String[] RUNTIME = {
+        "#define _ISOC99_SOURCE",
+        "#include <stdio.h>",
+        "#include <stdlib.h>",
+        "#include <string.h>",
+        "",
+        "static int la_pending; /* saida escrita desde a ultima leitura */",
+        "static int la_depth;   /* chamadas de rotinas em andamento */",
+        "",
+        "static inline void la_fail(int line, const char *message) {",
+        "    fflush(stdout);",
+        "    fprintf(stderr, \"Linha %d: erro de execucao: %s\\n\", line, message);",
+        "    exit(1);",
+        "}",
+        "",
+        "static inline void *la_alloc(size_t n) {",
+        "    void *p = malloc(n);",
+        "    if (!p) {",
+        "        fflush(stdout);",
+        "        fputs(\"memoria esgotada\\n\", stderr);",
+        "        exit(1);",
+        "    }",
+        "    return p;",
+        "}",
+        "",
+        "static inline int la_index(int i, int n, int line) {",
+        "    if (i < 0 || i >= n) {",
+        "        char message[64];",
+        "        snprintf(message, sizeof message, \"indice %d fora dos limites (0 a %d)\", i, n - 1);",
+        "        la_fail(line, message);",
+        "    }",
+        "    return i;",
+        "}",
+        "",
+        "static inline int la_div(int a, int b, int line) {",
+        "    if (b == 0) la_fail(line, \"divisao por zero\");",
+        "    return b == -1 ? (int) (0u - (unsigned) a) : a / b;",
+        "}",
+        "",
+        "static inline int la_mod(int a, int b, int line) {",
+        "    if (b == 0) la_fail(line, \"divisao por zero\");",
+        "    return b == -1 ? 0 : a % b;",
+        "}",
+        "",
+        "/* Como o (int) da JVM: NaN vira 0 e valores fora do intervalo ficam no limite */",
+        "static inline int la_d2i(double d) {",
+        "    if (d != d) return 0;",
+        "    if (d >= 2147483647.0) return 2147483647;",
+        "    if (d <= -2147483648.0) return -2147483647 - 1;",
+        "    return (int) d;",
+        "}",
+        "",
+        "/* Conta as chamadas: com -O2, uma recursao sem fim pode virar um laco sem fim */",
+        "static inline void la_enter(int line) {",
+        "    if (++la_depth > 100000) la_fail(line, \"recursao profunda demais\");",
+        "}",
+        "",
+        "static inline void *la_ptr(void *p, int line) {",
+        "    if (!p) la_fail(line, \"ponteiro sem endereco\");",
+        "    return p;",
+        "}",
+        "",
+        "static inline int la_streq(const char *a, const char *b) {",
+        "    return strcmp(a ? a : \"\", b ? b : \"\") == 0;",
+        "}",
+        "",
+        "static inline int la_strcmp(const char *a, const char *b) {",
+        "    return strcmp(a ? a : \"\", b ? b : \"\");",
+        "}",
+        "",
+        "static inline const char *la_concat(const char *a, const char *b) {",
+        "    size_t n = a ? strlen(a) : 0, m = b ? strlen(b) : 0;",
+        "    char *s = la_alloc(n + m + 1);",
+        "    if (n) memcpy(s, a, n);",
+        "    if (m) memcpy(s + n, b, m);",
+        "    s[n + m] = '\\0';",
+        "    return s;",
+        "}",
+        "",
+        "static inline void la_write_int(int v) {",
+        "    printf(\"%d\", v);",
+        "    la_pending = 1;",
+        "}",
+        "",
+        "static inline void la_write_real(double v) {",
+        "    if (v != v) fputs(\"nan\", stdout);",
+        "    else printf(\"%f\", v);",
+        "    la_pending = 1;",
+        "}",
+        "",
+        "static inline void la_write_str(const char *s) {",
+        "    if (s) fputs(s, stdout);",
+        "    la_pending = 1;",
+        "}",
+        "",
+        "static inline int la_space(int c) {",
+        "    return c == ' ' || c == '\\n' || c == '\\r' || c == '\\t';",
+        "}",
+        "",
+        "/* Primeiro caractere do proximo valor; o separador depois dele fica para a proxima leitura */",
+        "static inline int la_skip(const char *what, int line) {",
+        "    int c;",
+        "    if (la_pending) {",
+        "        fflush(stdout);",
+        "        la_pending = 0;",
+        "    }",
+        "    do c = getc(stdin); while (la_space(c));",
+        "    if (c == EOF) {",
+        "        char message[64];",
+        "        snprintf(message, sizeof message, \"fim da entrada ao ler %s\", what);",
+        "        la_fail(line, message);",
+        "    }",
+        "    return c;",
+        "}",
+        "",
+        "static inline int la_read_int(int line) {",
+        "    int c = la_skip(\"um inteiro\", line), negative = c == '-';",
+        "    unsigned v = 0;",
+        "    if (c == '-' || c == '+') c = getc(stdin);",
+        "    if (c < '0' || c > '9') la_fail(line, \"valor inteiro invalido na entrada\");",
+        "    while (c >= '0' && c <= '9') {",
+        "        v = v * 10 + (unsigned) (c - '0');",
+        "        c = getc(stdin);",
+        "    }",
+        "    if (c != EOF) ungetc(c, stdin);",
+        "    return (int) (negative ? 0u - v : v);",
+        "}",
+        "",
+        "static inline char *la_word(const char *what, int line) {",
+        "    size_t n = 0, size = 16;",
+        "    char *w = la_alloc(size);",
+        "    int c = la_skip(what, line);",
+        "    while (c != EOF && !la_space(c)) {",
+        "        if (n + 1 == size) {",
+        "            char *bigger = la_alloc(size *= 2);",
+        "            memcpy(bigger, w, n);",
+        "            free(w);",
+        "            w = bigger;",
+        "        }",
+        "        w[n++] = (char) c;",
+        "        c = getc(stdin);",
+        "    }",
+        "    if (c != EOF) ungetc(c, stdin);",
+        "    w[n] = '\\0';",
+        "    return w;",
+        "}",
+        "",
+        "static inline double la_read_real(int line) {",
+        "    char *w = la_word(\"um real\", line), *end;",
+        "    double d = strtod(w, &end);",
+        "    if (end == w || *end) {",
+        "        char *message = la_alloc(strlen(w) + 40);",
+        "        sprintf(message, \"valor real invalido na entrada: %s\", w);",
+        "        la_fail(line, message);",
+        "    }",
+        "    free(w);",
+        "    return d;",
+        "}",
+        "",
+        "static inline const char *la_read_word(int line) {",
+        "    return la_word(\"um literal\", line);",
+        "}",
+    };
+
+    // ---------------------------------------------------------------- estado
+
+    private final PrintWriter out;
+    private final ArrayBoundsAnalysis bounds;
+    private final Map<String, Var> globals = new HashMap<>();
+    private final Map<String, Type> globalTypes = new HashMap<>();
+    private final Map<String, Signature> signatures = new HashMap<>();
+    private int records; // registros anônimos já nomeados
+
+    // Rotina sendo traduzida (locals == null nas declarações globais)
+    private Map<String, Var> locals;
+    private Map<String, Type> types;
+    private Signature signature;
+    private boolean main;
+    private int depth;
+    private int line;
+
+    private CEmitter(ArrayBoundsAnalysis bounds, PrintWriter out) {
+        this.bounds = bounds;
+        this.out = out;
+    }
+
+    /**
+     * Escreve em out o programa C equivalente a tree, com os avisos como comentários no início. A análise de
+     * limites dispensa as verificações de índices provados seguros. IllegalArgumentException, sem escrever nada em
+     * out, se alguma construção não tem tradução.
+     */
+    public static void emit(ProgramaContext tree, ArrayBoundsAnalysis bounds, List<String> warnings, String source, PrintWriter out) {
+        // Traduz num buffer: se alguma construção não tiver tradução, nada (nem metade do programa) chega a out
+        StringWriter buffer = new StringWriter();
+        new CEmitter(bounds, new PrintWriter(buffer)).program(tree, warnings, source);
+        out.write(buffer.toString());
+    }
+
+    private void program(ProgramaContext tree, List<String> warnings, String source) {
+        out.println("/* Gerado a partir de " + source.replace("*/", "* /") + " pelo compilador LA.");
+        out.println(" * Compilar com gcc ou clang, com -fwrapv: cc -O2 -fwrapv programa.c -o programa */");
+        for (String w : warnings) out.println("// " + w);
+        for (String l : RUNTIME) out.println(l);
+
+        for (Decl_local_globalContext d : tree.declaracoes().decl_local_global()) {
+            if (d.declaracao_local() != null) {
+                line = d.getStart().getLine();
+                declare(d.declaracao_local());
+            } else {
+                routine(d.declaracao_global());
+            }
+        }
+
+        out.println();
+        line("int main(void) {");
+        depth++;
+        main = true;
+        locals = new HashMap<>();
+        types = new HashMap<>();
+        line = tree.corpo().getStart().getLine();
+        line("setvbuf(stdout, NULL, _IOFBF, 1 << 16);");
+        body(tree.corpo().declaracao_local(), tree.corpo().cmd());
+        line("return 0;");
+        depth--;
+        line("}");
+        out.flush();
+    }
+
+    private void routine(Declaracao_globalContext g) {
+        String ident = g.IDENT().getText();
+        Type result = g.tipo_estendido() != null ? extended(g.tipo_estendido()) : null;
+        Signature s = new Signature(name(ident), result);
+        signatures.put(ident, s); // antes do corpo, para chamadas recursivas
+        locals = new HashMap<>();
+        types = new HashMap<>();
+        signature = s;
+        line = g.getStart().getLine();
+
+        List<String> params = new ArrayList<>();
+        if (g.parametros() != null) {
+            for (ParametroContext p : g.parametros().parametro()) {
+                Type t = extended(p.tipo_estendido());
+                boolean byReference = p.VAR() != null;
+                for (IdentificadorContext id : p.identificador()) {
+                    String n = name(id.IDENT(0).getText());
+                    s.params.add(t);
+                    s.byReference.add(byReference);
+                    locals.put(id.IDENT(0).getText(), new Var(byReference ? REFERENCE : LOCAL, t, null, n, null));
+                    params.add(declarator(byReference ? new Type(POINTER, t, null) : t, n, null));
+                }
+            }
+        }
+        out.println();
+        line("static " + (result == null ? "void " : prefix(result)) + s.name + "("
+            + (params.isEmpty() ? "void" : String.join(", ", params)) + ") {");
+        depth++;
+        if (result != null && returns(g)) line(declarator(result, "la_result", null) + ";");
+        line("la_enter(" + line + ");");
+        body(g.declaracao_local(), g.cmd());
+        line("la_depth--;");
+        // Função que chega ao fim sem 'retorne': devolve zero, "" ou um registro vazio
+        if (result != null) line("return " + zero(result) + ";");
+        depth--;
+        line("}");
+        locals = null;
+        types = null;
+        signature = null;
+    }
+
+    // Se a rotina tem algum 'retorne'
+    private static boolean returns(Declaracao_globalContext g) {
+        ArrayDeque<ParseTree> pending = new ArrayDeque<>(g.cmd());
+        while (!pending.isEmpty()) {
+            ParseTree t = pending.pop();
+            if (t instanceof CmdRetorneContext) return true;
+            for (int i = 0; i < t.getChildCount(); i++) pending.push(t.getChild(i));
+        }
+        return false;
+    }
+
+    private void body(List<Declaracao_localContext> declarations, List<CmdContext> cmds) {
+        for (Declaracao_localContext d : declarations) {
+            line = d.getStart().getLine();
+            declare(d);
+        }
+        commands(cmds);
+    }
+
+    // ---------------------------------------------------------------- declarações e tipos
+
+    // Globais são zeradas pelo C; locais são zeradas na declaração. Arranjos e registros do corpo principal
+    // são static, para não ocuparem a pilha.
+    private void declare(Declaracao_localContext d) {
+        boolean global = locals == null;
+        Map<String, Type> scopeTypes = global ? globalTypes : types;
+        Map<String, Var> scope = global ? globals : locals;
+        int kind = d.getStart().getType();
+        if (kind == JanderParser.TIPO) {
+            TipoContext t = d.tipo();
+            String ident = d.IDENT().getText();
+            scopeTypes.put(ident, t.registro() != null ? record(t.registro(), name(ident)) : extended(t.tipo_estendido()));
+        } else if (kind == JanderParser.CONSTANTE) {
+            Type t = basic(d.tipo_basico());
+            Object value = constantValue(d.valor_constante(), t);
+            String n = name(d.IDENT().getText());
+            scope.put(d.IDENT().getText(), new Var(CONSTANT, t, null, n, value));
+            if (value instanceof Integer) line("enum { " + n + " = " + intLiteral((Integer) value) + " };");
+            else if (value instanceof Double) line("static const double " + n + " = " + realLiteral((Double) value) + ";");
+            else line("static const char *const " + n + " = " + stringLiteral((String) value) + ";");
+        } else {
+            VariavelContext v = d.variavel();
+            Type t = type(v.tipo());
+            for (IdentificadorContext id : v.identificador()) {
+                int[] dims = dimensions(id.dimensao());
+                String n = name(id.IDENT(0).getText());
+                scope.put(id.IDENT(0).getText(), new Var(global ? GLOBAL : LOCAL, t, dims, n, null));
+                String decl = declarator(t, n, dims);
+                boolean aggregate = dims != null || t.kind == RECORD;
+                if (global) line("static " + decl + ";");
+                else if (aggregate && main) line("static " + decl + ";");
+                else line(decl + (aggregate ? " = {0};" : " = 0;"));
+            }
+        }
+    }
+
+    private Type type(TipoContext t) {
+        return t.registro() != null ? record(t.registro(), null) : extended(t.tipo_estendido());
+    }
+
+    private Type extended(Tipo_estendidoContext t) {
+        Tipo_basico_identContext b = t.tipo_basico_ident();
+        Type base;
+        if (b.tipo_basico() != null) {
+            base = basic(b.tipo_basico());
+        } else {
+            String ident = b.IDENT().getText();
+            base = types != null ? types.get(ident) : null;
+            if (base == null) base = globalTypes.get(ident);
+            if (base == null) throw unsupported(t, "tipo " + ident + " nao declarado");
+        }
+        return t.CIRCUNFLEXO() != null ? new Type(POINTER, base, null) : base;
+    }
+
+    private static Type basic(Tipo_basicoContext t) {
+        switch (t.getText()) {
+            case "inteiro": return INTEGER_TYPE;
+            case "real": return REAL_TYPE;
+            case "literal": return LITERAL_TYPE;
+            default: return LOGICAL_TYPE;
+        }
+    }
+
+    // typedef struct do registro; registros aninhados são escritos antes
+    private Type record(RegistroContext r, String typedefName) {
+        RecordType record = new RecordType(typedefName != null ? typedefName : "la_registro" + ++records);
+        List<String> members = new ArrayList<>();
+        for (VariavelContext v : r.variavel()) {
+            Type t = type(v.tipo());
+            for (IdentificadorContext id : v.identificador()) {
+                int[] dims = dimensions(id.dimensao());
+                String n = name(id.IDENT(0).getText());
+                record.fields.put(id.IDENT(0).getText(), new Field(t, dims, n));
+                members.add(declarator(t, n, dims) + ";");
+            }
+        }
+        line("typedef struct {");
+        depth++;
+        for (String m : members) line(m);
+        if (members.isEmpty()) line("char la_empty;");
+        depth--;
+        line("} " + record.name + ";");
+        return new Type(RECORD, null, record);
+    }
+
+    private static String ctype(Type t) {
+        switch (t.kind) {
+            case INTEGER: case LOGICAL: return "int";
+            case REAL_T: return "double";
+            case LITERAL: return "const char *";
+            case RECORD: return t.record.name;
+            default: return pointer(ctype(t.target));
+        }
+    }
+
+    private static String pointer(String ctype) {
+        return ctype.endsWith("*") ? ctype + "*" : ctype + " *";
+    }
+
+    // Tipo pronto para receber um nome: "int ", "const char *"
+    private static String prefix(Type t) {
+        String c = ctype(t);
+        return c.endsWith("*") ? c : c + " ";
+    }
+
+    private static String declarator(Type t, String name, int[] dims) {
+        StringBuilder sb = new StringBuilder(prefix(t)).append(name);
+        if (dims != null) for (int d : dims) sb.append('[').append(d).append(']');
+        return sb.toString();
+    }
+
+    private static String zero(Type t) {
+        switch (t.kind) {
+            case REAL_T: return "0.0";
+            case LITERAL: return "\"\"";
+            case RECORD: return "(" + t.record.name + ") {0}";
+            default: return "0";
+        }
+    }
+
+    // Dimensões constantes de uma declaração (v[10][N]); null se não for arranjo
+    private int[] dimensions(DimensaoContext d) {
+        List<Exp_aritmeticaContext> exps = d.exp_aritmetica();
+        if (exps.isEmpty()) return null;
+        int[] dims = new int[exps.size()];
+        for (int i = 0; i < dims.length; i++) {
+            dims[i] = constantInt(exps.get(i));
+            if (dims[i] < 0) throw unsupported(exps.get(i), "dimensao negativa");
+        }
+        return dims;
+    }
+
+    private int constantInt(Exp_aritmeticaContext e) {
+        if (JanderSemanticoUtils.isChain(e)) {
+            List<Exp_aritmeticaContext> chain = JanderSemanticoUtils.chain(e);
+            int v = constantInt((Exp_aritmeticaContext) chain.get(0).getChild(0));
+            for (Exp_aritmeticaContext node : chain) {
+                Integer folded = fold(v, constantInt((Exp_aritmeticaContext) node.getChild(2)), node.getChild(1).getText());
+                if (folded == null) throw unsupported(e, "divisao por zero na dimensao");
+                v = folded;
+            }
+            return v;
+        }
+        Integer value = null;
+        boolean negative = false;
+        if (e instanceof ExpInteiroContext) {
+            value = parseInt(((ExpInteiroContext) e).NUM_INT().getText());
+            negative = ((ExpInteiroContext) e).op_unario() != null;
+        } else if (e instanceof ExpIdentificadorContext) {
+            ExpIdentificadorContext id = (ExpIdentificadorContext) e;
+            Var v = lookup(id.identificador().IDENT(0).getText());
+            if (v != null && v.storage == CONSTANT && v.constant instanceof Integer) value = (Integer) v.constant;
+            negative = id.op_unario() != null;
+        } else if (e instanceof ExpParentesesContext) {
+            ExpParentesesContext p = (ExpParentesesContext) e;
+            ExpressaoContext inner = p.expressao();
+            if (inner instanceof ExpRelacionalContext && ((ExpRelacionalContext) inner).op == null
+                && ((ExpRelacionalContext) inner).nao == null) {
+                value = constantInt(((ExpRelacionalContext) inner).exp_aritmetica(0));
+            }
+            negative = p.op_unario() != null;
+        }
+        if (value == null) throw unsupported(e, "dimensao de arranjo nao constante: " + e.getText());
+        return negative ? -value : value;
+    }
+
+    private static Integer fold(int a, int b, String op) {
+        switch (op) {
+            case "+": return a + b;
+            case "-": return a - b;
+            case "*": return a * b;
+            case "/": return b == 0 ? null : a / b;
+            default: return b == 0 ? null : a % b;
+        }
+    }
+
+    // Inteiros do fonte maiores que int dão a volta, como na conversão do C
+    private static int parseInt(String digits) {
+        return new BigInteger(digits).intValue();
+    }
+
+    private static Object constantValue(Valor_constanteContext v, Type t) {
+        if (v.CADEIA() != null) return string(v.CADEIA().getText());
+        if (v.NUM_INT() != null) {
+            int i = parseInt(v.NUM_INT().getText());
+            return t.kind == REAL_T ? (Object) (double) i : (Object) i;
+        }
+        if (v.NUM_REAL() != null) {
+            double d = Double.parseDouble(v.NUM_REAL().getText());
+            return t.kind == REAL_T ? (Object) d : (Object) (int) d;
+        }
+        return v.getText().equals("verdadeiro") ? 1 : 0;
+    }
+
+    private static String string(String token) {
+        return token.substring(1, token.length() - 1).replace("\\'", "'");
+    }
+
+    private Var lookup(String ident) {
+        Var v = locals != null ? locals.get(ident) : null;
+        return v != null ? v : globals.get(ident);
+    }
+
+    private static IllegalArgumentException unsupported(ParserRuleContext where, String message) {
+        return new IllegalArgumentException("Linha " + where.getStart().getLine() + ": nao e possivel gerar C: " + message);
+    }
+
+    // ---------------------------------------------------------------- literais
+
+    private static String intLiteral(long v) {
+        if (v == Integer.MIN_VALUE) return "(-2147483647 - 1)";
+        return v < 0 ? "(" + v + ")" : Long.toString(v);
+    }
+
+    // Double.toString tem dígitos suficientes para o C ler de volta o mesmo double
+    private static String realLiteral(double v) {
+        if (Double.isInfinite(v)) return v > 0 ? "(1e308 * 10.0)" : "(-1e308 * 10.0)";
+        String s = Double.toString(v);
+        return s.startsWith("-") ? "(" + s + ")" : s;
+    }
+
+    // Bytes UTF-8 fora do ASCII visível vão como escapes octais; '?' também, por causa dos trígrafos
+    private static String stringLiteral(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            int c = b & 0xff;
+            if (c == '"' || c == '\\') sb.append('\\').append((char) c);
+            else if (c >= 0x20 && c < 0x7f && c != '?') sb.append((char) c);
+            else sb.append('\\').append((char) ('0' + (c >> 6))).append((char) ('0' + (c >> 3 & 7))).append((char) ('0' + (c & 7)));
+        }
+        return sb.append('"').toString();
+    }
+
+    // ---------------------------------------------------------------- comandos
+
+    private void line(String text) {
+        for (int i = 0; i < depth; i++) out.print("    ");
+        out.println(text);
+    }
+
+    private void commands(List<CmdContext> cmds) {
+        for (CmdContext c : cmds) command(c);
+    }
+
+    private void command(CmdContext c) {
+        line = c.getStart().getLine();
+        if (c.cmdAtribuicao() != null) assignment(c.cmdAtribuicao());
+        else if (c.cmdEscreva() != null) write(c.cmdEscreva());
+        else if (c.cmdLeia() != null) read(c.cmdLeia());
+        else if (c.cmdSe() != null) conditional(c.cmdSe());
+        else if (c.cmdEnquanto() != null) whileLoop(c.cmdEnquanto());
+        else if (c.cmdPara() != null) forLoop(c.cmdPara());
+        else if (c.cmdFaca() != null) doLoop(c.cmdFaca());
+        else if (c.cmdCaso() != null) caseOf(c.cmdCaso());
+        else if (c.cmdChamada() != null) line(bare(call(c.cmdChamada().IDENT(), c.cmdChamada().expressao(), c).code) + ";");
+        else if (c.cmdRetorne() != null) ret(c.cmdRetorne());
+    }
+
+    private void assignment(CmdAtribuicaoContext a) {
+        Exp v = value(a.expressao());
+        Place p = place(a.identificador(), a.CIRCUNFLEXO() != null);
+        line(p.code + " = " + bare(convert(v, p.type)) + ";");
+    }
+
+    private void write(CmdEscrevaContext w) {
+        StringJoiner calls = new StringJoiner(" ");
+        for (ExpressaoContext e : w.expressao()) {
+            Exp v = value(e);
+            String f;
+            switch (v.type.kind) {
+                case INTEGER: case LOGICAL: f = "la_write_int"; break;
+                case REAL_T: f = "la_write_real"; break;
+                case LITERAL: f = "la_write_str"; break;
+                default: throw unsupported(e, "escreva de " + e.getText());
+            }
+            calls.add(f + "(" + bare(v.code) + ");");
+        }
+        line(calls.toString());
+    }
+
+    private void read(CmdLeiaContext l) {
+        boolean deref = false;
+        for (ParseTree child : l.children) {
+            if (JanderSemanticoUtils.isToken(child, JanderParser.CIRCUNFLEXO)) {
+                deref = true;
+            } else if (child instanceof IdentificadorContext) {
+                Place p = place((IdentificadorContext) child, deref);
+                String f;
+                switch (p.type.kind) {
+                    case INTEGER: case LOGICAL: f = "la_read_int"; break;
+                    case REAL_T: f = "la_read_real"; break;
+                    case LITERAL: f = "la_read_word"; break;
+                    default: throw unsupported(l, "leia de " + child.getText());
+                }
+                line(p.code + " = " + f + "(" + line + ");");
+                deref = false;
+            }
+        }
+    }
+
+    private void conditional(CmdSeContext s) {
+        List<CmdContext> then = new ArrayList<>(), alternative = new ArrayList<>();
+        boolean inElse = false;
+        for (ParseTree child : s.children) {
+            if (JanderSemanticoUtils.isToken(child, JanderParser.SENAO)) inElse = true;
+            else if (child instanceof CmdContext) (inElse ? alternative : then).add((CmdContext) child);
+        }
+        line("if (" + bare(value(s.expressao()).code) + ") {");
+        block(then);
+        if (s.SENAO() != null) {
+            line("} else {");
+            block(alternative);
+        }
+        line("}");
+    }
+
+    private void block(List<CmdContext> cmds) {
+        depth++;
+        commands(cmds);
+        depth--;
+    }
+
+    private void whileLoop(CmdEnquantoContext w) {
+        line("while (" + bare(value(w.expressao()).code) + ") {");
+        block(w.cmd());
+        line("}");
+    }
+
+    private void doLoop(CmdFacaContext f) {
+        line("do {");
+        block(f.cmd());
+        line = f.expressao().getStart().getLine();
+        line("} while (" + not(value(f.expressao()).code) + ");");
+    }
+
+    // para i <- a ate b: for (i = a; i <= b; i++), com b reavaliado a cada volta como na BytecodeVM
+    private void forLoop(CmdParaContext p) {
+        Place i = variable(p.IDENT().getText(), p);
+        String start = bare(convert(arithmetic(p.exp_aritmetica(0)), i.type));
+        String limit = arithmetic(p.exp_aritmetica(1)).code;
+        line("for (" + i.code + " = " + start + "; " + i.code + " <= " + limit + "; " + i.code + "++) {");
+        block(p.cmd());
+        line("}");
+    }
+
+    private void caseOf(CmdCasoContext c) {
+        line("switch (" + bare(convert(arithmetic(c.exp_aritmetica()), INTEGER_TYPE)) + ") {");
+        depth++;
+        List<long[]> taken = new ArrayList<>();
+        for (Item_selecaoContext item : c.selecao().item_selecao()) {
+            List<long[]> labels = new ArrayList<>();
+            for (Numero_intervaloContext n : item.constantes().numero_intervalo()) {
+                long[] r = interval(n);
+                if (r[0] > r[1]) continue;
+                // Só os valores que nenhum item anterior tomou
+                List<long[]> pieces = subtract(r, taken);
+                labels.addAll(pieces);
+                taken.addAll(pieces);
+            }
+            if (labels.isEmpty()) continue; // item inalcançável
+            for (long[] l : labels) {
+                line(l[0] == l[1] ? "case " + intLiteral(l[0]) + ":" : "case " + intLiteral(l[0]) + " ... " + intLiteral(l[1]) + ":");
+            }
+            block(item.cmd());
+            depth++;
+            line("break;");
+            depth--;
+        }
+        if (!c.cmd().isEmpty()) {
+            line("default:");
+            block(c.cmd());
+        }
+        depth--;
+        line("}");
+    }
+
+    // lo .. hi de um numero_intervalo, limitados ao intervalo de int
+    private static long[] interval(Numero_intervaloContext n) {
+        List<Long> values = new ArrayList<>();
+        boolean negative = false;
+        for (ParseTree child : n.children) {
+            if (child instanceof Op_unarioContext) negative = true;
+            else if (JanderSemanticoUtils.isToken(child, JanderParser.NUM_INT)) {
+                BigInteger v = new BigInteger(child.getText());
+                if (negative) v = v.negate();
+                values.add(v.max(BigInteger.valueOf(Integer.MIN_VALUE)).min(BigInteger.valueOf(Integer.MAX_VALUE)).longValue());
+                negative = false;
+            }
+        }
+        long lo = values.get(0), hi = values.size() > 1 ? values.get(1) : lo;
+        return new long[] {lo, hi};
+    }
+
+    // Partes de r fora dos intervalos de taken
+    private static List<long[]> subtract(long[] r, List<long[]> taken) {
+        List<long[]> pieces = new ArrayList<>();
+        pieces.add(r);
+        for (long[] t : taken) {
+            List<long[]> rest = new ArrayList<>();
+            for (long[] p : pieces) {
+                if (t[1] < p[0] || t[0] > p[1]) {
+                    rest.add(p);
+                    continue;
+                }
+                if (p[0] < t[0]) rest.add(new long[] {p[0], t[0] - 1});
+                if (p[1] > t[1]) rest.add(new long[] {t[1] + 1, p[1]});
+            }
+            pieces = rest;
+        }
+        return pieces;
+    }
+
+    private void ret(CmdRetorneContext r) {
+        if (main) line("return 0;");
+        else if (signature.result == null) line("la_depth--; return;");
+        else line("la_result = " + bare(convert(value(r.expressao()), signature.result)) + "; la_depth--; return la_result;");
+    }
+
+    // ---------------------------------------------------------------- expressões
+
+    private Exp value(ExpressaoContext e) {
+        if (e instanceof ExpLogicaContext) {
+            boolean v = JanderSemanticoUtils.isToken(e.getChild(e.getChildCount() - 1), JanderParser.VERDADEIRO);
+            if (e.getChildCount() > 1) v = !v;
+            return new Exp(v ? "1" : "0", LOGICAL_TYPE, v ? 1 : 0);
+        }
+        if (e instanceof ExpRelacionalContext) {
+            ExpRelacionalContext rel = (ExpRelacionalContext) e;
+            if (rel.op == null) {
+                Exp v = arithmetic(rel.exp_aritmetica(0));
+                if (rel.nao == null) return v;
+                if (v.constant != null) return new Exp(v.constant == 0 ? "1" : "0", LOGICAL_TYPE, v.constant == 0 ? 1 : 0);
+                return new Exp(not(v.code), LOGICAL_TYPE);
+            }
+            return compare(arithmetic(rel.exp_aritmetica(0)), arithmetic(rel.exp_aritmetica(1)), rel.op.getText(),
+                rel.nao != null, rel);
+        }
+        // 'e' / 'ou': os operadores do C já fazem curto-circuito
+        StringJoiner j = new StringJoiner(e instanceof ExpOuContext ? " || " : " && ", "(", ")");
+        for (ExpressaoContext o : operands(e)) j.add(value(o).code);
+        return new Exp(j.toString(), LOGICAL_TYPE);
+    }
+
+    private static List<ExpressaoContext> operands(ExpressaoContext e) {
+        List<ExpressaoContext> chain = JanderSemanticoUtils.chain(e);
+        List<ExpressaoContext> operands = new ArrayList<>();
+        operands.add((ExpressaoContext) chain.get(0).getChild(0));
+        for (ExpressaoContext node : chain) operands.add((ExpressaoContext) node.getChild(2));
+        return operands;
+    }
+
+    private static Exp compare(Exp left, Exp right, String op, boolean negated, ParserRuleContext where) {
+        if (left.type.kind == LITERAL || right.type.kind == LITERAL) {
+            if (!op.equals("=") && !op.equals("<>")) {
+                // Ordem com strcmp, como o compareTo dos outros backends; entre literais 'nao' é o operador oposto
+                String cmp = "la_strcmp(" + bare(left.code) + ", " + bare(right.code) + ")";
+                return new Exp("(" + cmp + " " + relational(negated ? negate(op) : op) + " 0)", LOGICAL_TYPE);
+            }
+            boolean equal = op.equals("=") != negated;
+            return new Exp((equal ? "" : "!") + "la_streq(" + bare(left.code) + ", " + bare(right.code) + ")", LOGICAL_TYPE);
+        }
+        boolean integral = left.type.integral() && right.type.integral();
+        if (!integral && left.type.kind != REAL_T && right.type.kind != REAL_T && !op.equals("=") && !op.equals("<>")) {
+            throw unsupported(where, "comparacao entre " + where.getText());
+        }
+        // Entre reais, 'nao' nega o resultado (com NaN, nao a < b não é o mesmo que a >= b)
+        String code = "(" + left.code + " " + relational(integral && negated ? negate(op) : op) + " " + right.code + ")";
+        return new Exp(negated && !integral ? "!" + code : code, LOGICAL_TYPE);
+    }
+
+    private Exp arithmetic(Exp_aritmeticaContext e) {
+        if (JanderSemanticoUtils.isChain(e)) {
+            // Cadeia de operadores de mesma precedência: sem recursão na espinha esquerda
+            List<Exp_aritmeticaContext> chain = JanderSemanticoUtils.chain(e);
+            Exp v = arithmetic((Exp_aritmeticaContext) chain.get(0).getChild(0));
+            for (Exp_aritmeticaContext node : chain) {
+                v = binary(v, arithmetic((Exp_aritmeticaContext) node.getChild(2)), node.getChild(1).getText(), node);
+            }
+            return v;
+        }
+        if (e instanceof ExpInteiroContext) {
+            ExpInteiroContext n = (ExpInteiroContext) e;
+            int v = parseInt(n.NUM_INT().getText());
+            return constant(n.op_unario() != null ? -v : v);
+        }
+        if (e instanceof ExpRealContext) {
+            ExpRealContext n = (ExpRealContext) e;
+            double v = Double.parseDouble(n.NUM_REAL().getText());
+            return new Exp(realLiteral(n.op_unario() != null ? -v : v), REAL_TYPE);
+        }
+        if (e instanceof ExpCadeiaContext) {
+            return new Exp(stringLiteral(string(((ExpCadeiaContext) e).CADEIA().getText())), LITERAL_TYPE);
+        }
+        if (e instanceof ExpIdentificadorContext) {
+            ExpIdentificadorContext id = (ExpIdentificadorContext) e;
+            return minus(identifier(id.identificador(), id.CIRCUNFLEXO() != null), id.op_unario() != null);
+        }
+        if (e instanceof ExpChamadaContext) {
+            ExpChamadaContext c = (ExpChamadaContext) e;
+            return minus(call(c.IDENT(), c.expressao(), c), c.op_unario() != null);
+        }
+        if (e instanceof ExpParentesesContext) {
+            ExpParentesesContext p = (ExpParentesesContext) e;
+            Exp v = value(p.expressao());
+            return minus(new Exp(parenthesized(v.code) ? v.code : "(" + v.code + ")", v.type, v.constant), p.op_unario() != null);
+        }
+        if (e instanceof ExpEnderecoContext) {
+            Place p = place(((ExpEnderecoContext) e).identificador(), false);
+            return new Exp("(" + address(p.code) + ")", new Type(POINTER, p.type, null));
+        }
+        throw unsupported(e, "expressao " + e.getText());
+    }
+
+    private static Exp constant(int v) {
+        return new Exp(intLiteral(v), INTEGER_TYPE, v);
+    }
+
+    private Exp identifier(IdentificadorContext id, boolean deref) {
+        Var v = lookup(id.IDENT(0).getText());
+        if (v != null && v.storage == CONSTANT) {
+            return new Exp(v.name, v.type, v.constant instanceof Integer ? (Integer) v.constant : null);
+        }
+        Place p = place(id, deref);
+        return new Exp(p.code, p.type);
+    }
+
+    private static Exp minus(Exp v, boolean negative) {
+        if (!negative) return v;
+        if (v.constant != null) return new Exp(intLiteral(-v.constant), v.type, -v.constant);
+        return new Exp("(-" + v.code + ")", v.type);
+    }
+
+    private Exp binary(Exp left, Exp right, String op, ParserRuleContext where) {
+        if (left.type.kind == LITERAL) {
+            return new Exp("la_concat(" + bare(left.code) + ", " + bare(right.code) + ")", LITERAL_TYPE);
+        }
+        if (left.type.kind == REAL_T || right.type.kind == REAL_T) {
+            if (op.equals("%")) throw unsupported(where, "% entre reais");
+            return new Exp("(" + left.code + " " + op + " " + right.code + ")", REAL_TYPE);
+        }
+        if (left.constant != null && right.constant != null) {
+            Integer folded = fold(left.constant, right.constant, op);
+            if (folded != null) return constant(folded);
+        }
+        // Divisores constantes diferentes de 0 e -1 não precisam de verificação
+        if ((op.equals("/") || op.equals("%")) && (right.constant == null || right.constant == 0 || right.constant == -1)) {
+            return new Exp((op.equals("/") ? "la_div(" : "la_mod(") + bare(left.code) + ", " + bare(right.code) + ", " + line + ")",
+                INTEGER_TYPE);
+        }
+        return new Exp("(" + left.code + " " + op + " " + right.code + ")", INTEGER_TYPE);
+    }
+
+    // Valor convertido para o tipo de destino de uma atribuição, parâmetro ou retorno
+    private static String convert(Exp v, Type target) {
+        if (target.integral() && v.type.kind == REAL_T) return "la_d2i(" + bare(v.code) + ")";
+        return v.code;
+    }
+
+    // ---------------------------------------------------------------- chamadas
+
+    private Exp call(TerminalNode ident, List<ExpressaoContext> args, ParserRuleContext where) {
+        String n = ident.getText();
+        Signature s = signatures.get(n);
+        if (s == null) throw unsupported(where, "rotina " + n + " nao declarada no programa (importada?)");
+        if (s.params.size() != args.size()) throw unsupported(where, "numero de argumentos de " + n);
+        StringJoiner j = new StringJoiner(", ", s.name + "(", ")");
+        for (int k = 0; k < args.size(); k++) {
+            if (s.byReference.get(k)) {
+                IdentificadorContext id = lvalue(args.get(k));
+                if (id == null) throw unsupported(args.get(k), "argumento 'var' que nao e variavel: " + args.get(k).getText());
+                j.add(address(place(id, ((ExpIdentificadorContext) id.getParent()).CIRCUNFLEXO() != null).code));
+            } else {
+                j.add(bare(convert(value(args.get(k)), s.params.get(k))));
+            }
+        }
+        return new Exp(j.toString(), s.result != null ? s.result : INTEGER_TYPE);
+    }
+
+    // O identificador de um argumento que é só uma variável (para parâmetros 'var'), ou null
+    private static IdentificadorContext lvalue(ExpressaoContext e) {
+        if (!(e instanceof ExpRelacionalContext)) return null;
+        ExpRelacionalContext rel = (ExpRelacionalContext) e;
+        if (rel.op != null || rel.nao != null || !(rel.exp_aritmetica(0) instanceof ExpIdentificadorContext)) return null;
+        ExpIdentificadorContext id = (ExpIdentificadorContext) rel.exp_aritmetica(0);
+        return id.op_unario() == null ? id.identificador() : null;
+    }
+
+    // ---------------------------------------------------------------- lugares
+
+    private Place variable(String ident, ParserRuleContext where) {
+        Var v = lookup(ident);
+        if (v == null || v.storage == CONSTANT) throw unsupported(where, ident + " nao e uma variavel");
+        return new Place(v.storage == REFERENCE ? "(*" + v.name + ")" : v.name, v.type, v.dims);
+    }
+
+    // a.b.c[i], com '^' opcional; em v.x[i] com v arranjo de registros, o índice é de v
+    private Place place(IdentificadorContext id, boolean deref) {
+        Place p = variable(id.IDENT(0).getText(), id);
+        int parts = JanderSemanticoUtils.identPartCount(id);
+        DimensaoContext dims = id.dimensao();
+        boolean indexed = false;
+        if (parts > 1 && p.dims != null) {
+            p = index(p, dims);
+            indexed = true;
+        }
+        for (int i = 1; i < parts; i++) {
+            String fieldName = id.IDENT(i).getText();
+            if (p.type.kind != RECORD || p.dims != null) throw unsupported(id, "campo " + fieldName + " de " + id.getText());
+            Field f = p.type.record.fields.get(fieldName);
+            if (f == null) throw unsupported(id, "campo " + fieldName + " de " + id.getText());
+            p = new Place(p.code + "." + f.name, f.type, f.dims);
+        }
+        if (!indexed && !dims.exp_aritmetica().isEmpty()) p = index(p, dims);
+        if (deref) {
+            if (p.type.kind != POINTER) throw unsupported(id, "^ de " + id.getText());
+            p = new Place("(*(" + ctype(p.type) + ") la_ptr(" + bare(p.code) + ", " + line + "))", p.type.target, null);
+        }
+        return p;
+    }
+
+    // Índices verificados contra cada dimensão, exceto constantes dentro dos limites e os provados seguros
+    private Place index(Place p, DimensaoContext d) {
+        List<Exp_aritmeticaContext> exps = d.exp_aritmetica();
+        if (p.dims == null || exps.size() != p.dims.length) throw unsupported(d, "indexacao de " + d.getParent().getText());
+        StringBuilder code = new StringBuilder(p.code);
+        for (int k = 0; k < exps.size(); k++) {
+            Exp v = arithmetic(exps.get(k));
+            String i = bare(convert(v, INTEGER_TYPE));
+            int n = p.dims[k];
+            boolean safe = v.constant != null ? v.constant >= 0 && v.constant < n : bounds.provenSafe(exps.get(k));
+            code.append('[').append(safe ? i : "la_index(" + i + ", " + n + ", " + line + ")").append(']');
+        }
+        return new Place(code.toString(), p.type, null);
+    }
+
+    // &lugar; o endereço de (*p) é o próprio p
+    private static String address(String place) {
+        return place.startsWith("(*") && parenthesized(place) ? place.substring(2, place.length() - 1) : "&" + place;
+    }
+
+    // ---------------------------------------------------------------- texto das expressões
+
+    // Se o código inteiro está entre um par de parênteses
+    private static boolean parenthesized(String code) {
+        if (code.isEmpty() || code.charAt(0) != '(') return false;
+        int level = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == '"') {
+                for (i++; code.charAt(i) != '"'; i++) if (code.charAt(i) == '\\') i++;
+            } else if (c == '(') {
+                level++;
+            } else if (c == ')' && --level == 0) {
+                return i == code.length() - 1;
+            }
+        }
+        return false;
+    }
+
+    // Sem os parênteses externos, onde o contexto já separa a expressão
+    private static String bare(String code) {
+        return parenthesized(code) ? code.substring(1, code.length() - 1) : code;
+    }
+
+    private static String not(String code) {
+        return parenthesized(code) || code.matches("\\w+") ? "!" + code : "!(" + code + ")";
+    }
+
+    private static String relational(String op) {
+        switch (op) {
+            case "=": return "==";
+            case "<>": return "!=";
+            default: return op;
+        }
+    }
+
+    private static String negate(String op) {
+        switch (op) {
+            case "<": return ">=";
+            case "<=": return ">";
+            case ">": return "<=";
+            case ">=": return "<";
+            case "=": return "<>";
+            default: return "=";
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Escritor mínimo de arquivos .class, só com o que o JvmBackend usa: pool de constantes, métodos estáticos
+ * com atributo Code e tabela de exceções.
+ *
+ * Gera a versão 49 (Java 5) do formato: a JVM verifica essas classes por inferência de tipos, então não é
+ * preciso calcular StackMapTable. Desvios usam deslocamentos de 16 bits; quem monta o código deve recusar
+ * métodos com mais de 32767 bytes.
+ */
+final class ClassFileWriter {
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassFileWriter(String name) {
+        this.thisClass = classRef(name);
+        this.superClass = classRef("java/lang/Object");
+    }
+
+    // ---------------------------------------------------------------- pool de constantes
+
+    private int entry(String key, int slots, Writer w) {
+        Integer i = entries.get(key);
+        if (i != null) return i;
+        int index = poolCount;
+        try {
+            w.write(poolOut);
+        } catch (IOException e) {
+            // Só acontece com textos de mais de 65535 bytes, que o formato não comporta
+            throw new IllegalArgumentException("constante grande demais para um arquivo .class", e);
+        }
+        poolCount += slots;
+        if (poolCount > 0xffff) throw new IllegalArgumentException("pool de constantes grande demais");
+        entries.put(key, index);
+        return index;
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    int utf8(String s) {
+        return entry("U" + s, 1, out -> { out.writeByte(1); out.writeUTF(s); });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, 1, out -> { out.writeByte(7); out.writeShort(name); });
+    }
+
+    int string(String s) {
+        int value = utf8(s);
+        return entry("S" + s, 1, out -> { out.writeByte(8); out.writeShort(value); });
+    }
+
+    int integer(int v) {
+        return entry("I" + v, 1, out -> { out.writeByte(3); out.writeInt(v); });
+    }
+
+    int real(double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        return entry("D" + bits, 2, out -> { out.writeByte(6); out.writeLong(bits); });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int n = utf8(name), d = utf8(descriptor);
+        return entry("N" + name + ' ' + descriptor, 1, out -> { out.writeByte(12); out.writeShort(n); out.writeShort(d); });
+    }
+
+    int field(String owner, String name, String descriptor) {
+        int c = classRef(owner), nt = nameAndType(name, descriptor);
+        return entry("F" + owner + '.' + name + ' ' + descriptor, 1, out -> { out.writeByte(9); out.writeShort(c); out.writeShort(nt); });
+    }
+
+    int method(String owner, String name, String descriptor) {
+        int c = classRef(owner), nt = nameAndType(name, descriptor);
+        return entry("M" + owner + '.' + name + ' ' + descriptor, 1, out -> { out.writeByte(10); out.writeShort(c); out.writeShort(nt); });
+    }
+
+    // ---------------------------------------------------------------- métodos
+
+    /** Método static com o código montado em c */
+    void addMethod(int access, String name, String descriptor, Code c) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8("Code"));
+            byte[] code = c.bytes();
+            out.writeInt(12 + code.length + 8 * c.handlers.size());
+            out.writeShort(c.maxStack);
+            out.writeShort(c.maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(c.handlers.size());
+            for (int[] h : c.handlers) {
+                out.writeShort(h[0]);
+                out.writeShort(h[1]);
+                out.writeShort(h[2]);
+                out.writeShort(h[3]);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolOut.flush();
+            pool.writeTo(out);
+            out.writeShort(0x0010 | 0x0020); // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // campos
+            out.writeShort(methods.size());
+            for (byte[] m : methods) out.write(m);
+            out.writeShort(0); // atributos
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // ---------------------------------------------------------------- código
+
+    /** Rótulo de desvio: posição no código, fixada por Code.bind() */
+    static final class Label {
+        private int pos = -1;
+        private final List<int[]> refs = new ArrayList<>(); // {posição do operando, início da instrução, largura}
+    }
+
+    /** Código de um método em montagem */
+    static final class Code {
+        private byte[] buf = new byte[256];
+        private int size;
+        private final List<Label> labels = new ArrayList<>();
+        final List<int[]> handlers = new ArrayList<>(); // {início, fim, tratador, tipo (0 = qualquer)}
+        int maxStack, maxLocals;
+
+        int size() {
+            return size;
+        }
+
+        void op(int b) {
+            if (size == buf.length) buf = Arrays.copyOf(buf, size * 2);
+            buf[size++] = (byte) b;
+        }
+
+        void op(int b, int u1) {
+            op(b);
+            op(u1);
+        }
+
+        void op2(int b, int u2) {
+            op(b);
+            op(u2 >> 8);
+            op(u2);
+        }
+
+        void s4(int v) {
+            op(v >> 24);
+            op(v >> 16);
+            op(v >> 8);
+            op(v);
+        }
+
+        /** Desvio de 16 bits (goto, if*) para l */
+        void jump(int opcode, Label l) {
+            int at = size;
+            op(opcode);
+            ref(l, at, 2);
+        }
+
+        private void ref(Label l, int instruction, int width) {
+            int operand = size;
+            for (int i = 0; i < width; i++) op(0);
+            l.refs.add(new int[] {operand, instruction, width});
+        }
+
+        Label label() {
+            Label l = new Label();
+            labels.add(l);
+            return l;
+        }
+
+        void bind(Label l) {
+            l.pos = size;
+        }
+
+        /** tableswitch sobre [lo, hi], com targets[v - lo] e o padrão dflt */
+        void tableswitch(int lo, int hi, Label dflt, Label[] targets) {
+            int at = size;
+            op(0xaa);
+            while (size % 4 != 0) op(0);
+            ref(dflt, at, 4);
+            s4(lo);
+            s4(hi);
+            for (Label t : targets) ref(t, at, 4);
+        }
+
+        void handler(int start, int end, int handler) {
+            if (start < end) handlers.add(new int[] {start, end, handler, 0});
+        }
+
+        // Código final, com os desvios resolvidos (deslocamentos relativos ao início de cada instrução)
+        byte[] bytes() {
+            for (Label l : labels) {
+                for (int[] r : l.refs) {
+                    int offset = l.pos - r[1];
+                    if (r[2] == 2) {
+                        buf[r[0]] = (byte) (offset >> 8);
+                        buf[r[0] + 1] = (byte) offset;
+                    } else {
+                        buf[r[0]] = (byte) (offset >> 24);
+                        buf[r[0] + 1] = (byte) (offset >> 16);
+                        buf[r[0] + 2] = (byte) (offset >> 8);
+                        buf[r[0] + 3] = (byte) offset;
+                    }
+                }
+            }
+            return Arrays.copyOf(buf, size);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * Fluxo de tokens em colunas: tipo, início, fim, linha e coluna de cada token em vetores de int paralelos,
+ * no lugar de um CommonToken por token (que ocupa uns 48 bytes, mais a referência na lista).
+ *
+ * - fill() lê todos os tokens de uma vez, como o CommonTokenStream.fill(). Com um Lexer, um TokenFactory
+ *   próprio grava as colunas direto do emit(), e o léxico não cria nenhum objeto por token.
+ * - LA(), que é quase tudo o que a predição do parser usa, lê só a coluna de tipos.
+ * - Um Token só é criado quando o parser (LT, get) ou um listener de erros pede: uma visão de poucos bytes
+ *   sobre as colunas, guardada para que o mesmo índice devolva sempre o mesmo objeto. O texto sai do
+ *   CharStream na hora (a gramática de LA não troca o texto de nenhum token).
+ * - Todos os tokens ficam no canal padrão: o léxico de LA descarta espaços e comentários com skip().
+ *
+ * Reaproveitável: um novo fill() (ou clear()) recomeça do zero. Os vetores só são mantidos se nenhum Token
+ * foi entregue; senão ficam com os Tokens (e com a árvore que os usa) e o fluxo passa a usar outros.
+ */
+public final class ColumnarTokenStream implements TokenStream {
+    private static final int INITIAL_CAPACITY = 1024;
+    // Acima disto clear() não guarda os vetores, para uma sessão não ficar com a memória de um arquivo enorme
+    private static final int RETAINED_CAPACITY = 1 << 16;
+    // Devolvido ao Lexer pelo TokenFactory de gravação; ninguém olha para ele
+    private static final Token RECORDED = new CommonToken(Token.INVALID_TYPE);
+
+    // As colunas de um fill(); as visões apontam para cá, então continuam valendo depois de um clear()
+    private static final class Columns {
+        int[] type, start, stop, line, column;
+        int count;
+        TokenSource source;
+        CharStream input;
+
+        Columns(int capacity) {
+            type = new int[capacity];
+            start = new int[capacity];
+            stop = new int[capacity];
+            line = new int[capacity];
+            column = new int[capacity];
+        }
+
+        String text(int i) {
+            if (type[i] == Token.EOF) return "<EOF>";
+            return input.getText(Interval.of(start[i], stop[i]));
+        }
+    }
+
+    private Columns c = new Columns(INITIAL_CAPACITY);
+    private Token[] views; // Criados sob demanda; null enquanto nenhum foi pedido
+    private int p;
+
+    private final TokenFactory<Token> recorder = new TokenFactory<Token>() {
+        @Override
+        public Token create(Pair<TokenSource, CharStream> source, int type, String text, int channel, int start,
+                            int stop, int line, int charPositionInLine) {
+            add(type, start, stop, line, charPositionInLine);
+            return RECORDED;
+        }
+
+        @Override
+        public Token create(int type, String text) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    /** Todos os tokens de source, até o EOF, no lugar dos anteriores */
+    public ColumnarTokenStream fill(TokenSource source) {
+        clear();
+        c.source = source;
+        c.input = source.getInputStream();
+        if (source instanceof Lexer) {
+            // O Lexer volta ao TokenFactory dele: o parser o usa para criar tokens que faltam na recuperação
+            Lexer lexer = (Lexer) source;
+            TokenFactory<?> previous = lexer.getTokenFactory();
+            lexer.setTokenFactory(recorder);
+            try {
+                while (c.count == 0 || c.type[c.count - 1] != Token.EOF) lexer.nextToken();
+            } finally {
+                lexer.setTokenFactory(previous);
+            }
+        } else {
+            Token t;
+            do {
+                t = source.nextToken();
+                add(t.getType(), t.getStartIndex(), t.getStopIndex(), t.getLine(), t.getCharPositionInLine());
+            } while (t.getType() != Token.EOF);
+        }
+        return this;
+    }
+
+    /** Colunas prontas (lidas pelo ParseCache), com count tokens até o EOF; os vetores passam a ser do fluxo */
+    ColumnarTokenStream adopt(TokenSource source, CharStream input, int count, int[] type, int[] start, int[] stop,
+                              int[] line, int[] column) {
+        clear();
+        c = new Columns(0);
+        c.type = type;
+        c.start = start;
+        c.stop = stop;
+        c.line = line;
+        c.column = column;
+        c.count = count;
+        c.source = source;
+        c.input = input;
+        return this;
+    }
+
+    /** Esquece os tokens e o fonte; os Tokens já entregues continuam válidos (ficam com as colunas deles) */
+    public void clear() {
+        if (views != null || c.type.length > RETAINED_CAPACITY) {
+            c = new Columns(INITIAL_CAPACITY);
+            views = null;
+        } else {
+            c.count = 0;
+            c.source = null;
+            c.input = null;
+        }
+        p = 0;
+    }
+
+    /** Todos os tokens como Tokens, já criados (para ler de várias threads) */
+    public List<Token> tokens() {
+        for (int i = 0; i < c.count; i++) get(i);
+        Token[] all = views;
+        int n = c.count;
+        return new AbstractList<Token>() {
+            @Override
+            public Token get(int index) {
+                if (index >= n) throw new IndexOutOfBoundsException(index);
+                return all[index];
+            }
+
+            @Override
+            public int size() {
+                return n;
+            }
+        };
+    }
+
+    private void add(int t, int a, int b, int l, int col) {
+        if (c.count == c.type.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, c.type.length * 2);
+            c.type = Arrays.copyOf(c.type, capacity);
+            c.start = Arrays.copyOf(c.start, capacity);
+            c.stop = Arrays.copyOf(c.stop, capacity);
+            c.line = Arrays.copyOf(c.line, capacity);
+            c.column = Arrays.copyOf(c.column, capacity);
+            if (views != null) views = Arrays.copyOf(views, capacity);
+        }
+        int i = c.count++;
+        c.type[i] = t;
+        c.start[i] = a;
+        c.stop[i] = b;
+        c.line[i] = l;
+        c.column[i] = col;
+    }
+
+    /** Tipo do token de índice i, sem criar o Token */
+    public int type(int i) {
+        return c.type[i];
+    }
+
+    // As outras colunas, para o ParseCache gravar os tokens sem criar Tokens
+    int start(int i) {
+        return c.start[i];
+    }
+
+    int stop(int i) {
+        return c.stop[i];
+    }
+
+    int line(int i) {
+        return c.line[i];
+    }
+
+    int column(int i) {
+        return c.column[i];
+    }
+
+    // ---------------------------------------------------------------- TokenStream
+
+    @Override
+    public Token get(int index) {
+        if (index < 0 || index >= c.count) throw new IndexOutOfBoundsException("token index " + index + " out of range 0.." + (c.count - 1));
+        if (views == null) views = new Token[c.type.length];
+        Token t = views[index];
+        if (t == null) views[index] = t = new View(c, index);
+        return t;
+    }
+
+    @Override
+    public Token LT(int k) {
+        if (k == 0 || c.count == 0) return null;
+        if (k < 0) return p + k < 0 ? null : get(p + k);
+        int i = p + k - 1;
+        return get(i >= c.count ? c.count - 1 : i);
+    }
+
+    @Override
+    public int LA(int k) {
+        if (k == 0) return Token.INVALID_TYPE;
+        if (c.count == 0) return Token.EOF;
+        int i = k < 0 ? p + k : p + k - 1;
+        if (i < 0) return Token.INVALID_TYPE;
+        return c.type[i >= c.count ? c.count - 1 : i];
+    }
+
+    @Override
+    public void consume() {
+        if (LA(1) == Token.EOF) throw new IllegalStateException("cannot consume EOF");
+        p++;
+    }
+
+    @Override
+    public int index() {
+        return p;
+    }
+
+    @Override
+    public void seek(int index) {
+        p = index;
+    }
+
+    @Override
+    public int mark() {
+        return 0;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int size() {
+        return c.count;
+    }
+
+    @Override
+    public TokenSource getTokenSource() {
+        return c.source;
+    }
+
+    @Override
+    public String getSourceName() {
+        return c.source.getSourceName();
+    }
+
+    @Override
+    public String getText() {
+        return getText(Interval.of(0, c.count - 1));
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int a = Math.max(0, interval.a), b = Math.min(c.count - 1, interval.b);
+        StringBuilder sb = new StringBuilder();
+        for (int i = a; i <= b && c.type[i] != Token.EOF; i++) sb.append(c.text(i));
+        return sb.toString();
+    }
+
+    @Override
+    public String getText(RuleContext ctx) {
+        return getText(ctx.getSourceInterval());
+    }
+
+    @Override
+    public String getText(Token start, Token stop) {
+        if (start == null || stop == null) return "";
+        return getText(Interval.of(start.getTokenIndex(), stop.getTokenIndex()));
+    }
+
+    // Token sobre as colunas de um fill()
+    private static final class View implements Token {
+        private final Columns tokens;
+        private final int index;
+
+        View(Columns tokens, int index) {
+            this.tokens = tokens;
+            this.index = index;
+        }
+
+        @Override
+        public String getText() {
+            return tokens.text(index);
+        }
+
+        @Override
+        public int getType() {
+            return tokens.type[index];
+        }
+
+        @Override
+        public int getLine() {
+            return tokens.line[index];
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            return tokens.column[index];
+        }
+
+        @Override
+        public int getChannel() {
+            return Token.DEFAULT_CHANNEL;
+        }
+
+        @Override
+        public int getTokenIndex() {
+            return index;
+        }
+
+        @Override
+        public int getStartIndex() {
+            return tokens.start[index];
+        }
+
+        @Override
+        public int getStopIndex() {
+            return tokens.stop[index];
+        }
+
+        @Override
+        public TokenSource getTokenSource() {
+            return tokens.source;
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return tokens.input;
+        }
+
+        @Override
+        public String toString() {
+            String text = getText().replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+            return "[@" + index + "," + getStartIndex() + ":" + getStopIndex() + "='" + text + "',<" + getType() + ">,"
+                + getLine() + ":" + getCharPositionInLine() + "]";
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CodePointBuffer;
+import org.antlr.v4.runtime.CodePointCharStream;
+
+/**
+ * Compilador para ser usado como biblioteca: o fonte vem da memória e as mensagens voltam como objetos, sem
+ * arquivos, sem escrever na saída padrão e sem System.exit.
+ *
+ *   Compiler compiler = new Compiler().withWarnings();
+ *   Compiler.Result r = compiler.compile(fonte, "programa.txt");
+ *   for (Compiler.Diagnostic d : r.diagnostics()) ...
+ *
+ * Um Compiler é imutável e pode ser usado por várias threads ao mesmo tempo: cada compile() roda o pipeline
+ * JanderPasses.diagnostics com um ParserSession do pool, então compilações repetidas não recriam léxico e parser.
+ *
+ * Um 'importe "lib.txt"' relativo resolve no diretório do nome passado a compile() ("dir/programa.txt" procura
+ * dir/lib.txt); um nome sem diretório, como o padrão "entrada", resolve no diretório atual do processo. As
+ * interfaces .jli das bibliotecas são lidas quando válidas, mas o Compiler nunca grava arquivos: sem interface
+ * válida, a biblioteca é reanalisada a cada compilação.
+ *
+ * As mensagens são as mesmas da linha de comando, com uma diferença: depois de um erro léxico ou sintático o
+ * semântico não roda (a linha de comando ainda imprime os erros semânticos da árvore parcial depois do primeiro
+ * "Fim da compilacao", que o corretor ignora).
+ */
+public final class Compiler {
+    public enum Kind {
+        LEXICAL,
+        SYNTAX,
+        SEMANTIC,
+        WARNING
+    }
+
+    /** Uma mensagem do compilador; toString() dá a linha como na saída da linha de comando */
+    public static final class Diagnostic {
+        private final Kind kind;
+        private final int line;
+        private final String message;
+
+        public Diagnostic(Kind kind, int line, String message) {
+            this.kind = kind;
+            this.line = line;
+            this.message = message;
+        }
+
+        public Kind kind() {
+            return kind;
+        }
+
+        /** Linha no fonte, a partir de 1; 0 se a mensagem não tem linha */
+        public int line() {
+            return line;
+        }
+
+        /** O texto depois de "Linha N: " (os avisos começam com "aviso: ") */
+        public String message() {
+            return message;
+        }
+
+        public boolean isError() {
+            return kind != Kind.WARNING;
+        }
+
+        @Override
+        public String toString() {
+            return line > 0 ? "Linha " + line + ": " + message : message;
+        }
+
+        // "Linha N: texto", como as mensagens do semântico e das análises de avisos
+        static Diagnostic parse(Kind kind, String text) {
+            if (text.startsWith("Linha ")) {
+                int colon = text.indexOf(": ");
+                if (colon > 6) {
+                    try {
+                        return new Diagnostic(kind, Integer.parseInt(text.substring(6, colon)), text.substring(colon + 2));
+                    } catch (NumberFormatException e) {
+                        // cai no caso sem linha
+                    }
+                }
+            }
+            return new Diagnostic(kind, 0, text);
+        }
+    }
+
+    /** Resultado de uma compilação */
+    public static final class Result {
+        private final String source;
+        private final List<Diagnostic> diagnostics;
+        private final boolean errors;
+        private final ScopeIndex scopes;
+        private final CrossReferenceIndex crossReferences;
+
+        Result(String source, List<Diagnostic> diagnostics, ScopeIndex scopes, CrossReferenceIndex crossReferences) {
+            this.source = source;
+            this.diagnostics = Collections.unmodifiableList(diagnostics);
+            this.errors = diagnostics.stream().anyMatch(Diagnostic::isError);
+            this.scopes = scopes;
+            this.crossReferences = crossReferences;
+        }
+
+        public String source() {
+            return source;
+        }
+
+        /** Erro léxico ou sintático (no máximo um, que para a análise), depois os semânticos e os avisos */
+        public List<Diagnostic> diagnostics() {
+            return diagnostics;
+        }
+
+        public boolean hasErrors() {
+            return errors;
+        }
+
+        /** Tabela de símbolos por posição; só com withSymbols() e sem erros sintáticos */
+        public Optional<ScopeIndex> scopes() {
+            return Optional.ofNullable(scopes);
+        }
+
+        /** Declarações e usos de cada símbolo; só com withSymbols() e sem erros sintáticos */
+        public Optional<CrossReferenceIndex> crossReferences() {
+            return Optional.ofNullable(crossReferences);
+        }
+
+        /** As mensagens como na saída da linha de comando, terminando em "Fim da compilacao" */
+        public String report() {
+            StringBuilder sb = new StringBuilder();
+            for (Diagnostic d : diagnostics) sb.append(d).append('\n');
+            return sb.append("Fim da compilacao\n").toString();
+        }
+    }
+
+    private static final String DEFAULT_SOURCE = "entrada";
+
+    private final boolean warnings;
+    private final boolean symbols;
+
+    public Compiler() {
+        this(false, false);
+    }
+
+    private Compiler(boolean warnings, boolean symbols) {
+        this.warnings = warnings;
+        this.symbols = symbols;
+    }
+
+    /** Também roda as análises de fluxo de dados, de apontamento e de limites de arranjos (como --avisos) */
+    public Compiler withWarnings() {
+        return new Compiler(true, symbols);
+    }
+
+    /** Mantém no resultado a tabela de símbolos e as referências cruzadas */
+    public Compiler withSymbols() {
+        return new Compiler(warnings, true);
+    }
+
+    public Result compile(CharSequence source) {
+        return compile(source, DEFAULT_SOURCE);
+    }
+
+    public Result compile(CharSequence source, String name) {
+        CharBuffer chars = CharBuffer.allocate(source.length());
+        chars.append(source).flip();
+        return compile(stream(chars, name));
+    }
+
+    /** Fonte em UTF-8 (sequências inválidas viram U+FFFD); a posição de utf8 não muda */
+    public Result compile(ByteBuffer utf8, String name) {
+        return compile(stream(StandardCharsets.UTF_8.decode(utf8.duplicate()), name));
+    }
+
+    private static CharStream stream(CharBuffer chars, String name) {
+        CodePointBuffer.Builder buffer = CodePointBuffer.builder(chars.remaining());
+        buffer.append(chars);
+        return CodePointCharStream.fromBuffer(buffer.build(), name);
+    }
+
+    private Result compile(CharStream cs) {
+        PassContext ctx;
+        try (ParserSession session = ParserSession.acquire()) {
+            ctx = JanderPasses.diagnostics(warnings).run(new PassContext(cs.getSourceName())
+                .put(JanderPasses.SOURCE, cs)
+                .put(JanderPasses.OUTPUT, new PrintWriter(Writer.nullWriter()))
+                .put(JanderPasses.SESSION, session)
+                .put(JanderPasses.WRITE_INTERFACES, false));
+        }
+
+        List<Diagnostic> diagnostics = new ArrayList<>(ctx.get(JanderPasses.SYNTAX_ERRORS));
+        for (String error : ctx.get(JanderPasses.SEMANTIC_ERRORS)) diagnostics.add(Diagnostic.parse(Kind.SEMANTIC, error));
+        if (warnings) {
+            List<String> all = PointsToAnalysis.merge(ctx.get(JanderPasses.WARNINGS), ctx.get(JanderPasses.ARRAY_BOUNDS).warnings());
+            for (String warning : all) diagnostics.add(Diagnostic.parse(Kind.WARNING, warning));
+        }
+        boolean keep = symbols && ctx.get(JanderPasses.SYNTAX_OK);
+        return new Result(cs.getSourceName(), diagnostics,
+            keep ? ctx.get(JanderPasses.SCOPES) : null,
+            keep ? ctx.get(JanderPasses.CROSS_REFERENCES) : null);
+    }
+}
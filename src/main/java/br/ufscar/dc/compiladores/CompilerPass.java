@@ -0,0 +1,74 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Um passo do compilador executado pelo PassManager. O passo declara os artefatos que lê (inputs)
+ * e os que produz (outputs); o manager deduz daí a ordem e quais passos podem rodar ao mesmo tempo.
+ * run() deve ler só os seus inputs e gravar todos os seus outputs no PassContext.
+ */
+public interface CompilerPass {
+    String name();
+
+    Set<Artifact<?>> inputs();
+
+    Set<Artifact<?>> outputs();
+
+    void run(PassContext ctx);
+
+    /** Passo simples a partir de uma função */
+    static CompilerPass of(String name, Set<Artifact<?>> inputs, Set<Artifact<?>> outputs, Consumer<PassContext> body) {
+        return new CompilerPass() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Set<Artifact<?>> inputs() {
+                return inputs;
+            }
+
+            @Override
+            public Set<Artifact<?>> outputs() {
+                return outputs;
+            }
+
+            @Override
+            public void run(PassContext ctx) {
+                body.accept(ctx);
+            }
+        };
+    }
+
+    /** Chave tipada de um artefato trocado entre passos (tokens, árvore, erros...); comparada por identidade */
+    final class Artifact<T> {
+        private final String name;
+        private final Class<? super T> type;
+
+        private Artifact(String name, Class<? super T> type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        /** Para tipos genéricos, a classe crua: Artifact.&lt;List&lt;String&gt;&gt;of("erros", List.class) */
+        public static <T> Artifact<T> of(String name, Class<? super T> type) {
+            return new Artifact<>(name, type);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        @SuppressWarnings("unchecked")
+        T cast(Object value) {
+            return (T) type.cast(value);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
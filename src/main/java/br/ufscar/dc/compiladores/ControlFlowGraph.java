@@ -0,0 +1,469 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import br.ufscar.dc.compiladores.JanderParser.*;
+
+/**
+ * Grafo de fluxo de controle de um procedimento, função ou do corpo principal.
+ *
+ * Cada bloco básico guarda, em ordem, os eventos de definição/uso das variáveis rastreadas
+ * (escalares simples locais, sem '&' aplicado). Blocos, arestas e eventos ficam em vetores de int:
+ * os eventos do bloco b ocupam eventStart[b] .. eventStart[b+1], e sucessores/predecessores
+ * seguem o mesmo esquema (succStart/predStart). O bloco 0 é a entrada e o bloco 1 a saída.
+ */
+public class ControlFlowGraph {
+    public static final int ENTRY = 0;
+    public static final int EXIT = 1;
+
+    // Tipos de evento
+    static final int USE = 0;       // leitura: a variável precisa estar inicializada
+    static final int DEF = 1;       // atribuição: o valor deve ser usado depois
+    static final int DEF_QUIET = 2; // leia, para, argumento var: inicializa sem exigir uso
+    static final int LIVE = 3;      // possível leitura que não exige inicialização (argumento var)
+    static final int CALL = 4;      // chamada de rotina: lê e escreve as variáveis globais
+    static final int RETURN = 5;    // retorne
+
+    final String name;
+    final boolean function;
+    final Token endToken;
+
+    final String[] symbols;  // variáveis rastreadas; o índice é a posição no bitset
+    final int[] initialized; // símbolos inicializados na entrada (parâmetros)
+    final int[] liveAtExit;  // símbolos lidos depois da saída (parâmetros var)
+    final int[] globals;     // símbolos afetados por CALL (apenas no corpo principal)
+
+    final int blockCount;
+    final int[] eventStart;
+    final int[] eventKind;
+    final int[] eventSymbol;
+    final int[] eventLine;
+    final int[] succStart;
+    final int[] succ;
+    final int[] predStart;
+    final int[] pred;
+
+    private ControlFlowGraph(Builder b, int[] eventStart, int[] eventKind, int[] eventSymbol, int[] eventLine,
+                             int[] succStart, int[] succ, int[] predStart, int[] pred) {
+        this.name = b.name;
+        this.function = b.function;
+        this.endToken = b.endToken;
+        this.symbols = b.symbolNames.toArray(new String[0]);
+        this.initialized = toArray(b.initialized);
+        this.liveAtExit = toArray(b.liveAtExit);
+        this.globals = toArray(b.globals);
+        this.blockCount = b.blockCount;
+        this.eventStart = eventStart;
+        this.eventKind = eventKind;
+        this.eventSymbol = eventSymbol;
+        this.eventLine = eventLine;
+        this.succStart = succStart;
+        this.succ = succ;
+        this.predStart = predStart;
+        this.pred = pred;
+    }
+
+    public int symbolCount() {
+        return symbols.length;
+    }
+
+    public int blockCount() {
+        return blockCount;
+    }
+
+    public int eventCount() {
+        return eventKind.length;
+    }
+
+    /** Grafo de um procedimento ou função; facts tem os parâmetros 'var' e os nomes com '&' de cada rotina */
+    static ControlFlowGraph of(Declaracao_globalContext ctx, RoutineFacts facts) {
+        Builder b = new Builder(ctx.IDENT().getText(), ctx.FUNCAO() != null, ctx.stop, facts.varParameters);
+        Set<String> escaped = facts.addressTaken(ctx);
+
+        if (ctx.parametros() != null) {
+            for (ParametroContext p : ctx.parametros().parametro()) {
+                if (p.tipo_estendido().tipo_basico_ident().tipo_basico() == null) continue;
+                for (IdentificadorContext id : p.identificador()) {
+                    if (!isSimple(id) || escaped.contains(id.IDENT(0).getText())) continue;
+                    int s = b.track(id.IDENT(0).getText());
+                    b.initialized.add(s);
+                    if (p.VAR() != null) b.liveAtExit.add(s);
+                }
+            }
+        }
+        b.declare(ctx.declaracao_local(), escaped, false);
+        b.commands(ctx.cmd());
+        return b.build();
+    }
+
+    /** Grafo do corpo principal: rastreia as globais e as locais de 'algoritmo' */
+    static ControlFlowGraph of(ProgramaContext ctx, RoutineFacts facts) {
+        Builder b = new Builder("algoritmo", false, ctx.stop, facts.varParameters);
+        Set<String> escaped = facts.addressTakenAnywhere;
+
+        List<Declaracao_localContext> globals = new ArrayList<>();
+        for (Decl_local_globalContext d : ctx.declaracoes().decl_local_global()) {
+            if (d.declaracao_local() != null) globals.add(d.declaracao_local());
+        }
+        b.declare(globals, escaped, true);
+        b.declare(ctx.corpo().declaracao_local(), escaped, false);
+        b.commands(ctx.corpo().cmd());
+        return b.build();
+    }
+
+    // Identificador sem campos nem índices
+    private static boolean isSimple(IdentificadorContext id) {
+        return id.IDENT().size() == 1 && id.dimensao().exp_aritmetica().isEmpty();
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] a = new int[list.size()];
+        for (int i = 0; i < a.length; i++) a[i] = list.get(i);
+        return a;
+    }
+
+    private static final class Builder {
+        final String name;
+        final boolean function;
+        final Token endToken;
+        final Map<String, boolean[]> routines;
+
+        final Map<String, Integer> symbolIndex = new HashMap<>();
+        final List<String> symbolNames = new ArrayList<>();
+        final List<Integer> initialized = new ArrayList<>();
+        final List<Integer> liveAtExit = new ArrayList<>();
+        final List<Integer> globals = new ArrayList<>();
+
+        int blockCount = 2; // entrada e saída
+        int current = ENTRY;
+
+        int eventCount = 0;
+        int[] evBlock = new int[64];
+        int[] evKind = new int[64];
+        int[] evSymbol = new int[64];
+        int[] evLine = new int[64];
+
+        int edgeCount = 0;
+        int[] edgeFrom = new int[32];
+        int[] edgeTo = new int[32];
+
+        Builder(String name, boolean function, Token endToken, Map<String, boolean[]> routines) {
+            this.name = name;
+            this.function = function;
+            this.endToken = endToken;
+            this.routines = routines;
+        }
+
+        int track(String name) {
+            Integer s = symbolIndex.get(name);
+            if (s != null) return s;
+            symbolIndex.put(name, symbolNames.size());
+            symbolNames.add(name);
+            return symbolNames.size() - 1;
+        }
+
+        // Rastreia as variáveis escalares declaradas com tipo básico (registros e vetores ficam de fora)
+        void declare(List<Declaracao_localContext> decls, Set<String> escaped, boolean global) {
+            for (Declaracao_localContext d : decls) {
+                VariavelContext v = d.variavel();
+                if (v == null || v.tipo().tipo_estendido() == null) continue;
+                if (v.tipo().tipo_estendido().tipo_basico_ident().tipo_basico() == null) continue;
+                for (IdentificadorContext id : v.identificador()) {
+                    String n = id.IDENT(0).getText();
+                    if (!isSimple(id) || escaped.contains(n)) continue;
+                    int s = track(n);
+                    if (global) globals.add(s);
+                }
+            }
+        }
+
+        int newBlock() {
+            return blockCount++;
+        }
+
+        void edge(int from, int to) {
+            if (edgeCount == edgeFrom.length) {
+                edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+                edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+            }
+            edgeFrom[edgeCount] = from;
+            edgeTo[edgeCount] = to;
+            edgeCount++;
+        }
+
+        void event(int kind, int symbol, Token token) {
+            if (eventCount == evKind.length) {
+                evBlock = Arrays.copyOf(evBlock, eventCount * 2);
+                evKind = Arrays.copyOf(evKind, eventCount * 2);
+                evSymbol = Arrays.copyOf(evSymbol, eventCount * 2);
+                evLine = Arrays.copyOf(evLine, eventCount * 2);
+            }
+            evBlock[eventCount] = current;
+            evKind[eventCount] = kind;
+            evSymbol[eventCount] = symbol;
+            evLine[eventCount] = token != null ? token.getLine() : 0;
+            eventCount++;
+        }
+
+        int symbolOf(IdentificadorContext id) {
+            if (!isSimple(id)) return -1;
+            Integer s = symbolIndex.get(id.IDENT(0).getText());
+            return s == null ? -1 : s;
+        }
+
+        void commands(List<CmdContext> cmds) {
+            for (CmdContext c : cmds) command(c);
+        }
+
+        void command(CmdContext c) {
+            if (c.cmdLeia() != null) leia(c.cmdLeia());
+            else if (c.cmdEscreva() != null) uses(c.cmdEscreva());
+            else if (c.cmdAtribuicao() != null) atribuicao(c.cmdAtribuicao());
+            else if (c.cmdChamada() != null) call(c.cmdChamada().IDENT().getText(), c.cmdChamada().expressao(), c.cmdChamada().start);
+            else if (c.cmdRetorne() != null) retorne(c.cmdRetorne());
+            else if (c.cmdSe() != null) se(c.cmdSe());
+            else if (c.cmdCaso() != null) caso(c.cmdCaso());
+            else if (c.cmdPara() != null) para(c.cmdPara());
+            else if (c.cmdEnquanto() != null) enquanto(c.cmdEnquanto());
+            else if (c.cmdFaca() != null) faca(c.cmdFaca());
+        }
+
+        void leia(CmdLeiaContext ctx) {
+            boolean caret = false;
+            for (int i = 0; i < ctx.getChildCount(); i++) {
+                ParseTree child = ctx.getChild(i);
+                if (JanderSemanticoUtils.isToken(child, JanderParser.CIRCUNFLEXO)) {
+                    caret = true;
+                } else if (child instanceof IdentificadorContext) {
+                    target((IdentificadorContext) child, caret, DEF_QUIET);
+                    caret = false;
+                }
+            }
+        }
+
+        void atribuicao(CmdAtribuicaoContext ctx) {
+            uses(ctx.expressao());
+            target(ctx.identificador(), ctx.CIRCUNFLEXO() != null, DEF);
+        }
+
+        // Destino de uma escrita: ^p lê p; v[i] e r.c leem os índices (v e r não são rastreados)
+        void target(IdentificadorContext id, boolean deref, int kind) {
+            if (deref) {
+                read(id);
+                return;
+            }
+            uses(id.dimensao());
+            int s = symbolOf(id);
+            if (s >= 0) event(kind, s, id.start);
+        }
+
+        void call(String routine, List<ExpressaoContext> args, Token token) {
+            boolean[] var = routines.get(routine);
+            for (int i = 0; i < args.size(); i++) {
+                IdentificadorContext id = bareIdentifier(args.get(i));
+                if (var != null && i < var.length && var[i] && id != null) {
+                    // Argumento por referência: a rotina pode ler e inicializar a variável
+                    int s = symbolOf(id);
+                    if (s >= 0) {
+                        event(LIVE, s, id.start);
+                        event(DEF_QUIET, s, id.start);
+                    } else {
+                        uses(id.dimensao());
+                    }
+                } else {
+                    uses(args.get(i));
+                }
+            }
+            event(CALL, -1, token);
+        }
+
+        // Argumento formado apenas por um identificador (ex: f(x), mas não f(x + 1) nem f(^p))
+        static IdentificadorContext bareIdentifier(ExpressaoContext e) {
+            ParseTree t = e;
+            while (t instanceof ParserRuleContext && t.getChildCount() == 1) {
+                t = t.getChild(0);
+                if (t instanceof IdentificadorContext) return (IdentificadorContext) t;
+            }
+            return null;
+        }
+
+        void retorne(CmdRetorneContext ctx) {
+            if (ctx.expressao() != null) uses(ctx.expressao());
+            event(RETURN, -1, ctx.start);
+            edge(current, EXIT);
+            current = newBlock(); // O que vier depois é inalcançável
+        }
+
+        void se(CmdSeContext ctx) {
+            uses(ctx.expressao());
+            int cond = current;
+            int join = newBlock();
+
+            current = newBlock();
+            edge(cond, current);
+            boolean senao = false;
+            for (int i = 0; i < ctx.getChildCount(); i++) {
+                ParseTree child = ctx.getChild(i);
+                if (child instanceof CmdContext) {
+                    command((CmdContext) child);
+                } else if (JanderSemanticoUtils.isToken(child, JanderParser.SENAO)) {
+                    senao = true;
+                    edge(current, join);
+                    current = newBlock();
+                    edge(cond, current);
+                }
+            }
+            edge(current, join);
+            if (!senao) edge(cond, join);
+            current = join;
+        }
+
+        void caso(CmdCasoContext ctx) {
+            uses(ctx.exp_aritmetica());
+            int dispatch = current;
+            int join = newBlock();
+            for (Item_selecaoContext item : ctx.selecao().item_selecao()) {
+                current = newBlock();
+                edge(dispatch, current);
+                commands(item.cmd());
+                edge(current, join);
+            }
+            if (ctx.SENAO() != null) {
+                current = newBlock();
+                edge(dispatch, current);
+                commands(ctx.cmd());
+                edge(current, join);
+            } else {
+                edge(dispatch, join);
+            }
+            current = join;
+        }
+
+        void para(CmdParaContext ctx) {
+            uses(ctx.exp_aritmetica(0));
+            uses(ctx.exp_aritmetica(1));
+            Integer s = symbolIndex.get(ctx.IDENT().getText());
+            Token t = ctx.IDENT().getSymbol();
+            if (s != null) event(DEF_QUIET, s, t);
+
+            int header = newBlock();
+            edge(current, header);
+            current = header;
+            if (s != null) event(USE, s, t); // comparação com o limite
+
+            int body = newBlock();
+            edge(header, body);
+            current = body;
+            commands(ctx.cmd());
+            if (s != null) {
+                event(USE, s, t); // incremento
+                event(DEF_QUIET, s, t);
+            }
+            edge(current, header);
+
+            current = newBlock();
+            edge(header, current);
+        }
+
+        void enquanto(CmdEnquantoContext ctx) {
+            int header = newBlock();
+            edge(current, header);
+            current = header;
+            uses(ctx.expressao());
+
+            int body = newBlock();
+            edge(header, body);
+            current = body;
+            commands(ctx.cmd());
+            edge(current, header);
+
+            current = newBlock();
+            edge(header, current);
+        }
+
+        void faca(CmdFacaContext ctx) {
+            int body = newBlock();
+            edge(current, body);
+            current = body;
+            commands(ctx.cmd());
+            uses(ctx.expressao());
+            int end = current;
+            edge(end, body);
+
+            current = newBlock();
+            edge(end, current);
+        }
+
+        // Registra as leituras de uma expressão (ou de qualquer subárvore) em ordem de avaliação
+        void uses(ParseTree t) {
+            if (t instanceof IdentificadorContext) {
+                read((IdentificadorContext) t);
+            } else if (t instanceof ExpChamadaContext) {
+                ExpChamadaContext p = (ExpChamadaContext) t;
+                call(p.IDENT().getText(), p.expressao(), p.IDENT().getSymbol());
+            } else if (t instanceof ExpEnderecoContext) {
+                ExpEnderecoContext p = (ExpEnderecoContext) t;
+                if (p.identificador() != null) uses(p.identificador().dimensao());
+            } else if (JanderSemanticoUtils.isChain(t)) {
+                // Cadeia de operadores: sem recursão na espinha esquerda
+                List<ParserRuleContext> chain = JanderSemanticoUtils.chain((ParserRuleContext) t);
+                uses(chain.get(0).getChild(0));
+                for (ParserRuleContext node : chain) {
+                    for (int i = 1; i < node.getChildCount(); i++) uses(node.getChild(i));
+                }
+            } else {
+                for (int i = 0; i < t.getChildCount(); i++) uses(t.getChild(i));
+            }
+        }
+
+        void read(IdentificadorContext id) {
+            uses(id.dimensao());
+            int s = symbolOf(id);
+            if (s >= 0) event(USE, s, id.start);
+        }
+
+        ControlFlowGraph build() {
+            edge(current, EXIT);
+
+            // Agrupa eventos por bloco (counting sort estável, mantém a ordem de execução)
+            int[] eventStart = new int[blockCount + 1];
+            for (int i = 0; i < eventCount; i++) eventStart[evBlock[i] + 1]++;
+            for (int b = 0; b < blockCount; b++) eventStart[b + 1] += eventStart[b];
+            int[] fill = Arrays.copyOf(eventStart, blockCount);
+            int[] kind = new int[eventCount], symbol = new int[eventCount], line = new int[eventCount];
+            for (int i = 0; i < eventCount; i++) {
+                int k = fill[evBlock[i]]++;
+                kind[k] = evKind[i];
+                symbol[k] = evSymbol[i];
+                line[k] = evLine[i];
+            }
+
+            int[] succStart = new int[blockCount + 1], predStart = new int[blockCount + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                succStart[edgeFrom[e] + 1]++;
+                predStart[edgeTo[e] + 1]++;
+            }
+            for (int b = 0; b < blockCount; b++) {
+                succStart[b + 1] += succStart[b];
+                predStart[b + 1] += predStart[b];
+            }
+            int[] succ = new int[edgeCount], pred = new int[edgeCount];
+            int[] sFill = Arrays.copyOf(succStart, blockCount), pFill = Arrays.copyOf(predStart, blockCount);
+            for (int e = 0; e < edgeCount; e++) {
+                succ[sFill[edgeFrom[e]]++] = edgeTo[e];
+                pred[pFill[edgeTo[e]]++] = edgeFrom[e];
+            }
+
+            return new ControlFlowGraph(this, eventStart, kind, symbol, line, succStart, succ, predStart, pred);
+        }
+    }
+}
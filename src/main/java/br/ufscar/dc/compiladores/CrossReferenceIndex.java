@@ -0,0 +1,290 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.v4.runtime.Token;
+
+/**
+ * Índice de referências cruzadas (declaração -> usos) produzido pelo JanderSemantico.
+ *
+ * Tudo fica em vetores de int: os usos de cada declaração são contíguos e ordenados por
+ * posição (useStart[d] .. useStart[d+1]), e byPosition ordena todos os usos pela posição no
+ * código para responder "qual símbolo está nesta linha/coluna" com busca binária.
+ * Cada uso custa 12 bytes (linha, coluna+tipo e a entrada em byPosition); declarações, 16.
+ */
+public class CrossReferenceIndex {
+    // Tipos de uso (podem ser combinados, ex: ^p <- 1 é WRITE | DEREF)
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+    public static final int ADDRESS_OF = 4; // &x
+    public static final int DEREF = 8;      // ^x
+
+    private static final int KIND_BITS = 4;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private final String[] declName;
+    private final int[] declLine;
+    private final int[] declColumn;
+    private final int[] declByPosition; // declarações ordenadas por (linha, coluna)
+
+    private final int[] useStart;       // declCount + 1 posições
+    private final int[] useLine;
+    private final int[] useColumnKind;  // coluna << 4 | tipo
+    private final int[] byPosition;     // índices de uso ordenados por (linha, coluna)
+
+    private CrossReferenceIndex(String[] declName, int[] declLine, int[] declColumn, int[] declByPosition,
+                                int[] useStart, int[] useLine, int[] useColumnKind, int[] byPosition) {
+        this.declName = declName;
+        this.declLine = declLine;
+        this.declColumn = declColumn;
+        this.declByPosition = declByPosition;
+        this.useStart = useStart;
+        this.useLine = useLine;
+        this.useColumnKind = useColumnKind;
+        this.byPosition = byPosition;
+    }
+
+    public int declarationCount() {
+        return declName.length;
+    }
+
+    public String name(int decl) {
+        return declName[decl];
+    }
+
+    public int declarationLine(int decl) {
+        return declLine[decl];
+    }
+
+    public int declarationColumn(int decl) {
+        return declColumn[decl];
+    }
+
+    public int usageCount(int decl) {
+        return useStart[decl + 1] - useStart[decl];
+    }
+
+    // k-ésimo uso da declaração, em ordem de posição
+    public int usageLine(int decl, int k) {
+        return useLine[useStart[decl] + k];
+    }
+
+    public int usageColumn(int decl, int k) {
+        return useColumnKind[useStart[decl] + k] >>> KIND_BITS;
+    }
+
+    public int usageKind(int decl, int k) {
+        return useColumnKind[useStart[decl] + k] & KIND_MASK;
+    }
+
+    /** Declarações com o nome informado (pode haver várias, em escopos diferentes) */
+    public int[] declarationsNamed(String name) {
+        int[] found = new int[4];
+        int n = 0;
+        for (int d = 0; d < declName.length; d++) {
+            if (declName[d].equals(name)) {
+                if (n == found.length) found = Arrays.copyOf(found, n * 2);
+                found[n++] = d;
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    /** Declarações que nunca são usadas */
+    public int[] unusedDeclarations() {
+        int[] found = new int[declName.length];
+        int n = 0;
+        for (int d = 0; d < declName.length; d++) {
+            if (usageCount(d) == 0) found[n++] = d;
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    /**
+     * Declaração referenciada pelo identificador que cobre a linha/coluna (coluna a partir de 0),
+     * seja um uso ou a própria declaração; -1 se não houver.
+     */
+    public int declarationAt(int line, int column) {
+        int best = lastAtOrBefore(byPosition, useLine, useColumnKind, KIND_BITS, line, column);
+        if (best >= 0) {
+            int u = byPosition[best];
+            int d = declarationOfUse(u);
+            int col = useColumnKind[u] >>> KIND_BITS;
+            if (useLine[u] == line && column < col + declName[d].length()) return d;
+        }
+        best = lastAtOrBefore(declByPosition, declLine, declColumn, 0, line, column);
+        if (best >= 0) {
+            int d = declByPosition[best];
+            if (declLine[d] == line && column < declColumn[d] + declName[d].length()) return d;
+        }
+        return -1;
+    }
+
+    // Posição em sorted do último elemento que começa em (line, column) ou antes; -1 se nenhum.
+    private static int lastAtOrBefore(int[] sorted, int[] lines, int[] columns, int columnShift, int line, int column) {
+        int lo = 0, hi = sorted.length - 1, best = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int i = sorted[mid];
+            if (comparePosition(lines[i], columns[i] >>> columnShift, line, column) <= 0) {
+                best = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return best;
+    }
+
+    // Declaração dona do uso u: maior d com useStart[d] <= u < useStart[d+1]
+    private int declarationOfUse(int u) {
+        int lo = 0, hi = declName.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (useStart[mid] <= u) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private static int comparePosition(int line1, int col1, int line2, int col2) {
+        return line1 != line2 ? Integer.compare(line1, line2) : Integer.compare(col1, col2);
+    }
+
+    /** Construído durante a análise; build() ordena e compacta os usos. */
+    static class Builder {
+        private final Map<SymbolTable.SymbolTableEntry, Integer> ids;
+        private final List<String> names = new ArrayList<>();
+        private int[] declLine = new int[64];
+        private int[] declColumn = new int[64];
+
+        private int useCount = 0;
+        private int[] rawDecl = new int[256];
+        private long[] rawKey = new long[256]; // linha << 32 | coluna << 4 | tipo
+
+        Builder() {
+            this.ids = new IdentityHashMap<>();
+        }
+
+        private Builder(Map<SymbolTable.SymbolTableEntry, Integer> ids) {
+            this.ids = ids;
+        }
+
+        // Builder que só registra usos das declarações já feitas, para outra thread (ver ParallelCommandChecker).
+        // Ninguém pode declarar neste nem no original enquanto o fork estiver em uso; depois, append().
+        Builder fork() {
+            return new Builder(ids);
+        }
+
+        // Junta os usos registrados por um fork
+        void append(Builder fork) {
+            if (useCount + fork.useCount > rawDecl.length) {
+                int capacity = Math.max(rawDecl.length * 2, useCount + fork.useCount);
+                rawDecl = Arrays.copyOf(rawDecl, capacity);
+                rawKey = Arrays.copyOf(rawKey, capacity);
+            }
+            System.arraycopy(fork.rawDecl, 0, rawDecl, useCount, fork.useCount);
+            System.arraycopy(fork.rawKey, 0, rawKey, useCount, fork.useCount);
+            useCount += fork.useCount;
+        }
+
+        void declare(SymbolTable.SymbolTableEntry entry, Token token) {
+            if (entry == null || token == null || ids.containsKey(entry)) return;
+            int id = names.size();
+            ids.put(entry, id);
+            names.add(entry.name);
+            if (id == declLine.length) {
+                declLine = Arrays.copyOf(declLine, id * 2);
+                declColumn = Arrays.copyOf(declColumn, id * 2);
+            }
+            declLine[id] = token.getLine();
+            declColumn[id] = token.getCharPositionInLine();
+        }
+
+        void use(SymbolTable.SymbolTableEntry entry, Token token, int kind) {
+            Integer id = entry == null ? null : ids.get(entry);
+            if (id == null || token == null) return;
+            if (useCount == rawDecl.length) {
+                rawDecl = Arrays.copyOf(rawDecl, useCount * 2);
+                rawKey = Arrays.copyOf(rawKey, useCount * 2);
+            }
+            rawDecl[useCount] = id;
+            rawKey[useCount] = ((long) token.getLine() << 32) | ((long) token.getCharPositionInLine() << KIND_BITS) | kind;
+            useCount++;
+        }
+
+        CrossReferenceIndex build() {
+            int declCount = names.size();
+
+            // Agrupa os usos por declaração (counting sort) e ordena cada grupo por posição
+            int[] start = new int[declCount + 1];
+            for (int i = 0; i < useCount; i++) start[rawDecl[i] + 1]++;
+            for (int d = 0; d < declCount; d++) start[d + 1] += start[d];
+            long[] keys = new long[useCount];
+            int[] fill = Arrays.copyOf(start, declCount);
+            for (int i = 0; i < useCount; i++) keys[fill[rawDecl[i]]++] = rawKey[i];
+
+            // Remove usos repetidos (o mesmo token visitado mais de uma vez), unindo os tipos
+            int[] useStart = new int[declCount + 1];
+            int[] line = new int[useCount];
+            int[] colKind = new int[useCount];
+            int n = 0;
+            for (int d = 0; d < declCount; d++) {
+                useStart[d] = n;
+                Arrays.sort(keys, start[d], start[d + 1]);
+                for (int i = start[d]; i < start[d + 1]; i++) {
+                    int l = (int) (keys[i] >>> 32);
+                    int ck = (int) keys[i];
+                    if (n > useStart[d] && line[n - 1] == l && (colKind[n - 1] >>> KIND_BITS) == (ck >>> KIND_BITS)) {
+                        colKind[n - 1] |= ck & KIND_MASK;
+                    } else {
+                        line[n] = l;
+                        colKind[n] = ck;
+                        n++;
+                    }
+                }
+            }
+            useStart[declCount] = n;
+            line = Arrays.copyOf(line, n);
+            colKind = Arrays.copyOf(colKind, n);
+
+            int[] byPosition = sortedByPosition(n, line, colKind, KIND_BITS);
+            int[] dLine = Arrays.copyOf(declLine, declCount);
+            int[] dColumn = Arrays.copyOf(declColumn, declCount);
+            int[] declByPosition = sortedByPosition(declCount, dLine, dColumn, 0);
+
+            return new CrossReferenceIndex(names.toArray(new String[0]),
+                dLine, dColumn, declByPosition,
+                useStart, line, colKind, byPosition);
+        }
+
+        // Índices 0..n-1 ordenados por (linha, coluna), com merge sort sem boxing
+        private static int[] sortedByPosition(int n, int[] line, int[] columns, int columnShift) {
+            int[] idx = new int[n];
+            for (int i = 0; i < n; i++) idx[i] = i;
+            int[] tmp = new int[n];
+            for (int width = 1; width < idx.length; width *= 2) {
+                for (int lo = 0; lo < idx.length - width; lo += 2 * width) {
+                    int mid = lo + width, hi = Math.min(lo + 2 * width, idx.length);
+                    // Os usos chegam quase em ordem de código: metades já ordenadas não precisam de merge
+                    if (comparePosition(line[idx[mid]], columns[idx[mid]] >>> columnShift,
+                                        line[idx[mid - 1]], columns[idx[mid - 1]] >>> columnShift) >= 0) continue;
+                    int a = lo, b = mid, k = lo;
+                    while (a < mid && b < hi) {
+                        int ia = idx[a], ib = idx[b];
+                        boolean takeB = comparePosition(line[ib], columns[ib] >>> columnShift, line[ia], columns[ia] >>> columnShift) < 0;
+                        tmp[k++] = takeB ? idx[b++] : idx[a++];
+                    }
+                    while (a < mid) tmp[k++] = idx[a++];
+                    while (b < hi) tmp[k++] = idx[b++];
+                    System.arraycopy(tmp, lo, idx, lo, hi - lo);
+                }
+            }
+            return idx;
+        }
+    }
+}
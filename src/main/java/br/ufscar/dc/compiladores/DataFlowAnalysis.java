@@ -0,0 +1,304 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import br.ufscar.dc.compiladores.JanderParser.*;
+
+/**
+ * Análises de fluxo de dados sobre o ControlFlowGraph, com bitsets densos (long[]) indexados por símbolo.
+ *
+ * - Atribuição definitiva (para frente, interseção): leituras de variáveis que podem não ter sido inicializadas
+ *   e funções que podem terminar sem 'retorne' (um bit extra marca "já retornou").
+ * - Vivacidade (para trás, união): atribuições cujo valor nunca é lido.
+ *
+ * Só os conjuntos de entrada de cada bloco são guardados, todos num único long[] (bloco * words);
+ * a transferência de um bloco aplica diretamente os seus eventos, sem conjuntos gen/kill por bloco.
+ * O solver usa uma fila de trabalho semeada em pós-ordem reversa, então laços convergem em poucas passadas.
+ */
+public class DataFlowAnalysis {
+    private final ControlFlowGraph cfg;
+    private final int words;
+    private final int returned; // bit do pseudo-símbolo "retornou"
+
+    private final int[] order; // blocos alcançáveis em pós-ordem reversa
+    private final boolean[] reachable;
+
+    private DataFlowAnalysis(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.returned = cfg.symbolCount();
+        this.words = (cfg.symbolCount() + 1 + 63) >>> 6;
+        this.reachable = new boolean[cfg.blockCount];
+        this.order = reversePostOrder();
+    }
+
+    /** Avisos de fluxo de dados ("Linha N: aviso: ...") das rotinas e do corpo principal, em ordem de linha */
+    public static List<String> analyze(ProgramaContext ctx) {
+        return analyze(ctx, RoutineFacts.collect(ctx));
+    }
+
+    /** Como analyze(ctx), com os fatos das rotinas já coletados (pelo passo "routine-facts" do PassManager) */
+    static List<String> analyze(ProgramaContext ctx, RoutineFacts facts) {
+        List<Warning> warnings = new ArrayList<>();
+        for (Decl_local_globalContext d : ctx.declaracoes().decl_local_global()) {
+            if (d.declaracao_global() != null && d.declaracao_global().IDENT() != null) {
+                new DataFlowAnalysis(ControlFlowGraph.of(d.declaracao_global(), facts)).run(warnings);
+            }
+        }
+        if (ctx.corpo() != null) {
+            new DataFlowAnalysis(ControlFlowGraph.of(ctx, facts)).run(warnings);
+        }
+
+        warnings.sort(Comparator.comparingInt(w -> w.line));
+        List<String> messages = new ArrayList<>(warnings.size());
+        for (Warning w : warnings) messages.add("Linha " + w.line + ": aviso: " + w.message);
+        return messages;
+    }
+
+    private static final class Warning {
+        final int line;
+        final String message;
+
+        Warning(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
+
+    private void run(List<Warning> warnings) {
+        long[] assigned = definiteAssignment();
+        long[] live = liveness();
+
+        long[] reported = new long[words];
+        long[] set = new long[words];
+        for (int b : order) {
+            System.arraycopy(assigned, b * words, set, 0, words);
+            assign(b, set, warnings, reported);
+            liveOut(live, b, set);
+            kill(b, set, warnings);
+        }
+
+        if (cfg.function && reachable[ControlFlowGraph.EXIT] && !get(assigned, ControlFlowGraph.EXIT * words, returned)) {
+            int line = cfg.endToken != null ? cfg.endToken.getLine() : 0;
+            warnings.add(new Warning(line, "funcao " + cfg.name + " pode terminar sem retorne"));
+        }
+    }
+
+    // Transferência da atribuição definitiva: aplica os eventos do bloco em ordem.
+    // Com warnings != null, avisa (uma vez por variável) leituras fora do conjunto.
+    private void assign(int b, long[] set, List<Warning> warnings, long[] reported) {
+        for (int e = cfg.eventStart[b]; e < cfg.eventStart[b + 1]; e++) {
+            int s = cfg.eventSymbol[e];
+            switch (cfg.eventKind[e]) {
+                case ControlFlowGraph.USE:
+                    if (warnings != null && !get(set, s) && !get(reported, s)) {
+                        set(reported, s);
+                        warnings.add(new Warning(cfg.eventLine[e], "variavel " + cfg.symbols[s] + " pode ser usada sem ter sido inicializada"));
+                    }
+                    break;
+                case ControlFlowGraph.DEF:
+                case ControlFlowGraph.DEF_QUIET:
+                    set(set, s);
+                    break;
+                case ControlFlowGraph.CALL:
+                    for (int g : cfg.globals) set(set, g);
+                    break;
+                case ControlFlowGraph.RETURN:
+                    set(set, returned);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // Transferência da vivacidade: aplica os eventos do bloco de trás para frente.
+    // Com warnings != null, avisa atribuições a variáveis que não estão vivas logo depois.
+    private void kill(int b, long[] set, List<Warning> warnings) {
+        for (int e = cfg.eventStart[b + 1] - 1; e >= cfg.eventStart[b]; e--) {
+            int s = cfg.eventSymbol[e];
+            switch (cfg.eventKind[e]) {
+                case ControlFlowGraph.DEF:
+                    if (warnings != null && !get(set, s)) {
+                        warnings.add(new Warning(cfg.eventLine[e], "valor atribuido a " + cfg.symbols[s] + " nunca e usado"));
+                    }
+                    clear(set, s);
+                    break;
+                case ControlFlowGraph.DEF_QUIET:
+                    clear(set, s);
+                    break;
+                case ControlFlowGraph.USE:
+                case ControlFlowGraph.LIVE:
+                    set(set, s);
+                    break;
+                case ControlFlowGraph.CALL:
+                    for (int g : cfg.globals) set(set, g);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // Conjunto de entrada de cada bloco: variáveis inicializadas em todos os caminhos desde a entrada
+    private long[] definiteAssignment() {
+        long[] in = new long[cfg.blockCount * words];
+
+        // Topo (tudo inicializado) em todos os blocos menos a entrada; a interseção só diminui
+        Arrays.fill(in, -1L);
+        Arrays.fill(in, 0, words, 0L);
+        for (int s : cfg.initialized) set(in, 0, s);
+
+        long[] out = new long[words];
+        Worklist work = new Worklist(order, reachable);
+        int b;
+        while ((b = work.poll()) >= 0) {
+            System.arraycopy(in, b * words, out, 0, words);
+            assign(b, out, null, null);
+            for (int i = cfg.succStart[b]; i < cfg.succStart[b + 1]; i++) {
+                int t = cfg.succ[i];
+                if (t == ControlFlowGraph.ENTRY) continue;
+                boolean changed = false;
+                int tb = t * words;
+                for (int w = 0; w < words; w++) {
+                    long v = in[tb + w] & out[w];
+                    if (v != in[tb + w]) {
+                        in[tb + w] = v;
+                        changed = true;
+                    }
+                }
+                if (changed) work.add(t);
+            }
+        }
+        return in;
+    }
+
+    // Conjunto de entrada de cada bloco: variáveis cujo valor atual ainda pode ser lido
+    private long[] liveness() {
+        long[] in = new long[cfg.blockCount * words];
+        for (int s : cfg.liveAtExit) set(in, ControlFlowGraph.EXIT * words, s);
+
+        long[] set = new long[words];
+        int[] postOrder = new int[order.length];
+        for (int i = 0; i < order.length; i++) postOrder[i] = order[order.length - 1 - i];
+        Worklist work = new Worklist(postOrder, reachable);
+        int b;
+        while ((b = work.poll()) >= 0) {
+            if (b == ControlFlowGraph.EXIT) continue;
+            liveOut(in, b, set);
+            kill(b, set, null);
+            boolean changed = false;
+            int base = b * words;
+            for (int w = 0; w < words; w++) {
+                if (set[w] != in[base + w]) {
+                    in[base + w] = set[w];
+                    changed = true;
+                }
+            }
+            if (changed) {
+                for (int i = cfg.predStart[b]; i < cfg.predStart[b + 1]; i++) work.add(cfg.pred[i]);
+            }
+        }
+        return in;
+    }
+
+    // União dos conjuntos de entrada dos sucessores de b
+    private void liveOut(long[] liveIn, int b, long[] out) {
+        if (b == ControlFlowGraph.EXIT) {
+            System.arraycopy(liveIn, b * words, out, 0, words);
+            return;
+        }
+        Arrays.fill(out, 0L);
+        for (int i = cfg.succStart[b]; i < cfg.succStart[b + 1]; i++) {
+            int sb = cfg.succ[i] * words;
+            for (int w = 0; w < words; w++) out[w] |= liveIn[sb + w];
+        }
+    }
+
+    private int[] reversePostOrder() {
+        int n = cfg.blockCount;
+        int[] post = new int[n];
+        int count = 0;
+        int[] stack = new int[n];
+        int[] next = new int[n]; // próximo sucessor a visitar de cada bloco na pilha
+        int top = 0;
+        stack[top++] = ControlFlowGraph.ENTRY;
+        reachable[ControlFlowGraph.ENTRY] = true;
+        next[ControlFlowGraph.ENTRY] = cfg.succStart[ControlFlowGraph.ENTRY];
+        while (top > 0) {
+            int b = stack[top - 1];
+            if (next[b] < cfg.succStart[b + 1]) {
+                int s = cfg.succ[next[b]++];
+                if (!reachable[s]) {
+                    reachable[s] = true;
+                    next[s] = cfg.succStart[s];
+                    stack[top++] = s;
+                }
+            } else {
+                post[count++] = b;
+                top--;
+            }
+        }
+        int[] rpo = new int[count];
+        for (int i = 0; i < count; i++) rpo[i] = post[count - 1 - i];
+        return rpo;
+    }
+
+    // Fila de blocos pendentes, sem repetição, inicialmente com os blocos alcançáveis na ordem dada
+    private static final class Worklist {
+        private final int[] queue;
+        private final boolean[] queued;
+        private final boolean[] reachable;
+        private int head = 0, size;
+
+        Worklist(int[] initial, boolean[] reachable) {
+            this.reachable = reachable;
+            queue = new int[initial.length];
+            queued = new boolean[reachable.length];
+            for (int b : initial) queued[b] = true;
+            System.arraycopy(initial, 0, queue, 0, initial.length);
+            size = initial.length;
+        }
+
+        void add(int b) {
+            if (queued[b] || !reachable[b]) return; // blocos inalcançáveis ficam de fora
+            queued[b] = true;
+            queue[(head + size++) % queue.length] = b;
+        }
+
+        int poll() {
+            if (size == 0) return -1;
+            int b = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+            queued[b] = false;
+            return b;
+        }
+    }
+
+    private static boolean get(long[] set, int s) {
+        return get(set, 0, s);
+    }
+
+    private static boolean get(long[] set, int base, int s) {
+        return (set[base + (s >>> 6)] & (1L << s)) != 0;
+    }
+
+    private static void set(long[] set, int s) {
+        set(set, 0, s);
+    }
+
+    private static void set(long[] set, int base, int s) {
+        set[base + (s >>> 6)] |= 1L << s;
+    }
+
+    private static void clear(long[] set, int s) {
+        clear(set, 0, s);
+    }
+
+    private static void clear(long[] set, int base, int s) {
+        set[base + (s >>> 6)] &= ~(1L << s);
+    }
+}
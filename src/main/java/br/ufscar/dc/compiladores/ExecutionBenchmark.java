@@ -0,0 +1,174 @@
+package br.ufscar.dc.compiladores;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Mede a execução de programas LA nos dois backends, no mesmo processo: a BytecodeVM e o JvmBackend, além do
+ * AstInterpreter.
+ *
+ * Uso: java -cp JanderLexico-1.0-SNAPSHOT-jar-with-dependencies.jar br.ufscar.dc.compiladores.ExecutionBenchmark
+ *      [repeticoes] [programa.txt ...]
+ *
+ * Sem programas, roda a suíte em src/main/resources/benchmarks (crivo, fibonacci, pi, matriz, registros,
+ * leitura, que lê um milhão de inteiros gerados aqui, e literais, que ordena literais com < e >=). Cada programa é executado repeticoes vezes (padrão 5)
+ * em cada backend e o relatório mostra o melhor tempo, que já exclui o aquecimento do JIT, além do tempo de
+ * compilação e de carga da classe e o tempo até a árvore do interpretador ficar pronta. As saídas precisam ser
+ * iguais nos três.
+ */
+public class ExecutionBenchmark {
+    private static final String[] SUITE = {"crivo", "fibonacci", "pi", "matriz", "registros", "leitura", "literais"};
+    private static final int LEITURA_VALORES = 1_000_000;
+
+    // Resultado de um programa nos dois backends.
+    static class BenchResult {
+        String nome;
+        String erro;          // Erro de compilação, de execução ou saídas diferentes (null se ok)
+        long compilacaoNanos; // Léxico, sintático, semântico e geração do bytecode
+        long cargaNanos;      // Geração e definição da classe oculta
+        long arvoreNanos;     // Léxico, sintático, semântico e montagem da árvore do AstInterpreter
+        long vmNanos = Long.MAX_VALUE;
+        long jvmNanos = Long.MAX_VALUE;
+        long astNanos = Long.MAX_VALUE;
+
+        BenchResult(String nome) {
+            this.nome = nome;
+        }
+    }
+
+    public static void main(String[] args) {
+        int repeticoes = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        try {
+            List<BenchResult> resultados = new ArrayList<>();
+            if (args.length > 1) {
+                for (String arquivo : Arrays.copyOfRange(args, 1, args.length)) {
+                    Path p = Paths.get(arquivo);
+                    resultados.add(run(p.getFileName().toString(), CharStreams.fromPath(p, StandardCharsets.UTF_8),
+                        new byte[0], repeticoes));
+                }
+            } else {
+                for (String nome : SUITE) {
+                    resultados.add(run(nome, resource(nome), entrada(nome), repeticoes));
+                }
+            }
+            boolean ok = report(resultados, new PrintWriter(System.out, true));
+            System.exit(ok ? 0 : 1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static CharStream resource(String nome) throws IOException {
+        try (InputStream in = ExecutionBenchmark.class.getResourceAsStream("/benchmarks/" + nome + ".txt")) {
+            if (in == null) throw new IOException("programa de referencia nao encontrado: " + nome);
+            return CharStreams.fromStream(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Entrada padrão de cada programa da suíte; só "leitura" lê algo
+    private static byte[] entrada(String nome) {
+        if (!nome.equals("leitura")) return new byte[0];
+        StringBuilder sb = new StringBuilder().append(LEITURA_VALORES).append('\n');
+        Random r = new Random(42);
+        for (int i = 0; i < LEITURA_VALORES; i++) sb.append(r.nextInt(2_000_001) - 1_000_000).append('\n');
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Compila uma vez e executa repeticoes vezes em cada backend, guardando o melhor tempo de cada um.
+    static BenchResult run(String nome, CharStream programa, byte[] entrada, int repeticoes) {
+        BenchResult r = new BenchResult(nome);
+        StringWriter mensagens = new StringWriter();
+        long inicio = System.nanoTime();
+        Optional<Bytecode> bytecode = Main.compilarParaExecucao(programa, new PrintWriter(mensagens), false);
+        r.compilacaoNanos = System.nanoTime() - inicio;
+        if (bytecode.isEmpty()) {
+            r.erro = "nao compila: " + mensagens.toString().split("\n")[0];
+            return r;
+        }
+
+        inicio = System.nanoTime();
+        JvmBackend.Program jvm;
+        try {
+            jvm = JvmBackend.load(bytecode.get());
+        } catch (IllegalArgumentException e) {
+            r.erro = "JvmBackend: " + e.getMessage();
+            return r;
+        }
+        r.cargaNanos = System.nanoTime() - inicio;
+
+        programa.seek(0);
+        inicio = System.nanoTime();
+        AstInterpreter ast;
+        try {
+            ast = Main.compilarParaInterpretacao(programa, new PrintWriter(new StringWriter()), false).get();
+        } catch (IllegalArgumentException e) {
+            r.erro = "AstInterpreter: " + e.getMessage();
+            return r;
+        }
+        r.arvoreNanos = System.nanoTime() - inicio;
+
+        byte[] saidaVm = null, saidaJvm = null, saidaAst = null;
+        try {
+            for (int i = 0; i < repeticoes; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                inicio = System.nanoTime();
+                new BytecodeVM(bytecode.get(), new ByteArrayInputStream(entrada), out).run();
+                r.vmNanos = Math.min(r.vmNanos, System.nanoTime() - inicio);
+                saidaVm = out.toByteArray();
+
+                out = new ByteArrayOutputStream();
+                inicio = System.nanoTime();
+                jvm.run(new ByteArrayInputStream(entrada), out);
+                r.jvmNanos = Math.min(r.jvmNanos, System.nanoTime() - inicio);
+                saidaJvm = out.toByteArray();
+
+                out = new ByteArrayOutputStream();
+                inicio = System.nanoTime();
+                ast.run(new ByteArrayInputStream(entrada), out);
+                r.astNanos = Math.min(r.astNanos, System.nanoTime() - inicio);
+                saidaAst = out.toByteArray();
+            }
+        } catch (BytecodeVM.ExecutionError e) {
+            r.erro = e.getMessage();
+            return r;
+        }
+        if (!Arrays.equals(saidaVm, saidaJvm)) r.erro = "saidas diferentes entre a VM e a JVM";
+        else if (!Arrays.equals(saidaVm, saidaAst)) r.erro = "saidas diferentes entre a VM e o interpretador";
+        return r;
+    }
+
+    // Imprime uma linha por programa. Retorna true se todos rodaram com a mesma saída nos três.
+    static boolean report(List<BenchResult> resultados, PrintWriter out) {
+        boolean ok = true;
+        out.printf("%-12s %12s %10s %10s %10s %8s %10s %10s%n", "programa", "compilacao", "carga", "vm", "jvm", "vm/jvm",
+            "arvore", "ast");
+        for (BenchResult r : resultados) {
+            if (r.erro != null) {
+                ok = false;
+                out.println("FALHOU " + r.nome + " - " + r.erro);
+                continue;
+            }
+            out.printf("%-12s %10.1fms %8.1fms %8.1fms %8.1fms %7.1fx %8.1fms %8.1fms%n", r.nome, r.compilacaoNanos / 1e6,
+                r.cargaNanos / 1e6, r.vmNanos / 1e6, r.jvmNanos / 1e6, (double) r.vmNanos / r.jvmNanos,
+                r.arvoreNanos / 1e6, r.astNanos / 1e6);
+        }
+        out.flush();
+        return ok;
+    }
+}
@@ -0,0 +1,83 @@
+package br.ufscar.dc.compiladores;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Eventos do Java Flight Recorder emitidos pelo compilador.
+ * Só custam algo quando há uma gravação ativa (ex: java -XX:StartFlightRecording=filename=rec.jfr ...);
+ * fora disso shouldCommit() é falso e o JIT elimina a criação dos eventos.
+ */
+public final class JanderEvents {
+    private JanderEvents() {
+    }
+
+    @Name("br.ufscar.dc.compiladores.Phase")
+    @Label("Fase do Compilador")
+    @Description("Duração de uma fase da compilação (lex, parse, semantic, write)")
+    @Category({ "Jander", "Compilador" })
+    @StackTrace(false)
+    public static class PhaseEvent extends Event {
+        @Label("Fase")
+        String phase;
+
+        @Label("Arquivo")
+        String source;
+
+        @Label("Tokens")
+        int tokens;
+    }
+
+    @Name("br.ufscar.dc.compiladores.RoutineAnalysis")
+    @Label("Análise de Rotina")
+    @Description("Análise semântica de um procedimento ou função (declaracao_global)")
+    @Category({ "Jander", "Semantico" })
+    @StackTrace(false)
+    public static class RoutineAnalysisEvent extends Event {
+        @Label("Rotina")
+        String routine;
+
+        @Label("Tipo")
+        String kind; // procedimento ou funcao
+
+        @Label("Linha")
+        int line;
+
+        @Label("Primeiro Token")
+        int startToken;
+
+        @Label("Último Token")
+        int stopToken;
+    }
+
+    @Name("br.ufscar.dc.compiladores.Diagnostics")
+    @Label("Diagnósticos")
+    @Description("Lote de mensagens de erro emitido pelo compilador")
+    @Category({ "Jander", "Compilador" })
+    @StackTrace(false)
+    public static class DiagnosticsEvent extends Event {
+        @Label("Origem")
+        String origin; // sintatico ou semantico
+
+        @Label("Quantidade")
+        int count;
+
+        @Label("Primeira Mensagem")
+        String first;
+    }
+
+    // Emite um DiagnosticsEvent instantâneo, se houver gravação ativa.
+    static void diagnostics(String origin, int count, String first) {
+        DiagnosticsEvent event = new DiagnosticsEvent();
+        if (event.shouldCommit()) {
+            event.origin = origin;
+            event.count = count;
+            event.first = first;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.ListTokenSource;
+
+import br.ufscar.dc.compiladores.CompilerPass.Artifact;
+import br.ufscar.dc.compiladores.JanderParser.ProgramaContext;
+
+/**
+ * Artefatos e passos do pipeline padrão do compilador (usado pelo Main.compilar):
+ *
+ *   lex -> parse -> semantic ---------------------------------> write
+ *               \-> routine-facts + points-to -> dataflow ----/         (só com avisos)
+ *                                            \-> bounds ------/
+ *                                                         \-> bytecode              (só em executable)
+ *                       \-> ast                                                        (só em interpreted)
+ *
+ * Em nativeCode, o passo c (tradução para C, CEmitter) toma o lugar de write; em diagnostics (Compiler) não há
+ * write, e o semântico só roda se não houver erros sintáticos.
+ *
+ * semantic roda em paralelo com routine-facts/points-to (um só percurso), dataflow e bounds. Novas análises entram com add() no
+ * PassManager devolvido, declarando o que leem; análises que só percorrem a árvore devem ser
+ * TreeWalkingPasses sobre TREE, para serem fundidas com routine-facts num só percurso.
+ */
+public final class JanderPasses {
+    private JanderPasses() {
+    }
+
+    // Fornecidos pelo chamador
+    public static final Artifact<CharStream> SOURCE = Artifact.of("source", CharStream.class);
+    public static final Artifact<PrintWriter> OUTPUT = Artifact.of("output", PrintWriter.class);
+    // Opcional: léxico e parser reaproveitados (sem ela, lex e parse criam os seus)
+    public static final Artifact<ParserSession> SESSION = Artifact.of("session", ParserSession.class);
+    // Opcional: tokens e árvore guardados em disco (ver ParseCache); lex e parse os usam se o fonte não mudou
+    public static final Artifact<ParseCache> PARSE_CACHE = Artifact.of("parse-cache", ParseCache.class);
+    // Opcional: se false, os importes leem as interfaces .jli mas não as gravam (sem ela, gravam)
+    public static final Artifact<Boolean> WRITE_INTERFACES = Artifact.of("write-interfaces", Boolean.class);
+
+    public static final Artifact<ColumnarTokenStream> TOKENS = Artifact.of("tokens", ColumnarTokenStream.class);
+    public static final Artifact<ProgramaContext> TREE = Artifact.of("tree", ProgramaContext.class);
+    public static final Artifact<Boolean> SYNTAX_OK = Artifact.of("syntax-ok", Boolean.class);
+    public static final Artifact<List<Compiler.Diagnostic>> SYNTAX_ERRORS = Artifact.<List<Compiler.Diagnostic>>of("syntax-errors", List.class);
+    public static final Artifact<List<String>> SEMANTIC_ERRORS = Artifact.<List<String>>of("semantic-errors", List.class);
+    public static final Artifact<ScopeIndex> SCOPES = Artifact.of("scopes", ScopeIndex.class);
+    public static final Artifact<CrossReferenceIndex> CROSS_REFERENCES = Artifact.of("cross-references", CrossReferenceIndex.class);
+    public static final Artifact<RoutineFacts> ROUTINE_FACTS = Artifact.of("routine-facts", RoutineFacts.class);
+    public static final Artifact<PointsToAnalysis> POINTS_TO = Artifact.of("points-to", PointsToAnalysis.class);
+    public static final Artifact<List<String>> WARNINGS = Artifact.<List<String>>of("warnings", List.class);
+    public static final Artifact<ArrayBoundsAnalysis> ARRAY_BOUNDS = Artifact.of("array-bounds", ArrayBoundsAnalysis.class);
+    public static final Artifact<Optional<Bytecode>> BYTECODE = Artifact.<Optional<Bytecode>>of("bytecode", Optional.class);
+    public static final Artifact<Optional<AstInterpreter>> INTERPRETER = Artifact.<Optional<AstInterpreter>>of("interpreter", Optional.class);
+
+    /** Pipeline padrão; com avisos, inclui as análises de fluxo de dados, de apontamento e de limites de arranjos */
+    public static PassManager standard(boolean avisos) {
+        PassManager manager = new PassManager()
+            .add(lex())
+            .add(parse())
+            .add(semantic());
+        if (avisos) {
+            manager.add(routineFacts()).add(pointsTo()).add(dataFlow()).add(arrayBounds());
+        }
+        return manager.add(write(avisos));
+    }
+
+    /** Como standard(), mas um programa sem erros é traduzido para C e escrito em OUTPUT no lugar das mensagens */
+    public static PassManager nativeCode(boolean avisos) {
+        PassManager manager = new PassManager()
+            .add(lex())
+            .add(parse())
+            .add(semantic())
+            .add(routineFacts());
+        if (avisos) manager.add(pointsTo()).add(dataFlow());
+        return manager.add(arrayBounds()).add(cSource(avisos));
+    }
+
+    /** Pipeline padrão mais a compilação para a máquina virtual (BYTECODE vazio se houver erros) */
+    public static PassManager executable(boolean avisos) {
+        PassManager manager = standard(avisos);
+        if (!avisos) manager.add(routineFacts()).add(arrayBounds());
+        return manager.add(bytecode());
+    }
+
+    /**
+     * Só as análises, sem escrever em OUTPUT (usado pelo Compiler): os erros ficam em SYNTAX_ERRORS e
+     * SEMANTIC_ERRORS e os avisos em WARNINGS e ARRAY_BOUNDS. Com erros sintáticos o semântico não roda.
+     */
+    public static PassManager diagnostics(boolean avisos) {
+        PassManager manager = new PassManager()
+            .add(lex())
+            .add(parse())
+            .add(semantic(false));
+        if (avisos) {
+            manager.add(routineFacts()).add(pointsTo()).add(dataFlow()).add(arrayBounds());
+        }
+        return manager;
+    }
+
+    /** Pipeline padrão mais a árvore do interpretador (INTERPRETER vazio se houver erros), sem análises extras */
+    public static PassManager interpreted(boolean avisos) {
+        return standard(avisos).add(interpreter());
+    }
+
+    // Arquivos grandes são tokenizados em pedaços de linhas, em paralelo (mesmos tokens do léxico serial)
+    static CompilerPass lex() {
+        return CompilerPass.of("lex", Set.of(SOURCE), Set.of(TOKENS), ctx -> {
+            CharStream cs = ctx.get(SOURCE);
+            // Tokeniza tudo antes do parser, para medir o léxico separadamente
+            // Com o fonte no cache, os tokens vêm de lá e a árvore fica no ParseCache para o parse
+            ColumnarTokenStream tokens = ctx.has(PARSE_CACHE) ? ctx.get(PARSE_CACHE).load(cs) : null;
+            if (tokens == null) {
+                if (ParallelLexer.worthIt(cs)) {
+                    tokens = new ColumnarTokenStream().fill(new ListTokenSource(ParallelLexer.tokenize(cs), cs.getSourceName()));
+                } else if (ctx.has(SESSION)) {
+                    tokens = ctx.get(SESSION).tokenize(cs);
+                } else {
+                    tokens = new ColumnarTokenStream().fill(new JanderLexer(cs));
+                }
+            }
+            ctx.put(TOKENS, tokens);
+        });
+    }
+
+    // Erros sintáticos vão direto para a saída, pelo MyCustomErrorListener
+    static CompilerPass parse() {
+        return CompilerPass.of("parse", Set.of(TOKENS, OUTPUT), Set.of(TREE, SYNTAX_OK, SYNTAX_ERRORS), ctx -> {
+            ColumnarTokenStream tokens = ctx.get(TOKENS);
+            ParseCache cache = ctx.has(PARSE_CACHE) ? ctx.get(PARSE_CACHE) : null;
+            ProgramaContext arvore = cache != null ? cache.tree() : null;
+            boolean guardada = arvore != null;
+            // Programas grandes: declarações de topo analisadas em paralelo; null se for preciso o parser serial
+            if (arvore == null && ParallelParser.worthIt(tokens)) arvore = ParallelParser.parse(tokens);
+            boolean semErrosSintaticos = arvore != null;
+            MyCustomErrorListener erros = new MyCustomErrorListener(ctx.get(OUTPUT));
+            if (arvore == null) {
+                JanderParser parser;
+                if (ctx.has(SESSION)) {
+                    parser = ctx.get(SESSION).parser(tokens, erros);
+                } else {
+                    parser = new JanderParser(tokens);
+                    parser.removeErrorListeners();
+                    parser.addErrorListener(erros);
+                }
+                arvore = parser.programa();
+                semErrosSintaticos = parser.getNumberOfSyntaxErrors() == 0;
+            }
+            if (cache != null && semErrosSintaticos && !guardada) cache.store(tokens, arvore);
+            ctx.put(TREE, arvore);
+            ctx.put(SYNTAX_OK, semErrosSintaticos);
+            ctx.put(SYNTAX_ERRORS, erros.diagnostics());
+        });
+    }
+
+    static CompilerPass semantic() {
+        return semantic(true);
+    }
+
+    // Sem aposErroSintatico, uma árvore com erros não é analisada (escopos e referências vazios)
+    static CompilerPass semantic(boolean aposErroSintatico) {
+        Set<Artifact<?>> inputs = aposErroSintatico ? Set.of(TREE, OUTPUT) : Set.of(TREE, SYNTAX_OK, OUTPUT);
+        return CompilerPass.of("semantic", inputs, Set.of(SEMANTIC_ERRORS, SCOPES, CROSS_REFERENCES), ctx -> {
+            if (!aposErroSintatico && !ctx.get(SYNTAX_OK)) {
+                ctx.put(SEMANTIC_ERRORS, new ArrayList<>());
+                ctx.put(SCOPES, new ScopeIndex());
+                ctx.put(CROSS_REFERENCES, new CrossReferenceIndex.Builder().build());
+                return;
+            }
+            JanderSemantico semantico = new JanderSemantico(ctx.get(OUTPUT));
+            if (ctx.has(WRITE_INTERFACES)) semantico.setWriteInterfaces(ctx.get(WRITE_INTERFACES));
+            semantico.visit(ctx.get(TREE));
+            // Os erros ficam num ThreadLocal desta thread; o passo write pode rodar em outra
+            ctx.put(SEMANTIC_ERRORS, new ArrayList<>(JanderSemanticoUtils.semanticErrors()));
+            ctx.put(SCOPES, semantico.getScopeIndex());
+            ctx.put(CROSS_REFERENCES, semantico.getCrossReferences());
+        });
+    }
+
+    static TreeWalkingPass<RoutineFacts> routineFacts() {
+        return TreeWalkingPass.of("routine-facts", TREE, Set.of(ROUTINE_FACTS),
+            ctx -> new RoutineFacts(),
+            (facts, ctx) -> ctx.put(ROUTINE_FACTS, facts));
+    }
+
+    static TreeWalkingPass<PointsToAnalysis> pointsTo() {
+        return TreeWalkingPass.of("points-to", TREE, Set.of(POINTS_TO),
+            ctx -> new PointsToAnalysis(),
+            (analysis, ctx) -> ctx.put(POINTS_TO, analysis));
+    }
+
+    // Só analisa programas sem erros sintáticos; os avisos de apontamento entram junto, por linha
+    static CompilerPass dataFlow() {
+        return CompilerPass.of("dataflow", Set.of(TREE, SYNTAX_OK, ROUTINE_FACTS, POINTS_TO), Set.of(WARNINGS), ctx -> {
+            List<String> warnings = ctx.get(SYNTAX_OK)
+                ? PointsToAnalysis.merge(DataFlowAnalysis.analyze(ctx.get(TREE), ctx.get(ROUTINE_FACTS)),
+                    ctx.get(POINTS_TO).warnings())
+                : new ArrayList<>();
+            ctx.put(WARNINGS, warnings);
+        });
+    }
+
+    // Acessos a arranjos provados seguros e sempre fora dos limites; vazio com erros sintáticos
+    static CompilerPass arrayBounds() {
+        return CompilerPass.of("bounds", Set.of(TREE, SYNTAX_OK, ROUTINE_FACTS), Set.of(ARRAY_BOUNDS), ctx -> {
+            ctx.put(ARRAY_BOUNDS, ctx.get(SYNTAX_OK)
+                ? ArrayBoundsAnalysis.analyze(ctx.get(TREE), ctx.get(ROUTINE_FACTS))
+                : ArrayBoundsAnalysis.empty());
+        });
+    }
+
+    // Só programas sem erros são compilados; os acessos provados seguros dispensam a verificação de índice
+    static CompilerPass bytecode() {
+        return CompilerPass.of("bytecode", Set.of(TREE, SYNTAX_OK, SEMANTIC_ERRORS, ARRAY_BOUNDS), Set.of(BYTECODE), ctx -> {
+            boolean ok = ctx.get(SYNTAX_OK) && ctx.get(SEMANTIC_ERRORS).isEmpty();
+            ctx.put(BYTECODE, ok ? Optional.of(BytecodeCompiler.compile(ctx.get(TREE), ctx.get(ARRAY_BOUNDS))) : Optional.empty());
+        });
+    }
+
+    // Só programas sem erros são montados; IllegalArgumentException se usarem rotinas importadas
+    static CompilerPass interpreter() {
+        return CompilerPass.of("ast", Set.of(TREE, SYNTAX_OK, SEMANTIC_ERRORS), Set.of(INTERPRETER), ctx -> {
+            boolean ok = ctx.get(SYNTAX_OK) && ctx.get(SEMANTIC_ERRORS).isEmpty();
+            ctx.put(INTERPRETER, ok ? Optional.of(AstInterpreter.build(ctx.get(TREE))) : Optional.empty());
+        });
+    }
+
+    // Programas com erros têm as mensagens de sempre; os demais viram C, com os avisos como comentários no início
+    static CompilerPass cSource(boolean avisos) {
+        Set<Artifact<?>> inputs = avisos
+            ? Set.of(SOURCE, TREE, SYNTAX_OK, OUTPUT, SEMANTIC_ERRORS, ARRAY_BOUNDS, WARNINGS)
+            : Set.of(SOURCE, TREE, SYNTAX_OK, OUTPUT, SEMANTIC_ERRORS, ARRAY_BOUNDS);
+        return CompilerPass.of("c", inputs, Set.of(), ctx -> {
+            PrintWriter pw = ctx.get(OUTPUT);
+            List<String> warnings = avisos ? PointsToAnalysis.merge(ctx.get(WARNINGS), ctx.get(ARRAY_BOUNDS).warnings()) : List.of();
+            if (ctx.get(SYNTAX_OK) && ctx.get(SEMANTIC_ERRORS).isEmpty()) {
+                CEmitter.emit(ctx.get(TREE), ctx.get(ARRAY_BOUNDS), warnings, ctx.get(SOURCE).getSourceName(), pw);
+            } else {
+                JanderSemantico.printDiagnostics(pw, ctx.get(SEMANTIC_ERRORS), warnings);
+            }
+            pw.flush();
+        });
+    }
+
+    static CompilerPass write(boolean avisos) {
+        Set<Artifact<?>> inputs = avisos ? Set.of(OUTPUT, SEMANTIC_ERRORS, WARNINGS, ARRAY_BOUNDS) : Set.of(OUTPUT, SEMANTIC_ERRORS);
+        return CompilerPass.of("write", inputs, Set.of(), ctx -> {
+            PrintWriter pw = ctx.get(OUTPUT);
+            List<String> warnings = avisos ? PointsToAnalysis.merge(ctx.get(WARNINGS), ctx.get(ARRAY_BOUNDS).warnings()) : List.of();
+            JanderSemantico.printDiagnostics(pw, ctx.get(SEMANTIC_ERRORS), warnings);
+            pw.flush();
+        });
+    }
+}
@@ -3,13 +3,21 @@ package br.ufscar.dc.compiladores;
 import br.ufscar.dc.compiladores.JanderParser.*;
 import br.ufscar.dc.compiladores.SymbolTable.JanderType;
 import br.ufscar.dc.compiladores.SymbolTable;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
 
 import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class JanderSemantico extends JanderBaseVisitor<Void> {
     private SymbolTable symbolTable; // Tabela de símbolos para armazenar identificadores declarados e seus tipos.
@@ -17,66 +25,92 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
 
     private boolean dentroDeFuncao = false;
 
+    private ScopeIndex scopeIndex = new ScopeIndex(); // Snapshots da tabela por posição, para consultas após a análise.
+
+    private CrossReferenceIndex.Builder crossReferenceBuilder; // Usos registrados durante a análise.
+    private CrossReferenceIndex crossReferences; // Índice declaração -> usos da última análise.
+
+    private final Set<String> importedNames = new HashSet<>(); // Símbolos vindos de bibliotecas importadas.
+    private List<SymbolTable.SymbolTableEntry> exportedSymbols = new ArrayList<>(); // Símbolos próprios de uma biblioteca.
+
+    private boolean dataFlowWarnings = false; // Se true, roda a análise de fluxo de dados e imprime os avisos.
+    private List<String> warnings = new ArrayList<>();
+
+    private OffHeapStore offHeap; // Se não for null, a tabela de símbolos fica fora do heap, neste store.
+
+    private int commandThreads = ParallelCommandChecker.THREADS; // Threads para os comandos de um corpo grande.
+    private boolean writeInterfaces = true; // Se false, os importes não gravam as interfaces .jli.
+
+    // Registra a declaração recém-inserida no escopo atual para o índice de referências cruzadas.
+    private void declared(String name, Token token) {
+        if (crossReferenceBuilder != null) {
+            crossReferenceBuilder.declare(symbolTable.lookupInCurrentScope(name), token);
+        }
+    }
+
+    // Resolve o tipo de um identificador (com campos de registro e índices de array).
+    // O caminho de acesso ("var.campo") só é montado quando um erro é de fato emitido.
     private SymbolTable.JanderType resolveIdentificadorType(
             IdentificadorContext identCtx,
             SymbolTable symbolTable,
-            StringBuilder outFullAccessPath) {
+            int useKind) {
 
-        outFullAccessPath.setLength(0);
-        List<org.antlr.v4.runtime.tree.TerminalNode> idParts = identCtx.IDENT();
+        int partCount = JanderSemanticoUtils.identPartCount(identCtx);
 
-        if (idParts.isEmpty()) {
+        if (partCount == 0) {
             JanderSemanticoUtils.addSemanticError(identCtx.start, "Identificador inválido.");
             return SymbolTable.JanderType.INVALID;
         }
 
-        String baseVarName = idParts.get(0).getText();
-        Token baseVarToken = idParts.get(0).getSymbol();
-        outFullAccessPath.append(baseVarName);
+        TerminalNode baseVarNode = identCtx.IDENT(0);
+        String baseVarName = baseVarNode.getText();
 
-        if (!symbolTable.containsSymbol(baseVarName)) {
-            JanderSemanticoUtils.addSemanticError(baseVarToken, "identificador " + baseVarName + " nao declarado");
+        SymbolTable.SymbolTableEntry baseEntry = symbolTable.lookup(baseVarName);
+        if (baseEntry == null) {
+            JanderSemanticoUtils.addSemanticError(baseVarNode.getSymbol(), "identificador " + baseVarName + " nao declarado");
             return SymbolTable.JanderType.INVALID;
         }
+        JanderSemanticoUtils.recordUse(baseEntry, baseVarNode.getSymbol(), useKind);
 
-        SymbolTable.JanderType currentResolvedType = symbolTable.getSymbolType(baseVarName);
+        SymbolTable.JanderType currentResolvedType = baseEntry.type;
 
         // Lida com acesso a campos de registro (ex: ponto1.x)
-        for (int i = 1; i < idParts.size(); i++) {
-            String fieldName = idParts.get(i).getText();
-            Token fieldToken = idParts.get(i).getSymbol();
-            String currentRecordPath = outFullAccessPath.toString();
-            outFullAccessPath.append(".").append(fieldName);
+        for (int i = 1; i < partCount; i++) {
+            TerminalNode fieldNode = identCtx.IDENT(i);
+            String fieldName = fieldNode.getText();
 
             if (currentResolvedType != SymbolTable.JanderType.RECORD) {
-                JanderSemanticoUtils.addSemanticError(idParts.get(i - 1).getSymbol(), "identificador " + currentRecordPath + " nao eh um registro para acessar o campo '" + fieldName + "'.");
+                JanderSemanticoUtils.addSemanticError(identCtx.IDENT(i - 1).getSymbol(), "identificador " + JanderSemanticoUtils.accessPath(identCtx, i) + " nao eh um registro para acessar o campo '" + fieldName + "'.");
                 return SymbolTable.JanderType.INVALID;
             }
             
-            String recordVariableForFieldLookup = idParts.get(0).getText();
             if (i > 1) {
-                JanderSemanticoUtils.addSemanticError(fieldToken, "Acesso a campos de registros profundamente aninhados (ex: var.regcampo.subcampo) não é diretamente suportado por esta resolução simplificada.");
+                JanderSemanticoUtils.addSemanticError(fieldNode.getSymbol(), "Acesso a campos de registros profundamente aninhados (ex: var.regcampo.subcampo) não é diretamente suportado por esta resolução simplificada.");
                 return SymbolTable.JanderType.INVALID;
             }
 
-            Map<String, SymbolTable.JanderType> fields = symbolTable.getRecordFields(recordVariableForFieldLookup);
+            Map<String, SymbolTable.JanderType> fields = symbolTable.getRecordFields(baseVarName);
             if (fields.isEmpty() && currentResolvedType == SymbolTable.JanderType.RECORD) {
-                JanderSemanticoUtils.addSemanticError(idParts.get(i-1).getSymbol(), "identificador " + currentRecordPath + " é um registro, mas parece não ter campos definidos ou acessíveis.");
+                JanderSemanticoUtils.addSemanticError(identCtx.IDENT(i - 1).getSymbol(), "identificador " + JanderSemanticoUtils.accessPath(identCtx, i) + " é um registro, mas parece não ter campos definidos ou acessíveis.");
                 return SymbolTable.JanderType.INVALID;
             }
 
-            if (!fields.containsKey(fieldName)) {
-                JanderSemanticoUtils.addSemanticError(fieldToken, "identificador " + currentRecordPath + "." + fieldName + " nao declarado");
+            SymbolTable.JanderType fieldType = fields.get(fieldName);
+            if (fieldType == null) {
+                JanderSemanticoUtils.addSemanticError(fieldNode.getSymbol(), "identificador " + JanderSemanticoUtils.accessPath(identCtx, i + 1) + " nao declarado");
                 return SymbolTable.JanderType.INVALID;
             }
-            currentResolvedType = fields.get(fieldName);
+            currentResolvedType = fieldType;
         }
 
         // Lida com acesso a dimensões de array
-        if (identCtx.dimensao() != null && !identCtx.dimensao().exp_aritmetica().isEmpty()) {
+        DimensaoContext dimCtx = identCtx.dimensao();
+        if (dimCtx != null && dimCtx.getChildCount() > 0) {
             if (currentResolvedType == SymbolTable.JanderType.ARRAY) {
                 // Valida que os índices são inteiros
-                for (Exp_aritmeticaContext dimExpr : identCtx.dimensao().exp_aritmetica()) {
+                for (int d = 0; d < dimCtx.getChildCount(); d++) {
+                    if (!(dimCtx.getChild(d) instanceof Exp_aritmeticaContext)) continue;
+                    Exp_aritmeticaContext dimExpr = (Exp_aritmeticaContext) dimCtx.getChild(d);
                     SymbolTable.JanderType indexType = JanderSemanticoUtils.checkType(symbolTable, dimExpr);
                     if (indexType != SymbolTable.JanderType.INTEGER) {
                         JanderSemanticoUtils.addSemanticError(dimExpr.start, "Índice de array deve ser do tipo inteiro");
@@ -85,7 +119,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
                 // Retorna o tipo dos elementos do array
                 currentResolvedType = symbolTable.getArrayElementType(baseVarName);
             } else {
-                JanderSemanticoUtils.addSemanticError(identCtx.dimensao().start, "Operador de indexação aplicado a uma variável que não é um array: " + outFullAccessPath.toString());
+                JanderSemanticoUtils.addSemanticError(dimCtx.start, "Operador de indexação aplicado a uma variável que não é um array: " + JanderSemanticoUtils.accessPath(identCtx, partCount));
                 return SymbolTable.JanderType.INVALID;
             }
         }
@@ -103,7 +137,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
 
             if (tipoDoCampoCtx.tipo_estendido() != null) {
                 Tipo_estendidoContext teCtx = tipoDoCampoCtx.tipo_estendido();
-                if (teCtx.getChildCount() > 0 && teCtx.getChild(0).getText().equals("^")) {
+                if (teCtx.CIRCUNFLEXO() != null) {
                     campoIsPointer = true;
                 }
 
@@ -113,7 +147,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
                 } else if (tbiCtx.IDENT() != null) {
                     nomeDoTipoDoCampoStr = tbiCtx.IDENT().getText();
                     if (!symbolTable.containsSymbol(nomeDoTipoDoCampoStr) || symbolTable.getSymbolType(nomeDoTipoDoCampoStr) != JanderType.RECORD) {
-                        boolean isBasic = nomeDoTipoDoCampoStr.matches("(?i)inteiro|real|literal|logico");
+                        boolean isBasic = JanderSemanticoUtils.isBasicTypeName(nomeDoTipoDoCampoStr);
                         if(!isBasic && (!symbolTable.containsSymbol(nomeDoTipoDoCampoStr) || symbolTable.getSymbolType(nomeDoTipoDoCampoStr) != JanderType.RECORD)){
                             JanderSemanticoUtils.addSemanticError(tbiCtx.IDENT().getSymbol(), "Tipo '" + nomeDoTipoDoCampoStr + "' usado em campo do registro '" + recordTypeNameForContext + "' não é um tipo de registro declarado nem um tipo básico.");
                         }
@@ -153,7 +187,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
 
             for (IdentificadorContext nomeCampoIdentCtx : campoVarCtx.identificador()) {
                 String nomeCampo = nomeCampoIdentCtx.IDENT(0).getText(); 
-                if (nomeCampoIdentCtx.IDENT().size() > 1 || (nomeCampoIdentCtx.dimensao() != null && !nomeCampoIdentCtx.dimensao().getText().isEmpty()) ) {
+                if (nomeCampoIdentCtx.IDENT().size() > 1 || (nomeCampoIdentCtx.dimensao() != null && nomeCampoIdentCtx.dimensao().getChildCount() > 0) ) {
                     JanderSemanticoUtils.addSemanticError(nomeCampoIdentCtx.start, "Nomes de campo de registro devem ser identificadores simples na definição do tipo '" + recordTypeNameForContext + "'.");
                     continue;
                 }
@@ -185,7 +219,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
             return new TypeParsingResult(JanderType.INVALID, JanderType.INVALID, "");
         }
 
-        boolean isPointer = teCtx.getChild(0) != null && teCtx.getChild(0).getText().equals("^");
+        boolean isPointer = teCtx.CIRCUNFLEXO() != null;
         Tipo_basico_identContext tbiCtx = teCtx.tipo_basico_ident();
         String typeNameStr;
 
@@ -200,6 +234,9 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
 
         JanderType baseType;
         JanderType typeInTable = symbolTable.getSymbolType(typeNameStr);
+        if (tbiCtx.IDENT() != null) {
+            JanderSemanticoUtils.recordUse(symbolTable, tbiCtx.IDENT().getSymbol(), typeNameStr, CrossReferenceIndex.READ);
+        }
 
         switch (typeNameStr.toLowerCase()) {
             case "inteiro": baseType = JanderType.INTEGER; break;
@@ -229,19 +266,79 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
     public JanderSemantico(PrintWriter pw) {
         this.symbolTable = new SymbolTable();
         this.pw = pw;
-        JanderSemanticoUtils.semanticErrors.clear();
+        JanderSemanticoUtils.semanticErrors().clear();
+    }
+
+    // Cópia para verificar comandos em outra thread (ver visitCommands): lê o escopo atual por um snapshot
+    // imutável e não verifica em paralelo de novo.
+    private JanderSemantico(JanderSemantico parent) {
+        this.symbolTable = new SymbolTable(parent.symbolTable.snapshot());
+        this.pw = parent.pw;
+        this.dentroDeFuncao = parent.dentroDeFuncao;
+        this.commandThreads = 1;
+        this.writeInterfaces = parent.writeInterfaces;
+    }
+
+    // Retorna os snapshots de escopo registrados durante a última análise.
+    public ScopeIndex getScopeIndex() {
+        return scopeIndex;
+    }
+
+    // Retorna o índice de referências cruzadas da última análise (null antes de visitar um programa).
+    public CrossReferenceIndex getCrossReferences() {
+        return crossReferences;
+    }
+
+    // Liga os avisos de fluxo de dados (variáveis não inicializadas, atribuições inúteis, funções sem retorne)
+    // de apontamento (ponteiros para outro tipo, escrita através de ponteiro sem endereço) e de limites de arranjos.
+    public void setDataFlowWarnings(boolean enabled) {
+        this.dataFlowWarnings = enabled;
+    }
+
+    // Threads usadas nos corpos com muitos comandos (1 para sempre analisar em série).
+    void setCommandThreads(int threads) {
+        this.commandThreads = threads;
+    }
+
+    // Se false, as interfaces .jli das bibliotecas importadas (e das que elas importam) são lidas, mas nunca
+    // gravadas: uma biblioteca sem interface válida é reanalisada a cada compilação.
+    public void setWriteInterfaces(boolean enabled) {
+        this.writeInterfaces = enabled;
+    }
+
+    // Guarda a tabela de símbolos das próximas análises no store dado (sem ScopeIndex nem referências cruzadas).
+    void useOffHeap(OffHeapStore store) {
+        this.offHeap = store;
+    }
+
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    // Símbolos declarados pela biblioteca analisada (sem os que ela mesma importou).
+    List<SymbolTable.SymbolTableEntry> getExportedSymbols() {
+        return exportedSymbols;
     }
 
     // Verifica se algum erro semântico foi registrado.
     public boolean hasErrors() {
-        return !JanderSemanticoUtils.semanticErrors.isEmpty();
+        return !JanderSemanticoUtils.semanticErrors().isEmpty();
     }
 
     // Imprime todos os erros semânticos registrados no PrintWriter e uma mensagem final de compilação.
     public void printErrors() {
-        for (String error : JanderSemanticoUtils.semanticErrors) {
+        printDiagnostics(pw, JanderSemanticoUtils.semanticErrors(), warnings);
+    }
+
+    // Erros, avisos e a mensagem final; também usado pelo passo "write" do PassManager.
+    static void printDiagnostics(PrintWriter pw, List<String> errors, List<String> warnings) {
+        for (String error : errors) {
             pw.println(error);
         }
+        JanderEvents.diagnostics("semantico", errors.size(), errors.isEmpty() ? null : errors.get(0));
+        for (String warning : warnings) {
+            pw.println(warning);
+        }
         pw.println("Fim da compilacao");
     }
 
@@ -249,15 +346,98 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
     // Inicializa/reseta a tabela de símbolos e listas de erros para a unidade de compilação atual.
     @Override
     public Void visitPrograma(ProgramaContext ctx) {
+        beginProgram();
+        try {
+            super.visitPrograma(ctx);
+        } finally {
+            JanderSemanticoUtils.setCrossReferenceBuilder(null);
+        }
+        endProgram();
+        if (dataFlowWarnings) {
+            RoutineFacts facts = RoutineFacts.collect(ctx);
+            warnings = PointsToAnalysis.merge(DataFlowAnalysis.analyze(ctx, facts), PointsToAnalysis.collect(ctx).warnings());
+            warnings = PointsToAnalysis.merge(warnings, ArrayBoundsAnalysis.analyze(ctx, facts).warnings());
+        } else {
+            warnings = new ArrayList<>();
+        }
+        return null;
+    }
+
+    // Início e fim da análise de um programa, separados para o OffHeapCompiler, que visita
+    // as importações, declarações e comandos um a um em vez da árvore inteira.
+    void beginProgram() {
+        symbolTable = offHeap != null ? new OffHeapSymbolTable(offHeap) : new SymbolTable();
+        scopeIndex = new ScopeIndex();
+        JanderSemanticoUtils.semanticErrors().clear();
+        symbolTable.openScope();
+        recordScope(null);
+        importedNames.clear();
+        warnings = new ArrayList<>();
+        crossReferenceBuilder = offHeap != null ? null : new CrossReferenceIndex.Builder();
+        JanderSemanticoUtils.setCrossReferenceBuilder(crossReferenceBuilder);
+    }
+
+    void endProgram() {
+        JanderSemanticoUtils.setCrossReferenceBuilder(null);
+        crossReferences = crossReferenceBuilder != null ? crossReferenceBuilder.build() : null;
+        crossReferenceBuilder = null;
+        symbolTable.closeScope();
+    }
+
+    // Guarda o escopo visível a partir do token (sem snapshots no modo fora do heap).
+    private void recordScope(Token token) {
+        if (offHeap == null) {
+            scopeIndex.record(token, symbolTable.snapshot());
+        }
+    }
+
+    // Chamado ao visitar uma biblioteca (apenas declarações, sem 'algoritmo').
+    // Guarda os símbolos do escopo global para gerar a interface da biblioteca.
+    @Override
+    public Void visitBiblioteca(BibliotecaContext ctx) {
         symbolTable = new SymbolTable();
-        JanderSemanticoUtils.semanticErrors.clear();
-        JanderSemanticoUtils.clearCurrentAssignmentVariableStack();
+        scopeIndex = new ScopeIndex();
+        JanderSemanticoUtils.semanticErrors().clear();
+        importedNames.clear();
         symbolTable.openScope();
-        super.visitPrograma(ctx);
+        super.visitBiblioteca(ctx);
+
+        exportedSymbols = new ArrayList<>();
+        symbolTable.snapshot().symbols.forEach((name, entry) -> {
+            if (!importedNames.contains(name)) exportedSymbols.add(entry);
+        });
         symbolTable.closeScope();
         return null;
     }
 
+    // Chamado ao visitar um 'importe "arquivo"'. O caminho é relativo ao diretório do nome do fonte; um nome sem
+    // diretório (ou sem nome) resolve no diretório atual.
+    @Override
+    public Void visitImportacao(ImportacaoContext ctx) {
+        if (ctx.CADEIA() == null) return null;
+        String cadeia = ctx.CADEIA().getText();
+        String nome = cadeia.substring(1, cadeia.length() - 1);
+
+        Path library = Paths.get(nome);
+        String sourceName = ctx.start.getInputStream().getSourceName();
+        if (!library.isAbsolute() && sourceName != null && !sourceName.equals(IntStream.UNKNOWN_SOURCE_NAME)) {
+            Path dir = Paths.get(sourceName).toAbsolutePath().getParent();
+            if (dir != null) library = dir.resolve(library);
+        }
+
+        SymbolTable.Scope before = offHeap == null ? symbolTable.snapshot() : null;
+        for (String erro : LibraryInterface.importInto(symbolTable, library, writeInterfaces)) {
+            JanderSemanticoUtils.addSemanticError(ctx.start, erro);
+        }
+        if (before != null) {
+            symbolTable.snapshot().symbols.forEach((name, entry) -> {
+                if (!before.symbols.containsKey(name)) importedNames.add(name);
+            });
+        }
+        recordScope(ctx.stop);
+        return null;
+    }
+
     // Chamado ao visitar uma declaração local ou global.
     // Delega para o visitor da declaração específica.
     @Override
@@ -270,8 +450,25 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
         return null;
     }
 
+    // Chamado ao visitar um procedimento ou função; a análise de cada rotina gera um evento JFR.
     @Override
     public Void visitDeclaracao_global(Declaracao_globalContext globalCtx) {
+        JanderEvents.RoutineAnalysisEvent event = new JanderEvents.RoutineAnalysisEvent();
+        event.begin();
+        declaracaoGlobal(globalCtx);
+        event.end();
+        if (event.shouldCommit()) {
+            event.routine = globalCtx.IDENT() != null ? globalCtx.IDENT().getText() : "";
+            event.kind = globalCtx.FUNCAO() != null ? "funcao" : "procedimento";
+            event.line = globalCtx.start.getLine();
+            event.startToken = globalCtx.start.getTokenIndex();
+            event.stopToken = globalCtx.stop != null ? globalCtx.stop.getTokenIndex() : -1;
+            event.commit();
+        }
+        return null;
+    }
+
+    private Void declaracaoGlobal(Declaracao_globalContext globalCtx) {
         String funcName = globalCtx.IDENT().getText();
         Token funcNameToken = globalCtx.IDENT().getSymbol();
         List<JanderType> paramTypesForSignature = new ArrayList<>();
@@ -306,6 +503,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
             return null; 
         }
         symbolTable.addFunction(funcName, returnType, paramTypesForSignature);
+        declared(funcName, funcNameToken);
 
         // Abre um novo escopo para o corpo da função e seus parâmetros
         symbolTable.openScope();
@@ -353,27 +551,62 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
                         } else {
                             symbolTable.addSymbol(paramName, JanderType.INVALID);
                         }
+                        declared(paramName, paramToken);
                     }
                 }
             }
         }
+        Token fimParametros = globalCtx.FECHAPAR() != null ? globalCtx.FECHAPAR().getSymbol() : funcNameToken;
+        recordScope(fimParametros);
 
         // Visita as declarações locais e comandos dentro do corpo da função
         for (Declaracao_localContext localDeclCtx : globalCtx.declaracao_local()) {
             visitDeclaracao_local(localDeclCtx);
         }
-        for (CmdContext cmdCtx : globalCtx.cmd()) {
-            visit(cmdCtx);
-        }
+        visitCommands(globalCtx.cmd());
 
         this.dentroDeFuncao = oldDentroDeFuncao;
         symbolTable.closeScope();
+        recordScope(globalCtx.stop);
         return null;
     }
 
+    // Chamado ao visitar o corpo do algoritmo: as declarações fixam o escopo, depois vêm os comandos.
+    @Override
+    public Void visitCorpo(CorpoContext ctx) {
+        for (Declaracao_localContext localDeclCtx : ctx.declaracao_local()) {
+            visitDeclaracao_local(localDeclCtx);
+        }
+        visitCommands(ctx.cmd());
+        return null;
+    }
+
+    // Os comandos de um corpo não declaram nada, só leem a tabela de símbolos. Listas grandes são divididas
+    // em trechos verificados em paralelo, cada um com uma cópia deste visitor sobre o escopo atual; os erros
+    // e os usos voltam na ordem dos comandos, como na visita em série.
+    private void visitCommands(List<CmdContext> cmds) {
+        if (offHeap == null && ParallelCommandChecker.worthIt(cmds, commandThreads)) {
+            ParallelCommandChecker.check(cmds, commandThreads, () -> new JanderSemantico(this), crossReferenceBuilder);
+            return;
+        }
+        for (CmdContext cmdCtx : cmds) {
+            visit(cmdCtx);
+        }
+    }
+
     // Chamado ao visitar uma declaração local (variáveis ou constantes).
     @Override
     public Void visitDeclaracao_local(Declaracao_localContext ctx) {
+        declaracaoLocal(ctx);
+        if (ctx.IDENT() != null) { // constante ou tipo
+            declared(ctx.IDENT().getText(), ctx.IDENT().getSymbol());
+        }
+        // As declarações feitas passam a ser visíveis a partir do fim desta declaração
+        recordScope(ctx.stop);
+        return null;
+    }
+
+    private Void declaracaoLocal(Declaracao_localContext ctx) {
         if (ctx.DECLARE() != null) { 
             if (ctx.variavel() != null) {
                 visitVariavel(ctx.variavel());
@@ -417,7 +650,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
                 }
             } else if (typeDefinitionCtx.tipo_estendido() != null) {
                 Tipo_estendidoContext teCtx = typeDefinitionCtx.tipo_estendido();
-                boolean isPointer = teCtx.getChildCount() > 0 && teCtx.getChild(0).getText().equals("^");
+                boolean isPointer = teCtx.CIRCUNFLEXO() != null;
                 String baseTypeNameStr;
                 Tipo_basico_identContext tbiCtx = teCtx.tipo_basico_ident();
 
@@ -443,6 +676,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
                     case "logico":  underlyingBaseType = JanderType.LOGICAL; break;
                     default:
                         if(symbolTable.containsSymbol(baseTypeNameStr)) {
+                            JanderSemanticoUtils.recordUse(symbolTable, tbiCtx.IDENT().getSymbol(), baseTypeNameStr, CrossReferenceIndex.READ);
                             JanderType referencedType = symbolTable.getSymbolType(baseTypeNameStr);
                             if (referencedType == JanderType.RECORD) {
                                 Map<String, JanderType> fieldsToCopy = symbolTable.getRecordFields(baseTypeNameStr);
@@ -500,6 +734,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
                 } else {
                     symbolTable.addRecordSymbol(varName, recordFields);
                 }
+                declared(varName, identCtx.IDENT(0).getSymbol());
             }
         } else {
             boolean isPointer = false;
@@ -510,7 +745,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
                 return null;
             }
 
-            if (teCtx.getChildCount() > 0 && teCtx.getChild(0).getText().equals("^")) {
+            if (teCtx.CIRCUNFLEXO() != null) {
                 isPointer = true;
             }
             
@@ -533,6 +768,9 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
 
             SymbolTable.JanderType baseType;
             JanderType typeNameInSymbolTable = symbolTable.getSymbolType(typeString);
+            if (tbiCtx.IDENT() != null) {
+                JanderSemanticoUtils.recordUse(symbolTable, tbiCtx.IDENT().getSymbol(), typeString, CrossReferenceIndex.READ);
+            }
 
             switch (typeString.toLowerCase()) {
                 case "inteiro": baseType = SymbolTable.JanderType.INTEGER; break;
@@ -601,6 +839,7 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
                         }
                     }
                 }
+                declared(varName, identCtx.IDENT(0).getSymbol());
             }
         }
         return null;
@@ -609,32 +848,31 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
     // Chamado ao visitar um comando de atribuição (ex: variavel = expressao).
     @Override
     public Void visitCmdAtribuicao(CmdAtribuicaoContext ctx) {
-        String fullLhsText = ctx.identificador().getText();
         Token lhsToken = ctx.identificador().start;
 
+        boolean temCircunflexo = ctx.CIRCUNFLEXO() != null;
+
         // Use the existing resolveIdentificadorType method to properly handle arrays, records, etc.
-        StringBuilder fullAccessPath = new StringBuilder();
-        SymbolTable.JanderType lhsResolvedType = resolveIdentificadorType(ctx.identificador(), symbolTable, fullAccessPath);
+        int useKind = temCircunflexo ? CrossReferenceIndex.WRITE | CrossReferenceIndex.DEREF : CrossReferenceIndex.WRITE;
+        SymbolTable.JanderType lhsResolvedType = resolveIdentificadorType(ctx.identificador(), symbolTable, useKind);
         
         // Handle dereferencing with '^'
-        boolean temCircunflexo = ctx.getChild(0).getText().equals("^");
         if (temCircunflexo) {
             if (lhsResolvedType == SymbolTable.JanderType.POINTER) {
                 // Get the base variable name for pointer lookup
                 String baseVarName = ctx.identificador().IDENT(0).getText();
                 lhsResolvedType = symbolTable.getPointedType(baseVarName);
             } else if (lhsResolvedType != SymbolTable.JanderType.INVALID) {
-                JanderSemanticoUtils.addSemanticError(lhsToken, "operador '^' aplicado a um nao-ponteiro: " + fullLhsText);
+                JanderSemanticoUtils.addSemanticError(lhsToken, "operador '^' aplicado a um nao-ponteiro: " + ctx.identificador().getText());
                 lhsResolvedType = SymbolTable.JanderType.INVALID;
             }
         }
 
-        JanderSemanticoUtils.setCurrentAssignmentVariable(fullLhsText);
         SymbolTable.JanderType expressionType = JanderSemanticoUtils.checkType(symbolTable, ctx.expressao());
-        JanderSemanticoUtils.clearCurrentAssignmentVariableStack();
 
         if (lhsResolvedType != SymbolTable.JanderType.INVALID && expressionType != SymbolTable.JanderType.INVALID) {
             if (JanderSemanticoUtils.areTypesIncompatible(lhsResolvedType, expressionType)) {
+                String fullLhsText = ctx.identificador().getText();
                 String alvo = temCircunflexo ? "^" + fullLhsText : fullLhsText;
                 JanderSemanticoUtils.addSemanticError(lhsToken, "atribuicao nao compativel para " + alvo);
             }
@@ -645,68 +883,61 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
     // Chamado ao visitar um comando de leitura (ex: leia variavel1, variavel2).
     @Override
     public Void visitCmdLeia(CmdLeiaContext ctx) {
-        for (int i = 2; i < ctx.getChildCount() -1; ) {
-            boolean hasCaret = false;
-            org.antlr.v4.runtime.tree.ParseTree child = ctx.getChild(i);
+        boolean hasCaret = false;
+        for (int i = 0; i < ctx.getChildCount(); i++) {
+            ParseTree child = ctx.getChild(i);
 
-            if (child.getText().equals("^")) {
+            // Um '^' vale apenas para o identificador que vem logo em seguida
+            if (JanderSemanticoUtils.isToken(child, JanderParser.CIRCUNFLEXO)) {
                 hasCaret = true;
-                i++;
-                if (i >= ctx.getChildCount() -1) break;
-                child = ctx.getChild(i);
+                continue;
+            }
+            if (!(child instanceof IdentificadorContext)) {
+                continue;
             }
 
-            if (child instanceof IdentificadorContext) {
-                IdentificadorContext identCtx = (IdentificadorContext) child;
-                StringBuilder fullAccessPath = new StringBuilder();
-                SymbolTable.JanderType resolvedType = resolveIdentificadorType(identCtx, this.symbolTable, fullAccessPath);
-                String pathStr = fullAccessPath.toString();
+            IdentificadorContext identCtx = (IdentificadorContext) child;
+            boolean deref = hasCaret;
+            hasCaret = false;
 
-                if (resolvedType == SymbolTable.JanderType.INVALID) {
-                    i++;
-                    if (i < ctx.getChildCount() -1 && ctx.getChild(i).getText().equals(",")) {
-                        i++;
-                    }
-                    continue;
-                }
+            int useKind = deref ? CrossReferenceIndex.WRITE | CrossReferenceIndex.DEREF : CrossReferenceIndex.WRITE;
+            SymbolTable.JanderType resolvedType = resolveIdentificadorType(identCtx, this.symbolTable, useKind);
+            if (resolvedType == SymbolTable.JanderType.INVALID) {
+                continue;
+            }
 
-                SymbolTable.JanderType effectiveType = resolvedType;
-                if (hasCaret) {
-                    if (resolvedType == SymbolTable.JanderType.POINTER) {
-                        String nameForPointedLookup = identCtx.IDENT(0).getText();
-                        effectiveType = this.symbolTable.getPointedType(nameForPointedLookup);
-                        if (effectiveType == SymbolTable.JanderType.INVALID) {
-                            JanderSemanticoUtils.addSemanticError(identCtx.start, "Ponteiro '" + pathStr + "' não aponta para um tipo válido para leitura.");
-                        }
-                    } else {
-                        JanderSemanticoUtils.addSemanticError(identCtx.start, "Operador '^' aplicado a um não-ponteiro '" + pathStr + "' no comando leia.");
-                        effectiveType = SymbolTable.JanderType.INVALID;
+            SymbolTable.JanderType effectiveType = resolvedType;
+            if (deref) {
+                if (resolvedType == SymbolTable.JanderType.POINTER) {
+                    String nameForPointedLookup = identCtx.IDENT(0).getText();
+                    effectiveType = this.symbolTable.getPointedType(nameForPointedLookup);
+                    if (effectiveType == SymbolTable.JanderType.INVALID) {
+                        JanderSemanticoUtils.addSemanticError(identCtx.start, "Ponteiro '" + JanderSemanticoUtils.accessPath(identCtx) + "' não aponta para um tipo válido para leitura.");
                     }
+                } else {
+                    JanderSemanticoUtils.addSemanticError(identCtx.start, "Operador '^' aplicado a um não-ponteiro '" + JanderSemanticoUtils.accessPath(identCtx) + "' no comando leia.");
+                    effectiveType = SymbolTable.JanderType.INVALID;
                 }
+            }
 
-                if (effectiveType != SymbolTable.JanderType.INVALID) {
-                    switch (effectiveType) {
-                        case INTEGER:
-                        case REAL:
-                        case LITERAL:
-                        case LOGICAL:
-                            break;
-                        case POINTER:
-                            JanderSemanticoUtils.addSemanticError(identCtx.start, "Não é permitido ler diretamente para uma variável ponteiro '" + pathStr + "'. Use o operador '^' para ler no endereço apontado.");
-                            break;
-                        case RECORD:
-                            JanderSemanticoUtils.addSemanticError(identCtx.start, "Não é permitido ler diretamente para uma variável de registro '" + pathStr + "'. Especifique um campo do registro.");
-                            break;
-                        default:
-                            JanderSemanticoUtils.addSemanticError(identCtx.start, "Tipo '" + effectiveType + "' do identificador '" + pathStr + "' não é permitido no comando leia.");
-                            break;
-                    }
+            if (effectiveType != SymbolTable.JanderType.INVALID) {
+                switch (effectiveType) {
+                    case INTEGER:
+                    case REAL:
+                    case LITERAL:
+                    case LOGICAL:
+                        break;
+                    case POINTER:
+                        JanderSemanticoUtils.addSemanticError(identCtx.start, "Não é permitido ler diretamente para uma variável ponteiro '" + JanderSemanticoUtils.accessPath(identCtx) + "'. Use o operador '^' para ler no endereço apontado.");
+                        break;
+                    case RECORD:
+                        JanderSemanticoUtils.addSemanticError(identCtx.start, "Não é permitido ler diretamente para uma variável de registro '" + JanderSemanticoUtils.accessPath(identCtx) + "'. Especifique um campo do registro.");
+                        break;
+                    default:
+                        JanderSemanticoUtils.addSemanticError(identCtx.start, "Tipo '" + effectiveType + "' do identificador '" + JanderSemanticoUtils.accessPath(identCtx) + "' não é permitido no comando leia.");
+                        break;
                 }
             }
-            i++;
-            if (i < ctx.getChildCount() -1 && ctx.getChild(i).getText().equals(",")) {
-                i++;
-            }
         }
         return null;
     }
@@ -720,12 +951,20 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
             JanderSemanticoUtils.addSemanticError(t,
                 "identificador " + nome + " nao declarado");
         } else {
+            JanderSemanticoUtils.recordUse(symbolTable, t, nome, CrossReferenceIndex.READ);
             JanderSemanticoUtils.validateCallArguments(
                 t, nome, ctx.expressao(), symbolTable);
         }
         return super.visitCmdChamada(ctx);
     }
 
+    // Chamado ao visitar um comando para; a variável de controle é escrita a cada iteração.
+    @Override
+    public Void visitCmdPara(CmdParaContext ctx) {
+        JanderSemanticoUtils.recordUse(symbolTable, ctx.IDENT().getSymbol(), ctx.IDENT().getText(), CrossReferenceIndex.WRITE);
+        return super.visitCmdPara(ctx);
+    }
+
     @Override
     public Void visitCmdRetorne(CmdRetorneContext ctx) {
         if (!dentroDeFuncao) {
@@ -739,21 +978,66 @@ public class JanderSemantico extends JanderBaseVisitor<Void> {
         }
         return null;
     }
-   // Chamado ao visitar uma parcela não unária (ex: literal string ou &identificador).
+    // Chamado ao visitar um endereço em expressão (ex: &identificador).
     @Override
-    public Void visitParcela_nao_unario(Parcela_nao_unarioContext ctx) {
+    public Void visitExpEndereco(ExpEnderecoContext ctx) {
         if (ctx.identificador() != null) {
             JanderSemanticoUtils.checkType(symbolTable, ctx);
         }
-        return super.visitParcela_nao_unario(ctx);
+        return super.visitExpEndereco(ctx);
     }
 
-    // Chamado ao visitar uma parcela unária (ex: número, identificador, chamada de função, (expressao)).
+    // Chamado ao visitar um identificador em expressão (ex: x, ^p, v[i], reg.campo).
     @Override
-    public Void visitParcela_unario(Parcela_unarioContext ctx) {
-        if (ctx.identificador() != null || ctx.IDENT() != null) {
+    public Void visitExpIdentificador(ExpIdentificadorContext ctx) {
+        if (ctx.identificador() != null) {
             JanderSemanticoUtils.checkType(symbolTable, ctx);
         }
-        return super.visitParcela_unario(ctx);
+        return super.visitExpIdentificador(ctx);
+    }
+
+    // Chamado ao visitar uma chamada de função em expressão.
+    @Override
+    public Void visitExpChamada(ExpChamadaContext ctx) {
+        JanderSemanticoUtils.checkType(symbolTable, ctx);
+        return super.visitExpChamada(ctx);
+    }
+
+    // Cadeias de operadores (a + b + c ...) são visitadas sem recursão na espinha esquerda,
+    // que em expressões longas esgotaria a pilha; a ordem das visitas é a mesma do visitChildren.
+    @Override
+    public Void visitExpAditiva(ExpAditivaContext ctx) {
+        return visitChain(ctx);
+    }
+
+    @Override
+    public Void visitExpMultiplicativa(ExpMultiplicativaContext ctx) {
+        return visitChain(ctx);
+    }
+
+    @Override
+    public Void visitExpModulo(ExpModuloContext ctx) {
+        return visitChain(ctx);
+    }
+
+    @Override
+    public Void visitExpE(ExpEContext ctx) {
+        return visitChain(ctx);
+    }
+
+    @Override
+    public Void visitExpOu(ExpOuContext ctx) {
+        return visitChain(ctx);
+    }
+
+    private Void visitChain(ParserRuleContext ctx) {
+        List<ParserRuleContext> chain = JanderSemanticoUtils.chain(ctx);
+        chain.get(0).getChild(0).accept(this);
+        for (ParserRuleContext node : chain) {
+            for (int i = 1; i < node.getChildCount(); i++) {
+                node.getChild(i).accept(this);
+            }
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,15 @@
 package br.ufscar.dc.compiladores;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
 
 import br.ufscar.dc.compiladores.JanderParser.*;
 import br.ufscar.dc.compiladores.SymbolTable.JanderType;
@@ -12,25 +17,105 @@ import java.util.stream.IntStream;
 
 public class JanderSemanticoUtils {
     // Lista para armazenar erros semânticos encontrados durante a análise.
-    public static List<String> semanticErrors = new ArrayList<>();
-    // Pilha para rastrear a variável atual que está sendo atribuída.
-    public static List<String> currentAssignmentVariableNameStack = new ArrayList<>();
+    // Uma lista por thread, para que várias compilações possam rodar no mesmo processo.
+    private static final ThreadLocal<List<String>> semanticErrors = ThreadLocal.withInitial(ArrayList::new);
 
-    // Define a variável atual que está sendo atribuída.
-    public static void setCurrentAssignmentVariable(String name) {
-        currentAssignmentVariableNameStack.add(name);
+    // Índice de referências cruzadas sendo construído pela compilação da thread atual (null se desligado).
+    private static final ThreadLocal<CrossReferenceIndex.Builder> crossReferences = new ThreadLocal<>();
+
+    static void setCrossReferenceBuilder(CrossReferenceIndex.Builder builder) {
+        crossReferences.set(builder);
+    }
+
+    // Registra um uso do símbolo visível com o nome informado.
+    public static void recordUse(SymbolTable symbolTable, Token t, String name, int kind) {
+        CrossReferenceIndex.Builder builder = crossReferences.get();
+        if (builder != null) {
+            builder.use(symbolTable.lookup(name), t, kind);
+        }
+    }
+
+    // Registra um uso quando a entrada já foi obtida pelo chamador (evita uma segunda busca).
+    static void recordUse(SymbolTable.SymbolTableEntry entry, Token t, int kind) {
+        CrossReferenceIndex.Builder builder = crossReferences.get();
+        if (builder != null) {
+            builder.use(entry, t, kind);
+        }
+    }
+
+    // Executa uma análise aninhada (ex: biblioteca importada) com erros e índice próprios,
+    // restaurando o estado da análise atual ao final.
+    static <T> T runNested(Supplier<T> analysis) {
+        return isolated(null, analysis);
+    }
+
+    // Executa um trecho de uma análise em outra thread (ver ParallelCommandChecker), registrando os usos em
+    // references; retorna os erros semânticos do trecho.
+    static List<String> runIsolated(CrossReferenceIndex.Builder references, Runnable analysis) {
+        return isolated(references, () -> {
+            analysis.run();
+            return semanticErrors.get();
+        });
+    }
+
+    private static <T> T isolated(CrossReferenceIndex.Builder references, Supplier<T> analysis) {
+        List<String> savedErrors = semanticErrors.get();
+        CrossReferenceIndex.Builder savedReferences = crossReferences.get();
+        semanticErrors.set(new ArrayList<>());
+        crossReferences.set(references);
+        try {
+            return analysis.get();
+        } finally {
+            semanticErrors.set(savedErrors);
+            crossReferences.set(savedReferences);
+        }
+    }
+
+    // Retorna os erros semânticos da compilação em andamento na thread atual.
+    public static List<String> semanticErrors() {
+        return semanticErrors.get();
+    }
+
+    // Verifica se um nó da árvore é um token do tipo informado (sem usar getText()).
+    public static boolean isToken(ParseTree node, int tokenType) {
+        return node instanceof TerminalNode && ((TerminalNode) node).getSymbol().getType() == tokenType;
+    }
+
+    // Quantidade de partes IDENT em um identificador (a.b.c tem 3), sem alocar listas.
+    public static int identPartCount(IdentificadorContext ctx) {
+        int count = 0;
+        for (int i = 0; i < ctx.getChildCount(); i++) {
+            if (isToken(ctx.getChild(i), JanderParser.IDENT)) count++;
+        }
+        return count;
+    }
+
+    // Monta o caminho de acesso "var.campo" com as primeiras n partes do identificador.
+    // Usado apenas ao emitir mensagens de erro.
+    public static String accessPath(IdentificadorContext ctx, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append('.');
+            sb.append(ctx.IDENT(i).getText());
+        }
+        return sb.toString();
+    }
+
+    public static String accessPath(IdentificadorContext ctx) {
+        return accessPath(ctx, identPartCount(ctx));
     }
 
-    // Limpa a pilha de variáveis de atribuição atuais.
-    public static void clearCurrentAssignmentVariableStack() {
-        currentAssignmentVariableNameStack.clear();
+    // Verifica se o nome é um tipo básico (inteiro, real, literal, logico), ignorando maiúsculas.
+    public static boolean isBasicTypeName(String name) {
+        return name.equalsIgnoreCase("inteiro") || name.equalsIgnoreCase("real")
+            || name.equalsIgnoreCase("literal") || name.equalsIgnoreCase("logico");
     }
 
     // Adiciona um erro semântico à lista.
     public static void addSemanticError(Token t, String message) {
         int line = (t != null) ? t.getLine() : 0; // Obtém o número da linha se o token não for nulo.
         String linePrefix = (t != null) ? String.format("Linha %d: ", line) : "Error: "; // Formata o prefixo do erro.
-        semanticErrors.add(linePrefix + message);
+        semanticErrors.get().add(linePrefix + message);
     }
 
     // Verifica se dois tipos Jander são incompatíveis.
@@ -86,31 +171,63 @@ public class JanderSemanticoUtils {
         return JanderType.INVALID; // Caso contrário, os tipos não são promovíveis neste contexto.
     }
 
-    // Verifica o tipo de uma expressão aritmética.
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.Exp_aritmeticaContext ctx) {
-        JanderType resultType;
-        // Uma expressão aritmética deve ter pelo menos um termo.
-        if (ctx.termo().isEmpty()) {
-            return JanderType.INVALID;
+    // Verifica o tipo de uma expressão aritmética: um operando ou uma cadeia de operadores de mesma precedência.
+    public static JanderType checkType(SymbolTable symbolTable, Exp_aritmeticaContext ctx) {
+        if (ctx instanceof ExpAditivaContext) return checkType(symbolTable, (ExpAditivaContext) ctx);
+        if (ctx instanceof ExpMultiplicativaContext) return checkType(symbolTable, (ExpMultiplicativaContext) ctx);
+        if (ctx instanceof ExpModuloContext) return checkType(symbolTable, (ExpModuloContext) ctx);
+        return checkOperand(symbolTable, ctx);
+    }
+
+    // Nós de uma cadeia do mesmo operador, do mais interno à raiz (a + b - c dá [a + b, a + b - c]);
+    // o primeiro operando é o filho esquerdo do primeiro nó. Percorre a espinha esquerda sem recursão,
+    // para cadeias longas não esgotarem a pilha.
+    @SuppressWarnings("unchecked")
+    static <C extends ParserRuleContext> List<C> chain(C root) {
+        List<C> nodes = new ArrayList<>();
+        ParseTree t = root;
+        while (t != null && t.getClass() == root.getClass()) {
+            nodes.add((C) t);
+            t = t.getChild(0);
         }
+        Collections.reverse(nodes);
+        return nodes;
+    }
 
-        resultType = checkType(symbolTable, ctx.termo(0)); // Tipo do primeiro termo.
+    // Se o nó é um operador binário, isto é, um elo de uma cadeia
+    static boolean isChain(ParseTree t) {
+        return t instanceof ExpAditivaContext || t instanceof ExpMultiplicativaContext || t instanceof ExpModuloContext
+            || t instanceof ExpEContext || t instanceof ExpOuContext;
+    }
+
+    // O mesmo que getText() da raiz da cadeia, sem recursão na espinha esquerda
+    static String chainText(List<? extends ParserRuleContext> chain) {
+        StringBuilder sb = new StringBuilder(chain.get(0).getChild(0).getText());
+        for (ParserRuleContext node : chain) {
+            for (int i = 1; i < node.getChildCount(); i++) sb.append(node.getChild(i).getText());
+        }
+        return sb.toString();
+    }
+
+    // Verifica uma cadeia de somas e subtrações.
+    public static JanderType checkType(SymbolTable symbolTable, ExpAditivaContext ctx) {
+        List<ExpAditivaContext> chain = chain(ctx);
+        JanderType resultType = checkType(symbolTable, chain.get(0).exp_aritmetica(0)); // Tipo do primeiro termo.
 
         // Itera sobre os operadores e termos subsequentes.
-        for (int i = 0; i < ctx.op1().size(); i++) {
+        for (ExpAditivaContext opCtx : chain) {
             // Se uma parte anterior já for inválida, propaga o estado inválido.
             if (resultType == JanderType.INVALID) {
                 break;
             }
 
-            JanderType currentTermType = checkType(symbolTable, ctx.termo(i + 1));
+            JanderType currentTermType = checkType(symbolTable, opCtx.exp_aritmetica(1));
             if (currentTermType == JanderType.INVALID) {
                 resultType = JanderType.INVALID; // Propaga o tipo inválido.
                 break;
             }
 
-            Token opToken = ctx.op1(i).getStart(); // Token para o operador (+, -).
-            String operator = opToken.getText();
+            String operator = opCtx.op.getText(); // Operador (+, -).
 
             // Regras para o operador '+'.
             if (operator.equals("+")) {
@@ -138,219 +255,214 @@ public class JanderSemanticoUtils {
         return resultType;
     }
 
-    // Verifica o tipo de um termo.
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.TermoContext ctx) {
-        JanderType resultType = null;
-        // Um termo deve ter pelo menos um fator.
-        if (ctx.fator().isEmpty()) return JanderType.INVALID;
+    // Verifica um termo (cadeia de multiplicações e divisões).
+    public static JanderType checkType(SymbolTable symbolTable, ExpMultiplicativaContext ctx) {
+        List<ExpMultiplicativaContext> chain = chain(ctx);
+        JanderType resultType = checkType(symbolTable, chain.get(0).exp_aritmetica(0)); // O primeiro fator define o tipo inicial.
 
-        // Itera sobre os fatores (multiplicação/divisão).
-        for (FatorContext factorCtx : ctx.fator()) {
-            JanderType currentFactorType = checkType(symbolTable, factorCtx);
-            if (resultType == null) {
-                resultType = currentFactorType; // O primeiro fator define o tipo inicial.
-            } else {
-                 if (areTypesIncompatible(resultType, currentFactorType) || !( (resultType == JanderType.INTEGER || resultType == JanderType.REAL) && (currentFactorType == JanderType.INTEGER || currentFactorType == JanderType.REAL) )) {
-                    addSemanticError(ctx.op2(ctx.fator().indexOf(factorCtx) -1).getStart(), "Termo " + ctx.getText() + " contém tipos incompatíveis");
-                    return JanderType.INVALID;
-                }
-                resultType = getPromotedNumericType(resultType, currentFactorType);
-            }
+        for (ExpMultiplicativaContext opCtx : chain) {
             if (resultType == JanderType.INVALID) break;
+            JanderType currentFactorType = checkType(symbolTable, opCtx.exp_aritmetica(1));
+            if (areTypesIncompatible(resultType, currentFactorType) || !( (resultType == JanderType.INTEGER || resultType == JanderType.REAL) && (currentFactorType == JanderType.INTEGER || currentFactorType == JanderType.REAL) )) {
+                // A mensagem cita o termo inteiro, mesmo com o erro no meio da cadeia
+                addSemanticError(opCtx.op, "Termo " + chainText(chain) + " contém tipos incompatíveis");
+                return JanderType.INVALID;
+            }
+            resultType = getPromotedNumericType(resultType, currentFactorType);
         }
         return resultType;
     }
-    
-    // Verifica o tipo de um fator.
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.FatorContext ctx) {
-        JanderType resultType = null;
-        // Um fator deve ter pelo menos uma parcela.
-        if (ctx.parcela().isEmpty()) return JanderType.INVALID;
-
-        // Itera sobre as parcelas (operação de módulo).
-        for (ParcelaContext parcelCtx : ctx.parcela()) {
-            JanderType currentParcelType = checkType(symbolTable, parcelCtx);
-            if (resultType == null) {
-                resultType = currentParcelType; // A primeira parcela define o tipo inicial.
-            } else {
-                if (areTypesIncompatible(resultType, currentParcelType) || !(resultType == JanderType.INTEGER && currentParcelType == JanderType.INTEGER) ) {
-                    return JanderType.INVALID;
-                }
-                resultType = JanderType.INTEGER;
-            }
+
+    // Verifica um fator (cadeia de operações de módulo, só entre inteiros).
+    public static JanderType checkType(SymbolTable symbolTable, ExpModuloContext ctx) {
+        List<ExpModuloContext> chain = chain(ctx);
+        JanderType resultType = checkType(symbolTable, chain.get(0).exp_aritmetica(0)); // A primeira parcela define o tipo inicial.
+
+        for (ExpModuloContext opCtx : chain) {
             if (resultType == JanderType.INVALID) break;
+            JanderType currentParcelType = checkType(symbolTable, opCtx.exp_aritmetica(1));
+            if (areTypesIncompatible(resultType, currentParcelType) || !(resultType == JanderType.INTEGER && currentParcelType == JanderType.INTEGER) ) {
+                return JanderType.INVALID;
+            }
+            resultType = JanderType.INTEGER;
         }
         return resultType;
     }
 
-    // Verifica o tipo de uma parcela (unária ou não unária).
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.ParcelaContext ctx) {
-        JanderType typeOfOperand = JanderType.INVALID;
-        if (ctx.parcela_unario() != null) { 
-            typeOfOperand = checkType(symbolTable, ctx.parcela_unario());
-        } else if (ctx.parcela_nao_unario() != null) {
-            typeOfOperand = checkType(symbolTable, ctx.parcela_nao_unario());
+    // Verifica o tipo de um operando, com o menos unário opcional.
+    private static JanderType checkOperand(SymbolTable symbolTable, Exp_aritmeticaContext ctx) {
+        JanderType typeOfOperand;
+        Op_unarioContext opUnario;
+        if (ctx instanceof ExpIdentificadorContext) {
+            typeOfOperand = checkType(symbolTable, (ExpIdentificadorContext) ctx);
+            opUnario = ((ExpIdentificadorContext) ctx).op_unario();
+        } else if (ctx instanceof ExpChamadaContext) {
+            typeOfOperand = checkType(symbolTable, (ExpChamadaContext) ctx);
+            opUnario = ((ExpChamadaContext) ctx).op_unario();
+        } else if (ctx instanceof ExpInteiroContext) {
+            typeOfOperand = JanderType.INTEGER;
+            opUnario = ((ExpInteiroContext) ctx).op_unario();
+        } else if (ctx instanceof ExpRealContext) {
+            typeOfOperand = JanderType.REAL;
+            opUnario = ((ExpRealContext) ctx).op_unario();
+        } else if (ctx instanceof ExpParentesesContext) {
+            ExpParentesesContext parenCtx = (ExpParentesesContext) ctx;
+            typeOfOperand = parenCtx.expressao() != null ? checkType(symbolTable, parenCtx.expressao()) : JanderType.INVALID;
+            opUnario = parenCtx.op_unario();
+        } else if (ctx instanceof ExpEnderecoContext) {
+            return checkType(symbolTable, (ExpEnderecoContext) ctx);
+        } else if (ctx instanceof ExpCadeiaContext) {
+            return JanderType.LITERAL;
+        } else {
+            return JanderType.INVALID; // Operando ausente após um erro sintático.
         }
 
-        if (ctx.op_unario() != null) {
-            String op = ctx.op_unario().getText();
-            if (op.equals("-")) {
-                if (typeOfOperand != JanderType.INTEGER && typeOfOperand != JanderType.REAL) {
-                    return JanderType.INVALID;
-                }
-                return typeOfOperand;
-            }
+        if (opUnario != null && typeOfOperand != JanderType.INTEGER && typeOfOperand != JanderType.REAL) {
+            return JanderType.INVALID;
         }
         return typeOfOperand;
     }
 
-    // Verifica o tipo de uma parcela unária.
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.Parcela_unarioContext ctx) {
-        if (ctx.identificador() != null) {
-            IdentificadorContext identCtx = ctx.identificador();
-            boolean isDereferenced = ctx.getChild(0) != null && ctx.getChild(0).getText().equals("^");
-
-            List<org.antlr.v4.runtime.tree.TerminalNode> idParts = identCtx.IDENT();
-            JanderType resolvedType = JanderType.INVALID;
-            String fullAccessPathForError = "";
+    // Verifica o tipo de um identificador em expressão ('^' opcional).
+    public static JanderType checkType(SymbolTable symbolTable, ExpIdentificadorContext ctx) {
+        IdentificadorContext identCtx = ctx.identificador();
+        boolean isDereferenced = ctx.CIRCUNFLEXO() != null;
 
-            if (idParts.isEmpty()) {
-                addSemanticError(identCtx.start, "Identificador inválido na expressão.");
-                return JanderType.INVALID;
-            }
+        int partCount = identPartCount(identCtx);
+        JanderType resolvedType = JanderType.INVALID;
 
-            String baseVarName = idParts.get(0).getText();
-            Token baseVarToken = idParts.get(0).getSymbol();
-            fullAccessPathForError = baseVarName;
+        if (partCount == 0) {
+            addSemanticError(identCtx.start, "Identificador inválido na expressão.");
+            return JanderType.INVALID;
+        }
 
-            if (!symbolTable.containsSymbol(baseVarName)) { //
-                addSemanticError(baseVarToken, "identificador " + identCtx.getText() +" nao declarado"); //
-                resolvedType = JanderType.INVALID;
-            } else {
-                resolvedType = symbolTable.getSymbolType(baseVarName); //
-                for (int i = 1; i < idParts.size(); i++) {
-                    String fieldName = idParts.get(i).getText();
-                    Token fieldToken = idParts.get(i).getSymbol();
-                    String currentRecordPath = fullAccessPathForError;
-                    fullAccessPathForError += "." + fieldName;
-
-                    if (resolvedType != JanderType.RECORD) { //
-                        addSemanticError(idParts.get(i - 1).getSymbol(), "identificador '" + currentRecordPath + "' não é um registro para acessar o campo '" + fieldName + "'.");
-                        resolvedType = JanderType.INVALID;
-                        break; 
-                    }
-                    
-                    String recordVariableForFieldLookup = idParts.get(0).getText();
-                    if (i > 1) {
-                        addSemanticError(fieldToken, "Acesso a campos de registros aninhados (ex: var.regcampo.subcampo) em expressão não é diretamente suportado por esta resolução simplificada.");
-                        resolvedType = JanderType.INVALID;
-                        break;
-                    }
+        TerminalNode baseVarNode = identCtx.IDENT(0);
+        String baseVarName = baseVarNode.getText();
+
+        SymbolTable.SymbolTableEntry baseEntry = symbolTable.lookup(baseVarName);
+        if (baseEntry == null) { //
+            addSemanticError(baseVarNode.getSymbol(), "identificador " + identCtx.getText() +" nao declarado"); //
+            resolvedType = JanderType.INVALID;
+        } else {
+            recordUse(baseEntry, baseVarNode.getSymbol(),
+                isDereferenced ? CrossReferenceIndex.READ | CrossReferenceIndex.DEREF : CrossReferenceIndex.READ);
+            resolvedType = baseEntry.type; //
+            for (int i = 1; i < partCount; i++) {
+                TerminalNode fieldNode = identCtx.IDENT(i);
+                String fieldName = fieldNode.getText();
+
+                if (resolvedType != JanderType.RECORD) { //
+                    addSemanticError(identCtx.IDENT(i - 1).getSymbol(), "identificador '" + accessPath(identCtx, i) + "' não é um registro para acessar o campo '" + fieldName + "'.");
+                    resolvedType = JanderType.INVALID;
+                    break; 
+                }
+                
+                if (i > 1) {
+                    addSemanticError(fieldNode.getSymbol(), "Acesso a campos de registros aninhados (ex: var.regcampo.subcampo) em expressão não é diretamente suportado por esta resolução simplificada.");
+                    resolvedType = JanderType.INVALID;
+                    break;
+                }
 
-                    Map<String, JanderType> fields = symbolTable.getRecordFields(recordVariableForFieldLookup); //
-                    if (fields.isEmpty() && resolvedType == JanderType.RECORD) {
-                        addSemanticError(idParts.get(i-1).getSymbol(), "identificador '" + currentRecordPath + "' é um registro, mas parece não ter campos definidos ou acessíveis.");
-                        resolvedType = JanderType.INVALID;
-                        break;
-                    }
-                    if (!fields.containsKey(fieldName)) {
-                        addSemanticError(fieldToken, "Campo '" + fieldName + "' não existe no registro '" + currentRecordPath + "'.");
-                        resolvedType = JanderType.INVALID;
-                        break; 
-                    }
-                    resolvedType = fields.get(fieldName);
+                Map<String, JanderType> fields = symbolTable.getRecordFields(baseVarName); //
+                if (fields.isEmpty() && resolvedType == JanderType.RECORD) {
+                    addSemanticError(identCtx.IDENT(i - 1).getSymbol(), "identificador '" + accessPath(identCtx, i) + "' é um registro, mas parece não ter campos definidos ou acessíveis.");
+                    resolvedType = JanderType.INVALID;
+                    break;
                 }
-            }
-            
-            // Lida com acesso a dimensões de array (identCtx.dimensao())
-            if (resolvedType != JanderType.INVALID && identCtx.dimensao() != null && !identCtx.dimensao().exp_aritmetica().isEmpty()) { //
-                if (resolvedType == JanderType.ARRAY) {
-                    // Valida que os índices são inteiros
-                    for (Exp_aritmeticaContext dimExpr : identCtx.dimensao().exp_aritmetica()) {
-                        JanderType indexType = checkType(symbolTable, dimExpr);
-                        if (indexType != JanderType.INTEGER) {
-                            addSemanticError(dimExpr.start, "Índice de array deve ser do tipo inteiro");
-                        }
-                    }
-                    // Retorna o tipo dos elementos do array
-                    resolvedType = symbolTable.getArrayElementType(baseVarName);
-                } else {
-                    addSemanticError(identCtx.dimensao().start, "Operador de indexação aplicado a uma variável que não é um array: " + baseVarName);
+                JanderType fieldType = fields.get(fieldName);
+                if (fieldType == null) {
+                    addSemanticError(fieldNode.getSymbol(), "Campo '" + fieldName + "' não existe no registro '" + accessPath(identCtx, i) + "'.");
                     resolvedType = JanderType.INVALID;
+                    break; 
                 }
+                resolvedType = fieldType;
             }
-
-            // Agora lida com o desreferenciamento (^)
-            if (isDereferenced) {
-                if (resolvedType == JanderType.POINTER) { //
-                    String nameForPointedLookup = idParts.get(0).getText();
-                    if (idParts.size() > 1) {
-                        addSemanticError(identCtx.start, "Desreferência de campo de registro que é ponteiro ('^') em expressão não é totalmente suportada nesta versão.");
-                        return JanderType.INVALID;
-                    }
-                    JanderType pointedType = symbolTable.getPointedType(nameForPointedLookup); //
-                    if (pointedType == JanderType.INVALID) {
-                        addSemanticError(identCtx.start, "Ponteiro '" + fullAccessPathForError + "' não aponta para um tipo válido.");
+        }
+        
+        // Lida com acesso a dimensões de array (identCtx.dimensao())
+        DimensaoContext dimCtx = identCtx.dimensao();
+        if (resolvedType != JanderType.INVALID && dimCtx != null && dimCtx.getChildCount() > 0) { //
+            if (resolvedType == JanderType.ARRAY) {
+                // Valida que os índices são inteiros
+                for (int d = 0; d < dimCtx.getChildCount(); d++) {
+                    if (!(dimCtx.getChild(d) instanceof Exp_aritmeticaContext)) continue;
+                    Exp_aritmeticaContext dimExpr = (Exp_aritmeticaContext) dimCtx.getChild(d);
+                    JanderType indexType = checkType(symbolTable, dimExpr);
+                    if (indexType != JanderType.INTEGER) {
+                        addSemanticError(dimExpr.start, "Índice de array deve ser do tipo inteiro");
                     }
-                    return pointedType;
-                } else if (resolvedType != JanderType.INVALID) {
-                    addSemanticError(identCtx.start, "Operador '^' aplicado a um não-ponteiro: " + fullAccessPathForError);
-                    return JanderType.INVALID;
-                } else {
-                    return JanderType.INVALID;
                 }
+                // Retorna o tipo dos elementos do array
+                resolvedType = symbolTable.getArrayElementType(baseVarName);
+            } else {
+                addSemanticError(dimCtx.start, "Operador de indexação aplicado a uma variável que não é um array: " + baseVarName);
+                resolvedType = JanderType.INVALID;
             }
-            return resolvedType;
-
-        } else if (ctx.NUM_INT() != null) { //
-            return JanderType.INTEGER;
-        } else if (ctx.NUM_REAL() != null) { //
-            return JanderType.REAL;
-        } else if (ctx.IDENT() != null && ctx.ABREPAR() != null) { // Chamada de função: IDENT '(' expressao (',' expressao)* ')'
-            String funcName = ctx.IDENT().getText();
-            Token funcToken = ctx.IDENT().getSymbol();
+        }
 
-            if (!symbolTable.containsSymbol(funcName)) { //
-                addSemanticError(funcToken, "Identificador '" + funcName + "' (função) não declarado."); //
-                return JanderType.INVALID;
-            }
-            
-            JanderType returnType = symbolTable.getReturnType(funcName);
-            if (returnType == JanderType.INVALID && symbolTable.getSymbolType(funcName) != JanderType.INVALID) {
-                addSemanticError(funcToken, "Identificador '" + funcName + "' não é uma função válida ou não pode ser usado neste contexto de expressão.");
+        // Agora lida com o desreferenciamento (^)
+        if (isDereferenced) {
+            if (resolvedType == JanderType.POINTER) { //
+                if (partCount > 1) {
+                    addSemanticError(identCtx.start, "Desreferência de campo de registro que é ponteiro ('^') em expressão não é totalmente suportada nesta versão.");
+                    return JanderType.INVALID;
+                }
+                JanderType pointedType = symbolTable.getPointedType(baseVarName); //
+                if (pointedType == JanderType.INVALID) {
+                    addSemanticError(identCtx.start, "Ponteiro '" + accessPath(identCtx) + "' não aponta para um tipo válido.");
+                }
+                return pointedType;
+            } else if (resolvedType != JanderType.INVALID) {
+                addSemanticError(identCtx.start, "Operador '^' aplicado a um não-ponteiro: " + accessPath(identCtx));
                 return JanderType.INVALID;
-            } else if (returnType == JanderType.INVALID) {
-                addSemanticError(funcToken, "Função '" + funcName + "' não tem um tipo de retorno válido ou não está corretamente definida.");
+            } else {
                 return JanderType.INVALID;
             }
+        }
+        return resolvedType;
+    }
 
-            validateCallArguments(funcToken, funcName, ctx.expressao(), symbolTable);
-            
-            return returnType;
+    // Verifica o tipo de uma chamada de função em expressão.
+    public static JanderType checkType(SymbolTable symbolTable, ExpChamadaContext ctx) {
+        String funcName = ctx.IDENT().getText();
+        Token funcToken = ctx.IDENT().getSymbol();
 
-        } else if (ctx.ABREPAR() != null && ctx.expressao() != null && !ctx.expressao().isEmpty()) {
-            return checkType(symbolTable, ctx.expressao(0));
+        if (!symbolTable.containsSymbol(funcName)) { //
+            addSemanticError(funcToken, "Identificador '" + funcName + "' (função) não declarado."); //
+            return JanderType.INVALID;
         }
-        return JanderType.INVALID;
+        recordUse(symbolTable, funcToken, funcName, CrossReferenceIndex.READ);
+        
+        JanderType returnType = symbolTable.getReturnType(funcName);
+        if (returnType == JanderType.INVALID && symbolTable.getSymbolType(funcName) != JanderType.INVALID) {
+            addSemanticError(funcToken, "Identificador '" + funcName + "' não é uma função válida ou não pode ser usado neste contexto de expressão.");
+            return JanderType.INVALID;
+        } else if (returnType == JanderType.INVALID) {
+            addSemanticError(funcToken, "Função '" + funcName + "' não tem um tipo de retorno válido ou não está corretamente definida.");
+            return JanderType.INVALID;
+        }
+
+        validateCallArguments(funcToken, funcName, ctx.expressao(), symbolTable);
+        
+        return returnType;
     }
 
-    // Verifica o tipo de uma parcela não unária.
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.Parcela_nao_unarioContext ctx) {
-        if (ctx.identificador() != null) {
-            String simpleName = ctx.identificador().IDENT(0).getText();
-            Token idToken = ctx.identificador().getStart();
+    // Verifica o tipo de um endereço (&identificador).
+    public static JanderType checkType(SymbolTable symbolTable, ExpEnderecoContext ctx) {
+        if (ctx.identificador() == null || ctx.identificador().IDENT(0) == null) {
+            return JanderType.INVALID; // '&' sem identificador, após um erro sintático
+        }
+        String simpleName = ctx.identificador().IDENT(0).getText();
+        Token idToken = ctx.identificador().getStart();
 
-            if (!symbolTable.containsSymbol(simpleName)) {
-                addSemanticError(idToken, "identificador " + simpleName + " nao declarado");
-                return JanderType.INVALID;
-            }
-            return JanderType.POINTER;
-        } else if (ctx.CADEIA() != null) {
-            return JanderType.LITERAL;
+        if (!symbolTable.containsSymbol(simpleName)) {
+            addSemanticError(idToken, "identificador " + simpleName + " nao declarado");
+            return JanderType.INVALID;
         }
-        return JanderType.INVALID;
+        recordUse(symbolTable, idToken, simpleName, CrossReferenceIndex.ADDRESS_OF);
+        return JanderType.POINTER;
     }
-    
+
     // Verifica o tipo de um identificador pelo seu nome.
     public static JanderType checkTypeByName(SymbolTable symbolTable, Token nameToken, String name) {
         if (!symbolTable.containsSymbol(name)) {
@@ -360,57 +472,49 @@ public class JanderSemanticoUtils {
         return symbolTable.getSymbolType(name);
     }
 
-    // Verifica o tipo de uma expressão geral (OU lógico).
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.ExpressaoContext ctx) {
-        JanderType resultType = null;
-        // Uma expressão deve ter pelo menos um termo lógico.
-        if (ctx.termo_logico().isEmpty()) return JanderType.INVALID;
+    // Verifica o tipo de uma expressão geral: cadeia de 'ou', cadeia de 'e' ou parcela lógica.
+    public static JanderType checkType(SymbolTable symbolTable, ExpressaoContext ctx) {
+        if (ctx instanceof ExpOuContext) return checkType(symbolTable, (ExpOuContext) ctx);
+        if (ctx instanceof ExpEContext) return checkType(symbolTable, (ExpEContext) ctx);
+        if (ctx instanceof ExpRelacionalContext) return checkType(symbolTable, (ExpRelacionalContext) ctx);
+        if (ctx instanceof ExpLogicaContext) return JanderType.LOGICAL; // verdadeiro/falso, com ou sem 'nao'
+        return JanderType.INVALID;
+    }
 
-        // Itera sobre os termos lógicos (operações OU).
-        for (Termo_logicoContext termLogCtx : ctx.termo_logico()) {
-            JanderType currentTermLogType = checkType(symbolTable, termLogCtx);
-            if (resultType == null) {
-                resultType = currentTermLogType; // O primeiro termo define o tipo inicial.
-            } else { 
-                if (resultType != JanderType.LOGICAL || currentTermLogType != JanderType.LOGICAL) {
-                    return JanderType.INVALID;
-                }
-                resultType = JanderType.LOGICAL;
-            }
+    // Verifica uma cadeia de OU lógico.
+    public static JanderType checkType(SymbolTable symbolTable, ExpOuContext ctx) {
+        List<ExpOuContext> chain = chain(ctx);
+        JanderType resultType = checkType(symbolTable, chain.get(0).expressao(0)); // O primeiro termo define o tipo inicial.
+
+        for (ExpOuContext opCtx : chain) {
             if (resultType == JanderType.INVALID) break;
+            JanderType currentTermLogType = checkType(symbolTable, opCtx.expressao(1));
+            if (resultType != JanderType.LOGICAL || currentTermLogType != JanderType.LOGICAL) {
+                return JanderType.INVALID;
+            }
         }
         return resultType;
     }
 
-    // Verifica o tipo de um termo lógico (E lógico).
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.Termo_logicoContext ctx) {
-        JanderType resultType = null;
-        // Um termo lógico deve ter pelo menos um fator lógico.
-        if (ctx.fator_logico().isEmpty()) return JanderType.INVALID;
+    // Verifica uma cadeia de E lógico.
+    public static JanderType checkType(SymbolTable symbolTable, ExpEContext ctx) {
+        List<ExpEContext> chain = chain(ctx);
+        JanderType resultType = checkType(symbolTable, chain.get(0).expressao(0));
 
-        // Itera sobre os fatores lógicos (operações E).
-        for (Fator_logicoContext factorLogCtx : ctx.fator_logico()) {
-            JanderType currentFactorLogType = checkType(symbolTable, factorLogCtx);
-            if (resultType == null) {
-                resultType = currentFactorLogType;
-            } else { 
-                if (resultType != JanderType.LOGICAL || currentFactorLogType != JanderType.LOGICAL) {
-                    return JanderType.INVALID;
-                }
-                resultType = JanderType.LOGICAL;
-            }
+        for (ExpEContext opCtx : chain) {
             if (resultType == JanderType.INVALID) break;
+            JanderType currentFactorLogType = checkType(symbolTable, opCtx.expressao(1));
+            if (resultType != JanderType.LOGICAL || currentFactorLogType != JanderType.LOGICAL) {
+                return JanderType.INVALID;
+            }
         }
         return resultType;
     }
 
-    // Verifica o tipo de um fator lógico (operador NÃO).
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.Fator_logicoContext ctx) {
-        JanderType type = checkType(symbolTable, ctx.parcela_logica());
-        
-        boolean hasNao = ctx.getChildCount() > 1 && ctx.getChild(0).getText().equals("nao"); 
-
-        if (hasNao) {
+    // Verifica uma expressão relacional (ou uma expressão aritmética sozinha), com o 'nao' opcional.
+    public static JanderType checkType(SymbolTable symbolTable, ExpRelacionalContext ctx) {
+        JanderType type = relationalType(symbolTable, ctx);
+        if (ctx.nao != null) {
             if (type != JanderType.LOGICAL) {
                 return JanderType.INVALID;
             }
@@ -419,24 +523,13 @@ public class JanderSemanticoUtils {
         return type;
     }
 
-    // Verifica o tipo de uma parcela lógica.
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.Parcela_logicaContext ctx) {
-        if (ctx.exp_relacional() != null) {
-            return checkType(symbolTable, ctx.exp_relacional()); 
-        } else if (ctx.VERDADEIRO() != null || ctx.FALSO() != null) {
-            return JanderType.LOGICAL;
-        }
-        return JanderType.INVALID;
-    }
-
-    // Verifica o tipo de uma expressão relacional.
-    public static JanderType checkType(SymbolTable symbolTable, JanderParser.Exp_relacionalContext ctx) {
-        // Caso 1: Uma expressão relacional que é apenas uma expressão aritmética (não uma comparação).
-        if (ctx.exp_aritmetica().size() == 1 && ctx.op_relacional() == null) {
+    private static JanderType relationalType(SymbolTable symbolTable, ExpRelacionalContext ctx) {
+        // Caso 1: Apenas uma expressão aritmética (não uma comparação).
+        if (ctx.exp_aritmetica().size() == 1 && ctx.op == null) {
             return checkType(symbolTable, ctx.exp_aritmetica(0));
-        } 
+        }
         // Caso 2: Uma operação relacional (ex: a > b).
-        else if (ctx.exp_aritmetica().size() == 2 && ctx.op_relacional() != null) {
+        else if (ctx.exp_aritmetica().size() == 2 && ctx.op != null) {
             JanderType typeLeft = checkType(symbolTable, ctx.exp_aritmetica(0));
             JanderType typeRight = checkType(symbolTable, ctx.exp_aritmetica(1));
 
@@ -0,0 +1,173 @@
+package br.ufscar.dc.compiladores;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Executa um diretório de casos de teste no mesmo processo, sem o corretor automático.
+ *
+ * Uso: java -cp JanderLexico-1.0-SNAPSHOT-jar-with-dependencies.jar br.ufscar.dc.compiladores.JanderTestRunner
+ *      &lt;diretorio-casos&gt; [threads]
+ *
+ * O diretório deve conter as pastas "entrada" e "saida" (mesma estrutura do casos-de-teste),
+ * com a saída esperada de cada caso no arquivo de mesmo nome. A latência de cada caso é a de uma
+ * segunda compilação, depois de uma primeira não medida.
+ */
+public class JanderTestRunner {
+
+    // Resultado da compilação de um caso de teste.
+    static class CaseResult {
+        String nome;
+        boolean passou;
+        String diferenca; // Primeira linha divergente (null se passou)
+        long nanos;
+
+        CaseResult(String nome, boolean passou, String diferenca, long nanos) {
+            this.nome = nome;
+            this.passou = passou;
+            this.diferenca = diferenca;
+            this.nanos = nanos;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Uso: JanderTestRunner <diretorio-casos> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        try {
+            List<CaseResult> resultados = run(Paths.get(args[0]), threads);
+            boolean ok = report(resultados, new PrintWriter(System.out, true));
+            System.exit(ok ? 0 : 1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // Compila todos os casos de dir/entrada em paralelo e compara com dir/saida.
+    public static List<CaseResult> run(Path dir, int threads) throws IOException, InterruptedException {
+        Path entrada = dir.resolve("entrada");
+        Path saida = dir.resolve("saida");
+
+        List<Path> casos;
+        try (Stream<Path> s = Files.list(entrada)) {
+            casos = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<CaseResult>> futuros = new ArrayList<>();
+            for (Path caso : casos) {
+                futuros.add(pool.submit(() -> runCase(caso, saida.resolve(caso.getFileName()))));
+            }
+
+            List<CaseResult> resultados = new ArrayList<>();
+            for (Future<CaseResult> f : futuros) {
+                try {
+                    resultados.add(f.get());
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+            return resultados;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Compila o caso duas vezes e mede só a segunda, para os percentis não incluírem carga de classes e JIT.
+    // StackOverflowError (recursão do parser ou do semântico) vira um caso falho, sem abortar os demais.
+    static CaseResult runCase(Path caso, Path esperado) throws IOException {
+        String nome = caso.getFileName().toString();
+        StringWriter sw = new StringWriter();
+
+        long inicio = System.nanoTime();
+        try {
+            Main.compilar(CharStreams.fromPath(caso, StandardCharsets.UTF_8), new PrintWriter(new StringWriter()));
+            inicio = System.nanoTime();
+            try (PrintWriter pw = new PrintWriter(sw)) {
+                Main.compilar(CharStreams.fromPath(caso, StandardCharsets.UTF_8), pw);
+            }
+        } catch (RuntimeException | StackOverflowError e) {
+            return new CaseResult(nome, false, "excecao: " + e, System.nanoTime() - inicio);
+        }
+        long nanos = System.nanoTime() - inicio;
+
+        if (!Files.exists(esperado)) {
+            return new CaseResult(nome, false, "saida esperada nao encontrada: " + esperado, nanos);
+        }
+        String diferenca = firstDifference(sw.toString(), Files.readString(esperado, StandardCharsets.UTF_8));
+        return new CaseResult(nome, diferenca == null, diferenca, nanos);
+    }
+
+    // Compara linha a linha, ignorando final de linha e espaços à direita, como o corretor.
+    static String firstDifference(String obtido, String esperado) {
+        String[] a = normalize(obtido);
+        String[] b = normalize(esperado);
+        for (int i = 0; i < Math.max(a.length, b.length); i++) {
+            String la = i < a.length ? a[i] : "<fim>";
+            String lb = i < b.length ? b[i] : "<fim>";
+            if (!la.equals(lb)) {
+                return "linha " + (i + 1) + ": esperado [" + lb + "], obtido [" + la + "]";
+            }
+        }
+        return null;
+    }
+
+    private static String[] normalize(String texto) {
+        String[] linhas = texto.split("\r?\n", -1);
+        int n = linhas.length;
+        for (int i = 0; i < n; i++) {
+            linhas[i] = linhas[i].stripTrailing();
+        }
+        while (n > 0 && linhas[n - 1].isEmpty()) n--;
+        return Arrays.copyOf(linhas, n);
+    }
+
+    // Imprime o resultado de cada caso e o resumo com percentis de latência. Retorna true se todos passaram.
+    static boolean report(List<CaseResult> resultados, PrintWriter out) {
+        int passaram = 0;
+        for (CaseResult r : resultados) {
+            if (r.passou) {
+                passaram++;
+            } else {
+                out.println("FALHOU " + r.nome + " - " + r.diferenca);
+            }
+        }
+
+        long[] nanos = resultados.stream().mapToLong(r -> r.nanos).sorted().toArray();
+        out.printf("%d/%d casos passaram%n", passaram, resultados.size());
+        if (nanos.length > 0) {
+            out.printf("latencia (ms): p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                percentile(nanos, 50) / 1e6, percentile(nanos, 90) / 1e6,
+                percentile(nanos, 99) / 1e6, nanos[nanos.length - 1] / 1e6);
+        }
+        out.flush();
+        return passaram == resultados.size();
+    }
+
+    // Percentil pelo método nearest-rank sobre um vetor já ordenado.
+    static long percentile(long[] ordenado, double p) {
+        int rank = (int) Math.ceil(p / 100.0 * ordenado.length);
+        return ordenado[Math.max(0, Math.min(ordenado.length - 1, rank - 1))];
+    }
+}
@@ -0,0 +1,776 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import br.ufscar.dc.compiladores.Bytecode.Routine;
+import br.ufscar.dc.compiladores.BytecodeVM.ExecutionError;
+import br.ufscar.dc.compiladores.ClassFileWriter.Code;
+import br.ufscar.dc.compiladores.ClassFileWriter.Label;
+
+import static br.ufscar.dc.compiladores.Bytecode.*;
+
+/**
+ * Traduz um Bytecode para bytecode da JVM e o carrega como uma classe oculta (hidden class) no próprio
+ * processo, para que o JIT compile cada rotina LA como um método Java comum.
+ *
+ * Cada rotina vira um método static: o corpo principal é algoritmo(Context) e cada procedimento ou função
+ * recebe o Context seguido dos parâmetros, com o resultado como retorno. Os registradores int/real/ref da
+ * rotina viram variáveis locais int, double e Object da JVM, sem boxing; só os que têm o endereço tomado
+ * (ADDRL: parâmetro 'var' ou &amp;x) moram num arranjo do seu banco, como na BytecodeVM. Globais, constantes e
+ * entrada/saída vêm do Context, e os valores em tempo de execução (Rec, Cell, Layout, ArrayInit) e as
+ * mensagens de erro são os mesmos da BytecodeVM: as duas execuções produzem a mesma saída.
+ *
+ * A linha de cada erro de execução vem da tabela de exceções: cada trecho de código de uma mesma linha do
+ * fonte tem um tratador que converte a exceção da JVM (divisão por zero, índice, ponteiro nulo, fim da
+ * entrada, pilha) na ExecutionError da BytecodeVM.
+ *
+ * Rotinas que passariam do limite de tamanho em que o HotSpot ainda compila um método (e em que os desvios
+ * de 16 bits ainda alcançam) fazem load() lançar IllegalArgumentException; quem chama pode então usar a
+ * BytecodeVM.
+ */
+public final class JvmBackend {
+    private static final String PACKAGE = "br/ufscar/dc/compiladores/";
+    private static final String CLASS = PACKAGE + "ProgramaLA";
+    private static final String CONTEXT = PACKAGE + "JvmBackend$Context";
+    private static final String INPUT = PACKAGE + "BytecodeVM$Input";
+    private static final String OUTPUT = PACKAGE + "BytecodeVM$Output";
+    private static final String REC = PACKAGE + "Bytecode$Rec";
+    private static final String CELL = PACKAGE + "Bytecode$Cell";
+    private static final String LAYOUT = PACKAGE + "Bytecode$Layout";
+    private static final String ARRAY_INIT = PACKAGE + "Bytecode$ArrayInit";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRING = "java/lang/String";
+
+    // Maior método que o HotSpot ainda compila (HugeMethodLimit)
+    static final int MAX_METHOD_SIZE = 8000;
+
+    /** Estado de uma execução, primeiro argumento de todos os métodos gerados */
+    static final class Context {
+        final int[] gi;
+        final double[] gd;
+        final Object[] gr;
+        final Object[] k;
+        final BytecodeVM.Input in;
+        final BytecodeVM.Output out;
+
+        Context(Bytecode program, BytecodeVM.Input in, BytecodeVM.Output out) {
+            this.gi = new int[program.globalInts];
+            this.gd = new double[program.globalReals];
+            this.gr = new Object[program.globalRefs];
+            this.k = program.constants;
+            this.in = in;
+            this.out = out;
+        }
+    }
+
+    /** Programa carregado: pode ser executado várias vezes, cada uma com globais novas */
+    public static final class Program {
+        private final Bytecode bytecode;
+        private final MethodHandle main;
+
+        private Program(Bytecode bytecode, MethodHandle main) {
+            this.bytecode = bytecode;
+            this.main = main;
+        }
+
+        /** Executa o corpo principal; a saída é descarregada mesmo se houver erro de execução */
+        public void run(InputStream in, OutputStream out) {
+            BytecodeVM.Output output = new BytecodeVM.Output(out);
+            Context context = new Context(bytecode, new BytecodeVM.Input(in, output), output);
+            try {
+                main.invokeExact(context);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t); // os métodos gerados não lançam exceções verificadas
+            } finally {
+                output.flush();
+            }
+        }
+    }
+
+    private JvmBackend() {
+    }
+
+    /** Gera a classe do programa e a define como classe oculta no pacote deste backend */
+    public static Program load(Bytecode program) {
+        byte[] bytes = generate(program);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle main = lookup.findStatic(lookup.lookupClass(), "algoritmo",
+                MethodType.methodType(void.class, Context.class));
+            return new Program(program, main);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** O arquivo .class com um método por rotina */
+    static byte[] generate(Bytecode program) {
+        ClassFileWriter cf = new ClassFileWriter(CLASS);
+        for (int i = 0; i < program.routines.length; i++) {
+            Routine r = program.routines[i];
+            Code c = new Lowering(cf, program, r).lower();
+            if (c.size() > MAX_METHOD_SIZE) {
+                throw new IllegalArgumentException("rotina " + r.name + " grande demais para a JVM (" + c.size() + " bytes)");
+            }
+            cf.addMethod(0x0008 | 0x0002, methodName(program, i), descriptor(r), c); // ACC_STATIC | ACC_PRIVATE
+        }
+        return cf.toByteArray();
+    }
+
+    private static String methodName(Bytecode program, int routine) {
+        return routine == 0 ? "algoritmo" : program.routines[routine].name;
+    }
+
+    private static String descriptor(Routine r) {
+        StringBuilder sb = new StringBuilder("(L" + CONTEXT + ";");
+        for (byte b : r.params) sb.append(type(b));
+        return sb.append(')').append(r.result == NONE ? "V" : type(r.result)).toString();
+    }
+
+    private static String type(int bank) {
+        return bank == INT ? "I" : bank == REAL ? "D" : "Ljava/lang/Object;";
+    }
+
+    // Converte a exceção da JVM que interrompeu a linha dada na ExecutionError da BytecodeVM
+    static Throwable fail(Throwable t, int line) {
+        if (t instanceof ExecutionError) return t;
+        String message;
+        if (t instanceof ArithmeticException) message = "divisao por zero";
+        else if (t instanceof IndexOutOfBoundsException) message = outOfBounds(t.getMessage());
+        else if (t instanceof NullPointerException) message = "ponteiro sem endereco";
+        else if (t instanceof NoSuchElementException) message = t.getMessage();
+        else if (t instanceof StackOverflowError) message = "recursao profunda demais";
+        else return t;
+        return BytecodeVM.error(line, message);
+    }
+
+    private static final Pattern INDEX = Pattern.compile("Index (-?\\d+) out of bounds for length (\\d+)");
+
+    private static String outOfBounds(String jvmMessage) {
+        Matcher m = jvmMessage == null ? null : INDEX.matcher(jvmMessage);
+        if (m == null || !m.matches()) return "indice fora dos limites";
+        return "indice " + m.group(1) + " fora dos limites (0 a " + (Integer.parseInt(m.group(2)) - 1) + ")";
+    }
+
+    // ---------------------------------------------------------------- tradução de uma rotina
+
+    // Opcodes da JVM usados
+    private static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, ICONST_1 = 0x04, DCONST_0 = 0x0e, DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13, LDC2_W = 0x14;
+    private static final int ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19, IALOAD = 0x2e, DALOAD = 0x31, AALOAD = 0x32;
+    private static final int ISTORE = 0x36, DSTORE = 0x39, ASTORE = 0x3a, IASTORE = 0x4f, DASTORE = 0x52, AASTORE = 0x53;
+    private static final int POP = 0x57, DUP = 0x59, SWAP = 0x5f;
+    private static final int IADD_ = 0x60, DADD_ = 0x63, ISUB_ = 0x64, DSUB_ = 0x67, IMUL_ = 0x68, DMUL_ = 0x6b;
+    private static final int IDIV_ = 0x6c, DDIV_ = 0x6f, IREM = 0x70, INEG_ = 0x74, DNEG_ = 0x77, IXOR = 0x82;
+    private static final int IINC = 0x84, I2D_ = 0x87, D2I_ = 0x8e, DCMPL = 0x97, DCMPG = 0x98;
+    private static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    private static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2;
+    private static final int IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4, GOTO = 0xa7;
+    private static final int IRETURN = 0xac, DRETURN = 0xaf, ARETURN = 0xb0, RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+    private static final int NEW = 0xbb, NEWARRAY = 0xbc, ANEWARRAY = 0xbd, ATHROW = 0xbf, CHECKCAST = 0xc0, WIDE = 0xc4;
+    private static final int T_DOUBLE = 7, T_INT = 10;
+
+    private static final int[] LOAD = {ILOAD, DLOAD, ALOAD};
+    private static final int[] STORE = {ISTORE, DSTORE, ASTORE};
+    private static final int[] ARRAY_LOAD = {IALOAD, DALOAD, AALOAD};
+    private static final int[] ARRAY_STORE = {IASTORE, DASTORE, AASTORE};
+    private static final String[] ARRAY_TYPE = {"[I", "[D", "[Ljava/lang/Object;"};
+    private static final String[] REC_FIELD = {"ints", "reals", "refs"};
+    private static final String[] GLOBAL_FIELD = {"gi", "gd", "gr"};
+
+    private static final class Lowering {
+        final ClassFileWriter cf;
+        final Bytecode program;
+        final Routine r;
+        final int[] code;
+        final Code c = new Code();
+
+        // Variável local da JVM de cada registrador, ou -1 se ele mora no arranjo frame[banco]
+        final int[][] local;
+        final int[] frame = {-1, -1, -1};
+        final int[] global = {-1, -1, -1}; // 0 durante a varredura: banco global usado pela rotina
+        final int[] scratch = new int[3]; // valor a guardar num registrador que mora em arranjo
+        int constants = -1;
+        int next = 1; // a local 0 é o Context
+
+        Lowering(ClassFileWriter cf, Bytecode program, Routine r) {
+            this.cf = cf;
+            this.program = program;
+            this.r = r;
+            this.code = r.code;
+            this.local = new int[][] {new int[r.ints], new int[r.reals], new int[r.refs]};
+        }
+
+        private int allocate(int bank) {
+            int l = next;
+            next += bank == REAL ? 2 : 1;
+            return l;
+        }
+
+        Code lower() {
+            boolean[][] escaped = {new boolean[r.ints], new boolean[r.reals], new boolean[r.refs]};
+            int maxArgs = 0;
+            for (int pc = 0; pc < code.length; pc += length(code, pc)) {
+                int op = code[pc];
+                if (op == ADDRL) escaped[code[pc + 2]][code[pc + 3]] = true;
+                else if (op == CALL) maxArgs = Math.max(maxArgs, code[pc + 3]);
+                else if (op >= GILOAD && op <= GRSTORE) global[(op - GILOAD) / 2] = 0;
+                else if (op == ADDRG) global[code[pc + 2]] = 0;
+                else if (op == NEWARR || op == NEWREC || op == COPY) constants = 0;
+                else if (op == RCONST && !(program.constants[code[pc + 2]] instanceof String)) constants = 0;
+            }
+
+            // Parâmetros primeiro, na ordem da assinatura; cada banco numera os seus a partir de 0
+            int[] count = new int[3];
+            int[][] paramLocal = {new int[r.ints], new int[r.reals], new int[r.refs]};
+            for (int[] p : paramLocal) Arrays.fill(p, -1);
+            for (byte b : r.params) {
+                int reg = count[b]++;
+                paramLocal[b][reg] = allocate(b);
+            }
+            for (int b = INT; b <= REF; b++) {
+                for (int reg = 0; reg < local[b].length; reg++) {
+                    if (escaped[b][reg]) local[b][reg] = -1;
+                    else local[b][reg] = paramLocal[b][reg] >= 0 ? paramLocal[b][reg] : allocate(b);
+                }
+                if (anyEscaped(escaped[b])) frame[b] = allocate(REF);
+                scratch[b] = allocate(b);
+                if (global[b] == 0) global[b] = allocate(REF);
+            }
+            if (constants == 0) constants = allocate(REF);
+
+            prologue(paramLocal);
+            body();
+
+            c.maxLocals = next;
+            c.maxStack = Math.max(8, 3 + 2 * maxArgs);
+            return c;
+        }
+
+        private static boolean anyEscaped(boolean[] escaped) {
+            for (boolean e : escaped) if (e) return true;
+            return false;
+        }
+
+        // Arranjos dos registradores escapados, valores iniciais (zero ou constante fixa) e globais
+        private void prologue(int[][] paramLocal) {
+            for (int b = INT; b <= REF; b++) {
+                if (frame[b] < 0) continue;
+                push(local[b].length);
+                if (b == INT) c.op(NEWARRAY, T_INT);
+                else if (b == REAL) c.op(NEWARRAY, T_DOUBLE);
+                else c.op2(ANEWARRAY, cf.classRef(OBJECT));
+                var(ASTORE, frame[b]);
+            }
+            for (int b = INT; b <= REF; b++) {
+                for (int reg = 0; reg < local[b].length; reg++) {
+                    boolean param = paramLocal[b][reg] >= 0;
+                    if (local[b][reg] >= 0) {
+                        if (!param) {
+                            pushInitial(b, reg);
+                            var(STORE[b], local[b][reg]);
+                        }
+                    } else if (param || !isZero(b, reg)) {
+                        var(ALOAD, frame[b]);
+                        push(reg);
+                        if (param) var(LOAD[b], paramLocal[b][reg]);
+                        else pushInitial(b, reg);
+                        c.op(ARRAY_STORE[b]);
+                    }
+                }
+                if (global[b] >= 0) {
+                    c.op(0x2a); // aload_0
+                    c.op2(GETFIELD, cf.field(CONTEXT, GLOBAL_FIELD[b], ARRAY_TYPE[b]));
+                    var(ASTORE, global[b]);
+                }
+            }
+            if (constants >= 0) {
+                c.op(0x2a);
+                c.op2(GETFIELD, cf.field(CONTEXT, "k", "[Ljava/lang/Object;"));
+                var(ASTORE, constants);
+            }
+        }
+
+        private boolean isZero(int bank, int reg) {
+            if (bank == INT) return true;
+            if (bank == REAL) return Double.doubleToRawLongBits(r.realFrame[reg]) == 0;
+            return r.refFrame[reg] == null;
+        }
+
+        private void pushInitial(int bank, int reg) {
+            if (bank == INT) c.op(ICONST_0);
+            else if (bank == REAL) pushReal(r.realFrame[reg]);
+            else if (r.refFrame[reg] != null) c.op2(LDC_W, cf.string((String) r.refFrame[reg]));
+            else c.op(ACONST_NULL);
+        }
+
+        // ------------------------------------------------------------ corpo
+
+        private void body() {
+            Label[] targets = new Label[code.length + 1];
+            for (int pc = 0; pc < code.length; pc += length(code, pc)) {
+                int op = code[pc];
+                if (op == JMP) target(targets, code[pc + 1]);
+                else if (op == JZ || op == JNZ) target(targets, code[pc + 2]);
+                else if (op >= JILT && op <= JINE) target(targets, code[pc + 3]);
+                else if (op == JRANGE) target(targets, code[pc + 4]);
+                else if (op == SWITCH) {
+                    for (int i = 4; i < length(code, pc); i++) target(targets, code[pc + i]);
+                }
+            }
+
+            // Trechos contíguos de uma mesma linha: {início, fim, linha}, para a tabela de exceções
+            List<int[]> ranges = new ArrayList<>();
+            for (int pc = 0; pc < code.length; pc += length(code, pc)) {
+                if (targets[pc] != null) c.bind(targets[pc]);
+                int start = c.size();
+                instruction(pc, targets);
+                int line = r.lines[pc];
+                int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+                if (last != null && last[2] == line && last[1] == start) last[1] = c.size();
+                else ranges.add(new int[] {start, c.size(), line});
+            }
+
+            Map<Integer, Integer> handlers = new HashMap<>();
+            for (int[] range : ranges) {
+                Integer handler = handlers.get(range[2]);
+                if (handler == null) {
+                    handler = c.size();
+                    handlers.put(range[2], handler);
+                    push(range[2]);
+                    c.op2(INVOKESTATIC, cf.method(PACKAGE + "JvmBackend", "fail", "(Ljava/lang/Throwable;I)Ljava/lang/Throwable;"));
+                    c.op(ATHROW);
+                }
+                c.handler(range[0], range[1], handler);
+            }
+        }
+
+        private void target(Label[] targets, int pc) {
+            if (targets[pc] == null) targets[pc] = c.label();
+        }
+
+        private void instruction(int pc, Label[] targets) {
+            int op = code[pc];
+            int a = pc + 1 < code.length ? code[pc + 1] : 0;
+            switch (op) {
+                case ICONST: push(code[pc + 2]); store(INT, a); break;
+                case IMOV: load(INT, code[pc + 2]); store(INT, a); break;
+                case IADD: binary(INT, pc, IADD_); break;
+                case ISUB: binary(INT, pc, ISUB_); break;
+                case IMUL: binary(INT, pc, IMUL_); break;
+                case IDIV: binary(INT, pc, IDIV_); break;
+                case IMOD: binary(INT, pc, IREM); break;
+                case IADDK: {
+                    int k = code[pc + 3];
+                    int l = local[INT][a];
+                    if (a == code[pc + 2] && l >= 0 && k >= Short.MIN_VALUE && k <= Short.MAX_VALUE) {
+                        if (l <= 255 && k >= Byte.MIN_VALUE && k <= Byte.MAX_VALUE) {
+                            c.op(IINC);
+                            c.op(l);
+                            c.op(k);
+                        } else {
+                            c.op(WIDE);
+                            c.op2(IINC, l);
+                            c.op(k >> 8);
+                            c.op(k);
+                        }
+                    } else {
+                        load(INT, code[pc + 2]);
+                        push(k);
+                        c.op(IADD_);
+                        store(INT, a);
+                    }
+                    break;
+                }
+                case IMULK: constant(pc, IMUL_); break;
+                case IDIVK: constant(pc, IDIV_); break;
+                case IMODK: constant(pc, IREM); break;
+                case IMADK:
+                    load(INT, code[pc + 2]);
+                    push(code[pc + 3]);
+                    c.op(IMUL_);
+                    load(INT, code[pc + 4]);
+                    c.op(IADD_);
+                    store(INT, a);
+                    break;
+                case INEG: load(INT, code[pc + 2]); c.op(INEG_); store(INT, a); break;
+
+                case DCONST: pushReal(program.realConstants[code[pc + 2]]); store(REAL, a); break;
+                case DMOV: load(REAL, code[pc + 2]); store(REAL, a); break;
+                case DADD: binary(REAL, pc, DADD_); break;
+                case DSUB: binary(REAL, pc, DSUB_); break;
+                case DMUL: binary(REAL, pc, DMUL_); break;
+                case DDIV: binary(REAL, pc, DDIV_); break;
+                case DNEG: load(REAL, code[pc + 2]); c.op(DNEG_); store(REAL, a); break;
+                case I2D: load(INT, code[pc + 2]); c.op(I2D_); store(REAL, a); break;
+                case D2I: load(REAL, code[pc + 2]); c.op(D2I_); store(INT, a); break;
+
+                case RCONST: pushConstant(code[pc + 2]); store(REF, a); break;
+                case RMOV: load(REF, code[pc + 2]); store(REF, a); break;
+                case SCAT:
+                    load(REF, code[pc + 2]);
+                    cast(STRING);
+                    load(REF, code[pc + 3]);
+                    cast(STRING);
+                    c.op2(INVOKEVIRTUAL, cf.method(STRING, "concat", "(Ljava/lang/String;)Ljava/lang/String;"));
+                    store(REF, a);
+                    break;
+
+                case ILT: compareInts(pc, IF_ICMPLT); break;
+                case ILE: compareInts(pc, IF_ICMPLE); break;
+                case IGT: compareInts(pc, IF_ICMPGT); break;
+                case IGE: compareInts(pc, IF_ICMPGE); break;
+                case IEQ: compareInts(pc, IF_ICMPEQ); break;
+                case INE: compareInts(pc, IF_ICMPNE); break;
+                // Com NaN toda comparação é falsa (exceto <>): dcmpg para < e <=, dcmpl para os demais
+                case DLT: compareReals(pc, DCMPG, IFLT); break;
+                case DLE: compareReals(pc, DCMPG, IFLE); break;
+                case DGT: compareReals(pc, DCMPL, IFGT); break;
+                case DGE: compareReals(pc, DCMPL, IFGE); break;
+                case DEQ: compareReals(pc, DCMPL, IFEQ); break;
+                case DNE: compareReals(pc, DCMPL, IFNE); break;
+                case SEQ: case SNE:
+                    load(REF, code[pc + 2]);
+                    load(REF, code[pc + 3]);
+                    c.op2(INVOKEVIRTUAL, cf.method(OBJECT, "equals", "(Ljava/lang/Object;)Z"));
+                    if (op == SNE) {
+                        c.op(ICONST_1);
+                        c.op(IXOR);
+                    }
+                    store(INT, a);
+                    break;
+                case SLT: compareStrings(pc, IFLT); break;
+                case SLE: compareStrings(pc, IFLE); break;
+                case SGT: compareStrings(pc, IFGT); break;
+                case SGE: compareStrings(pc, IFGE); break;
+                case NOT: load(INT, code[pc + 2]); bool(IFEQ); store(INT, a); break;
+
+                case JMP: c.jump(GOTO, targets[a]); break;
+                case JZ: load(INT, a); c.jump(IFEQ, targets[code[pc + 2]]); break;
+                case JNZ: load(INT, a); c.jump(IFNE, targets[code[pc + 2]]); break;
+                case JILT: branch(pc, IF_ICMPLT, targets); break;
+                case JILE: branch(pc, IF_ICMPLE, targets); break;
+                case JIGT: branch(pc, IF_ICMPGT, targets); break;
+                case JIGE: branch(pc, IF_ICMPGE, targets); break;
+                case JIEQ: branch(pc, IF_ICMPEQ, targets); break;
+                case JINE: branch(pc, IF_ICMPNE, targets); break;
+                case SWITCH: {
+                    int lo = code[pc + 2], hi = code[pc + 3];
+                    Label[] table = new Label[hi - lo + 1];
+                    for (int i = 0; i < table.length; i++) table[i] = targets[code[pc + 5 + i]];
+                    load(INT, a);
+                    c.tableswitch(lo, hi, targets[code[pc + 4]], table);
+                    break;
+                }
+                case JRANGE: {
+                    Label outside = c.label();
+                    load(INT, a);
+                    push(code[pc + 2]);
+                    c.jump(IF_ICMPLT, outside);
+                    load(INT, a);
+                    push(code[pc + 3]);
+                    c.jump(IF_ICMPLE, targets[code[pc + 4]]);
+                    c.bind(outside);
+                    break;
+                }
+
+                case GILOAD: case GDLOAD: case GRLOAD: {
+                    int b = (op - GILOAD) / 2;
+                    var(ALOAD, global[b]);
+                    push(code[pc + 2]);
+                    c.op(ARRAY_LOAD[b]);
+                    store(b, a);
+                    break;
+                }
+                case GISTORE: case GDSTORE: case GRSTORE: {
+                    int b = (op - GISTORE) / 2;
+                    var(ALOAD, global[b]);
+                    push(a);
+                    load(b, code[pc + 2]);
+                    c.op(ARRAY_STORE[b]);
+                    break;
+                }
+
+                case NEWARR:
+                    pushConstant(code[pc + 2]);
+                    cast(ARRAY_INIT);
+                    c.op2(INVOKEVIRTUAL, cf.method(ARRAY_INIT, "create", "()Ljava/lang/Object;"));
+                    store(REF, a);
+                    break;
+                case AILOAD: case ADLOAD: case ARLOAD: {
+                    int b = (op - AILOAD) / 2;
+                    load(REF, code[pc + 2]);
+                    cast(ARRAY_TYPE[b]);
+                    load(INT, code[pc + 3]);
+                    c.op(ARRAY_LOAD[b]);
+                    store(b, a);
+                    break;
+                }
+                case AISTORE: case ADSTORE: case ARSTORE: {
+                    int b = (op - AISTORE) / 2;
+                    load(REF, a);
+                    cast(ARRAY_TYPE[b]);
+                    load(INT, code[pc + 2]);
+                    load(b, code[pc + 3]);
+                    c.op(ARRAY_STORE[b]);
+                    break;
+                }
+                case CHECK:
+                    load(INT, a);
+                    push(code[pc + 2]);
+                    c.op2(INVOKESTATIC, cf.method("java/util/Objects", "checkIndex", "(II)I"));
+                    c.op(POP);
+                    break;
+
+                case NEWREC:
+                    pushConstant(code[pc + 2]);
+                    cast(LAYOUT);
+                    c.op2(INVOKEVIRTUAL, cf.method(LAYOUT, "create", "()L" + REC + ";"));
+                    store(REF, a);
+                    break;
+                case FILOAD: case FDLOAD: case FRLOAD: {
+                    int b = (op - FILOAD) / 2;
+                    recordBank(code[pc + 2], b);
+                    push(code[pc + 3]);
+                    c.op(ARRAY_LOAD[b]);
+                    store(b, a);
+                    break;
+                }
+                case FISTORE: case FDSTORE: case FRSTORE: {
+                    int b = (op - FISTORE) / 2;
+                    recordBank(a, b);
+                    push(code[pc + 2]);
+                    load(b, code[pc + 3]);
+                    c.op(ARRAY_STORE[b]);
+                    break;
+                }
+                case COPY:
+                    pushConstant(code[pc + 3]);
+                    cast(LAYOUT);
+                    load(REF, code[pc + 2]);
+                    cast(REC);
+                    c.op2(INVOKEVIRTUAL, cf.method(LAYOUT, "copy", "(L" + REC + ";)L" + REC + ";"));
+                    store(REF, a);
+                    break;
+
+                case ADDRL: newCell(() -> var(ALOAD, frame[code[pc + 2]]), () -> push(code[pc + 3])); store(REF, a); break;
+                case ADDRG: newCell(() -> var(ALOAD, global[code[pc + 2]]), () -> push(code[pc + 3])); store(REF, a); break;
+                case ADDRA: newCell(() -> load(REF, code[pc + 2]), () -> load(INT, code[pc + 3])); store(REF, a); break;
+                case ADDRF: newCell(() -> recordBank(code[pc + 3], code[pc + 2]), () -> push(code[pc + 4])); store(REF, a); break;
+                case PILOAD: case PDLOAD: case PRLOAD: {
+                    int b = (op - PILOAD) / 2;
+                    cell(code[pc + 2], b);
+                    c.op(ARRAY_LOAD[b]);
+                    store(b, a);
+                    break;
+                }
+                case PISTORE: case PDSTORE: case PRSTORE: {
+                    int b = (op - PISTORE) / 2;
+                    cell(a, b);
+                    load(b, code[pc + 2]);
+                    c.op(ARRAY_STORE[b]);
+                    break;
+                }
+
+                case CALL: {
+                    Routine callee = program.routines[a];
+                    c.op(0x2a); // aload_0
+                    for (int k = 0; k < code[pc + 3]; k++) load(callee.params[k], code[pc + 4 + k]);
+                    c.op2(INVOKESTATIC, cf.method(CLASS, methodName(program, a), descriptor(callee)));
+                    if (callee.result != NONE) store(callee.result, code[pc + 2]);
+                    break;
+                }
+                case RETI: load(INT, a); c.op(IRETURN); break;
+                case RETD: load(REAL, a); c.op(DRETURN); break;
+                case RETR: load(REF, a); c.op(ARETURN); break;
+                case RET: c.op(RETURN); break;
+
+                case READI: read("readInt", "()I"); store(INT, a); break;
+                case READD: read("readReal", "()D"); store(REAL, a); break;
+                case READS: read("readWord", "()Ljava/lang/String;"); store(REF, a); break;
+                case WRITEI: write(INT, a, "writeInt", "(I)V"); break;
+                case WRITED: write(REAL, a, "writeReal", "(D)V"); break;
+                case WRITES: write(REF, a, "writeString", "(Ljava/lang/String;)V"); break;
+
+                default: throw new IllegalStateException("opcode invalido " + op + " em " + r.name + ", posicao " + pc);
+            }
+        }
+
+        // ------------------------------------------------------------ auxiliares
+
+        private void binary(int bank, int pc, int opcode) {
+            load(bank, code[pc + 2]);
+            load(bank, code[pc + 3]);
+            c.op(opcode);
+            store(bank, code[pc + 1]);
+        }
+
+        private void constant(int pc, int opcode) {
+            load(INT, code[pc + 2]);
+            push(code[pc + 3]);
+            c.op(opcode);
+            store(INT, code[pc + 1]);
+        }
+
+        private void compareInts(int pc, int jump) {
+            load(INT, code[pc + 2]);
+            load(INT, code[pc + 3]);
+            bool(jump);
+            store(INT, code[pc + 1]);
+        }
+
+        private void compareReals(int pc, int compare, int jump) {
+            load(REAL, code[pc + 2]);
+            load(REAL, code[pc + 3]);
+            c.op(compare);
+            bool(jump);
+            store(INT, code[pc + 1]);
+        }
+
+        private void compareStrings(int pc, int jump) {
+            load(REF, code[pc + 2]);
+            cast(STRING);
+            load(REF, code[pc + 3]);
+            cast(STRING);
+            c.op2(INVOKEVIRTUAL, cf.method(STRING, "compareTo", "(Ljava/lang/String;)I"));
+            bool(jump);
+            store(INT, code[pc + 1]);
+        }
+
+        // 1 se o desvio for tomado, 0 senão
+        private void bool(int jump) {
+            Label yes = c.label(), end = c.label();
+            c.jump(jump, yes);
+            c.op(ICONST_0);
+            c.jump(GOTO, end);
+            c.bind(yes);
+            c.op(ICONST_1);
+            c.bind(end);
+        }
+
+        private void branch(int pc, int jump, Label[] targets) {
+            load(INT, code[pc + 1]);
+            load(INT, code[pc + 2]);
+            c.jump(jump, targets[code[pc + 3]]);
+        }
+
+        // Arranjo do banco dado de um registro (Rec.ints, reals ou refs)
+        private void recordBank(int reg, int bank) {
+            load(REF, reg);
+            cast(REC);
+            c.op2(GETFIELD, cf.field(REC, REC_FIELD[bank], ARRAY_TYPE[bank]));
+        }
+
+        private void newCell(Runnable base, Runnable index) {
+            c.op2(NEW, cf.classRef(CELL));
+            c.op(DUP);
+            base.run();
+            index.run();
+            c.op2(INVOKESPECIAL, cf.method(CELL, "<init>", "(Ljava/lang/Object;I)V"));
+        }
+
+        // Empilha o arranjo e o índice apontados pelo Cell no registrador reg
+        private void cell(int reg, int bank) {
+            load(REF, reg);
+            cast(CELL);
+            c.op(DUP);
+            c.op2(GETFIELD, cf.field(CELL, "base", "Ljava/lang/Object;"));
+            cast(ARRAY_TYPE[bank]);
+            c.op(SWAP);
+            c.op2(GETFIELD, cf.field(CELL, "index", "I"));
+        }
+
+        private void read(String method, String descriptor) {
+            c.op(0x2a);
+            c.op2(GETFIELD, cf.field(CONTEXT, "in", "L" + INPUT + ";"));
+            c.op2(INVOKEVIRTUAL, cf.method(INPUT, method, descriptor));
+        }
+
+        private void write(int bank, int reg, String method, String descriptor) {
+            c.op(0x2a);
+            c.op2(GETFIELD, cf.field(CONTEXT, "out", "L" + OUTPUT + ";"));
+            load(bank, reg);
+            if (bank == REF) cast(STRING);
+            c.op2(INVOKEVIRTUAL, cf.method(OUTPUT, method, descriptor));
+        }
+
+        private void cast(String internalName) {
+            c.op2(CHECKCAST, cf.classRef(internalName));
+        }
+
+        private void load(int bank, int reg) {
+            int l = local[bank][reg];
+            if (l >= 0) {
+                var(LOAD[bank], l);
+            } else {
+                var(ALOAD, frame[bank]);
+                push(reg);
+                c.op(ARRAY_LOAD[bank]);
+            }
+        }
+
+        // Guarda no registrador o valor do topo da pilha
+        private void store(int bank, int reg) {
+            int l = local[bank][reg];
+            if (l >= 0) {
+                var(STORE[bank], l);
+            } else {
+                var(STORE[bank], scratch[bank]);
+                var(ALOAD, frame[bank]);
+                push(reg);
+                var(LOAD[bank], scratch[bank]);
+                c.op(ARRAY_STORE[bank]);
+            }
+        }
+
+        private void var(int opcode, int l) {
+            if (l <= 255) {
+                c.op(opcode, l);
+            } else {
+                c.op(WIDE);
+                c.op2(opcode, l);
+            }
+        }
+
+        private void push(int v) {
+            if (v >= -1 && v <= 5) c.op(ICONST_0 + v);
+            else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) c.op(BIPUSH, v);
+            else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) c.op2(SIPUSH, v);
+            else c.op2(LDC_W, cf.integer(v));
+        }
+
+        private void pushReal(double v) {
+            long bits = Double.doubleToRawLongBits(v);
+            if (bits == 0) c.op(DCONST_0);
+            else if (v == 1.0) c.op(DCONST_1);
+            else c.op2(LDC2_W, cf.real(v));
+        }
+
+        // Literais vão direto para o pool da classe; Layouts e ArrayInits vêm de Context.k
+        private void pushConstant(int index) {
+            Object k = program.constants[index];
+            if (k instanceof String) {
+                c.op2(LDC_W, cf.string((String) k));
+            } else {
+                var(ALOAD, constants);
+                push(index);
+                c.op(AALOAD);
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import br.ufscar.dc.compiladores.SymbolTable.JanderType;
+import br.ufscar.dc.compiladores.SymbolTable.SymbolTableEntry;
+
+/**
+ * Interface pré-compilada de uma biblioteca LA (arquivo ".jli" ao lado do fonte).
+ *
+ * Guarda os símbolos exportados pela biblioteca (tipos, registros, constantes, variáveis e as
+ * assinaturas de procedimentos/funções) para que um "importe" não precise reanalisar o fonte.
+ * O cabeçalho tem o SHA-256 do fonte e o de cada biblioteca que ele importa, direta ou indiretamente
+ * (os campos de um registro podem vir delas): se algum mudar a interface é gerada de novo.
+ *
+ * Formato (big-endian):
+ *   int magic "JLI1" | short versão | 32 bytes SHA-256 do fonte
+ *   int nº de dependências + (caminho absoluto, 32 bytes SHA-256) por dependência | int quantidade de símbolos
+ *   por símbolo: nome | byte tipo | byte tipo apontado | byte tipo de retorno | byte tipo dos elementos
+ *                short nº de parâmetros (-1 se não for rotina) + 1 byte por parâmetro
+ *                short nº de campos + (nome, byte tipo) por campo
+ *   nomes: short tamanho + bytes UTF-8; tipos: ordinal de JanderType ou -1 para null
+ */
+public class LibraryInterface {
+    public static final String EXTENSION = ".jli";
+
+    private static final int MAGIC = 0x4A4C4931; // "JLI1"
+    private static final short VERSION = 2;
+    private static final int HASH_SIZE = 32;
+    private static final int HEADER_SIZE = 4 + 2 + HASH_SIZE + 4 + 4;
+
+    private static final JanderType[] TYPES = JanderType.values();
+
+    // Bibliotecas sendo analisadas nesta thread, para detectar importação circular
+    private static final ThreadLocal<Deque<Path>> importing = ThreadLocal.withInitial(ArrayDeque::new);
+    // Bibliotecas importadas (fonte -> SHA-256) por cada biblioteca sendo analisada nesta thread, no mesmo empilhamento
+    private static final ThreadLocal<Deque<Map<Path, byte[]>>> dependencies = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * Insere no escopo atual da tabela os símbolos exportados pela biblioteca, usando a interface
+     * pré-compilada quando ela corresponde ao fonte. Retorna as mensagens de erro (vazia se ok).
+     */
+    public static List<String> importInto(SymbolTable table, Path library) {
+        return importInto(table, library, true);
+    }
+
+    /**
+     * Como importInto(table, library), mas sem writeInterface nenhuma interface é gravada, nem a desta
+     * biblioteca nem a das que ela importa: as válidas são lidas e as outras bibliotecas são reanalisadas.
+     */
+    public static List<String> importInto(SymbolTable table, Path library, boolean writeInterface) {
+        List<String> errors = new ArrayList<>();
+        Path source = library.toAbsolutePath().normalize();
+        String displayName = library.getFileName().toString();
+
+        if (!Files.isRegularFile(source)) {
+            errors.add("biblioteca " + displayName + " nao encontrada");
+            return errors;
+        }
+        if (importing.get().contains(source)) {
+            errors.add("importacao circular da biblioteca " + displayName);
+            return errors;
+        }
+
+        List<SymbolTableEntry> entries;
+        try {
+            byte[] content = Files.readAllBytes(source);
+            byte[] hash = sha256(content);
+            Path iface = interfacePath(source);
+            Map<Path, byte[]> deps = new LinkedHashMap<>();
+
+            entries = read(iface, hash, deps);
+            if (entries == null) {
+                deps.clear();
+                entries = compile(source, content, displayName, errors, deps, writeInterface);
+                if (entries == null) return errors;
+                if (writeInterface) {
+                    try {
+                        write(iface, hash, deps, entries);
+                    } catch (IOException e) {
+                        // A interface é só um cache: sem permissão de escrita a biblioteca é reanalisada da próxima vez
+                    }
+                }
+            }
+            // A biblioteca que importa esta depende dela e de tudo que ela importa
+            Map<Path, byte[]> importer = dependencies.get().peek();
+            if (importer != null) {
+                importer.put(source, hash);
+                importer.putAll(deps);
+            }
+        } catch (IOException e) {
+            errors.add("erro ao ler a biblioteca " + displayName + ": " + e.getMessage());
+            return errors;
+        }
+
+        for (SymbolTableEntry entry : entries) {
+            if (table.containsInCurrentScope(entry.name)) {
+                errors.add("identificador " + entry.name + " da biblioteca " + displayName + " ja declarado anteriormente");
+            } else {
+                table.importEntry(entry);
+            }
+        }
+        return errors;
+    }
+
+    public static Path interfacePath(Path source) {
+        return source.resolveSibling(source.getFileName() + EXTENSION);
+    }
+
+    // Analisa o fonte da biblioteca e retorna os símbolos do seu escopo global (null se houver erros).
+    // As bibliotecas que ela importa, direta ou indiretamente, vão para deps.
+    private static List<SymbolTableEntry> compile(Path source, byte[] content, String displayName, List<String> errors,
+                                                  Map<Path, byte[]> deps, boolean writeInterface) {
+        Deque<Path> stack = importing.get();
+        stack.push(source);
+        dependencies.get().push(deps);
+        try {
+            return JanderSemanticoUtils.runNested(() -> {
+                StringWriter syntaxErrors = new StringWriter();
+                PrintWriter pw = new PrintWriter(syntaxErrors);
+
+                JanderLexer lex = new JanderLexer(CharStreams.fromString(new String(content, StandardCharsets.UTF_8), source.toString()));
+                JanderParser parser = new JanderParser(new CommonTokenStream(lex));
+                parser.removeErrorListeners();
+                parser.addErrorListener(new MyCustomErrorListener(pw));
+                JanderParser.BibliotecaContext tree = parser.biblioteca();
+                pw.flush();
+
+                if (syntaxErrors.getBuffer().length() > 0) {
+                    errors.add("biblioteca " + displayName + " contem erros: " + syntaxErrors.toString().lines().findFirst().orElse(""));
+                    return null;
+                }
+
+                JanderSemantico semantico = new JanderSemantico(new PrintWriter(Writer.nullWriter()));
+                semantico.setWriteInterfaces(writeInterface);
+                semantico.visit(tree);
+                if (semantico.hasErrors()) {
+                    errors.add("biblioteca " + displayName + " contem erros: " + JanderSemanticoUtils.semanticErrors().get(0));
+                    return null;
+                }
+
+                return semantico.getExportedSymbols();
+            });
+        } finally {
+            dependencies.get().pop();
+            stack.pop();
+        }
+    }
+
+    // Lê a interface pelo mapeamento do arquivo; null se não existir, estiver corrompida ou desatualizada
+    // (o fonte ou alguma biblioteca importada por ele mudou). As dependências gravadas vão para deps.
+    static List<SymbolTableEntry> read(Path iface, byte[] expectedHash, Map<Path, byte[]> deps) throws IOException {
+        if (!Files.isRegularFile(iface)) return null;
+
+        try (FileChannel channel = FileChannel.open(iface, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) return null;
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buf.getInt() != MAGIC || buf.getShort() != VERSION) return null;
+            byte[] hash = new byte[HASH_SIZE];
+            buf.get(hash);
+            if (!Arrays.equals(hash, expectedHash)) return null;
+
+            int depCount = buf.getInt();
+            for (int i = 0; i < depCount; i++) {
+                Path dep = Paths.get(readString(buf));
+                byte[] depHash = new byte[HASH_SIZE];
+                buf.get(depHash);
+                if (!Files.isRegularFile(dep) || !Arrays.equals(depHash, sha256(Files.readAllBytes(dep)))) return null;
+                deps.put(dep, depHash);
+            }
+
+            int count = buf.getInt();
+            List<SymbolTableEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = readString(buf);
+                JanderType type = readType(buf);
+                JanderType pointedType = readType(buf);
+                JanderType returnType = readType(buf);
+                JanderType arrayElementType = readType(buf);
+
+                List<JanderType> paramTypes = null;
+                short paramCount = buf.getShort();
+                if (paramCount >= 0) {
+                    paramTypes = new ArrayList<>(paramCount);
+                    for (int p = 0; p < paramCount; p++) paramTypes.add(readType(buf));
+                }
+
+                short fieldCount = buf.getShort();
+                Map<String, JanderType> fields = new HashMap<>();
+                for (int f = 0; f < fieldCount; f++) {
+                    String fieldName = readString(buf);
+                    fields.put(fieldName, readType(buf));
+                }
+
+                entries.add(new SymbolTableEntry(name, type, pointedType, paramTypes, returnType, fields, arrayElementType));
+            }
+            return entries;
+        } catch (java.nio.BufferUnderflowException | IllegalArgumentException e) {
+            return null; // Arquivo truncado ou inválido: será gerado novamente
+        }
+    }
+
+    static void write(Path iface, byte[] hash, Map<Path, byte[]> deps, List<SymbolTableEntry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.write(hash);
+        out.writeInt(deps.size());
+        for (Map.Entry<Path, byte[]> dep : deps.entrySet()) {
+            writeString(out, dep.getKey().toString());
+            out.write(dep.getValue());
+        }
+        out.writeInt(entries.size());
+        for (SymbolTableEntry e : entries) {
+            writeString(out, e.name);
+            writeType(out, e.type);
+            writeType(out, e.pointedType);
+            writeType(out, e.returnType);
+            writeType(out, e.arrayElementType);
+
+            out.writeShort(e.paramTypes == null ? -1 : e.paramTypes.size());
+            if (e.paramTypes != null) {
+                for (JanderType t : e.paramTypes) writeType(out, t);
+            }
+
+            out.writeShort(e.recordFields.size());
+            for (Map.Entry<String, JanderType> field : e.recordFields.entrySet()) {
+                writeString(out, field.getKey());
+                writeType(out, field.getValue());
+            }
+        }
+        out.flush();
+
+        // Escreve em um temporário e renomeia, para que compilações concorrentes nunca vejam um arquivo pela metade
+        Path tmp = iface.resolveSibling(iface.getFileName() + "." + ProcessHandle.current().pid() + "-" + Thread.currentThread().threadId() + ".tmp");
+        try {
+            Files.write(tmp, bytes.toByteArray());
+            try {
+                Files.move(tmp, iface, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, iface, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] b = new byte[buf.getShort() & 0xFFFF];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeType(DataOutputStream out, JanderType t) throws IOException {
+        out.writeByte(t == null ? -1 : t.ordinal());
+    }
+
+    private static JanderType readType(ByteBuffer buf) {
+        byte b = buf.get();
+        if (b == -1) return null;
+        if (b < 0 || b >= TYPES.length) throw new IllegalArgumentException("tipo invalido: " + b);
+        return TYPES[b];
+    }
+
+    static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 está presente em toda JVM
+        }
+    }
+}
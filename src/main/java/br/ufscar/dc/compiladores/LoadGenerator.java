@@ -0,0 +1,391 @@
+package br.ufscar.dc.compiladores;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Gerador de carga em malha fechada: vários clientes no mesmo processo compilam programas pelo pipeline da
+ * linha de comando (Main.compilar), cada um começando a próxima compilação assim que a anterior termina.
+ *
+ * Uso: java -cp JanderLexico-1.0-SNAPSHOT-jar-with-dependencies.jar br.ufscar.dc.compiladores.LoadGenerator
+ *      [clientes] [segundos] [mistura] [arquivo.csv] [rotulo]
+ *
+ * - clientes: threads compilando ao mesmo tempo (padrão: 2 por processador);
+ * - segundos: duração da medição (padrão 10), depois de AQUECIMENTO_S segundos de aquecimento não medidos;
+ * - mistura: pesos de programas válidos, com erro sintático e com erros semânticos (padrão 80:10:10);
+ * - arquivo.csv: se dado, uma linha por categoria é acrescentada ao arquivo (o cabeçalho só se ele não
+ *   existir), com o rotulo (padrão "atual") na primeira coluna, para comparar builds diferentes.
+ *
+ * Os programas são gerados aqui com semente fixa (os mesmos em toda execução), em tamanhos que dobram de
+ * PROGRAMA_MIN a PROGRAMA_MAX comandos, e cada um é compilado uma vez antes da carga para conferir que cai
+ * na sua categoria. A latência de cada compilação vai para um Histogram por categoria (erro relativo abaixo
+ * de 1%, sem guardar as amostras); as pausas do GC durante a medição vêm das notificações dos coletores.
+ *
+ * Numa malha fechada a vazão medida é a de saturação para aquele número de clientes, e a latência é a de
+ * cada compilação, sem fila de espera: para ver o efeito da concorrência, compare execuções com números de
+ * clientes diferentes.
+ */
+public class LoadGenerator {
+    static final int AQUECIMENTO_S = 3;
+    static final int PROGRAMA_MIN = 25;
+    static final int PROGRAMA_MAX = 3200;
+    static final long SEMENTE = 42;
+
+    static final String[] CATEGORIAS = {"valido", "sintatico", "semantico"};
+    static final int VALIDO = 0, SINTATICO = 1, SEMANTICO = 2;
+
+    static final String CABECALHO_CSV = "rotulo,clientes,mistura,categoria,compilacoes,falhas,vazao_por_s,media_ms,"
+        + "p50_ms,p90_ms,p99_ms,p99_9_ms,max_ms,gc_pausas,gc_total_ms,gc_p99_ms,gc_max_ms";
+
+    /**
+     * Histograma de valores positivos (nanossegundos) em faixas log-lineares: até 2^SUB_BITS a faixa é exata,
+     * acima cada potência de 2 é dividida em 2^(SUB_BITS - 1) faixas iguais, então o erro relativo de um
+     * percentil é menor que 2^-(SUB_BITS - 1). Não é thread-safe: cada cliente tem os seus, somados no fim.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 8;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int HALF = SUB >> 1;
+
+        private final long[] counts = new long[SUB + (64 - SUB_BITS) * HALF];
+        private long count;
+        private long sum;
+        private long max;
+
+        void record(long value) {
+            long v = Math.max(0, value);
+            counts[index(v)]++;
+            count++;
+            sum += v;
+            max = Math.max(max, v);
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+            count += other.count;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+
+        long count() {
+            return count;
+        }
+
+        long max() {
+            return max;
+        }
+
+        double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /** Percentil p (0 a 100) pelo método nearest-rank: o maior valor da faixa da amostra de posição p */
+        long percentile(double p) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(max, highest(i));
+            }
+            return max;
+        }
+
+        private static int index(long v) {
+            if (v < SUB) return (int) v;
+            int shift = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1); // >= 1
+            return SUB + (shift - 1) * HALF + (int) (v >>> shift) - HALF;
+        }
+
+        // Maior valor que cai na faixa i
+        private static long highest(int i) {
+            if (i < SUB) return i;
+            int shift = (i - SUB) / HALF + 1;
+            long top = (i - SUB) % HALF + HALF;
+            return ((top + 1) << shift) - 1;
+        }
+    }
+
+    // Um cliente: compila até o fim da medição, registrando só o que começa depois do aquecimento
+    static final class Client extends Thread {
+        final String[][] programas;
+        final int[] mistura;
+        final Random random;
+        final Histogram[] latencias = new Histogram[CATEGORIAS.length];
+        final long[] falhas = new long[CATEGORIAS.length];
+        final long inicioMedicao, fimMedicao;
+
+        Client(int id, String[][] programas, int[] mistura, long inicioMedicao, long fimMedicao) {
+            super("carga-" + id);
+            this.programas = programas;
+            this.mistura = mistura;
+            this.random = new Random(SEMENTE + id);
+            this.inicioMedicao = inicioMedicao;
+            this.fimMedicao = fimMedicao;
+            for (int c = 0; c < latencias.length; c++) latencias[c] = new Histogram();
+        }
+
+        @Override
+        public void run() {
+            int total = mistura[0] + mistura[1] + mistura[2];
+            while (true) {
+                int sorteio = random.nextInt(total);
+                int c = sorteio < mistura[0] ? VALIDO : sorteio < mistura[0] + mistura[1] ? SINTATICO : SEMANTICO;
+                String programa = programas[c][random.nextInt(programas[c].length)];
+                long inicio = System.nanoTime();
+                if (inicio >= fimMedicao) return;
+                boolean ok = true;
+                try {
+                    Main.compilar(CharStreams.fromString(programa, "carga"), new PrintWriter(new StringWriter()));
+                } catch (RuntimeException e) {
+                    ok = false;
+                }
+                long nanos = System.nanoTime() - inicio;
+                if (inicio < inicioMedicao) continue;
+                latencias[c].record(nanos);
+                if (!ok) falhas[c]++;
+            }
+        }
+    }
+
+    // Pausas do GC avisadas pelos coletores enquanto ligado
+    static final class GcPauses implements NotificationListener {
+        final Histogram pausas = new Histogram();
+        volatile boolean medindo;
+
+        void install() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (gc instanceof NotificationEmitter) ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+            }
+        }
+
+        void uninstall() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                try {
+                    if (gc instanceof NotificationEmitter) ((NotificationEmitter) gc).removeNotificationListener(this);
+                } catch (javax.management.ListenerNotFoundException e) {
+                    // nunca foi instalado neste coletor
+                }
+            }
+        }
+
+        @Override
+        public void handleNotification(Notification n, Object handback) {
+            if (!medindo || !n.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+            // Ciclos concorrentes (ZGC, Shenandoah) não param a aplicação; as pausas deles vêm em outro coletor
+            if (info.getGcName().contains("Cycles")) return;
+            synchronized (pausas) {
+                pausas.record(info.getGcInfo().getDuration() * 1_000_000);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+        int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String textoMistura = args.length > 2 ? args[2] : "80:10:10";
+        Path csv = args.length > 3 ? Paths.get(args[3]) : null;
+        String rotulo = args.length > 4 ? args[4] : "atual";
+
+        String[] pesos = textoMistura.split(":");
+        if (clientes < 1 || segundos < 1 || pesos.length != 3) {
+            System.err.println("Uso: LoadGenerator [clientes] [segundos] [valido:sintatico:semantico] [arquivo.csv] [rotulo]");
+            System.exit(2);
+        }
+        int[] mistura = new int[3];
+        for (int i = 0; i < 3; i++) mistura[i] = Integer.parseInt(pesos[i]);
+        if (mistura[0] < 0 || mistura[1] < 0 || mistura[2] < 0 || mistura[0] + mistura[1] + mistura[2] == 0) {
+            System.err.println("Mistura invalida: " + textoMistura);
+            System.exit(2);
+        }
+
+        try {
+            String[][] programas = programas();
+            Histogram[] latencias = new Histogram[CATEGORIAS.length];
+            long[] falhas = new long[CATEGORIAS.length];
+            GcPauses gc = new GcPauses();
+            long inicio = System.nanoTime();
+            long inicioMedicao = inicio + AQUECIMENTO_S * 1_000_000_000L;
+            long fimMedicao = inicioMedicao + segundos * 1_000_000_000L;
+
+            gc.install();
+            List<Client> clients = new ArrayList<>();
+            for (int i = 0; i < clientes; i++) clients.add(new Client(i, programas, mistura, inicioMedicao, fimMedicao));
+            for (Client c : clients) c.start();
+            Thread.sleep(Math.max(0, (inicioMedicao - System.nanoTime()) / 1_000_000));
+            gc.medindo = true;
+            Thread.sleep(Math.max(0, (fimMedicao - System.nanoTime()) / 1_000_000));
+            gc.medindo = false;
+            for (Client c : clients) c.join();
+            gc.uninstall();
+
+            for (int c = 0; c < CATEGORIAS.length; c++) {
+                latencias[c] = new Histogram();
+                for (Client client : clients) {
+                    latencias[c].add(client.latencias[c]);
+                    falhas[c] += client.falhas[c];
+                }
+            }
+            List<String> linhas = linhas(rotulo, clientes, textoMistura, segundos, latencias, falhas, gc.pausas);
+            report(linhas, clientes, segundos, new PrintWriter(System.out, true));
+            if (csv != null) exportar(csv, linhas);
+            long totalFalhas = falhas[0] + falhas[1] + falhas[2];
+            System.exit(totalFalhas == 0 ? 0 : 1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // Uma linha CSV por categoria e uma com todas juntas
+    static List<String> linhas(String rotulo, int clientes, String mistura, int segundos, Histogram[] latencias,
+                               long[] falhas, Histogram pausas) {
+        List<String> linhas = new ArrayList<>();
+        Histogram todas = new Histogram();
+        long todasFalhas = 0;
+        for (int c = 0; c < CATEGORIAS.length; c++) {
+            todas.add(latencias[c]);
+            todasFalhas += falhas[c];
+        }
+        for (int c = 0; c <= CATEGORIAS.length; c++) {
+            Histogram h = c < CATEGORIAS.length ? latencias[c] : todas;
+            linhas.add(String.format(Locale.ROOT, "%s,%d,%s,%s,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%.1f,%.3f,%.3f",
+                rotulo.replace(',', ' '), clientes, mistura, c < CATEGORIAS.length ? CATEGORIAS[c] : "todas",
+                h.count(), c < CATEGORIAS.length ? falhas[c] : todasFalhas, h.count() / (double) segundos,
+                h.mean() / 1e6, h.percentile(50) / 1e6, h.percentile(90) / 1e6, h.percentile(99) / 1e6,
+                h.percentile(99.9) / 1e6, h.max() / 1e6, pausas.count(), pausas.mean() * pausas.count() / 1e6,
+                pausas.percentile(99) / 1e6, pausas.max() / 1e6));
+        }
+        return linhas;
+    }
+
+    // Imprime as linhas como tabela
+    static void report(List<String> linhas, int clientes, int segundos, PrintWriter out) {
+        out.printf("%d clientes, %d s de medicao (%d s de aquecimento)%n", clientes, segundos, AQUECIMENTO_S);
+        out.printf("%-10s %9s %6s %9s %9s %9s %9s %9s %9s%n", "categoria", "compil.", "falhas", "vazao/s", "p50 ms",
+            "p99 ms", "p99.9 ms", "max ms", "media ms");
+        String[] c = null;
+        for (String linha : linhas) {
+            c = linha.split(",");
+            out.printf("%-10s %9s %6s %9s %9s %9s %9s %9s %9s%n", c[3], c[4], c[5], c[6], c[8], c[10], c[11], c[12], c[7]);
+        }
+        if (c != null) out.printf("gc: %s pausas, %s ms no total, p99 %s ms, max %s ms%n", c[13], c[14], c[15], c[16]);
+        out.flush();
+    }
+
+    // Acrescenta as linhas ao arquivo, com o cabeçalho se ele ainda não existe
+    static void exportar(Path csv, List<String> linhas) throws IOException {
+        List<String> saida = new ArrayList<>();
+        if (!Files.exists(csv)) saida.add(CABECALHO_CSV);
+        saida.addAll(linhas);
+        Files.write(csv, saida, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // ---------------------------------------------------------------- programas
+
+    // Programas de cada categoria, um por tamanho; cada um é compilado uma vez para conferir a categoria
+    static String[][] programas() {
+        Random random = new Random(SEMENTE);
+        List<String[]> porCategoria = new ArrayList<>();
+        for (int c = 0; c < CATEGORIAS.length; c++) {
+            List<String> lista = new ArrayList<>();
+            for (int n = PROGRAMA_MIN; n <= PROGRAMA_MAX; n *= 2) {
+                String programa = programa(n, c, random);
+                StringWriter saida = new StringWriter();
+                Main.compilar(CharStreams.fromString(programa, "carga"), new PrintWriter(saida));
+                if (categoria(saida.toString()) != c) {
+                    throw new IllegalStateException("programa gerado de " + n + " comandos deveria ser " + CATEGORIAS[c]
+                        + ": " + saida.toString().split("\n")[0]);
+                }
+                lista.add(programa);
+            }
+            porCategoria.add(lista.toArray(new String[0]));
+        }
+        return porCategoria.toArray(new String[0][]);
+    }
+
+    static int categoria(String saida) {
+        if (saida.equals("Fim da compilacao\n")) return VALIDO;
+        if (saida.contains("erro sintatico")) return SINTATICO;
+        return SEMANTICO;
+    }
+
+    // n comandos no algoritmo; com erro sintático num ponto sorteado, ou com erros semânticos a cada ~50 comandos
+    static String programa(int n, int categoria, Random random) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("declare a, b, c: inteiro\n");
+        sb.append("declare x: real\n");
+        sb.append("declare nome: literal\n");
+        sb.append("declare ok: logico\n");
+        sb.append("procedimento mostra(v: inteiro)\n    escreva(v)\nfim_procedimento\n");
+        sb.append("funcao dobro(v: inteiro): inteiro\n    retorne v * 2\nfim_funcao\n");
+        sb.append("algoritmo\n");
+        int erroSintatico = categoria == SINTATICO ? random.nextInt(n) : -1;
+        int erroSemantico = categoria == SEMANTICO ? random.nextInt(Math.min(n, 50)) : -1;
+        for (int i = 0; i < n; i++) {
+            if (i == erroSintatico) {
+                sb.append("    a <- + * b\n");
+            } else if (i == erroSemantico) {
+                sb.append(random.nextBoolean() ? "    nome <- a + " + i + "\n" : "    z" + i + " <- a\n");
+                erroSemantico += 1 + random.nextInt(100);
+            } else {
+                comando(sb, i, random);
+            }
+        }
+        sb.append("fim_algoritmo\n");
+        return sb.toString();
+    }
+
+    private static void comando(StringBuilder sb, int i, Random random) {
+        switch (random.nextInt(8)) {
+            case 0:
+                sb.append("    a <- b + ").append(i).append(" * c\n");
+                break;
+            case 1:
+                sb.append("    x <- x / 2.0 + a\n");
+                break;
+            case 2:
+                sb.append("    se a > ").append(i).append(" e ok entao\n        a <- a - 1\n    senao\n")
+                    .append("        escreva(nome)\n    fim_se\n");
+                break;
+            case 3:
+                sb.append("    enquanto b < ").append(i).append(" faca\n        b <- b + 1\n    fim_enquanto\n");
+                break;
+            case 4:
+                sb.append("    para c <- 1 ate ").append(i).append(" faca\n        escreva(c, \" \", dobro(c))\n")
+                    .append("    fim_para\n");
+                break;
+            case 5:
+                sb.append("    leia(a, x)\n");
+                break;
+            case 6:
+                sb.append("    mostra(a + ").append(i).append(")\n");
+                break;
+            default:
+                sb.append("    ok <- a = b ou ok\n    nome <- \"texto\"\n");
+                break;
+        }
+    }
+}
@@ -2,37 +2,65 @@ package br.ufscar.dc.compiladores;
 
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 //import org.antlr.v4.runtime.Token;
-import br.ufscar.dc.compiladores.JanderParser.ProgramaContext;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.Optional;
 
 public class Main {
     public static void main(String[] args) {
         try {
-            CharStream cs = CharStreams.fromFileName(args[0]);
-            JanderLexer lex = new JanderLexer(cs);
             String arquivoSaida = args[1];
             PrintWriter pw = new PrintWriter(arquivoSaida, "UTF-8");
+            boolean avisos = false, foraDoHeap = false, executar = false, jvm = false, gerarC = false, interpretar = false;
+            ParseCache cache = null;
+            for (int i = 2; i < args.length; i++) {
+                if (args[i].equals("--avisos")) avisos = true;              // Avisos de fluxo de dados (opcional)
+                else if (args[i].equals("--fora-do-heap")) foraDoHeap = true; // Símbolos e árvore fora do heap (opcional)
+                else if (args[i].equals("--executar")) executar = true;        // Executa o programa na máquina virtual (opcional)
+                else if (args[i].equals("--executar-jvm")) executar = jvm = true; // Executa como classe da JVM (opcional)
+                else if (args[i].equals("--gerar-c")) gerarC = true;            // Escreve o programa em C na saída (opcional)
+                else if (args[i].equals("--interpretar")) interpretar = true;  // Executa a árvore, sem gerar bytecode (opcional)
+                else if (args[i].equals("--cache-arvore")) cache = ParseCache.forSource(Paths.get(args[0])); // Tokens e árvore em entrada.txt.lap (opcional)
+            }
 
-            CommonTokenStream tokens = new CommonTokenStream(lex);
-            JanderParser parser = new JanderParser(tokens);
-
-            MyCustomErrorListener mcel = new MyCustomErrorListener(pw);
-            parser.removeErrorListeners();
-            parser.addErrorListener(mcel);
-
-            ProgramaContext arvore = parser.programa();
-            JanderSemantico semantico = new JanderSemantico(pw);
-            
-            semantico.visit(arvore);
-
-            //if (semantico.hasErrors()) {
-            semantico.printErrors();
-            pw.flush();
-            //}
+            if (foraDoHeap) {
+                OffHeapCompiler.compilar(Paths.get(args[0]), pw);
+            } else if (gerarC) {
+                try {
+                    run(JanderPasses.nativeCode(avisos), CharStreams.fromFileName(args[0]), pw, cache);
+                } catch (IllegalArgumentException e) {
+                    pw.close();
+                    System.err.println(e.getMessage()); // Rotina ou tipo importado: não há como traduzir, e nada foi escrito em pw
+                    System.exit(1);
+                }
+            } else if (interpretar) {
+                try {
+                    Optional<AstInterpreter> programa = run(JanderPasses.interpreted(avisos), CharStreams.fromFileName(args[0]), pw, cache)
+                        .get(JanderPasses.INTERPRETER);
+                    pw.close();
+                    if (programa.isPresent()) interpretar(programa.get());
+                } catch (IllegalArgumentException e) {
+                    pw.close();
+                    System.err.println(e.getMessage()); // Rotina importada: não há como executar
+                    System.exit(1);
+                }
+            } else if (executar) {
+                try {
+                    Optional<Bytecode> programa = run(JanderPasses.executable(avisos), CharStreams.fromFileName(args[0]), pw, cache)
+                        .get(JanderPasses.BYTECODE);
+                    pw.close();
+                    if (programa.isPresent()) executar(programa.get(), jvm);
+                } catch (IllegalArgumentException e) {
+                    pw.close();
+                    System.err.println(e.getMessage()); // Rotina ou tipo importado: não há como executar
+                    System.exit(1);
+                }
+            } else {
+                run(JanderPasses.standard(avisos), CharStreams.fromFileName(args[0]), pw, cache);
+            }
 
             pw.close();
         } catch (Exception e) {
@@ -40,4 +68,87 @@ public class Main {
             System.exit(1);
         }
     }
-}
\ No newline at end of file
+
+    // Executa léxico, sintático e semântico sobre cs, escrevendo as mensagens em pw.
+    // Também usado pelo JanderTestRunner para compilar casos de teste no mesmo processo.
+    public static void compilar(CharStream cs, PrintWriter pw) {
+        compilar(cs, pw, false);
+    }
+
+    // As fases são passos do PassManager (ver JanderPasses); cada uma gera um JanderEvents.PhaseEvent.
+    public static void compilar(CharStream cs, PrintWriter pw, boolean avisos) {
+        run(JanderPasses.standard(avisos), cs, pw, null);
+    }
+
+    // Como compilar(), e também gera o bytecode do programa se não houver erros.
+    // IllegalArgumentException se o programa usa rotinas ou tipos importados.
+    public static Optional<Bytecode> compilarParaExecucao(CharStream cs, PrintWriter pw, boolean avisos) {
+        return run(JanderPasses.executable(avisos), cs, pw, null).get(JanderPasses.BYTECODE);
+    }
+
+    // Como compilar(), e também monta a árvore do AstInterpreter se não houver erros.
+    // IllegalArgumentException se o programa chama rotinas importadas.
+    public static Optional<AstInterpreter> compilarParaInterpretacao(CharStream cs, PrintWriter pw, boolean avisos) {
+        return run(JanderPasses.interpreted(avisos), cs, pw, null).get(JanderPasses.INTERPRETER);
+    }
+
+    // Como compilar(), mas um programa sem erros é escrito em pw traduzido para C (ver CEmitter).
+    // IllegalArgumentException, sem escrever o C em pw, se o programa usa rotinas ou tipos importados.
+    public static void gerarC(CharStream cs, PrintWriter pw, boolean avisos) {
+        run(JanderPasses.nativeCode(avisos), cs, pw, null);
+    }
+
+    // Roda o pipeline com um léxico e um parser do pool de ParserSessions, devolvidos ao terminar.
+    // Com cache (pode ser null), tokens e árvore vêm do disco quando o fonte não mudou.
+    private static PassContext run(PassManager passes, CharStream cs, PrintWriter pw, ParseCache cache) {
+        try (ParserSession session = ParserSession.acquire()) {
+            PassContext ctx = new PassContext(cs.getSourceName())
+                .put(JanderPasses.SOURCE, cs)
+                .put(JanderPasses.OUTPUT, pw)
+                .put(JanderPasses.SESSION, session);
+            if (cache != null) ctx.put(JanderPasses.PARSE_CACHE, cache);
+            return passes.run(ctx);
+        }
+    }
+
+    // Executa com a entrada e a saída padrão; um erro de execução vai para a saída de erros e encerra com status 1.
+    // Com jvm, o programa roda como classe oculta da JVM, exceto se alguma rotina for grande demais para o JIT.
+    static void executar(Bytecode programa, boolean jvm) {
+        try {
+            JvmBackend.Program carregado = jvm ? carregarNaJvm(programa) : null;
+            if (carregado != null) carregado.run(System.in, System.out);
+            else new BytecodeVM(programa, System.in, System.out).run();
+        } catch (BytecodeVM.ExecutionError e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Como executar(), na árvore do AstInterpreter
+    static void interpretar(AstInterpreter programa) {
+        try {
+            programa.run(System.in, System.out);
+        } catch (BytecodeVM.ExecutionError e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static JvmBackend.Program carregarNaJvm(Bytecode programa) {
+        try {
+            return JvmBackend.load(programa);
+        } catch (IllegalArgumentException e) {
+            return null; // fica na BytecodeVM
+        }
+    }
+
+    static void commitPhase(JanderEvents.PhaseEvent event, String phase, String source, int tokens) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.source = source;
+            event.tokens = tokens;
+            event.commit();
+        }
+    }
+}
@@ -2,7 +2,9 @@
 package br.ufscar.dc.compiladores;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.List;
 
 import org.antlr.v4.runtime.*;
 
@@ -17,6 +19,13 @@ public class MyCustomErrorListener implements ANTLRErrorListener {
 
     boolean parada = false;
 
+    // O erro que parou a análise (no máximo um), para quem quer as mensagens sem o texto da saída
+    private final List<Compiler.Diagnostic> diagnostics = new ArrayList<>();
+
+    public List<Compiler.Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
     @Override
     public void	syntaxError(Recognizer<?,?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
         // Aqui vamos colocar o tratamento de erro customizado
@@ -28,23 +37,27 @@ public class MyCustomErrorListener implements ANTLRErrorListener {
 
         String nomeToken = JanderLexer.VOCABULARY.getDisplayName(t.getType());
 
+            Compiler.Diagnostic erro;
             if(nomeToken.equals("ERRO")) {
                     //System.out.println("Erro na linha "+t.getLine()+": "+t.getText());
-                    pw.println("Linha "+t.getLine()+": "+t.getText()+ " - simbolo nao identificado");
+                    erro = new Compiler.Diagnostic(Compiler.Kind.LEXICAL, t.getLine(), t.getText()+ " - simbolo nao identificado");
             } else if(nomeToken.equals("CADEIA_NAO_FECHADA")) {
                     //System.out.println("Cadeia não fechada na linha "+t.getLine());
-                    pw.println("Linha "+t.getLine()+": cadeia literal nao fechada");
+                    erro = new Compiler.Diagnostic(Compiler.Kind.LEXICAL, t.getLine(), "cadeia literal nao fechada");
             } else if(nomeToken.equals("COMENTARIO_NAO_FECHADO")) {
                     //System.out.println("Cadeia não fechada na linha "+t.getLine());
-                    pw.println("Linha "+t.getLine()+": comentario nao fechado");
+                    erro = new Compiler.Diagnostic(Compiler.Kind.LEXICAL, t.getLine(), "comentario nao fechado");
             } else if(t.getText().equals("<EOF>")) {
-                pw.println("Linha " + line + ": erro sintatico proximo a EOF");
+                erro = new Compiler.Diagnostic(Compiler.Kind.SYNTAX, line, "erro sintatico proximo a EOF");
             } else {
-                pw.println("Linha " + line + ": erro sintatico proximo a " + t.getText());
+                erro = new Compiler.Diagnostic(Compiler.Kind.SYNTAX, line, "erro sintatico proximo a " + t.getText());
             }
+            diagnostics.add(erro);
+            pw.println(erro);
     
             pw.println("Fim da compilacao");
             parada = true;
+            JanderEvents.diagnostics("sintatico", 1, "Linha " + line + ": " + msg);
     }
 
     @Override
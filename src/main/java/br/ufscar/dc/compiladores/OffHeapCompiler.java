@@ -0,0 +1,196 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * Compilação com memória do heap constante, para programas gerados de milhões de linhas (opção --fora-do-heap).
+ *
+ * O arquivo é lido e tokenizado sob demanda (UnbufferedCharStream/UnbufferedTokenStream) e o parser é
+ * chamado uma unidade por vez: cada importação, cada declaração de topo, cada declaração do corpo e cada
+ * comando do corpo. Cada subárvore é analisada pelo JanderSemantico, copiada para a árvore achatada do
+ * OffHeapStore e descartada; a tabela de símbolos também fica no store (OffHeapSymbolTable). No heap
+ * fica só a maior unidade, os erros e o cache de predição do ANTLR.
+ *
+ * As mensagens são as mesmas do modo normal. Se houver erro sintático, o store é fechado e o arquivo é
+ * compilado de novo pelo Main.compilar, que reporta o erro exatamente como antes. Neste modo não há
+ * ScopeIndex, referências cruzadas nem avisos de fluxo de dados (que precisam da árvore inteira).
+ */
+public class OffHeapCompiler {
+    private final OffHeapStore store;
+    private JanderParser parser;
+    private TokenStream tokens;
+    private JanderSemantico semantico;
+
+    private OffHeapCompiler(OffHeapStore store) {
+        this.store = store;
+    }
+
+    /** Compila o arquivo escrevendo as mensagens em pw; toda a memória fora do heap é liberada no fim */
+    public static void compilar(Path input, PrintWriter pw) throws IOException {
+        boolean compilado;
+        try (OffHeapStore store = new OffHeapStore()) {
+            compilado = compilar(input, pw, store);
+        }
+        if (!compilado) {
+            Main.compilar(CharStreams.fromPath(input), pw);
+        }
+    }
+
+    /**
+     * Compila o arquivo guardando símbolos e árvore achatada em store (o nó 0 é o programa), que continua
+     * aberto para o chamador. Devolve false, sem escrever nada, se o programa tiver erro sintático.
+     */
+    public static boolean compilar(Path input, PrintWriter pw, OffHeapStore store) throws IOException {
+        JanderEvents.PhaseEvent event = new JanderEvents.PhaseEvent();
+        event.begin();
+        OffHeapCompiler compiler = new OffHeapCompiler(store);
+        try (Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            boolean compilado = compiler.analisar(reader, input.toString(), pw);
+            Main.commitPhase(event, "off-heap", input.toString(), compiler.tokens.index());
+            return compilado;
+        }
+    }
+
+    private boolean analisar(Reader reader, String sourceName, PrintWriter pw) {
+        UnbufferedCharStream cs = new UnbufferedCharStream(reader);
+        cs.name = sourceName;
+        JanderLexer lexer = new JanderLexer(cs);
+        lexer.removeErrorListeners();
+        lexer.setTokenFactory(new CommonTokenFactory(true)); // o texto dos tokens sai do buffer deslizante
+        tokens = new UnbufferedTokenStream<>(lexer);
+        parser = new JanderParser(tokens);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+
+        semantico = new JanderSemantico(pw);
+        semantico.useOffHeap(store);
+        semantico.beginProgram();
+        try {
+            programa();
+        } catch (ParseCancellationException e) {
+            return false;
+        } finally {
+            semantico.endProgram();
+        }
+        semantico.printErrors();
+        pw.flush();
+        return true;
+    }
+
+    // programa : importacao* declaracoes 'algoritmo' corpo 'fim_algoritmo' EOF
+    private void programa() {
+        Token first = tokens.LT(1);
+        int programa = store.addNode(JanderParser.RULE_programa, 0, -1, -1, first.getLine(), first.getCharPositionInLine(), first.getTokenIndex(), -1);
+        int last = -1;
+        while (tokens.LA(1) == JanderParser.IMPORTE) {
+            last = unit(parser.importacao(), programa, last);
+        }
+
+        int declaracoes = container(JanderParser.RULE_declaracoes, programa, last);
+        int decl = -1;
+        while (startsDeclaration(tokens.LA(1)) || tokens.LA(1) == JanderParser.PROCEDIMENTO || tokens.LA(1) == JanderParser.FUNCAO) {
+            decl = unit(parser.decl_local_global(), declaracoes, decl);
+        }
+        store.setStopToken(declaracoes, tokens.index() - 1);
+
+        last = terminal(expect(JanderParser.ALGORITMO), programa, declaracoes);
+        int corpo = container(JanderParser.RULE_corpo, programa, last);
+        int item = -1;
+        while (startsDeclaration(tokens.LA(1))) {
+            item = unit(parser.declaracao_local(), corpo, item);
+        }
+        while (tokens.LA(1) != JanderParser.FIM_ALGORITMO && tokens.LA(1) != Token.EOF) {
+            item = unit(parser.cmd(), corpo, item);
+        }
+        store.setStopToken(corpo, tokens.index() - 1);
+
+        last = terminal(expect(JanderParser.FIM_ALGORITMO), programa, corpo);
+        Token eof = expect(Token.EOF);
+        terminal(eof, programa, last);
+        store.setStopToken(programa, eof.getTokenIndex());
+    }
+
+    private static boolean startsDeclaration(int type) {
+        return type == JanderParser.DECLARE || type == JanderParser.CONSTANTE || type == JanderParser.TIPO;
+    }
+
+    // Analisa a unidade recém-reconhecida, copia para o store depois de previousSibling e a descarta
+    private int unit(ParserRuleContext ctx, int parent, int previousSibling) {
+        semantico.visit(ctx);
+        return flatten(ctx, parent, previousSibling);
+    }
+
+    // Nó de regra cujos filhos são acrescentados depois; começa no próximo token
+    private int container(int rule, int parent, int previousSibling) {
+        Token next = tokens.LT(1);
+        return store.addNode(rule, 0, parent, previousSibling, next.getLine(), next.getCharPositionInLine(), next.getTokenIndex(), -1);
+    }
+
+    private int terminal(Token t, int parent, int previousSibling) {
+        return store.addNode(-1, t.getType(), parent, previousSibling, t.getLine(), t.getCharPositionInLine(), t.getTokenIndex(), t.getTokenIndex());
+    }
+
+    // Consome um token esperado fora das regras; qualquer outro é erro sintático (o EOF não é consumido)
+    private Token expect(int type) {
+        Token t = tokens.LT(1);
+        if (t.getType() != type) throw new ParseCancellationException();
+        if (type != Token.EOF) tokens.consume();
+        return t;
+    }
+
+    // Copia a subárvore para o store como filho de parent, depois de previousSibling; devolve o nó criado.
+    // Em pré-ordem com pilha explícita: cadeias longas de operadores formam espinhas esquerdas profundas.
+    private int flatten(ParseTree tree, int parent, int previousSibling) {
+        if (tree instanceof TerminalNode) {
+            return terminal(((TerminalNode) tree).getSymbol(), parent, previousSibling);
+        }
+        int root = rule((ParserRuleContext) tree, parent, previousSibling);
+        List<ParserRuleContext> open = new ArrayList<>();
+        List<int[]> state = new ArrayList<>(); // {nó, próximo filho, último filho criado}
+        open.add((ParserRuleContext) tree);
+        state.add(new int[] {root, 0, -1});
+        while (!open.isEmpty()) {
+            int top = open.size() - 1;
+            ParserRuleContext ctx = open.get(top);
+            int[] st = state.get(top);
+            if (st[1] == ctx.getChildCount()) {
+                open.remove(top);
+                state.remove(top);
+                continue;
+            }
+            ParseTree child = ctx.getChild(st[1]++);
+            if (child instanceof TerminalNode) {
+                st[2] = terminal(((TerminalNode) child).getSymbol(), st[0], st[2]);
+            } else {
+                st[2] = rule((ParserRuleContext) child, st[0], st[2]);
+                open.add((ParserRuleContext) child);
+                state.add(new int[] {st[2], 0, -1});
+            }
+        }
+        return root;
+    }
+
+    private int rule(ParserRuleContext ctx, int parent, int previousSibling) {
+        return store.addNode(ctx.getRuleIndex(), 0, parent, previousSibling, ctx.start.getLine(), ctx.start.getCharPositionInLine(),
+                             ctx.start.getTokenIndex(), ctx.stop != null ? ctx.stop.getTokenIndex() : -1);
+    }
+}
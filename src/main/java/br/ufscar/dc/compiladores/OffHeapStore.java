@@ -0,0 +1,426 @@
+package br.ufscar.dc.compiladores;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.ufscar.dc.compiladores.SymbolTable.JanderType;
+
+import static java.lang.foreign.MemoryLayout.PathElement.groupElement;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_CHAR;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * Símbolos, descritores de tipo e árvore sintática achatada guardados fora do heap, em registros
+ * de layout fixo dentro de MemorySegments de uma única Arena (API java.lang.foreign).
+ *
+ * Cada região é um vetor de registros em páginas de tamanho fixo, alocadas sob demanda na arena;
+ * nada é copiado ao crescer e a memória cresce de página em página. Não há liberação individual: um OffHeapStore vive exatamente uma compilação e é fechado com close().
+ *
+ * Os registros se referem uns aos outros por índice (int), nunca por endereço, e os nomes ficam
+ * num pool de caracteres (UTF-16, como String). A Arena é confinada: só a thread que criou o store
+ * pode usá-lo.
+ */
+public final class OffHeapStore implements AutoCloseable {
+
+    // Símbolo: nome no pool, escopo, próximo símbolo no mesmo balde do índice hash, tipos (ordinal de
+    // JanderType, -1 para null) e os descritores de parâmetros e de campos de registro (-1 se não houver)
+    static final StructLayout SYMBOL = MemoryLayout.structLayout(
+        JAVA_INT.withName("name"),
+        JAVA_INT.withName("nameLength"),
+        JAVA_INT.withName("scope"),
+        JAVA_INT.withName("next"),
+        JAVA_BYTE.withName("type"),
+        JAVA_BYTE.withName("pointedType"),
+        JAVA_BYTE.withName("returnType"),
+        JAVA_BYTE.withName("elementType"),
+        JAVA_INT.withName("params"),
+        JAVA_INT.withName("paramCount"),
+        JAVA_INT.withName("fields"),
+        JAVA_INT.withName("fieldCount"));
+
+    // Campo de registro: nome no pool e tipo
+    static final StructLayout FIELD = MemoryLayout.structLayout(
+        JAVA_INT.withName("name"),
+        JAVA_INT.withName("nameLength"),
+        JAVA_INT.withName("type"));
+
+    // Nó da árvore achatada: regra (-1 em terminais), tipo do token (só em terminais), ligações
+    // pai/primeiro filho/próximo irmão (-1 se não houver), posição e intervalo de tokens
+    static final StructLayout NODE = MemoryLayout.structLayout(
+        JAVA_INT.withName("rule"),
+        JAVA_INT.withName("tokenType"),
+        JAVA_INT.withName("parent"),
+        JAVA_INT.withName("firstChild"),
+        JAVA_INT.withName("nextSibling"),
+        JAVA_INT.withName("line"),
+        JAVA_INT.withName("column"),
+        JAVA_INT.withName("startToken"),
+        JAVA_INT.withName("stopToken"));
+
+    private static final long S_NAME = offset(SYMBOL, "name");
+    private static final long S_NAME_LENGTH = offset(SYMBOL, "nameLength");
+    private static final long S_SCOPE = offset(SYMBOL, "scope");
+    private static final long S_NEXT = offset(SYMBOL, "next");
+    private static final long S_TYPE = offset(SYMBOL, "type");
+    private static final long S_POINTED = offset(SYMBOL, "pointedType");
+    private static final long S_RETURN = offset(SYMBOL, "returnType");
+    private static final long S_ELEMENT = offset(SYMBOL, "elementType");
+    private static final long S_PARAMS = offset(SYMBOL, "params");
+    private static final long S_PARAM_COUNT = offset(SYMBOL, "paramCount");
+    private static final long S_FIELDS = offset(SYMBOL, "fields");
+    private static final long S_FIELD_COUNT = offset(SYMBOL, "fieldCount");
+
+    private static final long F_NAME = offset(FIELD, "name");
+    private static final long F_NAME_LENGTH = offset(FIELD, "nameLength");
+    private static final long F_TYPE = offset(FIELD, "type");
+
+    private static final long N_RULE = offset(NODE, "rule");
+    private static final long N_TOKEN_TYPE = offset(NODE, "tokenType");
+    private static final long N_PARENT = offset(NODE, "parent");
+    private static final long N_FIRST_CHILD = offset(NODE, "firstChild");
+    private static final long N_NEXT_SIBLING = offset(NODE, "nextSibling");
+    private static final long N_LINE = offset(NODE, "line");
+    private static final long N_COLUMN = offset(NODE, "column");
+    private static final long N_START = offset(NODE, "startToken");
+    private static final long N_STOP = offset(NODE, "stopToken");
+
+    private static final JanderType[] TYPES = JanderType.values();
+
+    private final Arena arena = Arena.ofConfined();
+    private long allocated = 0;
+
+    private final Region chars = new Region(JAVA_CHAR.byteSize(), 20);  // páginas de 2 MB
+    private final Region symbols = new Region(SYMBOL.byteSize(), 14);   // 576 KB
+    private final Region params = new Region(JAVA_BYTE.byteSize(), 16); // 64 KB
+    private final Region fields = new Region(FIELD.byteSize(), 16);     // 768 KB
+    private final Region nodes = new Region(NODE.byteSize(), 16);       // 2,3 MB
+
+    // Índice hash (escopo, nome) -> símbolo mais recente, com encadeamento pelo campo "next"
+    private MemorySegment buckets;
+    private int bucketMask;
+
+    public OffHeapStore() {
+        buckets = newBuckets(1 << 10);
+    }
+
+    private static long offset(StructLayout layout, String field) {
+        return layout.byteOffset(groupElement(field));
+    }
+
+    /** Bytes reservados na arena até agora (páginas e índice hash, inclusive os índices substituídos ao crescer) */
+    public long bytesAllocated() {
+        return allocated;
+    }
+
+    /** Libera toda a memória do store de uma vez; nenhum índice devolvido antes continua válido */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    // Vetor de registros de tamanho fixo em páginas da arena; o índice i fica na página i / pageRecords.
+    // Uma sequência reservada com add(n) nunca atravessa páginas (o resto da página é pulado).
+    private final class Region {
+        final long recordSize;
+        final int pageBits;
+        MemorySegment[] pages = new MemorySegment[16];
+        int count = 0;
+
+        Region(long recordSize, int pageBits) {
+            this.recordSize = recordSize;
+            this.pageBits = pageBits;
+        }
+
+        // Reserva n registros consecutivos e devolve o índice do primeiro
+        int add(int n) {
+            int pageRecords = 1 << pageBits;
+            if (n > pageRecords) throw new IllegalArgumentException(n + " registros nao cabem numa pagina de " + pageRecords);
+            int first = count;
+            if ((first & (pageRecords - 1)) + n > pageRecords) first = (first | (pageRecords - 1)) + 1;
+            int lastPage = (first + n - 1) >>> pageBits;
+            if (n > 0 && (lastPage >= pages.length || pages[lastPage] == null)) {
+                if (lastPage >= pages.length) pages = Arrays.copyOf(pages, pages.length * 2);
+                pages[lastPage] = allocate(recordSize << pageBits);
+            }
+            count = first + n;
+            return first;
+        }
+
+        MemorySegment page(int index) {
+            return pages[index >>> pageBits];
+        }
+
+        long at(int index) {
+            return (index & ((1 << pageBits) - 1)) * recordSize;
+        }
+    }
+
+    private MemorySegment allocate(long bytes) {
+        allocated += bytes;
+        return arena.allocate(bytes, 8);
+    }
+
+    private MemorySegment newBuckets(int capacity) {
+        MemorySegment segment = allocate(capacity * JAVA_INT.byteSize());
+        segment.fill((byte) -1); // todo balde começa vazio (-1)
+        bucketMask = capacity - 1;
+        return segment;
+    }
+
+    // ---------------------------------------------------------------- nomes
+
+    private int addString(String s) {
+        int first = chars.add(s.length());
+        MemorySegment seg = chars.page(first);
+        for (int i = 0; i < s.length(); i++) seg.set(JAVA_CHAR, chars.at(first + i), s.charAt(i));
+        return first;
+    }
+
+    private String string(int first, int length) {
+        char[] c = new char[length];
+        MemorySegment seg = chars.page(first);
+        for (int i = 0; i < length; i++) c[i] = seg.get(JAVA_CHAR, chars.at(first + i));
+        return new String(c);
+    }
+
+    private boolean stringEquals(int first, int length, String s) {
+        if (length != s.length()) return false;
+        MemorySegment seg = chars.page(first);
+        for (int i = 0; i < length; i++) {
+            if (seg.get(JAVA_CHAR, chars.at(first + i)) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------- símbolos
+
+    private static byte code(JanderType type) {
+        return type == null ? -1 : (byte) type.ordinal();
+    }
+
+    private static JanderType type(byte code) {
+        return code < 0 ? null : TYPES[code];
+    }
+
+    private static int hash(int scope, String name) {
+        int h = name.hashCode() * 31 + scope;
+        return h ^ (h >>> 16);
+    }
+
+    /** Insere um símbolo no escopo dado; um símbolo posterior com o mesmo nome e escopo esconde o anterior */
+    int addSymbol(int scope, String name, JanderType type, JanderType pointedType, List<JanderType> paramTypes,
+                  JanderType returnType, Map<String, JanderType> recordFields, JanderType elementType) {
+        int paramStart = -1;
+        if (paramTypes != null) {
+            paramStart = params.add(paramTypes.size());
+            for (int i = 0; i < paramTypes.size(); i++) {
+                params.page(paramStart).set(JAVA_BYTE, params.at(paramStart + i), code(paramTypes.get(i)));
+            }
+        }
+        int fieldStart = -1;
+        if (!recordFields.isEmpty()) {
+            fieldStart = fields.add(recordFields.size());
+            int f = fieldStart;
+            for (Map.Entry<String, JanderType> field : recordFields.entrySet()) {
+                int fieldName = addString(field.getKey());
+                MemorySegment seg = fields.page(f);
+                long at = fields.at(f++);
+                seg.set(JAVA_INT, at + F_NAME, fieldName);
+                seg.set(JAVA_INT, at + F_NAME_LENGTH, field.getKey().length());
+                seg.set(JAVA_INT, at + F_TYPE, code(field.getValue()));
+            }
+        }
+
+        int nameStart = addString(name);
+        int s = symbols.add(1);
+        MemorySegment seg = symbols.page(s);
+        long at = symbols.at(s);
+        int bucket = hash(scope, name) & bucketMask;
+        seg.set(JAVA_INT, at + S_NAME, nameStart);
+        seg.set(JAVA_INT, at + S_NAME_LENGTH, name.length());
+        seg.set(JAVA_INT, at + S_SCOPE, scope);
+        seg.set(JAVA_INT, at + S_NEXT, buckets.getAtIndex(JAVA_INT, bucket));
+        seg.set(JAVA_BYTE, at + S_TYPE, code(type));
+        seg.set(JAVA_BYTE, at + S_POINTED, code(pointedType));
+        seg.set(JAVA_BYTE, at + S_RETURN, code(returnType));
+        seg.set(JAVA_BYTE, at + S_ELEMENT, code(elementType));
+        seg.set(JAVA_INT, at + S_PARAMS, paramStart);
+        seg.set(JAVA_INT, at + S_PARAM_COUNT, paramTypes != null ? paramTypes.size() : -1);
+        seg.set(JAVA_INT, at + S_FIELDS, fieldStart);
+        seg.set(JAVA_INT, at + S_FIELD_COUNT, recordFields.size());
+        buckets.setAtIndex(JAVA_INT, bucket, s);
+
+        if (symbols.count > (bucketMask + 1) * 3L / 4) rehash();
+        return s;
+    }
+
+    // Dobra o índice hash e reencadeia todos os símbolos em ordem de inserção (os mais novos ficam na frente)
+    private void rehash() {
+        buckets = newBuckets((bucketMask + 1) * 2);
+        for (int s = 0; s < symbols.count; s++) {
+            MemorySegment seg = symbols.page(s);
+            long at = symbols.at(s);
+            int bucket = hash(seg.get(JAVA_INT, at + S_SCOPE),
+                              string(seg.get(JAVA_INT, at + S_NAME), seg.get(JAVA_INT, at + S_NAME_LENGTH))) & bucketMask;
+            seg.set(JAVA_INT, at + S_NEXT, buckets.getAtIndex(JAVA_INT, bucket));
+            buckets.setAtIndex(JAVA_INT, bucket, s);
+        }
+    }
+
+    /** Símbolo mais recente com o nome dado declarado exatamente no escopo dado, ou -1 */
+    int findSymbol(int scope, String name) {
+        for (int s = buckets.getAtIndex(JAVA_INT, hash(scope, name) & bucketMask); s >= 0; s = symbols.page(s).get(JAVA_INT, symbols.at(s) + S_NEXT)) {
+            MemorySegment seg = symbols.page(s);
+            long at = symbols.at(s);
+            if (seg.get(JAVA_INT, at + S_SCOPE) == scope
+                    && stringEquals(seg.get(JAVA_INT, at + S_NAME), seg.get(JAVA_INT, at + S_NAME_LENGTH), name)) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    JanderType symbolType(int s) {
+        return type(symbols.page(s).get(JAVA_BYTE, symbols.at(s) + S_TYPE));
+    }
+
+    JanderType pointedType(int s) {
+        return type(symbols.page(s).get(JAVA_BYTE, symbols.at(s) + S_POINTED));
+    }
+
+    JanderType returnType(int s) {
+        return type(symbols.page(s).get(JAVA_BYTE, symbols.at(s) + S_RETURN));
+    }
+
+    JanderType elementType(int s) {
+        return type(symbols.page(s).get(JAVA_BYTE, symbols.at(s) + S_ELEMENT));
+    }
+
+    /** Tipos dos parâmetros, ou null se o símbolo não for rotina */
+    List<JanderType> paramTypes(int s) {
+        MemorySegment seg = symbols.page(s);
+        long at = symbols.at(s);
+        int count = seg.get(JAVA_INT, at + S_PARAM_COUNT);
+        if (count < 0) return null;
+        int first = seg.get(JAVA_INT, at + S_PARAMS);
+        MemorySegment page = params.page(first);
+        List<JanderType> types = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) types.add(type(page.get(JAVA_BYTE, params.at(first + i))));
+        return Collections.unmodifiableList(types);
+    }
+
+    Map<String, JanderType> recordFields(int s) {
+        MemorySegment seg = symbols.page(s);
+        long at = symbols.at(s);
+        int count = seg.get(JAVA_INT, at + S_FIELD_COUNT);
+        if (count == 0) return Collections.emptyMap();
+        int first = seg.get(JAVA_INT, at + S_FIELDS);
+        MemorySegment page = fields.page(first);
+        Map<String, JanderType> result = new HashMap<>();
+        for (int f = first; f < first + count; f++) {
+            long fat = fields.at(f);
+            result.put(string(page.get(JAVA_INT, fat + F_NAME), page.get(JAVA_INT, fat + F_NAME_LENGTH)),
+                       type((byte) page.get(JAVA_INT, fat + F_TYPE)));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /** Cópia do símbolo no heap, com a mesma forma das entradas da SymbolTable (vida curta, para consultas) */
+    SymbolTable.SymbolTableEntry entry(int s) {
+        MemorySegment seg = symbols.page(s);
+        long at = symbols.at(s);
+        String name = string(seg.get(JAVA_INT, at + S_NAME), seg.get(JAVA_INT, at + S_NAME_LENGTH));
+        return new SymbolTable.SymbolTableEntry(name, symbolType(s), pointedType(s), paramTypes(s),
+                                                returnType(s), recordFields(s), elementType(s));
+    }
+
+    public int symbolCount() {
+        return symbols.count;
+    }
+
+    // ---------------------------------------------------------------- árvore achatada
+
+    /**
+     * Acrescenta um nó como último filho de parent (depois de previousSibling, -1 se for o primeiro).
+     * Em terminais rule é -1 e tokenType é o tipo do token; em regras tokenType não é usado.
+     */
+    int addNode(int rule, int tokenType, int parent, int previousSibling, int line, int column, int startToken, int stopToken) {
+        int n = nodes.add(1);
+        MemorySegment seg = nodes.page(n);
+        long at = nodes.at(n);
+        seg.set(JAVA_INT, at + N_RULE, rule);
+        seg.set(JAVA_INT, at + N_TOKEN_TYPE, tokenType);
+        seg.set(JAVA_INT, at + N_PARENT, parent);
+        seg.set(JAVA_INT, at + N_FIRST_CHILD, -1);
+        seg.set(JAVA_INT, at + N_NEXT_SIBLING, -1);
+        seg.set(JAVA_INT, at + N_LINE, line);
+        seg.set(JAVA_INT, at + N_COLUMN, column);
+        seg.set(JAVA_INT, at + N_START, startToken);
+        seg.set(JAVA_INT, at + N_STOP, stopToken);
+        if (previousSibling >= 0) {
+            nodes.page(previousSibling).set(JAVA_INT, nodes.at(previousSibling) + N_NEXT_SIBLING, n);
+        } else if (parent >= 0) {
+            nodes.page(parent).set(JAVA_INT, nodes.at(parent) + N_FIRST_CHILD, n);
+        }
+        return n;
+    }
+
+    /** Fecha o intervalo de tokens de um nó criado antes dos seus filhos */
+    void setStopToken(int node, int stopToken) {
+        nodes.page(node).set(JAVA_INT, nodes.at(node) + N_STOP, stopToken);
+    }
+
+    public int nodeCount() {
+        return nodes.count;
+    }
+
+    private int node(int n, long field) {
+        return nodes.page(n).get(JAVA_INT, nodes.at(n) + field);
+    }
+
+    /** Índice da regra do JanderParser (RULE_*), ou -1 se o nó for um terminal */
+    public int rule(int n) {
+        return node(n, N_RULE);
+    }
+
+    public int tokenType(int n) {
+        return node(n, N_TOKEN_TYPE);
+    }
+
+    public int parent(int n) {
+        return node(n, N_PARENT);
+    }
+
+    public int firstChild(int n) {
+        return node(n, N_FIRST_CHILD);
+    }
+
+    public int nextSibling(int n) {
+        return node(n, N_NEXT_SIBLING);
+    }
+
+    public int line(int n) {
+        return node(n, N_LINE);
+    }
+
+    public int column(int n) {
+        return node(n, N_COLUMN);
+    }
+
+    public int startToken(int n) {
+        return node(n, N_START);
+    }
+
+    public int stopToken(int n) {
+        return node(n, N_STOP);
+    }
+}
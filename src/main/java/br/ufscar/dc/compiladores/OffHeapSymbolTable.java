@@ -0,0 +1,164 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SymbolTable cujas entradas ficam num OffHeapStore em vez do mapa persistente.
+ * Os escopos são só números; a pilha de escopos abertos é a única estrutura no heap.
+ * As consultas seguem exatamente as regras da SymbolTable; entradas devolvidas por lookup
+ * são cópias de vida curta.
+ *
+ * Como os escopos não são imutáveis, snapshot() não é suportado (sem ScopeIndex nem
+ * referências cruzadas neste modo).
+ */
+class OffHeapSymbolTable extends SymbolTable {
+    private final OffHeapStore store;
+    private int[] scopes = new int[16]; // escopos abertos, o atual no topo
+    private int depth = 1;              // o escopo global (0) está sempre aberto
+    private int nextScope = 1;
+
+    OffHeapSymbolTable(OffHeapStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Scope snapshot() {
+        throw new UnsupportedOperationException("snapshot nao suportado na tabela fora do heap");
+    }
+
+    @Override
+    public void openScope() {
+        if (depth == scopes.length) scopes = Arrays.copyOf(scopes, depth * 2);
+        scopes[depth++] = nextScope++;
+    }
+
+    @Override
+    public void closeScope() {
+        // Os símbolos do escopo fechado continuam no store até o close(), mas nunca mais são encontrados
+        if (depth > 1) depth--;
+    }
+
+    private int current() {
+        return scopes[depth - 1];
+    }
+
+    // Símbolo visível com o nome dado, do escopo mais interno para fora
+    private int find(String name) {
+        for (int d = depth - 1; d >= 0; d--) {
+            int s = store.findSymbol(scopes[d], name);
+            if (s >= 0) return s;
+        }
+        return -1;
+    }
+
+    private void add(String name, JanderType type, JanderType pointedType, List<JanderType> paramTypes,
+                     JanderType returnType, Map<String, JanderType> recordFields, JanderType elementType) {
+        store.addSymbol(current(), name, type, pointedType, paramTypes, returnType, recordFields, elementType);
+    }
+
+    @Override
+    public void addSymbol(String name, JanderType type) {
+        add(name, type, null, null, null, Collections.emptyMap(), null);
+    }
+
+    @Override
+    public void addPointerSymbol(String name, JanderType pointedType) {
+        add(name, JanderType.POINTER, pointedType, null, null, Collections.emptyMap(), null);
+    }
+
+    @Override
+    public void addRecordSymbol(String name, Map<String, JanderType> fields) {
+        add(name, JanderType.RECORD, null, null, null, fields, null);
+    }
+
+    @Override
+    public void addArraySymbol(String name, JanderType elementType) {
+        add(name, JanderType.ARRAY, null, null, null, Collections.emptyMap(), elementType);
+    }
+
+    @Override
+    void importEntry(SymbolTableEntry entry) {
+        add(entry.name, entry.type, entry.pointedType, entry.paramTypes, entry.returnType, entry.recordFields, entry.arrayElementType);
+    }
+
+    @Override
+    public void addFunction(String name, JanderType returnType, List<JanderType> paramTypes) {
+        add(name, returnType, null, paramTypes, returnType, Collections.emptyMap(), null);
+    }
+
+    @Override
+    SymbolTableEntry lookup(String name) {
+        int s = find(name);
+        return s < 0 ? null : store.entry(s);
+    }
+
+    @Override
+    SymbolTableEntry lookupInCurrentScope(String name) {
+        int s = store.findSymbol(current(), name);
+        return s < 0 ? null : store.entry(s);
+    }
+
+    @Override
+    public boolean containsSymbol(String name) {
+        return find(name) >= 0;
+    }
+
+    @Override
+    public boolean containsInCurrentScope(String name) {
+        return store.findSymbol(current(), name) >= 0;
+    }
+
+    @Override
+    public JanderType getSymbolType(String name) {
+        int s = find(name);
+        return s < 0 ? JanderType.INVALID : store.symbolType(s);
+    }
+
+    // Como na SymbolTable, estes três procuram o primeiro símbolo do tipo certo, pulando os de outro tipo
+
+    @Override
+    public JanderType getPointedType(String name) {
+        for (int d = depth - 1; d >= 0; d--) {
+            int s = store.findSymbol(scopes[d], name);
+            if (s >= 0 && store.symbolType(s) == JanderType.POINTER) return store.pointedType(s);
+        }
+        return JanderType.INVALID;
+    }
+
+    @Override
+    public Map<String, JanderType> getRecordFields(String name) {
+        for (int d = depth - 1; d >= 0; d--) {
+            int s = store.findSymbol(scopes[d], name);
+            if (s >= 0 && store.symbolType(s) == JanderType.RECORD) return store.recordFields(s);
+        }
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public JanderType getArrayElementType(String name) {
+        for (int d = depth - 1; d >= 0; d--) {
+            int s = store.findSymbol(scopes[d], name);
+            if (s >= 0 && store.symbolType(s) == JanderType.ARRAY) return store.elementType(s);
+        }
+        return JanderType.INVALID;
+    }
+
+    @Override
+    public List<JanderType> getParamTypes(String name) {
+        int s = find(name);
+        if (s < 0) return Collections.emptyList();
+        List<JanderType> params = store.paramTypes(s);
+        return params != null ? params : Collections.emptyList();
+    }
+
+    @Override
+    public JanderType getReturnType(String name) {
+        int s = find(name);
+        if (s < 0) return JanderType.INVALID;
+        JanderType returnType = store.returnType(s);
+        return returnType != null ? returnType : JanderType.INVALID;
+    }
+}
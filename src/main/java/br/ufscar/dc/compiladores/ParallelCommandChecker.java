@@ -0,0 +1,144 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import br.ufscar.dc.compiladores.JanderParser.*;
+
+/**
+ * Análise semântica paralela dos comandos de um corpo grande (algoritmo, procedimento ou função).
+ *
+ * Depois das declarações locais o escopo do corpo não muda mais, e os comandos só leem a tabela de símbolos.
+ * Os comandos são divididos em trechos consecutivos, e cada trecho é verificado numa thread do pool por uma
+ * cópia do JanderSemantico que lê um snapshot do escopo (os Scopes são imutáveis), com erros e usos próprios
+ * (JanderSemanticoUtils.runIsolated e CrossReferenceIndex.Builder.fork). No fim os erros de cada trecho são
+ * juntados na ordem dos trechos, que é a ordem em que a visita em série os teria encontrado (a das linhas),
+ * e os usos voltam para o índice de referências cruzadas.
+ *
+ * Uso (validação contra a análise em série e medição):
+ *   java -cp ... br.ufscar.dc.compiladores.ParallelCommandChecker &lt;arquivo&gt; [threads]
+ */
+public class ParallelCommandChecker {
+    // Abaixo disso (em comandos de um mesmo corpo) dividir custa mais do que verificar em série
+    public static final int MIN_PARALLEL_COMMANDS = 2_000;
+    // Trechos de ao menos tantos comandos
+    private static final int MIN_CHUNK_COMMANDS = 250;
+    public static final int THREADS = Runtime.getRuntime().availableProcessors();
+    // Um comando pode ter aninhamento profundo, como na thread do AstInterpreter
+    private static final long STACK_SIZE = 256L << 20;
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread t = new Thread(null, r, "jander-semantico", STACK_SIZE);
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Se vale a pena dividir estes comandos entre threads */
+    public static boolean worthIt(List<CmdContext> cmds, int threads) {
+        return cmds.size() >= MIN_PARALLEL_COMMANDS && threads > 1;
+    }
+
+    /**
+     * Verifica cmds em trechos paralelos, cada um com um visitor de checker (criado nesta thread), e junta os
+     * erros em JanderSemanticoUtils.semanticErrors() e os usos em references (null se desligado).
+     * Uma exceção de um trecho é relançada aqui.
+     */
+    static void check(List<CmdContext> cmds, int threads, Supplier<JanderSemantico> checker,
+                      CrossReferenceIndex.Builder references) {
+        int chunk = Math.max(MIN_CHUNK_COMMANDS, (cmds.size() + threads * 4 - 1) / (threads * 4));
+        List<Future<List<String>>> errors = new ArrayList<>();
+        List<CrossReferenceIndex.Builder> uses = new ArrayList<>();
+        for (int from = 0; from < cmds.size(); from += chunk) {
+            List<CmdContext> part = cmds.subList(from, Math.min(cmds.size(), from + chunk));
+            JanderSemantico visitor = checker.get();
+            CrossReferenceIndex.Builder fork = references != null ? references.fork() : null;
+            uses.add(fork);
+            errors.add(pool.submit(() -> JanderSemanticoUtils.runIsolated(fork, () -> {
+                for (CmdContext cmd : part) visitor.visit(cmd);
+            })));
+        }
+        for (int i = 0; i < errors.size(); i++) {
+            JanderSemanticoUtils.semanticErrors().addAll(join(errors.get(i)));
+            if (references != null) references.append(uses.get(i));
+        }
+    }
+
+    private static <T> T join(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            // O mesmo erro que a visita em série lançaria
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Uso: ParallelCommandChecker <arquivo> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, THREADS);
+        JanderParser parser = new JanderParser(new ColumnarTokenStream().fill(new JanderLexer(CharStreams.fromFileName(args[0]))));
+        parser.removeErrorListeners();
+        ProgramaContext tree = parser.programa();
+
+        // Alterna as duas versões algumas vezes (JIT aquecido) e fica com o melhor tempo
+        String serial = null, parallel = null;
+        long serialNanos = Long.MAX_VALUE, parallelNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            System.gc();
+            long t0 = System.nanoTime();
+            serial = analyze(tree, 1);
+            serialNanos = Math.min(serialNanos, System.nanoTime() - t0);
+
+            System.gc();
+            long t1 = System.nanoTime();
+            parallel = analyze(tree, threads);
+            parallelNanos = Math.min(parallelNanos, System.nanoTime() - t1);
+        }
+
+        if (!parallel.equals(serial)) {
+            System.out.println("DIFERENTE: erros ou referencias da analise paralela nao batem com a serial");
+            System.exit(1);
+        }
+        System.out.printf("%d comandos no algoritmo, %d threads (%d processadores)%n", tree.corpo().cmd().size(),
+            threads, THREADS);
+        System.out.printf("serial: %.1f ms  paralelo: %.1f ms  (erros e referencias iguais)%n", serialNanos / 1e6,
+            parallelNanos / 1e6);
+    }
+
+    // Erros e referências cruzadas de uma análise, como texto para comparar
+    private static String analyze(ProgramaContext tree, int threads) {
+        StringWriter out = new StringWriter();
+        JanderSemantico semantico = new JanderSemantico(new PrintWriter(out));
+        semantico.setCommandThreads(threads);
+        semantico.visit(tree);
+        semantico.printErrors();
+        CrossReferenceIndex refs = semantico.getCrossReferences();
+        StringBuilder sb = new StringBuilder(out.toString());
+        for (int d = 0; d < refs.declarationCount(); d++) {
+            sb.append(refs.name(d)).append('@').append(refs.declarationLine(d)).append(':');
+            for (int k = 0; k < refs.usageCount(d); k++) {
+                sb.append(' ').append(refs.usageLine(d, k)).append('.').append(refs.usageColumn(d, k))
+                    .append('/').append(refs.usageKind(d, k));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
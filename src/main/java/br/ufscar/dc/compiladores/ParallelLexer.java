@@ -0,0 +1,211 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * Análise léxica paralela para arquivos grandes.
+ *
+ * Em LA nenhum token atravessa uma quebra de linha (cadeias e comentários terminam na linha,
+ * e os tokens "não fechados" terminam exatamente no '\n'), então depois de todo '\n' o léxico
+ * serial sempre começa um token novo. O texto é dividido em pedaços alinhados a linhas, cada
+ * pedaço é analisado por um JanderLexer próprio e os tokens são concatenados, com posições,
+ * linhas e índices ajustados para o arquivo inteiro. Os tokens apontam para o CharStream original.
+ *
+ * Uso (validação contra o léxico serial e medição):
+ *   java -cp ... br.ufscar.dc.compiladores.ParallelLexer &lt;arquivo&gt; [threads]
+ */
+public class ParallelLexer {
+    // Abaixo disso (em caracteres) o léxico serial é mais rápido que dividir o arquivo
+    public static final int MIN_PARALLEL_SIZE = 4 << 20;
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "jander-lexer");
+            t.setDaemon(true);
+            return t;
+        });
+
+    /** Se vale a pena usar tokenize para esta entrada */
+    public static boolean worthIt(CharStream cs) {
+        return cs.size() >= MIN_PARALLEL_SIZE && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /** Todos os tokens de cs (terminando em EOF), iguais aos do JanderLexer serial */
+    public static List<Token> tokenize(CharStream cs) {
+        return tokenize(cs, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static List<Token> tokenize(CharStream cs, int threads) {
+        int[] bounds = split(cs, Math.max(MIN_CHUNK_SIZE, cs.size() / Math.max(1, threads * 4)));
+        int chunks = bounds.length - 1;
+
+        List<Future<Chunk>> parts = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            int start = bounds[c], end = bounds[c + 1];
+            boolean last = c == chunks - 1;
+            parts.add(pool.submit(() -> lexChunk(cs, start, end, last)));
+        }
+
+        // Cada pedaço conta linhas a partir de 1; a linha real só é conhecida ao juntar, em ordem
+        List<Token> tokens = new ArrayList<>();
+        int lineOffset = 0;
+        for (Future<Chunk> part : parts) {
+            Chunk chunk = join(part);
+            for (Token t : chunk.tokens) {
+                CommonToken ct = (CommonToken) t;
+                ct.setLine(ct.getLine() + lineOffset);
+                ct.setTokenIndex(tokens.size());
+                tokens.add(ct);
+            }
+            lineOffset += chunk.newlines;
+        }
+        return tokens;
+    }
+
+    // Início de cada pedaço (o primeiro é 0) mais o tamanho total; cada corte fica logo após um '\n'
+    static int[] split(CharStream cs, int chunkSize) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int size = cs.size();
+        int mark = cs.index();
+        int pos = chunkSize;
+        while (pos < size) {
+            cs.seek(pos);
+            while (cs.index() < size && cs.LA(1) != '\n') cs.consume();
+            int cut = cs.index() + 1;
+            if (cut >= size) break;
+            bounds.add(cut);
+            pos = cut + chunkSize;
+        }
+        cs.seek(mark);
+        bounds.add(size);
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Tokens de um pedaço e quantas quebras de linha ele contém
+    private static final class Chunk {
+        final List<Token> tokens;
+        final int newlines;
+
+        Chunk(List<Token> tokens, int newlines) {
+            this.tokens = tokens;
+            this.newlines = newlines;
+        }
+    }
+
+    private static Chunk lexChunk(CharStream cs, int start, int end, boolean last) {
+        CharStream text = CharStreams.fromString(cs.getText(Interval.of(start, end - 1)), cs.getSourceName());
+        JanderLexer lexer = new JanderLexer(text);
+        lexer.setTokenFactory(new ChunkTokenFactory(lexer, cs, start));
+
+        List<Token> tokens = new ArrayList<>();
+        for (Token t = lexer.nextToken(); ; t = lexer.nextToken()) {
+            if (t.getType() == Token.EOF) {
+                if (last) tokens.add(t); // Só o último pedaço termina o arquivo
+                return new Chunk(tokens, lexer.getLine() - 1);
+            }
+            tokens.add(t);
+        }
+    }
+
+    // Cria os tokens de um pedaço com posições do arquivo inteiro e apontando para o CharStream original
+    private static final class ChunkTokenFactory implements TokenFactory<CommonToken> {
+        private final Pair<TokenSource, CharStream> source;
+        private final int offset;
+
+        ChunkTokenFactory(TokenSource lexer, CharStream file, int offset) {
+            this.source = new Pair<>(lexer, file);
+            this.offset = offset;
+        }
+
+        @Override
+        public CommonToken create(Pair<TokenSource, CharStream> ignored, int type, String text, int channel,
+                                  int start, int stop, int line, int charPositionInLine) {
+            CommonToken t = new CommonToken(source, type, channel, start + offset, stop + offset);
+            t.setLine(line);
+            t.setCharPositionInLine(charPositionInLine);
+            if (text != null) t.setText(text);
+            return t;
+        }
+
+        @Override
+        public CommonToken create(int type, String text) {
+            return new CommonToken(type, text);
+        }
+    }
+
+    private static <T> T join(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Compara com o léxico serial token a token e mede os dois
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Uso: ParallelLexer <arquivo> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        CharStream cs = CharStreams.fromFileName(args[0]);
+
+        // Serial primeiro, guardando os tokens como o CommonTokenStream faria
+        long t0 = System.nanoTime();
+        List<Token> serialTokens = new ArrayList<>();
+        JanderLexer serial = new JanderLexer(cs);
+        for (Token s = serial.nextToken(); ; s = serial.nextToken()) {
+            serialTokens.add(s);
+            if (s.getType() == Token.EOF) break;
+        }
+        long serialNanos = System.nanoTime() - t0;
+        int count = serialTokens.size();
+        serialTokens = null; // Libera antes de gerar a lista paralela (entradas de centenas de MB)
+
+        long t1 = System.nanoTime();
+        List<Token> parallel = tokenize(cs, threads);
+        long parallelNanos = System.nanoTime() - t1;
+
+        cs.seek(0);
+        serial = new JanderLexer(cs);
+        int i = 0;
+        for (Token s = serial.nextToken(); ; s = serial.nextToken(), i++) {
+            Token p = i < parallel.size() ? parallel.get(i) : null;
+            if (p == null || p.getType() != s.getType() || p.getStartIndex() != s.getStartIndex()
+                    || p.getStopIndex() != s.getStopIndex() || p.getLine() != s.getLine()
+                    || p.getCharPositionInLine() != s.getCharPositionInLine() || !p.getText().equals(s.getText())) {
+                System.out.println("DIFERENTE no token " + i + ": serial=" + s + " paralelo=" + p);
+                System.exit(1);
+            }
+            if (s.getType() == Token.EOF) break;
+        }
+        if (parallel.size() != count) {
+            System.out.println("DIFERENTE: " + count + " tokens no serial, " + parallel.size() + " no paralelo");
+            System.exit(1);
+        }
+
+        System.out.printf("%d caracteres, %d tokens, %d pedacos, %d threads%n", cs.size(), count,
+            split(cs, Math.max(MIN_CHUNK_SIZE, cs.size() / Math.max(1, threads * 4))).length - 1, threads);
+        System.out.printf("serial: %.1f ms  paralelo: %.1f ms  (tokens iguais)%n", serialNanos / 1e6, parallelNanos / 1e6);
+    }
+}
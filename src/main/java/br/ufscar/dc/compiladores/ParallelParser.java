@@ -0,0 +1,369 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+
+import br.ufscar.dc.compiladores.JanderParser.*;
+
+/**
+ * Análise sintática paralela das declarações de topo do programa.
+ *
+ * Uma varredura barata dos tokens acha os limites das declarações de topo: cada declaração global
+ * (declare/constante/tipo) e cada procedimento/função (até o seu fim_procedimento/fim_funcao).
+ * As declarações consecutivas são agrupadas em lotes, e cada lote, cada 'importe' e o corpo entre
+ * 'algoritmo' e 'fim_algoritmo' são analisados por um JanderParser próprio,
+ * sem listeners e parando no primeiro erro, e as subárvores são penduradas num ProgramaContext igual
+ * ao do parser serial.
+ *
+ * Se a divisão não for possível ou alguma unidade tiver erro, retorna null: o chamador usa o parser
+ * serial, que reporta o primeiro erro pelo MyCustomErrorListener exatamente como antes.
+ *
+ * Uso (validação contra o parser serial e medição):
+ *   java -cp ... br.ufscar.dc.compiladores.ParallelParser &lt;arquivo&gt;
+ */
+public class ParallelParser {
+    // Abaixo disso (em tokens) dividir o programa custa mais do que analisá-lo em série
+    public static final int MIN_PARALLEL_TOKENS = 50_000;
+    // Declarações de topo consecutivas são agrupadas em lotes de ao menos tantos tokens
+    private static final int BATCH_TOKENS = 2_000;
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "jander-parser");
+            t.setDaemon(true);
+            return t;
+        });
+
+    /** Se vale a pena tentar parse para este fluxo (já preenchido) */
+    public static boolean worthIt(ColumnarTokenStream tokens) {
+        return tokens.size() >= MIN_PARALLEL_TOKENS && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    // Trecho [from, to) dos tokens e a regra usada para analisá-lo
+    private static final class Unit {
+        final int from, to;
+        final Function<JanderParser, ParserRuleContext> rule;
+
+        Unit(int from, int to, Function<JanderParser, ParserRuleContext> rule) {
+            this.from = from;
+            this.to = to;
+            this.rule = rule;
+        }
+    }
+
+    /** Árvore de programa montada a partir das unidades analisadas em paralelo, ou null se for preciso o parser serial */
+    public static ProgramaContext parse(ColumnarTokenStream stream) {
+        List<Token> tokens = stream.tokens();
+
+        List<Unit> imports = new ArrayList<>();
+        List<Unit> decls = new ArrayList<>();
+        int i = 0;
+        while (type(tokens, i) == JanderParser.IMPORTE) {
+            imports.add(new Unit(i, i + 2, JanderParser::importacao));
+            i += 2;
+        }
+        int declsStart = i;
+        int batchStart = i;
+        while (type(tokens, i) != JanderParser.ALGORITMO) {
+            int end = unitEnd(tokens, i);
+            if (end < 0) return null;
+            i = end;
+            if (i - batchStart >= BATCH_TOKENS || type(tokens, i) == JanderParser.ALGORITMO) {
+                decls.add(new Unit(batchStart, i, JanderParser::declaracoes));
+                batchStart = i;
+            }
+        }
+
+        // 'algoritmo' corpo 'fim_algoritmo' EOF
+        int algoritmo = i;
+        int eof = tokens.size() - 1;
+        if (type(tokens, eof) != Token.EOF || eof < algoritmo + 2 || type(tokens, eof - 1) != JanderParser.FIM_ALGORITMO) return null;
+        Unit corpo = new Unit(algoritmo + 1, eof - 1, JanderParser::corpo);
+
+        List<Unit> units = new ArrayList<>(imports);
+        units.addAll(decls);
+        units.add(corpo);
+        List<Future<ParserRuleContext>> parsed = new ArrayList<>(units.size());
+        for (Unit u : units) {
+            parsed.add(pool.submit(() -> parseUnit(tokens, u, stream.getTokenSource())));
+        }
+        List<ParserRuleContext> trees = new ArrayList<>(units.size());
+        for (Future<ParserRuleContext> f : parsed) {
+            ParserRuleContext tree = join(f);
+            if (tree == null) return null;
+            trees.add(tree);
+        }
+
+        // Monta a árvore com a mesma forma da regra programa
+        ProgramaContext programa = new ProgramaContext(null, -1);
+        programa.start = tokens.get(0);
+        programa.stop = tokens.get(eof);
+        int t = 0;
+        for (; t < imports.size(); t++) adopt(programa, trees.get(t));
+
+        DeclaracoesContext declaracoes = new DeclaracoesContext(programa, -1);
+        declaracoes.start = tokens.get(declsStart);
+        declaracoes.stop = algoritmo > 0 ? tokens.get(algoritmo - 1) : null; // Como no serial, inclusive se vazia
+        for (; t < imports.size() + decls.size(); t++) {
+            // Cada lote é um declaracoes; seus filhos passam para o declaracoes do programa
+            for (Decl_local_globalContext d : ((DeclaracoesContext) trees.get(t)).decl_local_global()) adopt(declaracoes, d);
+        }
+        programa.addChild((RuleContext) declaracoes);
+
+        programa.addChild(new TerminalNodeImpl(tokens.get(algoritmo)));
+        adopt(programa, trees.get(t));
+        programa.addChild(new TerminalNodeImpl(tokens.get(eof - 1)));
+        programa.addChild(new TerminalNodeImpl(tokens.get(eof)));
+        return programa;
+    }
+
+    // Fim (exclusivo) da declaração de topo que começa em i; -1 se a divisão for ambígua
+    private static int unitEnd(List<Token> tokens, int i) {
+        switch (type(tokens, i)) {
+            case JanderParser.DECLARE:
+            case JanderParser.CONSTANTE:
+            case JanderParser.TIPO:
+                // Vai até a próxima palavra que inicia uma declaração de topo ou o corpo
+                for (int j = i + 1; j < tokens.size(); j++) {
+                    switch (type(tokens, j)) {
+                        case JanderParser.DECLARE:
+                        case JanderParser.CONSTANTE:
+                        case JanderParser.TIPO:
+                        case JanderParser.PROCEDIMENTO:
+                        case JanderParser.FUNCAO:
+                        case JanderParser.ALGORITMO:
+                            return j;
+                        case Token.EOF:
+                            return -1;
+                        default:
+                            break;
+                    }
+                }
+                return -1;
+            case JanderParser.PROCEDIMENTO:
+            case JanderParser.FUNCAO:
+                int fim = type(tokens, i) == JanderParser.PROCEDIMENTO ? JanderParser.FIM_PROCEDIMENTO : JanderParser.FIM_FUNCAO;
+                for (int j = i + 1; j < tokens.size(); j++) {
+                    int tt = type(tokens, j);
+                    if (tt == fim) return j + 1;
+                    // Rotinas não se aninham: outro início antes do fim é erro, que o serial reporta
+                    if (tt == JanderParser.PROCEDIMENTO || tt == JanderParser.FUNCAO || tt == JanderParser.ALGORITMO
+                            || tt == JanderParser.FIM_PROCEDIMENTO || tt == JanderParser.FIM_FUNCAO || tt == Token.EOF) {
+                        return -1;
+                    }
+                }
+                return -1;
+            default:
+                return -1;
+        }
+    }
+
+    private static int type(List<Token> tokens, int i) {
+        return i < tokens.size() ? tokens.get(i).getType() : Token.EOF;
+    }
+
+    // Analisa a unidade; null se houver erro ou se a regra não consumir exatamente o trecho
+    private static ParserRuleContext parseUnit(List<Token> tokens, Unit u, TokenSource source) {
+        TokenRange input = new TokenRange(tokens, u.from, u.to, source);
+        JanderParser parser = new JanderParser(input);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            ParserRuleContext tree = u.rule.apply(parser);
+            return input.index() == u.to ? tree : null;
+        } catch (ParseCancellationException e) {
+            return null;
+        }
+    }
+
+    private static void adopt(ParserRuleContext parent, ParserRuleContext child) {
+        child.setParent(parent);
+        parent.addChild((RuleContext) child);
+    }
+
+    private static <T> T join(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Visão somente-leitura de tokens[from, to) com índices absolutos e um EOF sintético em "to".
+     * Não renumera os tokens (como o BufferedTokenStream faria), então várias visões podem ser
+     * lidas ao mesmo tempo sobre a mesma lista.
+     */
+    static final class TokenRange implements TokenStream {
+        private final List<Token> tokens;
+        private final int from, to;
+        private final Token eof;
+        private final TokenSource source;
+        private int p;
+
+        TokenRange(List<Token> tokens, int from, int to, TokenSource source) {
+            this.tokens = tokens;
+            this.from = from;
+            this.to = to;
+            this.source = source;
+            this.p = from;
+            Token next = tokens.get(to);
+            CommonToken end = new CommonToken(Token.EOF, "<EOF>");
+            end.setLine(next.getLine());
+            end.setCharPositionInLine(next.getCharPositionInLine());
+            end.setStartIndex(next.getStartIndex());
+            end.setStopIndex(next.getStartIndex() - 1);
+            end.setTokenIndex(to);
+            this.eof = end;
+        }
+
+        @Override
+        public Token LT(int k) {
+            if (k == 0) return null;
+            int i = k < 0 ? p + k : p + k - 1;
+            if (i < from) return null;
+            return i >= to ? eof : tokens.get(i);
+        }
+
+        @Override
+        public int LA(int i) {
+            Token t = LT(i);
+            return t == null ? Token.INVALID_TYPE : t.getType();
+        }
+
+        @Override
+        public void consume() {
+            if (p >= to) throw new IllegalStateException("cannot consume EOF");
+            p++;
+        }
+
+        @Override
+        public Token get(int index) {
+            return index >= to ? eof : tokens.get(index);
+        }
+
+        @Override
+        public int index() {
+            return p;
+        }
+
+        @Override
+        public void seek(int index) {
+            p = Math.max(from, Math.min(index, to));
+        }
+
+        @Override
+        public int mark() {
+            return -1;
+        }
+
+        @Override
+        public void release(int marker) {
+        }
+
+        @Override
+        public int size() {
+            return to + 1;
+        }
+
+        @Override
+        public TokenSource getTokenSource() {
+            return source;
+        }
+
+        @Override
+        public String getSourceName() {
+            return source.getSourceName();
+        }
+
+        @Override
+        public String getText() {
+            return getText(Interval.of(from, to - 1));
+        }
+
+        @Override
+        public String getText(Interval interval) {
+            int start = Math.max(from, interval.a), stop = Math.min(to - 1, interval.b);
+            StringBuilder sb = new StringBuilder();
+            for (int i = start; i <= stop; i++) sb.append(tokens.get(i).getText());
+            return sb.toString();
+        }
+
+        @Override
+        public String getText(RuleContext ctx) {
+            return ctx.getText();
+        }
+
+        @Override
+        public String getText(Token start, Token stop) {
+            if (start == null || stop == null) return "";
+            return getText(Interval.of(start.getTokenIndex(), stop.getTokenIndex()));
+        }
+    }
+
+    // Compara a árvore paralela com a serial e mede as duas
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Uso: ParallelParser <arquivo>");
+            System.exit(2);
+        }
+        CharStream cs = CharStreams.fromFileName(args[0]);
+        ColumnarTokenStream tokens = new ColumnarTokenStream().fill(new JanderLexer(cs));
+
+        // Alterna as duas versões algumas vezes (JIT e cache de DFA aquecidos) e fica com o melhor tempo
+        JanderParser serial = null;
+        String expected = null;
+        ProgramaContext tree = null;
+        long serialNanos = Long.MAX_VALUE, parallelNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            System.gc(); // Não mede a coleta do lixo da rodada anterior
+            tokens.seek(0);
+            long t0 = System.nanoTime();
+            serial = new JanderParser(tokens);
+            serial.removeErrorListeners();
+            ProgramaContext serialTree = serial.programa();
+            serialNanos = Math.min(serialNanos, System.nanoTime() - t0);
+            if (expected == null) expected = serialTree.toStringTree(serial);
+
+            System.gc();
+            tokens.seek(0);
+            long t1 = System.nanoTime();
+            tree = parse(tokens);
+            parallelNanos = Math.min(parallelNanos, System.nanoTime() - t1);
+        }
+
+        if (tree == null) {
+            System.out.println("divisao nao aplicavel (o parser serial seria usado)");
+            return;
+        }
+        if (!tree.toStringTree(serial).equals(expected)) {
+            System.out.println("DIFERENTE: arvore paralela nao bate com a serial");
+            System.exit(1);
+        }
+        System.out.printf("%d tokens, %d declaracoes de topo, %d threads%n", tokens.size(),
+            tree.declaracoes().getChildCount(), Runtime.getRuntime().availableProcessors());
+        System.out.printf("serial: %.1f ms  paralelo: %.1f ms  (arvores iguais)%n", serialNanos / 1e6, parallelNanos / 1e6);
+    }
+}
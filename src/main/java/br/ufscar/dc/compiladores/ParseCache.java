@@ -0,0 +1,486 @@
+package br.ufscar.dc.compiladores;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+
+import br.ufscar.dc.compiladores.JanderParser.ProgramaContext;
+
+/**
+ * Resultado do léxico e do sintático guardado em disco, ao lado do fonte (programa.txt -> programa.txt.lap),
+ * para fontes grandes compilados várias vezes com opções diferentes.
+ *
+ * - A chave é o SHA-256 do fonte mais uma impressão digital da gramática (ATNs e classes de contexto do parser
+ *   gerado): se o fonte ou a gramática mudam, o arquivo é ignorado e reescrito na próxima compilação.
+ * - O arquivo é lido por mapeamento de memória. Os tokens voltam como as colunas de um ColumnarTokenStream
+ *   (cópias em bloco, sem passar pelo léxico) e a árvore é refeita com os mesmos ParserRuleContexts do
+ *   JanderParser, que o JanderSemantico e os outros passos visitam como sempre.
+ * - Só programas sem erros sintáticos são guardados; os outros passam pelo parser, que reporta o erro.
+ * - Um arquivo ilegível ou corrompido é tratado como ausente, e uma falha ao gravar é ignorada.
+ *
+ * Formato: cabeçalho com MAGIC, VERSION, impressão digital (long), SHA-256 do fonte (32 bytes), número de tokens
+ * e tamanho em bytes das duas seções antes da compressão; depois as seções, comprimidas juntas com deflate, com
+ * inteiros em LEB128:
+ *   tokens até o EOF: tipo + 1, espaço desde o fim do anterior, tamanho. Texto, linha e coluna saem do fonte.
+ *   árvore em pré-ordem: uma folha é 0 (o token é o seguinte ao da última folha); um nó de regra é classe de
+ *   contexto + 1, número de filhos, invokingState (0 se igual ao previsto, senão invokingState + 2) e os tokens
+ *   rotulados da classe (op, nao) como diferença em zigzag para o início do nó + 1 (0 se null), seguidos dos
+ *   filhos. O início de um nó é o token seguinte à última folha e o fim é a última folha dele.
+ * Tokens e árvore que não seguem essas regras (só possíveis com erros) não são guardados. O arquivo fica mais ou
+ * menos do tamanho do fonte, e bem menor em fontes grandes e repetitivos.
+ *
+ * Uso (compara a árvore lida com a do parser e mede as duas):
+ *   java -cp ... br.ufscar.dc.compiladores.ParseCache &lt;arquivo&gt;
+ */
+public final class ParseCache {
+    public static final String SUFFIX = ".lap";
+
+    private static final int MAGIC = 0x4C415043; // "LAPC"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 32 + 4 + 4 + 4;
+    private static final long MAX_RATIO = 1032; // Máximo do deflate: tamanhos acima disso são de arquivo corrompido
+
+    // Classes de contexto do JanderParser em ordem de nome; o índice é o que vai no arquivo
+    private static final List<Class<? extends ParserRuleContext>> CLASSES = new ArrayList<>();
+    private static final Map<Class<?>, Integer> CLASS_IDS = new HashMap<>();
+    private static final MethodHandle[] FACTORIES;  // (ParserRuleContext parent, int invokingState) -> contexto
+    private static final MethodHandle[][] LABELS;   // Leitura dos campos Token de cada classe (rótulos da gramática)
+    private static final MethodHandle[][] SETTERS;  // e escrita: (ParserRuleContext, Token) -> void
+    private static final long FINGERPRINT;
+
+    static {
+        for (Class<?> c : JanderParser.class.getClasses()) {
+            if (ParserRuleContext.class.isAssignableFrom(c)) CLASSES.add(c.asSubclass(ParserRuleContext.class));
+        }
+        CLASSES.sort(Comparator.comparing(Class::getName));
+        FACTORIES = new MethodHandle[CLASSES.size()];
+        LABELS = new MethodHandle[CLASSES.size()][];
+        SETTERS = new MethodHandle[CLASSES.size()][];
+        StringBuilder layout = new StringBuilder(JanderLexer._serializedATN).append(JanderParser._serializedATN);
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodType factory = MethodType.methodType(ParserRuleContext.class, ParserRuleContext.class, int.class);
+        MethodType getter = MethodType.methodType(Token.class, ParserRuleContext.class);
+        MethodType setter = MethodType.methodType(void.class, ParserRuleContext.class, Token.class);
+        try {
+            for (int i = 0; i < CLASSES.size(); i++) {
+                Class<? extends ParserRuleContext> c = CLASSES.get(i);
+                CLASS_IDS.put(c, i);
+                // Alternativas rotuladas (ExpAditivaContext...) são criadas sobre o contexto da regra, com copyFrom
+                Class<?> rule = c.getSuperclass() == ParserRuleContext.class ? c : c.getSuperclass();
+                MethodHandle base = lookup.findConstructor(rule, MethodType.methodType(void.class, ParserRuleContext.class, int.class));
+                if (rule != c) {
+                    base = MethodHandles.filterReturnValue(base, lookup.findConstructor(c, MethodType.methodType(void.class, rule)));
+                }
+                FACTORIES[i] = base.asType(factory);
+                List<Field> labels = new ArrayList<>();
+                for (Field f : c.getFields()) {
+                    if (f.getType() == Token.class && !Modifier.isStatic(f.getModifiers())) labels.add(f);
+                }
+                labels.sort(Comparator.comparing(Field::getName));
+                LABELS[i] = new MethodHandle[labels.size()];
+                SETTERS[i] = new MethodHandle[labels.size()];
+                layout.append(';').append(c.getName());
+                for (int k = 0; k < labels.size(); k++) {
+                    LABELS[i][k] = lookup.unreflectGetter(labels.get(k)).asType(getter);
+                    SETTERS[i][k] = lookup.unreflectSetter(labels.get(k)).asType(setter);
+                    layout.append(',').append(labels.get(k).getName());
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        FINGERPRINT = ByteBuffer.wrap(sha256(layout.toString())).getLong();
+    }
+
+    private final Path file;
+    private byte[] hash;            // Do último fonte lido por load()
+    private ProgramaContext tree;   // Árvore do último load() com sucesso
+
+    private ParseCache(Path file) {
+        this.file = file;
+    }
+
+    /** Cache do arquivo-fonte dado (o .lap fica no mesmo diretório) */
+    public static ParseCache forSource(Path source) {
+        return new ParseCache(source.resolveSibling(source.getFileName() + SUFFIX));
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /** Tokens de input se o cache tem este fonte (a árvore fica em tree()); null se não tem */
+    public ColumnarTokenStream load(CharStream input) {
+        String text = text(input);
+        hash = sha256(text);
+        tree = null;
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != FINGERPRINT) {
+                return null;
+            }
+            byte[] stored = new byte[hash.length];
+            in.get(stored);
+            if (!Arrays.equals(stored, hash)) return null;
+            int n = in.getInt(), tokenBytes = in.getInt(), treeBytes = in.getInt();
+            long raw = (long) tokenBytes + treeBytes;
+            if (n < 1 || tokenBytes < 0 || treeBytes < 0 || raw > MAX_RATIO * in.remaining() + 64) return null;
+            Decoder d = new Decoder(new byte[(int) raw]);
+            if (!inflate(in, d.data)) return null;
+
+            int[] type = new int[n], start = new int[n], stop = new int[n], line = new int[n], column = new int[n];
+            for (int i = 0, previousStop = -1; i < n; i++) {
+                type[i] = d.varint() - 1;
+                start[i] = previousStop + 1 + d.varint();
+                stop[i] = start[i] + d.varint() - 1;
+                previousStop = stop[i];
+            }
+            if (d.pos != tokenBytes) return null;
+            positions(text, n, start, line, column);
+            ColumnarTokenStream tokens = new ColumnarTokenStream().adopt(
+                new ListTokenSource(List.of(), input.getSourceName()), input, n, type, start, stop, line, column);
+            tree = (ProgramaContext) read(d, tokens);
+            return tokens;
+        } catch (IOException | DataFormatException | RuntimeException e) {
+            tree = null;
+            return null; // Arquivo truncado ou de outra versão: como se não houvesse cache
+        }
+    }
+
+    /** Árvore do último load() que achou o fonte no cache */
+    public ProgramaContext tree() {
+        return tree;
+    }
+
+    /** Guarda tokens e árvore do fonte passado ao último load(); sem efeito se não for possível gravar */
+    public void store(ColumnarTokenStream tokens, ProgramaContext programa) {
+        if (hash == null) throw new IllegalStateException("store sem load do fonte");
+        int n = tokens.size();
+        int[] start = new int[n], line = new int[n], column = new int[n];
+        Encoder e = new Encoder();
+        for (int i = 0, previousStop = -1; i < n; i++) {
+            start[i] = tokens.start(i);
+            if (start[i] <= previousStop || tokens.stop(i) < start[i] - 1) return; // Tokens fora de ordem: sem cache
+            e.varint(tokens.type(i) + 1);
+            e.varint(start[i] - previousStop - 1);
+            e.varint(tokens.stop(i) - start[i] + 1);
+            previousStop = tokens.stop(i);
+        }
+        int tokenBytes = e.size;
+        try {
+            // Linha e coluna não são gravadas: load() as recalcula do fonte, e elas têm de bater
+            positions(text(tokens.get(0).getInputStream()), n, start, line, column);
+            for (int i = 0; i < n; i++) {
+                if (line[i] != tokens.line(i) || column[i] != tokens.column(i)) return;
+            }
+            write(programa, e);
+        } catch (RuntimeException ex) {
+            return; // Árvore que o formato não representa (nós de erro, tokens fora do lugar): fica sem cache
+        }
+
+        Deflater deflater = new Deflater();
+        byte[] packed = new byte[Math.max(64, e.size / 4)];
+        int packedSize = 0;
+        try {
+            deflater.setInput(e.data, 0, e.size);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (packedSize == packed.length) packed = Arrays.copyOf(packed, packed.length * 2);
+                packedSize += deflater.deflate(packed, packedSize, packed.length - packedSize);
+            }
+        } finally {
+            deflater.end();
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + packedSize);
+        bytes.putInt(MAGIC).putInt(VERSION).putLong(FINGERPRINT).put(hash);
+        bytes.putInt(n).putInt(tokenBytes).putInt(e.size - tokenBytes).put(packed, 0, packedSize).flip();
+        // Grava num temporário e troca: quem estiver lendo vê o arquivo antigo ou o novo, nunca metade
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (bytes.hasRemaining()) channel.write(bytes);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            try {
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // o cache é só uma otimização
+            }
+        }
+    }
+
+    // Árvore em pré-ordem, sem recursão (o aninhamento pode ser profundo). Num programa sem erros as folhas são os
+    // tokens em ordem, cada regra começa no token seguinte à última folha e termina na última folha dela; por isso
+    // índices de folhas, start e stop não são gravados, e uma árvore em que isso não vale não é guardada.
+    private static void write(ProgramaContext programa, Encoder out) {
+        ArrayDeque<ParseTree> pending = new ArrayDeque<>();
+        ArrayDeque<ParserRuleContext> open = new ArrayDeque<>();
+        ArrayDeque<int[]> remaining = new ArrayDeque<>(); // Filhos ainda por escrever e classe de cada nó aberto
+        int[] invoking = predictions();
+        pending.push(programa);
+        int last = -1;
+        while (!pending.isEmpty()) {
+            ParseTree t = pending.pop();
+            if (!remaining.isEmpty()) remaining.peek()[0]--;
+            if (t instanceof TerminalNode) {
+                if (t instanceof ErrorNode) throw new IllegalArgumentException("arvore com erros sintaticos");
+                if (((TerminalNode) t).getSymbol().getTokenIndex() != ++last) throw new IllegalArgumentException("folha fora de ordem");
+                out.varint(0);
+            } else {
+                ParserRuleContext ctx = (ParserRuleContext) t;
+                int id = CLASS_IDS.get(ctx.getClass());
+                int start = last + 1;
+                if (ctx.start.getTokenIndex() != start) throw new IllegalArgumentException("inicio de regra fora do lugar");
+                out.varint(id + 1);
+                out.varint(ctx.getChildCount());
+                int key = predictionKey(remaining.isEmpty() ? -1 : remaining.peek()[1], id);
+                out.varint(ctx.invokingState == invoking[key] ? 0 : ctx.invokingState + 2);
+                invoking[key] = ctx.invokingState;
+                try {
+                    for (MethodHandle get : LABELS[id]) {
+                        Token label = (Token) get.invokeExact(ctx);
+                        out.varint(label != null ? zigzag(label.getTokenIndex() - start) + 1 : 0);
+                    }
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+                open.push(ctx);
+                remaining.push(new int[] {ctx.getChildCount(), id});
+                for (int i = ctx.getChildCount() - 1; i >= 0; i--) pending.push(ctx.getChild(i));
+            }
+            while (!remaining.isEmpty() && remaining.peek()[0] == 0) {
+                ParserRuleContext done = open.pop();
+                remaining.pop();
+                if ((done.stop != null ? done.stop.getTokenIndex() : -1) != last) throw new IllegalArgumentException("fim de regra fora do lugar");
+            }
+        }
+    }
+
+    // Refaz a árvore escrita por write(); os filhos de cada nó são lidos logo depois dele
+    private static ParserRuleContext read(Decoder in, ColumnarTokenStream tokens) {
+        ArrayDeque<ParserRuleContext> open = new ArrayDeque<>();
+        ArrayDeque<int[]> remaining = new ArrayDeque<>(); // Filhos ainda por ler e classe de cada nó aberto
+        int[] invoking = predictions();
+        ParserRuleContext root = null;
+        int last = -1;
+        do {
+            ParserRuleContext parent = open.peek();
+            if (parent != null) remaining.peek()[0]--;
+            int tag = in.varint();
+            if (tag == 0) {
+                parent.addChild(new TerminalNodeImpl(tokens.get(++last)));
+            } else {
+                int id = tag - 1;
+                int children = in.varint();
+                int key = predictionKey(parent != null ? remaining.peek()[1] : -1, id);
+                int state = in.varint();
+                invoking[key] = state == 0 ? invoking[key] : state - 2;
+                ParserRuleContext ctx = node(id, in, parent, tokens, last + 1, invoking[key]);
+                if (parent != null) parent.addChild((RuleContext) ctx);
+                else root = ctx;
+                open.push(ctx);
+                remaining.push(new int[] {children, id});
+            }
+            while (!remaining.isEmpty() && remaining.peek()[0] == 0) {
+                open.pop().stop = last >= 0 ? tokens.get(last) : null;
+                remaining.pop();
+            }
+        } while (!open.isEmpty());
+        if (in.pos != in.data.length) throw new IllegalStateException("bytes sobrando depois da arvore");
+        return root;
+    }
+
+    // Cria o contexto de um nó de regra da classe id que começa no token start, lendo os rótulos dele
+    private static ParserRuleContext node(int id, Decoder in, ParserRuleContext parent, ColumnarTokenStream tokens,
+                                          int start, int invokingState) {
+        ParserRuleContext ctx;
+        try {
+            ctx = (ParserRuleContext) FACTORIES[id].invokeExact(parent, invokingState);
+            for (MethodHandle set : SETTERS[id]) {
+                int label = in.varint();
+                Token t = label > 0 ? tokens.get(start + unzigzag(label - 1)) : null;
+                set.invokeExact(ctx, t);
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        ctx.start = tokens.get(start);
+        return ctx;
+    }
+
+    // O invokingState de um nó quase sempre repete o do último nó da mesma classe com pai da mesma classe; o
+    // arquivo guarda 0 nesse caso. predictions()[predictionKey(pai, classe)] é esse último valor (-1 no início).
+    private static int[] predictions() {
+        int[] invoking = new int[(CLASSES.size() + 1) * CLASSES.size()];
+        Arrays.fill(invoking, -1);
+        return invoking;
+    }
+
+    private static int predictionKey(int parentId, int id) {
+        return (parentId + 1) * CLASSES.size() + id;
+    }
+
+    // Linha e coluna de cada token como o léxico as conta: só '\n' muda de linha, e a coluna conta code points
+    private static void positions(String text, int n, int[] start, int[] line, int[] column) {
+        for (int i = 0, cp = 0, ci = 0, l = 1, c = 0; i < n; i++) {
+            for (; cp < start[i]; cp++) {
+                int code = text.codePointAt(ci);
+                ci += Character.charCount(code);
+                if (code == '\n') {
+                    l++;
+                    c = 0;
+                } else {
+                    c++;
+                }
+            }
+            line[i] = l;
+            column[i] = c;
+        }
+    }
+
+    private static String text(CharStream input) {
+        return input.size() == 0 ? "" : input.getText(Interval.of(0, input.size() - 1));
+    }
+
+    // Descomprime in inteiro em out; false se os dados não couberem exatamente em out
+    private static boolean inflate(ByteBuffer in, byte[] out) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in);
+            int size = 0;
+            while (!inflater.finished() && size < out.length) {
+                int k = inflater.inflate(out, size, out.length - size);
+                if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) return false;
+                size += k;
+            }
+            // Um byte a mais no fluxo também é arquivo inválido
+            return size == out.length && (inflater.finished() || inflater.inflate(new byte[1]) == 0 && inflater.finished());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static byte[] sha256(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Inteiros não negativos em LEB128 (7 bits por byte)
+    private static final class Encoder {
+        byte[] data = new byte[1 << 16];
+        int size;
+
+        void varint(int v) {
+            if (size + 5 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            while ((v & ~0x7F) != 0) {
+                data[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            data[size++] = (byte) v;
+        }
+    }
+
+    private static final class Decoder {
+        final byte[] data;
+        int pos;
+
+        Decoder(byte[] data) {
+            this.data = data;
+        }
+
+        int varint() {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[pos++];
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path source = Paths.get(args[0]);
+        CharStream cs = CharStreams.fromPath(source, StandardCharsets.UTF_8);
+        ParseCache cache = forSource(source);
+
+        long t0 = System.nanoTime();
+        ColumnarTokenStream tokens = new ColumnarTokenStream().fill(new JanderLexer(cs));
+        JanderParser parser = new JanderParser(tokens);
+        parser.removeErrorListeners();
+        parser.addErrorListener(new MyCustomErrorListener(new PrintWriter(new StringWriter())));
+        ProgramaContext parsed = parser.programa();
+        long parseNanos = System.nanoTime() - t0;
+        if (parser.getNumberOfSyntaxErrors() > 0) {
+            System.out.println("programa com erros sintaticos: nao e guardado");
+            return;
+        }
+        cache.load(cs);
+        cache.store(tokens, parsed);
+
+        t0 = System.nanoTime();
+        ColumnarTokenStream loaded = cache.load(cs);
+        long loadNanos = System.nanoTime() - t0;
+        if (loaded == null) {
+            System.out.println("cache nao foi gravado em " + cache.file());
+            return;
+        }
+        boolean igual = parsed.toStringTree(parser).equals(cache.tree().toStringTree(parser)) && loaded.size() == tokens.size();
+        System.out.printf("%s: %d tokens, %d bytes; lexico + sintatico %.1fms, cache %.1fms; arvore %s%n", cache.file(),
+            tokens.size(), Files.size(cache.file()), parseNanos / 1e6, loadNanos / 1e6, igual ? "igual" : "DIFERENTE");
+    }
+}
@@ -0,0 +1,120 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+
+/**
+ * JanderLexer, ColumnarTokenStream e JanderParser reaproveitados entre compilações, para processos que
+ * compilam muitos programas (JanderTestRunner, ExecutionBenchmark, um worker de longa duração).
+ *
+ * - acquire() tira uma sessão do pool (ou cria uma) e close() a devolve; a cada compilação os três objetos
+ *   são só reapontados com setInputStream/fill. Uma sessão é usada por uma compilação de cada vez.
+ * - Cada sessão tem seus próprios caches de DFA e de contextos de predição, e não os estáticos do código
+ *   gerado: assim eles ficam quentes de uma compilação para a outra, mas podem ser descartados sem
+ *   atrapalhar outra thread que esteja no meio de uma análise.
+ * - Ao ser devolvida, a sessão confere o tamanho dos caches; acima de MAX_CACHE_STATES (entradas hostis
+ *   fazem o DFA crescer sem limite) os caches são trocados por novos. Sessões além de MAX_IDLE são
+ *   descartadas, então a memória fica limitada a MAX_IDLE vezes o limite.
+ *
+ * Entre uma compilação e outra a sessão não guarda o fonte nem os tokens: a árvore e os Tokens devolvidos
+ * continuam válidos depois do close(), mas o ColumnarTokenStream é esvaziado.
+ */
+public final class ParserSession implements AutoCloseable {
+    // Estados de DFA mais contextos de predição, somando léxico e parser; a gramática de LA satura em
+    // poucas centenas mesmo com tokens aleatórios, então o limite só pega algo muito fora do normal
+    public static final int MAX_CACHE_STATES = 20_000;
+    public static final int MAX_IDLE = Runtime.getRuntime().availableProcessors();
+
+    private static final ConcurrentLinkedQueue<ParserSession> idle = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger idleCount = new AtomicInteger();
+    private static final AtomicLong cacheResets = new AtomicLong();
+
+    // Fonte vazio, por sessão: o parser lê o EOF dele ao ser reapontado
+    private final CharStream empty = CharStreams.fromString("", "");
+    private final JanderLexer lexer = new JanderLexer(empty);
+    private final ColumnarTokenStream tokens = new ColumnarTokenStream();
+    private final JanderParser parser = new JanderParser(tokens);
+    private DFA[] lexerDfa, parserDfa;
+    private PredictionContextCache lexerContexts, parserContexts;
+
+    private ParserSession() {
+        resetCaches();
+    }
+
+    /** Uma sessão livre do pool, ou uma nova */
+    public static ParserSession acquire() {
+        ParserSession s = idle.poll();
+        if (s == null) return new ParserSession();
+        idleCount.decrementAndGet();
+        return s;
+    }
+
+    /** Quantas vezes os caches de alguma sessão passaram do limite e foram refeitos */
+    public static long cacheResets() {
+        return cacheResets.get();
+    }
+
+    /** Todos os tokens de cs (terminando em EOF), no ColumnarTokenStream da sessão */
+    public ColumnarTokenStream tokenize(CharStream cs) {
+        lexer.setInputStream(cs);
+        return tokens.fill(lexer);
+    }
+
+    /** O parser da sessão sobre tokens, com os erros sintáticos indo para errors */
+    public JanderParser parser(ColumnarTokenStream tokens, MyCustomErrorListener errors) {
+        parser.setInputStream(tokens);
+        parser.removeErrorListeners();
+        parser.addErrorListener(errors);
+        return parser;
+    }
+
+    /** Estados de DFA e contextos de predição guardados pela sessão */
+    public int cacheStates() {
+        return states(lexerDfa) + lexerContexts.size() + states(parserDfa) + parserContexts.size();
+    }
+
+    /** Solta o fonte e os tokens da última compilação e devolve a sessão ao pool */
+    @Override
+    public void close() {
+        lexer.setInputStream(empty);
+        tokens.clear();
+        parser.setInputStream(tokens);
+        parser.removeErrorListeners();
+        if (cacheStates() > MAX_CACHE_STATES) {
+            resetCaches();
+            cacheResets.incrementAndGet();
+        }
+        if (idleCount.incrementAndGet() <= MAX_IDLE) idle.add(this);
+        else idleCount.decrementAndGet();
+    }
+
+    private void resetCaches() {
+        lexerDfa = dfa(JanderLexer._ATN);
+        lexerContexts = new PredictionContextCache();
+        parserDfa = dfa(JanderParser._ATN);
+        parserContexts = new PredictionContextCache();
+        lexer.setInterpreter(new LexerATNSimulator(lexer, JanderLexer._ATN, lexerDfa, lexerContexts));
+        parser.setInterpreter(new ParserATNSimulator(parser, JanderParser._ATN, parserDfa, parserContexts));
+    }
+
+    private static DFA[] dfa(ATN atn) {
+        DFA[] dfa = new DFA[atn.getNumberOfDecisions()];
+        for (int i = 0; i < dfa.length; i++) dfa[i] = new DFA(atn.getDecisionState(i), i);
+        return dfa;
+    }
+
+    private static int states(DFA[] dfa) {
+        int n = 0;
+        for (DFA d : dfa) n += d.states.size();
+        return n;
+    }
+}
@@ -0,0 +1,40 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import br.ufscar.dc.compiladores.CompilerPass.Artifact;
+
+/**
+ * Artefatos de uma compilação, trocados entre os passos do PassManager.
+ * Passos concorrentes podem gravar ao mesmo tempo; cada artefato é gravado por um único passo
+ * e nunca é null.
+ */
+public final class PassContext {
+    private final String source;
+    private final Map<Artifact<?>, Object> values = new ConcurrentHashMap<>();
+
+    public PassContext(String source) {
+        this.source = source;
+    }
+
+    /** Nome da entrada sendo compilada (para eventos e mensagens) */
+    public String source() {
+        return source;
+    }
+
+    public <T> PassContext put(Artifact<T> artifact, T value) {
+        values.put(artifact, value);
+        return this;
+    }
+
+    public <T> T get(Artifact<T> artifact) {
+        Object value = values.get(artifact);
+        if (value == null) throw new IllegalStateException("artefato " + artifact + " ainda nao produzido");
+        return artifact.cast(value);
+    }
+
+    public boolean has(Artifact<?> artifact) {
+        return values.containsKey(artifact);
+    }
+}
@@ -0,0 +1,322 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import br.ufscar.dc.compiladores.CompilerPass.Artifact;
+
+/**
+ * Executa passos do compilador na ordem dada pelos artefatos que cada um lê e produz.
+ *
+ * - Cada artefato tem um único produtor: um passo, ou o chamador (já presente no PassContext).
+ * - Um passo fica pronto quando todos os produtores dos seus inputs terminaram. Se há mais de um
+ *   pronto (ou algum já rodando), os prontos vão para um pool e rodam ao mesmo tempo; um passo
+ *   sozinho roda na própria thread do chamador.
+ * - TreeWalkingPasses que ficam prontos juntos e percorrem a mesma árvore viram um único percurso.
+ * - Cada passo (ou percurso fundido, com os nomes unidos por '+') é cronometrado: timings() e um
+ *   JanderEvents.PhaseEvent por passo.
+ *
+ * Cada passo roda inteiro numa só thread, então passos que usam estado por thread (JanderSemanticoUtils)
+ * continuam corretos. Um PassManager pode ser executado várias vezes, mas não ao mesmo tempo.
+ */
+public class PassManager {
+    private static final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "jander-passes");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final List<CompilerPass> passes = new ArrayList<>();
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+
+    public PassManager add(CompilerPass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    /** Duração em nanossegundos de cada passo da última execução, na ordem em que terminaram */
+    public Map<String, Long> timings() {
+        return Collections.unmodifiableMap(timings);
+    }
+
+    /** Passos em ordem topológica (a ordem em que rodariam sem concorrência) */
+    public List<String> order(PassContext ctx) {
+        Graph g = new Graph(ctx);
+        List<String> names = new ArrayList<>();
+        int[] remaining = g.remaining.clone();
+        List<Integer> ready = g.initiallyReady();
+        while (!ready.isEmpty()) {
+            int p = ready.remove(0);
+            names.add(passes.get(p).name());
+            for (int d : g.dependents.get(p)) {
+                if (--remaining[d] == 0) ready.add(d);
+            }
+        }
+        return names;
+    }
+
+    /** Executa todos os passos sobre ctx (que já deve conter os artefatos de entrada) e devolve ctx */
+    public PassContext run(PassContext ctx) {
+        Graph g = new Graph(ctx);
+        timings.clear();
+        int[] remaining = g.remaining.clone();
+        List<Integer> ready = g.initiallyReady();
+        CompletionService<Task> done = new ExecutorCompletionService<>(pool);
+        int running = 0;
+        RuntimeException failure = null;
+
+        while (!ready.isEmpty() || running > 0) {
+            List<Task> tasks = failure == null ? group(ready) : List.of();
+            ready.clear();
+            if (running == 0 && tasks.size() == 1) {
+                Task task = tasks.get(0);
+                task.call(ctx);
+                finished(task, g, remaining, ready);
+                continue;
+            }
+            for (Task task : tasks) {
+                done.submit(() -> task.call(ctx));
+                running++;
+            }
+            if (running == 0) break;
+            try {
+                Task task = join(done.take());
+                running--;
+                finished(task, g, remaining, ready);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (RuntimeException e) {
+                // Espera os que ainda estão rodando antes de propagar o primeiro erro
+                running--;
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+        return ctx;
+    }
+
+    // Um passo ou um percurso fundido
+    private final class Task {
+        final List<Integer> members;
+        final String name;
+        long nanos;
+
+        Task(List<Integer> members) {
+            this.members = members;
+            List<String> names = new ArrayList<>();
+            for (int p : members) names.add(passes.get(p).name());
+            this.name = String.join("+", names);
+        }
+
+        Task call(PassContext ctx) {
+            JanderEvents.PhaseEvent event = new JanderEvents.PhaseEvent();
+            event.begin();
+            long t0 = System.nanoTime();
+            if (members.size() == 1) {
+                passes.get(members.get(0)).run(ctx);
+            } else {
+                walk(members, ctx);
+            }
+            nanos = System.nanoTime() - t0;
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = name;
+                event.source = ctx.source();
+                event.tokens = ctx.has(JanderPasses.TOKENS) ? ctx.get(JanderPasses.TOKENS).size() : 0;
+                event.commit();
+            }
+            for (int p : members) {
+                for (Artifact<?> out : passes.get(p).outputs()) {
+                    if (!ctx.has(out)) throw new IllegalStateException("passo " + passes.get(p).name() + " nao produziu " + out);
+                }
+            }
+            return this;
+        }
+    }
+
+    private void finished(Task task, Graph g, int[] remaining, List<Integer> ready) {
+        timings.put(task.name, task.nanos);
+        for (int p : task.members) {
+            for (int d : g.dependents.get(p)) {
+                if (--remaining[d] == 0) ready.add(d);
+            }
+        }
+        Collections.sort(ready); // ordem de registro, para a execução ser determinística
+    }
+
+    // Agrupa os TreeWalkingPasses prontos pela árvore que percorrem; os demais ficam sozinhos
+    private List<Task> group(List<Integer> ready) {
+        List<Task> tasks = new ArrayList<>();
+        Map<Artifact<?>, List<Integer>> walks = new LinkedHashMap<>();
+        for (int p : ready) {
+            if (passes.get(p) instanceof TreeWalkingPass) {
+                walks.computeIfAbsent(((TreeWalkingPass<?>) passes.get(p)).tree(), k -> new ArrayList<>()).add(p);
+            } else {
+                tasks.add(new Task(List.of(p)));
+            }
+        }
+        for (List<Integer> members : walks.values()) tasks.add(new Task(members));
+        return tasks;
+    }
+
+    private void walk(List<Integer> members, PassContext ctx) {
+        List<Started<?>> started = new ArrayList<>();
+        for (int p : members) started.add(start((TreeWalkingPass<?>) passes.get(p), ctx));
+        List<ParseTreeListener> listeners = new ArrayList<>();
+        for (Started<?> s : started) listeners.add(s.listener);
+
+        ParseTree tree = ctx.get(((TreeWalkingPass<?>) passes.get(members.get(0))).tree());
+        TreeWalkingPass.WALKER.walk(new FusedListener(listeners), tree);
+        for (Started<?> s : started) s.finish(ctx);
+    }
+
+    private static <L extends ParseTreeListener> Started<L> start(TreeWalkingPass<L> pass, PassContext ctx) {
+        return new Started<>(pass, pass.listener(ctx));
+    }
+
+    private static final class Started<L extends ParseTreeListener> {
+        final TreeWalkingPass<L> pass;
+        final L listener;
+
+        Started(TreeWalkingPass<L> pass, L listener) {
+            this.pass = pass;
+            this.listener = listener;
+        }
+
+        void finish(PassContext ctx) {
+            pass.finish(listener, ctx);
+        }
+    }
+
+    // Repassa cada evento do percurso a todos os listeners, com o mesmo despacho do ParseTreeWalker
+    private static final class FusedListener implements ParseTreeListener {
+        private final ParseTreeListener[] listeners;
+
+        FusedListener(List<ParseTreeListener> listeners) {
+            this.listeners = listeners.toArray(new ParseTreeListener[0]);
+        }
+
+        @Override
+        public void enterEveryRule(ParserRuleContext ctx) {
+            for (ParseTreeListener l : listeners) {
+                l.enterEveryRule(ctx);
+                ctx.enterRule(l);
+            }
+        }
+
+        @Override
+        public void exitEveryRule(ParserRuleContext ctx) {
+            for (ParseTreeListener l : listeners) {
+                ctx.exitRule(l);
+                l.exitEveryRule(ctx);
+            }
+        }
+
+        @Override
+        public void visitTerminal(TerminalNode node) {
+            for (ParseTreeListener l : listeners) l.visitTerminal(node);
+        }
+
+        @Override
+        public void visitErrorNode(ErrorNode node) {
+            for (ParseTreeListener l : listeners) l.visitErrorNode(node);
+        }
+    }
+
+    // Dependências entre os passos, derivadas dos artefatos; valida produtores únicos e ausência de ciclos
+    private final class Graph {
+        final int[] remaining;                // produtores distintos ainda não terminados de cada passo
+        final List<List<Integer>> dependents; // passos que leem algo produzido por cada passo
+
+        Graph(PassContext ctx) {
+            Map<Artifact<?>, Integer> producer = new HashMap<>();
+            for (int p = 0; p < passes.size(); p++) {
+                for (Artifact<?> out : passes.get(p).outputs()) {
+                    Integer other = producer.put(out, p);
+                    if (other != null) {
+                        throw new IllegalArgumentException("artefato " + out + " produzido por " + passes.get(other).name()
+                            + " e por " + passes.get(p).name());
+                    }
+                    if (ctx.has(out)) {
+                        throw new IllegalArgumentException("artefato " + out + " ja fornecido e tambem produzido por " + passes.get(p).name());
+                    }
+                }
+            }
+
+            remaining = new int[passes.size()];
+            dependents = new ArrayList<>();
+            for (int p = 0; p < passes.size(); p++) dependents.add(new ArrayList<>());
+            for (int p = 0; p < passes.size(); p++) {
+                CompilerPass pass = passes.get(p);
+                for (Artifact<?> in : pass.inputs()) {
+                    Integer from = producer.get(in);
+                    if (from == null) {
+                        if (!ctx.has(in)) throw new IllegalStateException("passo " + pass.name() + " precisa de " + in + ", que nenhum passo produz");
+                        continue;
+                    }
+                    if (!dependents.get(from).contains(p)) {
+                        dependents.get(from).add(p);
+                        remaining[p]++;
+                    }
+                }
+            }
+            checkAcyclic();
+        }
+
+        List<Integer> initiallyReady() {
+            List<Integer> ready = new ArrayList<>();
+            for (int p = 0; p < passes.size(); p++) {
+                if (remaining[p] == 0) ready.add(p);
+            }
+            return ready;
+        }
+
+        private void checkAcyclic() {
+            int[] left = remaining.clone();
+            List<Integer> queue = initiallyReady();
+            int visited = 0;
+            while (!queue.isEmpty()) {
+                int p = queue.remove(queue.size() - 1);
+                visited++;
+                for (int d : dependents.get(p)) {
+                    if (--left[d] == 0) queue.add(d);
+                }
+            }
+            if (visited < passes.size()) {
+                List<String> cycle = new ArrayList<>();
+                for (int p = 0; p < passes.size(); p++) {
+                    if (left[p] > 0) cycle.add(passes.get(p).name());
+                }
+                throw new IllegalStateException("dependencia circular entre os passos " + cycle);
+            }
+        }
+    }
+
+    private static Task join(Future<Task> f) throws InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
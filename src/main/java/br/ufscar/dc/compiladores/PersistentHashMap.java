@@ -0,0 +1,206 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Mapa imutável implementado como hash array mapped trie (HAMT).
+ * Cada put devolve um novo mapa que compartilha todos os nós não alterados com o anterior,
+ * então guardar uma versão antiga custa O(1) e ela pode ser lida por várias threads.
+ * Chaves e valores não podem ser null.
+ */
+public final class PersistentHashMap<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Object NOT_FOUND = new Object();
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null) return null;
+        Object v = root.find(0, key.hashCode(), key);
+        return v == NOT_FOUND ? null : (V) v;
+    }
+
+    public boolean containsKey(Object key) {
+        return root != null && root.find(0, key.hashCode(), key) != NOT_FOUND;
+    }
+
+    /** Retorna um novo mapa com key associada a value; this não é alterado. */
+    public PersistentHashMap<K, V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node base = root != null ? root : BitmapNode.EMPTY;
+        Node newRoot = base.put(0, key.hashCode(), key, value, added);
+        if (newRoot == root) return this;
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    private abstract static class Node {
+        abstract Object find(int shift, int hash, Object key);
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    // Nó com até 32 posições; o bitmap indica quais estão ocupadas.
+    // array[2i] é a chave (ou null se array[2i+1] for um sub-nó) e array[2i+1] o valor.
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return NOT_FOUND;
+            int idx = index(bit);
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (k == null) return ((Node) v).find(shift + BITS, hash, key);
+            return key.equals(k) ? v : NOT_FOUND;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int idx = index(bit);
+
+            if ((bitmap & bit) == 0) {
+                int n = Integer.bitCount(bitmap);
+                Object[] newArray = new Object[2 * (n + 1)];
+                System.arraycopy(array, 0, newArray, 0, 2 * idx);
+                newArray[2 * idx] = key;
+                newArray[2 * idx + 1] = value;
+                System.arraycopy(array, 2 * idx, newArray, 2 * (idx + 1), 2 * (n - idx));
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (k == null) {
+                Node child = (Node) v;
+                Node newChild = child.put(shift + BITS, hash, key, value, added);
+                return newChild == child ? this : with(2 * idx + 1, newChild);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : with(2 * idx + 1, value);
+            }
+            added[0] = true;
+            Node sub = createNode(shift + BITS, k, v, hash, key, value);
+            Object[] newArray = array.clone();
+            newArray[2 * idx] = null;
+            newArray[2 * idx + 1] = sub;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private BitmapNode with(int pos, Object o) {
+            Object[] newArray = array.clone();
+            newArray[pos] = o;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) ((Node) array[i + 1]).forEach(action);
+                else action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+
+    // Chaves diferentes com o mesmo hashCode.
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Object[] array; // pares chave/valor
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) return array[i + 1];
+            }
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Desce um nível: este nó passa a ser filho de um BitmapNode
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[] { null, this }).put(shift, hash, key, value, added);
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    if (array[i + 1] == value) return this;
+                    Object[] newArray = array.clone();
+                    newArray[i + 1] = value;
+                    return new CollisionNode(hash, newArray);
+                }
+            }
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+
+    private static Node createNode(int shift, Object k1, Object v1, int hash2, Object k2, Object v2) {
+        int hash1 = k1.hashCode();
+        if (hash1 == hash2) {
+            return new CollisionNode(hash1, new Object[] { k1, v1, k2, v2 });
+        }
+        boolean[] ignored = new boolean[1];
+        return BitmapNode.EMPTY
+            .put(shift, hash1, k1, v1, ignored)
+            .put(shift, hash2, k2, v2, ignored);
+    }
+}
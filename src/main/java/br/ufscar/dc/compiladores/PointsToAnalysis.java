@@ -0,0 +1,516 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import br.ufscar.dc.compiladores.JanderParser.*;
+
+/**
+ * Análise de apontamento no estilo Steensgaard, para o programa inteiro, num único percurso da árvore
+ * (é um listener, então o PassManager a funde com routine-facts).
+ *
+ * Cada variável (e cada campo de registro) é uma posição abstrata; arranjos ficam numa posição só.
+ * Posições que podem ser apontadas pelo mesmo ponteiro são unidas numa classe de equivalência
+ * (union-find com compressão de caminho e união por posto), e cada classe aponta para no máximo uma
+ * outra classe. Atribuições, passagem de parâmetros ('var' une as próprias posições) e 'retorne'
+ * unem as classes apontadas; o custo é quase linear no tamanho do programa, sem iterar até ponto fixo.
+ * A análise não considera fluxo: vale para qualquer ordem de execução dos comandos.
+ *
+ * Avisos: ponteiros que podem apontar para uma variável de outro tipo, e escritas através de um
+ * ponteiro (^p <- ..., leia(^p)) que nunca recebe endereço nenhum.
+ */
+class PointsToAnalysis extends JanderBaseListener {
+    // Union-find sobre os nós; pointsTo[r] só é válido na raiz r (-1: ainda não aponta para nada)
+    private int[] parent = new int[64];
+    private int[] rank = new int[64];
+    private int[] pointsTo = new int[64];
+    private boolean[] unknown = new boolean[64]; // a classe pode conter posições fora do programa
+    private int nodes = 0;
+    private int[] pending = new int[16]; // pares ainda por unir em join()
+
+    // Posições com nome (variáveis, campos, parâmetros); os demais nós são auxiliares
+    private final List<Location> locations = new ArrayList<>();
+
+    private final Map<String, String> typeAliases = new HashMap<>();               // tipo T: ^inteiro
+    private final Map<String, Map<String, String>> recordTypes = new HashMap<>();   // tipo T: registro ...
+    private final Map<String, Variable> globals = new HashMap<>();
+    private Map<String, Variable> locals;                                           // rotina atual (null fora)
+    private final Map<String, Routine> routines = new HashMap<>();
+    private Routine current;
+
+    private final List<Token> writeSites = new ArrayList<>(); // ^p <- ... e leia(^p)
+    private final List<Location> writeTargets = new ArrayList<>();
+
+    private List<String> warnings;
+
+    private static final class Location {
+        final int node;
+        final String name; // x, ou r.campo
+        final String type; // inteiro, ^real, nome do registro...
+        final Token declaration;
+
+        Location(int node, String name, String type, Token declaration) {
+            this.node = node;
+            this.name = name;
+            this.type = type;
+            this.declaration = declaration;
+        }
+    }
+
+    private static final class Variable {
+        final Location location;
+        final Map<String, Location> fields; // vazio se não for registro
+
+        Variable(Location location, Map<String, Location> fields) {
+            this.location = location;
+            this.fields = fields;
+        }
+    }
+
+    private static final class Routine {
+        final List<Variable> parameters = new ArrayList<>();
+        final List<Boolean> byReference = new ArrayList<>();
+        int result = -1; // nó do valor devolvido (só funções)
+    }
+
+    static PointsToAnalysis collect(ParseTree tree) {
+        PointsToAnalysis analysis = new PointsToAnalysis();
+        TreeWalkingPass.WALKER.walk(analysis, tree);
+        return analysis;
+    }
+
+    /** Avisos ("Linha N: aviso: ...") em ordem de linha; calculados uma vez, depois do percurso */
+    List<String> warnings() {
+        if (warnings == null) warnings = report();
+        return warnings;
+    }
+
+    /** Avisos de duas análises intercalados por linha (a ordem dentro de uma mesma linha é mantida) */
+    static List<String> merge(List<String> first, List<String> second) {
+        if (second.isEmpty()) return first;
+        List<String> all = new ArrayList<>(first);
+        all.addAll(second);
+        all.sort(Comparator.comparingInt(PointsToAnalysis::lineOf));
+        return all;
+    }
+
+    private static int lineOf(String warning) {
+        int end = warning.indexOf(':');
+        return Integer.parseInt(warning.substring("Linha ".length(), end));
+    }
+
+    // ---------------------------------------------------------------- union-find
+
+    private int newNode() {
+        if (nodes == parent.length) {
+            int n = nodes * 2;
+            parent = Arrays.copyOf(parent, n);
+            rank = Arrays.copyOf(rank, n);
+            pointsTo = Arrays.copyOf(pointsTo, n);
+            unknown = Arrays.copyOf(unknown, n);
+        }
+        parent[nodes] = nodes;
+        pointsTo[nodes] = -1;
+        return nodes++;
+    }
+
+    private int find(int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    // Nó apontado pela classe de x, criado na primeira vez
+    private int target(int x) {
+        int r = find(x);
+        if (pointsTo[r] < 0) {
+            int t = newNode();
+            pointsTo[r] = t;
+            return t;
+        }
+        return pointsTo[r];
+    }
+
+    // Une as classes de a e b e, em cascata, as classes para as quais elas apontam
+    private void join(int a, int b) {
+        int top = 0;
+        pending[top++] = a;
+        pending[top++] = b;
+        while (top > 0) {
+            int x = find(pending[--top]);
+            int y = find(pending[--top]);
+            if (x == y) continue;
+            if (rank[x] < rank[y]) {
+                int t = x;
+                x = y;
+                y = t;
+            } else if (rank[x] == rank[y]) {
+                rank[x]++;
+            }
+            parent[y] = x;
+            unknown[x] |= unknown[y];
+            int px = pointsTo[x];
+            int py = pointsTo[y];
+            if (px < 0) {
+                pointsTo[x] = py;
+            } else if (py >= 0) {
+                if (top + 2 > pending.length) pending = Arrays.copyOf(pending, pending.length * 2);
+                pending[top++] = px;
+                pending[top++] = py;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- declarações
+
+    @Override
+    public void enterDeclaracao_local(Declaracao_localContext ctx) {
+        if (ctx.variavel() != null) {
+            declare(ctx.variavel(), locals != null ? locals : globals);
+        } else if (ctx.tipo() != null && ctx.IDENT() != null) {
+            String name = ctx.IDENT().getText();
+            if (ctx.tipo().registro() != null) {
+                recordTypes.put(name, fields(ctx.tipo().registro()));
+            } else if (ctx.tipo().tipo_estendido() != null) {
+                typeAliases.put(name, typeOf(ctx.tipo().tipo_estendido()));
+            }
+        }
+    }
+
+    @Override
+    public void enterDeclaracao_global(Declaracao_globalContext ctx) {
+        locals = new HashMap<>();
+        current = new Routine();
+        if (ctx.IDENT() == null) return;
+        if (ctx.parametros() != null) {
+            for (ParametroContext p : ctx.parametros().parametro()) {
+                if (p.tipo_estendido() == null) continue;
+                String type = typeOf(p.tipo_estendido());
+                for (IdentificadorContext id : p.identificador()) {
+                    current.parameters.add(declare(id, type, locals));
+                    current.byReference.add(p.VAR() != null);
+                }
+            }
+        }
+        if (ctx.tipo_estendido() != null) current.result = newNode();
+        routines.put(ctx.IDENT().getText(), current);
+    }
+
+    @Override
+    public void exitDeclaracao_global(Declaracao_globalContext ctx) {
+        locals = null;
+        current = null;
+    }
+
+    private void declare(VariavelContext ctx, Map<String, Variable> scope) {
+        if (ctx.tipo() == null) return;
+        Map<String, String> recordFields = null;
+        String type;
+        if (ctx.tipo().registro() != null) {
+            recordFields = fields(ctx.tipo().registro());
+            type = "registro";
+        } else {
+            type = typeOf(ctx.tipo().tipo_estendido());
+        }
+        for (IdentificadorContext id : ctx.identificador()) {
+            if (recordFields != null) {
+                declare(id, type, recordFields, scope);
+            } else {
+                declare(id, type, scope);
+            }
+        }
+    }
+
+    private Variable declare(IdentificadorContext id, String type, Map<String, Variable> scope) {
+        return declare(id, type, recordTypes.get(type), scope);
+    }
+
+    private Variable declare(IdentificadorContext id, String type, Map<String, String> recordFields, Map<String, Variable> scope) {
+        if (id == null || id.IDENT(0) == null) return null;
+        String name = id.IDENT(0).getText();
+        Token token = id.IDENT(0).getSymbol();
+        Map<String, Location> fields = recordFields == null ? Map.of() : new HashMap<>();
+        if (recordFields != null) {
+            for (Map.Entry<String, String> f : recordFields.entrySet()) {
+                fields.put(f.getKey(), location(name + "." + f.getKey(), f.getValue(), token));
+            }
+        }
+        Variable v = new Variable(location(name, type, token), fields);
+        scope.put(name, v);
+        return v;
+    }
+
+    private Location location(String name, String type, Token declaration) {
+        Location l = new Location(newNode(), name, type, declaration);
+        locations.add(l);
+        return l;
+    }
+
+    private Map<String, String> fields(RegistroContext ctx) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (VariavelContext v : ctx.variavel()) {
+            if (v.tipo() == null) continue;
+            String type = v.tipo().tipo_estendido() != null ? typeOf(v.tipo().tipo_estendido()) : "registro";
+            for (IdentificadorContext id : v.identificador()) {
+                if (id.IDENT(0) != null) fields.put(id.IDENT(0).getText(), type);
+            }
+        }
+        return fields;
+    }
+
+    // inteiro, ^inteiro, nome do registro...; apelidos de tipo são substituídos pela definição
+    private String typeOf(Tipo_estendidoContext ctx) {
+        if (ctx == null || ctx.tipo_basico_ident() == null) return "?";
+        String base = ctx.tipo_basico_ident().getText();
+        base = typeAliases.getOrDefault(base, base);
+        return ctx.getChild(0).getText().equals("^") ? "^" + base : base;
+    }
+
+    // ---------------------------------------------------------------- comandos
+
+    private Variable lookup(String name) {
+        Variable v = locals != null ? locals.get(name) : null;
+        return v != null ? v : globals.get(name);
+    }
+
+    private Variable variable(IdentificadorContext id) {
+        return id == null || id.IDENT(0) == null ? null : lookup(id.IDENT(0).getText());
+    }
+
+    // Posição acessada por x, r.campo ou v[i] (o arranjo inteiro); null se desconhecida
+    private Location location(IdentificadorContext id) {
+        Variable v = variable(id);
+        if (v == null) return null;
+        if (id.IDENT(1) != null) {
+            Location field = v.fields.get(id.IDENT(1).getText());
+            if (field != null) return field;
+        }
+        return v.location;
+    }
+
+    private int place(IdentificadorContext id) {
+        Location l = location(id);
+        return l == null ? -1 : l.node;
+    }
+
+    // Nó cujo alvo é o valor da expressão (para valores que são endereços); -1 se não for ponteiro
+    private int value(ExpressaoContext e) {
+        while (e instanceof ExpRelacionalContext) {
+            ExpRelacionalContext rel = (ExpRelacionalContext) e;
+            if (rel.op != null || rel.nao != null || rel.exp_aritmetica().size() != 1) return -1;
+            Exp_aritmeticaContext a = rel.exp_aritmetica(0);
+            if (a instanceof ExpParentesesContext) {
+                e = ((ExpParentesesContext) a).expressao();
+                continue;
+            }
+            return value(a);
+        }
+        return -1;
+    }
+
+    private int value(Exp_aritmeticaContext a) {
+        if (a instanceof ExpIdentificadorContext) {
+            ExpIdentificadorContext id = (ExpIdentificadorContext) a;
+            int p = place(id.identificador());
+            if (p < 0 || id.op_unario() != null) return -1;
+            return id.getChild(0).getText().equals("^") ? target(p) : p;
+        }
+        if (a instanceof ExpEnderecoContext) {
+            int p = place(((ExpEnderecoContext) a).identificador());
+            if (p < 0) return -1;
+            int address = newNode();
+            pointsTo[address] = p;
+            return address;
+        }
+        if (a instanceof ExpChamadaContext) {
+            ExpChamadaContext call = (ExpChamadaContext) a;
+            if (call.IDENT() == null || call.op_unario() != null) return -1;
+            Routine r = routines.get(call.IDENT().getText());
+            if (r != null) return r.result;
+            int result = newNode(); // rotina importada: o resultado pode apontar para qualquer lugar
+            unknown[find(target(result))] = true;
+            return result;
+        }
+        return -1;
+    }
+
+    // Atribuir o valor à posição: as duas passam a apontar para a mesma classe
+    private void assign(int place, ExpressaoContext e) {
+        if (place < 0 || e == null) return;
+        int v = value(e);
+        if (v >= 0) join(target(place), target(v));
+    }
+
+    @Override
+    public void enterCmdAtribuicao(CmdAtribuicaoContext ctx) {
+        Location l = location(ctx.identificador());
+        if (l == null) return;
+        int p = l.node;
+        if (ctx.getChild(0).getText().equals("^")) {
+            writeSite(ctx.getStart(), l);
+            p = target(p);
+        } else {
+            // Registro inteiro: campo a campo
+            Variable to = variable(ctx.identificador());
+            Variable from = recordValue(ctx.expressao());
+            if (ctx.identificador().IDENT(1) == null && from != null) {
+                for (Map.Entry<String, Location> f : to.fields.entrySet()) {
+                    Location other = from.fields.get(f.getKey());
+                    if (other != null) join(target(f.getValue().node), target(other.node));
+                }
+            }
+        }
+        assign(p, ctx.expressao());
+    }
+
+    // Variável de registro usada inteira como valor (r1 <- r2)
+    private Variable recordValue(ExpressaoContext e) {
+        if (!(e instanceof ExpRelacionalContext)) return null;
+        ExpRelacionalContext rel = (ExpRelacionalContext) e;
+        if (rel.op != null || rel.exp_aritmetica().size() != 1 || !(rel.exp_aritmetica(0) instanceof ExpIdentificadorContext)) return null;
+        ExpIdentificadorContext id = (ExpIdentificadorContext) rel.exp_aritmetica(0);
+        if (id.getChild(0).getText().equals("^") || id.identificador().IDENT(1) != null) return null;
+        Variable v = variable(id.identificador());
+        return v != null && !v.fields.isEmpty() ? v : null;
+    }
+
+    @Override
+    public void enterCmdLeia(CmdLeiaContext ctx) {
+        for (int i = 0; i < ctx.getChildCount(); i++) {
+            if (ctx.getChild(i).getText().equals("^") && ctx.getChild(i + 1) instanceof IdentificadorContext) {
+                IdentificadorContext id = (IdentificadorContext) ctx.getChild(i + 1);
+                Location l = location(id);
+                if (l != null) writeSite(id.getStart(), l);
+            }
+        }
+    }
+
+    // Escrita através de ^l; se l não é ponteiro o semântico já dá o erro de tipo, e não há aviso
+    private void writeSite(Token site, Location l) {
+        if (!l.type.startsWith("^")) return;
+        writeSites.add(site);
+        writeTargets.add(l);
+    }
+
+    @Override
+    public void enterCmdRetorne(CmdRetorneContext ctx) {
+        if (current != null && current.result >= 0 && ctx.expressao() != null) {
+            int v = value(ctx.expressao());
+            if (v >= 0) join(target(current.result), target(v));
+        }
+    }
+
+    @Override
+    public void enterCmdChamada(CmdChamadaContext ctx) {
+        if (ctx.IDENT() != null) call(ctx.IDENT().getText(), ctx.expressao());
+    }
+
+    @Override
+    public void enterExpChamada(ExpChamadaContext ctx) {
+        if (ctx.IDENT() != null) call(ctx.IDENT().getText(), ctx.expressao());
+    }
+
+    private void call(String name, List<ExpressaoContext> args) {
+        Routine r = routines.get(name);
+        for (int i = 0; i < args.size(); i++) {
+            IdentificadorContext actual = bareIdentifier(args.get(i));
+            if (r == null || i >= r.parameters.size()) {
+                // Rotina importada: um argumento variável pode receber qualquer endereço
+                int p = place(actual);
+                if (p >= 0) unknown[find(target(p))] = true;
+                continue;
+            }
+            int formal = r.parameters.get(i).location.node;
+            int p = place(actual);
+            if (r.byReference.get(i) && p >= 0) {
+                join(formal, p); // o parâmetro é a própria variável passada
+            } else {
+                assign(formal, args.get(i));
+            }
+        }
+    }
+
+    // x, r.campo ou v[i] passado sozinho como argumento
+    private static IdentificadorContext bareIdentifier(ExpressaoContext e) {
+        if (!(e instanceof ExpRelacionalContext)) return null;
+        ExpRelacionalContext rel = (ExpRelacionalContext) e;
+        if (rel.op != null || rel.nao != null || rel.exp_aritmetica().size() != 1) return null;
+        if (!(rel.exp_aritmetica(0) instanceof ExpIdentificadorContext)) return null;
+        ExpIdentificadorContext id = (ExpIdentificadorContext) rel.exp_aritmetica(0);
+        if (id.op_unario() != null || id.getChild(0).getText().equals("^")) return null;
+        return id.identificador();
+    }
+
+    // ---------------------------------------------------------------- avisos
+
+    private List<String> report() {
+        List<Warning> found = new ArrayList<>();
+
+        // Só interessam as classes apontadas por algum ponteiro
+        boolean[] pointedTo = new boolean[nodes];
+        for (Location l : locations) {
+            int r = find(l.node);
+            if (pointsTo[r] >= 0) pointedTo[find(pointsTo[r])] = true;
+        }
+        // Tipos presentes em cada uma delas, com a primeira posição (na ordem de declaração) de cada tipo
+        Map<Integer, Map<String, Location>> typesByClass = new HashMap<>();
+        for (Location l : locations) {
+            int r = find(l.node);
+            if (pointedTo[r]) typesByClass.computeIfAbsent(r, k -> new LinkedHashMap<>()).putIfAbsent(l.type, l);
+        }
+
+        for (Location l : locations) {
+            if (!l.type.startsWith("^")) continue;
+            int r = find(l.node);
+            if (pointsTo[r] < 0) continue;
+            Map<String, Location> targets = typesByClass.get(find(pointsTo[r]));
+            if (targets == null) continue;
+            String pointee = l.type.substring(1);
+            for (Map.Entry<String, Location> t : targets.entrySet()) {
+                if (t.getKey().equals(pointee)) continue;
+                found.add(new Warning(l.declaration.getLine(), "ponteiro " + l.name + " (" + l.type + ") pode apontar para "
+                    + t.getValue().name + ", do tipo " + t.getKey()));
+                break;
+            }
+        }
+
+        for (int i = 0; i < writeSites.size(); i++) {
+            Location l = writeTargets.get(i);
+            int r = find(l.node);
+            int t = pointsTo[r] < 0 ? -1 : find(pointsTo[r]);
+            if (t >= 0 && (unknown[t] || typesByClass.containsKey(t))) continue;
+            found.add(new Warning(writeSites.get(i).getLine(), "escrita atraves de ^" + l.name + ", mas "
+                + l.name + " nunca recebe um endereco"));
+        }
+
+        found.sort(Comparator.comparingInt(w -> w.line));
+        List<String> messages = new ArrayList<>(found.size());
+        String previous = null;
+        for (Warning w : found) {
+            String m = "Linha " + w.line + ": aviso: " + w.message;
+            if (!m.equals(previous)) messages.add(m);
+            previous = m;
+        }
+        return messages;
+    }
+
+    private static final class Warning {
+        final int line;
+        final String message;
+
+        Warning(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import br.ufscar.dc.compiladores.JanderParser.*;
+
+/**
+ * Fatos sobre as rotinas do programa usados pela análise de fluxo de dados, coletados num único
+ * percurso da árvore (é um listener, então o PassManager pode fundi-lo com outros percursos):
+ * os parâmetros 'var' de cada rotina, os nomes com '&' aplicado em cada rotina e no programa todo,
+ * e quais rotinas indexam arranjos (as outras são puladas pela análise de limites).
+ */
+class RoutineFacts extends JanderBaseListener {
+    // Para cada rotina, quais parâmetros (na ordem da assinatura) são passados por referência
+    final Map<String, boolean[]> varParameters = new HashMap<>();
+    // Nomes com '&' aplicado dentro de cada rotina, e em qualquer ponto do programa
+    final Map<Declaracao_globalContext, Set<String>> addressTaken = new HashMap<>();
+    final Set<String> addressTakenAnywhere = new HashSet<>();
+
+    // Rotinas com algum identificador indexado (v[i]), e se o corpo principal/declarações globais têm algum
+    final Set<Declaracao_globalContext> indexing = new HashSet<>();
+    boolean indexingOutsideRoutines;
+
+    private Set<String> current; // rotina sendo percorrida (null fora delas)
+    private Declaracao_globalContext routine;
+
+    static RoutineFacts collect(ParseTree tree) {
+        RoutineFacts facts = new RoutineFacts();
+        TreeWalkingPass.WALKER.walk(facts, tree);
+        return facts;
+    }
+
+    Set<String> addressTaken(Declaracao_globalContext ctx) {
+        return addressTaken.getOrDefault(ctx, Set.of());
+    }
+
+    @Override
+    public void enterDeclaracao_global(Declaracao_globalContext ctx) {
+        current = new HashSet<>();
+        routine = ctx;
+        addressTaken.put(ctx, current);
+        if (ctx.IDENT() == null) return;
+
+        List<Boolean> var = new ArrayList<>();
+        if (ctx.parametros() != null) {
+            for (ParametroContext p : ctx.parametros().parametro()) {
+                for (int i = 0; i < p.identificador().size(); i++) var.add(p.VAR() != null);
+            }
+        }
+        boolean[] flags = new boolean[var.size()];
+        for (int i = 0; i < flags.length; i++) flags[i] = var.get(i);
+        varParameters.put(ctx.IDENT().getText(), flags);
+    }
+
+    @Override
+    public void exitDeclaracao_global(Declaracao_globalContext ctx) {
+        current = null;
+        routine = null;
+    }
+
+    @Override
+    public void enterDimensao(DimensaoContext ctx) {
+        if (ctx.getChildCount() == 0) return;
+        if (routine != null) indexing.add(routine);
+        else indexingOutsideRoutines = true;
+    }
+
+    @Override
+    public void enterExpEndereco(ExpEnderecoContext ctx) {
+        if (ctx.identificador() == null) return;
+        String name = ctx.identificador().IDENT(0).getText();
+        addressTakenAnywhere.add(name);
+        if (current != null) current.add(name);
+    }
+}
@@ -0,0 +1,285 @@
+package br.ufscar.dc.compiladores;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Mede como o tempo de compilação cresce com o tamanho da entrada, em programas gerados aqui com tamanhos que
+ * dobram a cada passo, um eixo de cada vez:
+ *
+ * - declaracoes: n variáveis globais, cada uma declarada e atribuída numa linha;
+ * - expressao: uma soma de n parcelas e um produto de n fatores;
+ * - aninhamento: n comandos se, um dentro do outro;
+ * - rotinas: n procedimentos, cada um chamado uma vez;
+ * - erros: n identificadores não declarados numa única linha (n mensagens de erro na mesma linha).
+ *
+ * Uso: java -cp JanderLexico-1.0-SNAPSHOT-jar-with-dependencies.jar br.ufscar.dc.compiladores.ScalingBenchmark
+ *      [repeticoes] [--tolerancia t] [eixo ...]
+ *
+ * Cada tamanho é medido repeticoes vezes (padrão 5), depois de AQUECIMENTO compilando todos. Cada amostra compila o
+ * programa quantas vezes forem precisas para somar ao menos AMOSTRA_MINIMA (os tamanhos pequenos levam poucos
+ * ms, onde o ruído do relógio e do JIT pesa) e desconta as pausas do GC: com o heap padrão elas crescem mais
+ * rápido que o programa (a árvore e os símbolos vivos são copiados a cada coleta) e dependem do tamanho do heap,
+ * não do compilador. O tempo de cada tamanho é a mediana das amostras; o relatório mostra as pausas à parte.
+ *
+ * O expoente de crescimento é a inclinação da reta de mínimos quadrados de log(tempo) por log(n). Um eixo falha
+ * quando o tempo dividido por n log n ainda cresce com n: a inclinação dessa razão passa da tolerância (padrão
+ * TOLERANCIA; um algoritmo quadrático dá perto de 0.9). Em duas medidas seguidas numa mesma máquina o expoente
+ * de um eixo pode variar uns 0.2; a tolerância cobre isso, e --tolerancia a aumenta numa máquina mais ruidosa.
+ * O status de saída é 1 se algum eixo falhar, para o teste poder barrar um build (ver mvn verify no README).
+ */
+public class ScalingBenchmark {
+    // Inclinação máxima de log(tempo / (n log n)) por log(n); sobra para o ruído da medida e do GC
+    static final double TOLERANCIA = 0.4;
+    static final int PASSOS = 6;
+    static final long AMOSTRA_MINIMA = 50_000_000L; // ns
+    static final long AQUECIMENTO = 2_000_000_000L;  // ns por eixo, no mínimo uma rodada
+
+    // Um eixo: tamanho inicial (dobrado PASSOS - 1 vezes) e gerador do programa de cada tamanho
+    static class Eixo {
+        String nome;
+        int inicial;
+        IntFunction<String> gerador;
+
+        Eixo(String nome, int inicial, IntFunction<String> gerador) {
+            this.nome = nome;
+            this.inicial = inicial;
+            this.gerador = gerador;
+        }
+    }
+
+    // Tempos de um eixo e o ajuste sobre eles.
+    static class ScalingResult {
+        String nome;
+        String erro;       // Erro ao compilar algum tamanho (null se ok)
+        int[] tamanhos = new int[PASSOS];
+        long[] nanos = new long[PASSOS];   // Mediana por compilação, sem as pausas do GC
+        long[] gcNanos = new long[PASSOS]; // Mediana das pausas do GC por compilação
+        double expoente;   // Inclinação de log(tempo) por log(n)
+        double excesso;    // Inclinação de log(tempo / (n log n)) por log(n)
+        double tolerancia;
+
+        ScalingResult(String nome, double tolerancia) {
+            this.nome = nome;
+            this.tolerancia = tolerancia;
+        }
+
+        boolean passou() {
+            return erro == null && excesso <= tolerancia;
+        }
+    }
+
+    static final Eixo[] EIXOS = {
+        new Eixo("declaracoes", 2000, ScalingBenchmark::declaracoes),
+        new Eixo("expressao", 1000, ScalingBenchmark::expressao),
+        new Eixo("aninhamento", 250, ScalingBenchmark::aninhamento),
+        new Eixo("rotinas", 500, ScalingBenchmark::rotinas),
+        new Eixo("erros", 1000, ScalingBenchmark::erros),
+    };
+
+    public static void main(String[] args) {
+        int repeticoes = 5;
+        double tolerancia = TOLERANCIA;
+        List<String> escolhidos = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--tolerancia") && i + 1 < args.length) tolerancia = Double.parseDouble(args[++i]);
+            else if (i == 0 && args[i].matches("\\d+")) repeticoes = Integer.parseInt(args[i]);
+            else escolhidos.add(args[i]);
+        }
+        int amostras = repeticoes;
+        double limite = tolerancia;
+        List<ScalingResult> resultados = new ArrayList<>();
+        // Aninhamento profundo vira recursão profunda no parser e nos visitors
+        Thread t = new Thread(null, () -> {
+            for (Eixo e : EIXOS) {
+                if (escolhidos.isEmpty() || escolhidos.contains(e.nome)) resultados.add(run(e, amostras, limite));
+            }
+        }, "scaling", 512L << 20);
+        try {
+            t.start();
+            t.join();
+            if (resultados.isEmpty()) {
+                System.err.println("Eixos: declaracoes, expressao, aninhamento, rotinas, erros");
+                System.exit(2);
+            }
+            boolean ok = report(resultados, new PrintWriter(System.out, true));
+            System.exit(ok ? 0 : 1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // Compila cada tamanho do eixo, uma rodada para aquecer e repeticoes amostras para medir, e ajusta as retas.
+    static ScalingResult run(Eixo eixo, int repeticoes, double tolerancia) {
+        ScalingResult r = new ScalingResult(eixo.nome, tolerancia);
+        String[] programas = new String[PASSOS];
+        int[] vezes = new int[PASSOS];
+        for (int i = 0; i < PASSOS; i++) {
+            r.tamanhos[i] = eixo.inicial << i;
+            programas[i] = eixo.gerador.apply(r.tamanhos[i]);
+        }
+        try {
+            // Aquecimento (o JIT disputa o processador com a medida até estabilizar); depois uma compilação de
+            // cada tamanho dá quantas somam AMOSTRA_MINIMA
+            long fim = System.nanoTime() + AQUECIMENTO;
+            do {
+                for (String p : programas) Main.compilar(CharStreams.fromString(p, "scaling"), new PrintWriter(new StringWriter()));
+            } while (System.nanoTime() < fim);
+            for (int i = 0; i < PASSOS; i++) {
+                long inicio = System.nanoTime();
+                Main.compilar(CharStreams.fromString(programas[i], "scaling"), new PrintWriter(new StringWriter()));
+                vezes[i] = (int) Math.max(1, Math.min(1000, AMOSTRA_MINIMA / Math.max(1, System.nanoTime() - inicio)));
+            }
+            long[][] amostras = new long[PASSOS][repeticoes], gc = new long[PASSOS][repeticoes];
+            for (int k = 0; k < repeticoes; k++) {
+                for (int i = 0; i < PASSOS; i++) {
+                    long[] medida = compilar(programas[i], vezes[i]);
+                    amostras[i][k] = medida[0];
+                    gc[i][k] = medida[1];
+                }
+            }
+            for (int i = 0; i < PASSOS; i++) {
+                r.nanos[i] = mediana(amostras[i]);
+                r.gcNanos[i] = mediana(gc[i]);
+            }
+        } catch (RuntimeException | StackOverflowError e) {
+            r.erro = e.toString();
+            return r;
+        }
+
+        double[] x = new double[PASSOS], y = new double[PASSOS], z = new double[PASSOS];
+        for (int i = 0; i < PASSOS; i++) {
+            double n = r.tamanhos[i];
+            x[i] = Math.log(n);
+            y[i] = Math.log(r.nanos[i]);
+            z[i] = y[i] - Math.log(n * Math.log(n));
+        }
+        r.expoente = inclinacao(x, y);
+        r.excesso = inclinacao(x, z);
+        return r;
+    }
+
+    // Uma amostra: compila vezes seguidas e devolve o tempo por compilação sem as pausas do GC, e as pausas
+    private static long[] compilar(String programa, int vezes) {
+        System.gc(); // Sem o lixo da amostra anterior
+        long gc = gcNanos();
+        long inicio = System.nanoTime();
+        for (int v = 0; v < vezes; v++) {
+            StringWriter mensagens = new StringWriter();
+            Main.compilar(CharStreams.fromString(programa, "scaling"), new PrintWriter(mensagens));
+            if (!mensagens.toString().endsWith("Fim da compilacao\n")) {
+                throw new IllegalStateException("compilacao nao terminou: " + mensagens.toString().split("\n")[0]);
+            }
+        }
+        long total = System.nanoTime() - inicio;
+        gc = gcNanos() - gc;
+        return new long[] {Math.max(1, (total - gc) / vezes), gc / vezes};
+    }
+
+    private static long mediana(long[] valores) {
+        long[] v = valores.clone();
+        Arrays.sort(v);
+        return v.length % 2 == 1 ? v[v.length / 2] : (v[v.length / 2 - 1] + v[v.length / 2]) / 2;
+    }
+
+    // Tempo total das coletas até agora, somando todos os coletores
+    private static long gcNanos() {
+        long ms = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) ms += Math.max(0, gc.getCollectionTime());
+        return ms * 1_000_000;
+    }
+
+    // Mínimos quadrados: inclinação da reta que melhor aproxima os pontos (x, y)
+    static double inclinacao(double[] x, double[] y) {
+        double mx = 0, my = 0;
+        for (int i = 0; i < x.length; i++) {
+            mx += x[i];
+            my += y[i];
+        }
+        mx /= x.length;
+        my /= y.length;
+        double sxy = 0, sxx = 0;
+        for (int i = 0; i < x.length; i++) {
+            sxy += (x[i] - mx) * (y[i] - my);
+            sxx += (x[i] - mx) * (x[i] - mx);
+        }
+        return sxy / sxx;
+    }
+
+    // Imprime uma linha por eixo (tempos medianos, sem GC). Retorna true se nenhum cresce mais rápido que n log n.
+    static boolean report(List<ScalingResult> resultados, PrintWriter out) {
+        boolean ok = true;
+        out.printf("%-12s %8s %10s %8s %10s %10s %8s %8s%n", "eixo", "n", "mediana", "n final", "mediana", "gc",
+            "expoente", "excesso");
+        for (ScalingResult r : resultados) {
+            if (r.erro != null) {
+                ok = false;
+                out.println("FALHOU " + r.nome + " - " + r.erro);
+                continue;
+            }
+            int u = PASSOS - 1;
+            out.printf("%-12s %8d %8.1fms %8d %8.1fms %8.1fms %8.2f %8.2f%s%n", r.nome, r.tamanhos[0],
+                r.nanos[0] / 1e6, r.tamanhos[u], r.nanos[u] / 1e6, r.gcNanos[u] / 1e6, r.expoente, r.excesso,
+                r.passou() ? "" : "  FALHOU: cresce mais rapido que n log n");
+            ok &= r.passou();
+        }
+        out.flush();
+        return ok;
+    }
+
+    // ---------------------------------------------------------------- geradores
+
+    static String declaracoes(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) sb.append("declare v").append(i).append(": inteiro\n");
+        sb.append("algoritmo\n    v0 <- 1\n");
+        for (int i = 1; i < n; i++) sb.append("    v").append(i).append(" <- v").append(i - 1).append(" + 1\n");
+        sb.append("    escreva(v").append(n - 1).append(")\nfim_algoritmo\n");
+        return sb.toString();
+    }
+
+    static String expressao(int n) {
+        StringBuilder sb = new StringBuilder("algoritmo\n    declare a, b: inteiro\n    a <- 1\n    b <- a");
+        for (int i = 1; i < n; i++) sb.append(" + a");
+        sb.append("\n    b <- a");
+        for (int i = 1; i < n; i++) sb.append(" * a");
+        sb.append("\n    escreva(b)\nfim_algoritmo\n");
+        return sb.toString();
+    }
+
+    static String aninhamento(int n) {
+        StringBuilder sb = new StringBuilder("algoritmo\n    declare a: inteiro\n    a <- 1\n");
+        for (int i = 0; i < n; i++) sb.append("se a > ").append(i).append(" entao\n");
+        sb.append("a <- a + 1\n");
+        for (int i = 0; i < n; i++) sb.append("fim_se\n");
+        sb.append("    escreva(a)\nfim_algoritmo\n");
+        return sb.toString();
+    }
+
+    static String rotinas(int n) {
+        StringBuilder sb = new StringBuilder("declare total: inteiro\n");
+        for (int i = 0; i < n; i++) {
+            sb.append("procedimento p").append(i).append("(x: inteiro)\n    total <- total + x\nfim_procedimento\n");
+        }
+        sb.append("algoritmo\n    total <- 0\n");
+        for (int i = 0; i < n; i++) sb.append("    p").append(i).append("(").append(i).append(")\n");
+        sb.append("    escreva(total)\nfim_algoritmo\n");
+        return sb.toString();
+    }
+
+    static String erros(int n) {
+        StringBuilder sb = new StringBuilder("algoritmo\n    declare a: inteiro\n    escreva(a");
+        for (int i = 0; i < n; i++) sb.append(", x").append(i);
+        sb.append(")\nfim_algoritmo\n");
+        return sb.toString();
+    }
+}
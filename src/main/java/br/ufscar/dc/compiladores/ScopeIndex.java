@@ -0,0 +1,58 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.Arrays;
+
+import org.antlr.v4.runtime.Token;
+
+/**
+ * Snapshots da tabela de símbolos por posição no código-fonte.
+ * O JanderSemantico registra um snapshot a cada ponto em que o escopo muda (declarações,
+ * abertura e fechamento de procedimentos/funções); depois da análise, scopeAt responde
+ * qual era a tabela em uma linha/coluna sem precisar reexecutar o semântico.
+ */
+public class ScopeIndex {
+    // Posições codificadas como (linha << 32 | coluna), em ordem crescente
+    private long[] positions = new long[16];
+    private SymbolTable.Scope[] scopes = new SymbolTable.Scope[16];
+    private int size = 0;
+
+    private static long key(int line, int column) {
+        return ((long) line << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    // O escopo passa a valer depois do token informado.
+    void record(Token after, SymbolTable.Scope scope) {
+        long k = after == null ? 0 : key(after.getLine(), after.getCharPositionInLine());
+        // A análise é feita em ordem de código, mas garante a ordenação mesmo assim
+        if (size > 0 && k < positions[size - 1]) k = positions[size - 1];
+        if (size > 0 && positions[size - 1] == k) {
+            scopes[size - 1] = scope;
+            return;
+        }
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            scopes = Arrays.copyOf(scopes, size * 2);
+        }
+        positions[size] = k;
+        scopes[size] = scope;
+        size++;
+    }
+
+    /** Escopo visível na linha/coluna (coluna a partir de 0, como no ANTLR); null antes do programa */
+    public SymbolTable.Scope scopeAt(int line, int column) {
+        int idx = Arrays.binarySearch(positions, 0, size, key(line, column));
+        // Entrada exata: o token registrado ainda pertence à declaração, vale o snapshot anterior
+        int last = idx >= 0 ? idx - 1 : -idx - 2;
+        return last >= 0 ? scopes[last] : null;
+    }
+
+    /** Tabela de símbolos (somente para consulta) como estava na linha/coluna */
+    public SymbolTable symbolTableAt(int line, int column) {
+        SymbolTable.Scope scope = scopeAt(line, column);
+        return scope == null ? null : new SymbolTable(scope);
+    }
+
+    public int size() {
+        return size;
+    }
+}
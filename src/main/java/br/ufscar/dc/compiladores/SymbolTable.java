@@ -1,13 +1,16 @@
 package br.ufscar.dc.compiladores;
 
-import java.util.Deque;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.Collections; // Para Collections.unmodifiableMap
 
-/** Tabela de símbolos com suporte a escopos aninhados e assinaturas de funções */
+/**
+ * Tabela de símbolos com suporte a escopos aninhados e assinaturas de funções.
+ * Os escopos são imutáveis (ver {@link Scope}); a tabela apenas aponta para o escopo atual,
+ * de modo que {@link #snapshot()} guarda o estado em qualquer ponto do programa em O(1).
+ */
 public class SymbolTable {
 
     public enum JanderType {
@@ -22,18 +25,21 @@ public class SymbolTable {
     }
 
     static class SymbolTableEntry {
-        String name;
-        JanderType type;
-        JanderType pointedType; // Tipo para o qual o ponteiro aponta (null se não for ponteiro)
-        List<JanderType> paramTypes;    // tipos de parâmetros (vazio para variáveis)
-        JanderType returnType;          // tipo de retorno de função (null se não for função)
-        Map<String, JanderType> recordFields; // Para campos de registro (nome -> tipo)
-        JanderType arrayElementType; // Tipo dos elementos do array (null se não for array)
+        // Imutável, para que escopos antigos possam ser compartilhados entre threads
+        final String name;
+        final JanderType type;
+        final JanderType pointedType; // Tipo para o qual o ponteiro aponta (null se não for ponteiro)
+        final List<JanderType> paramTypes;    // tipos de parâmetros (vazio para variáveis)
+        final JanderType returnType;          // tipo de retorno de função (null se não for função)
+        final Map<String, JanderType> recordFields; // Para campos de registro (nome -> tipo)
+        final JanderType arrayElementType; // Tipo dos elementos do array (null se não for array)
 
         private SymbolTableEntry(String name, JanderType type) {
             this.name = name;
             this.type = type;
             this.pointedType = null; // Default para não ponteiros
+            this.paramTypes = null;
+            this.returnType = null;
             this.recordFields = Collections.emptyMap(); // Inicializa vazio para não-registros
             this.arrayElementType = null; // Default para não arrays
         }
@@ -42,6 +48,8 @@ public class SymbolTable {
             this.name = name;
             this.type = type;
             this.pointedType = pointedType;
+            this.paramTypes = null;
+            this.returnType = null;
             this.recordFields = Collections.emptyMap();
             this.arrayElementType = null;
         }
@@ -50,7 +58,7 @@ public class SymbolTable {
             this.name = name;
             this.type = returnType; // Para funções, 'type' é o tipo de retorno
             this.returnType = returnType;
-            this.paramTypes = paramTypes;
+            this.paramTypes = Collections.unmodifiableList(new ArrayList<>(paramTypes)); // Torna a lista imutável
             this.pointedType = null;
             this.recordFields = Collections.emptyMap();
             this.arrayElementType = null;
@@ -75,69 +83,145 @@ public class SymbolTable {
             this.recordFields = Collections.emptyMap();
             this.arrayElementType = arrayElementType;
         }
+        // Construtor completo, usado ao carregar a interface de uma biblioteca importada
+        SymbolTableEntry(String name, JanderType type, JanderType pointedType, List<JanderType> paramTypes,
+                         JanderType returnType, Map<String, JanderType> recordFields, JanderType arrayElementType) {
+            this.name = name;
+            this.type = type;
+            this.pointedType = pointedType;
+            this.paramTypes = paramTypes != null ? Collections.unmodifiableList(new ArrayList<>(paramTypes)) : null;
+            this.returnType = returnType;
+            this.recordFields = Collections.unmodifiableMap(new HashMap<>(recordFields));
+            this.arrayElementType = arrayElementType;
+        }
+    }
+
+    /**
+     * Escopo imutável: um mapa persistente de símbolos mais o escopo envolvente.
+     * Inserir um símbolo cria um novo Scope que compartilha a estrutura do anterior,
+     * então referências antigas continuam válidas e podem ser lidas por outras threads.
+     */
+    public static final class Scope {
+        final PersistentHashMap<String, SymbolTableEntry> symbols;
+        final Scope parent;
+
+        private Scope(PersistentHashMap<String, SymbolTableEntry> symbols, Scope parent) {
+            this.symbols = symbols;
+            this.parent = parent;
+        }
+
+        private Scope with(String name, SymbolTableEntry entry) {
+            return new Scope(symbols.put(name, entry), parent);
+        }
+
+        public Scope parent() {
+            return parent;
+        }
+
+        /** Nomes declarados diretamente neste escopo (sem os escopos envolventes) */
+        public List<String> names() {
+            List<String> names = new ArrayList<>(symbols.size());
+            symbols.forEach((name, entry) -> names.add(name));
+            return names;
+        }
     }
 
-    private final Deque<Map<String, SymbolTableEntry>> scopes;
+    private Scope current;
 
     public SymbolTable() {
-        this.scopes = new ArrayDeque<>();
-        this.scopes.push(new HashMap<>()); // escopo global
+        this.current = new Scope(PersistentHashMap.empty(), null); // escopo global
+    }
+
+    /** Cria uma tabela posicionada em um snapshot; alterações nela não afetam a tabela de origem */
+    public SymbolTable(Scope snapshot) {
+        this.current = snapshot;
+    }
+
+    /** Estado atual da tabela, em O(1). O Scope retornado é imutável */
+    public Scope snapshot() {
+        return current;
     }
 
     public void openScope() {
-        scopes.push(new HashMap<>());
+        current = new Scope(PersistentHashMap.empty(), current);
     }
 
     public void closeScope() {
-        if (scopes.size() > 1) scopes.pop();
+        if (current.parent != null) current = current.parent;
+    }
+
+    private void put(String name, SymbolTableEntry entry) {
+        current = current.with(name, entry);
     }
 
     /** Insere variável/constante no escopo atual */
     public void addSymbol(String name, JanderType type) {
-        scopes.peek().put(name, new SymbolTableEntry(name, type));
+        put(name, new SymbolTableEntry(name, type));
     }
 
     /** Insere variável ponteiro no escopo atual */
     public void addPointerSymbol(String name, JanderType pointedType) {
-        scopes.peek().put(name, new SymbolTableEntry(name, JanderType.POINTER, pointedType));
+        put(name, new SymbolTableEntry(name, JanderType.POINTER, pointedType));
     }
 
     /** Insere uma variável de registro com sua definição de campos */
     public void addRecordSymbol(String name, Map<String, JanderType> fields) {
-        scopes.peek().put(name, new SymbolTableEntry(name, JanderType.RECORD, fields));
+        put(name, new SymbolTableEntry(name, JanderType.RECORD, fields));
     }
 
     /** Insere uma variável de array com o tipo dos elementos */
     public void addArraySymbol(String name, JanderType elementType) {
-        scopes.peek().put(name, new SymbolTableEntry(name, elementType, true));
+        put(name, new SymbolTableEntry(name, elementType, true));
+    }
+
+    /** Insere no escopo atual um símbolo exportado por uma biblioteca */
+    void importEntry(SymbolTableEntry entry) {
+        put(entry.name, entry);
     }
 
     /** Insere função/procedimento com assinatura completa */
     public void addFunction(String name, JanderType returnType, List<JanderType> paramTypes) {
-        scopes.peek().put(name, new SymbolTableEntry(name, returnType, paramTypes));
+        put(name, new SymbolTableEntry(name, returnType, paramTypes));
+    }
+
+    /** Entrada visível com o nome informado (null se não existir) */
+    SymbolTableEntry lookup(String name) {
+        for (Scope scope = current; scope != null; scope = scope.parent) {
+            SymbolTableEntry entry = scope.symbols.get(name);
+            if (entry != null) return entry;
+        }
+        return null;
+    }
+
+    SymbolTableEntry lookupInCurrentScope(String name) {
+        return current.symbols.get(name);
     }
 
     public boolean containsSymbol(String name) {
-        return scopes.stream().anyMatch(s -> s.containsKey(name));
+        for (Scope scope = current; scope != null; scope = scope.parent) {
+            if (scope.symbols.containsKey(name)) return true;
+        }
+        return false;
     }
 
     public boolean containsInCurrentScope(String name) {
-        return scopes.peek().containsKey(name);
+        return current.symbols.containsKey(name);
     }
 
     public JanderType getSymbolType(String name) {
-        for (Map<String, SymbolTableEntry> scope : scopes) {
-            if (scope.containsKey(name)) {
-                return scope.get(name).type;
+        for (Scope scope = current; scope != null; scope = scope.parent) {
+            SymbolTableEntry entry = scope.symbols.get(name);
+            if (entry != null) {
+                return entry.type;
             }
         }
         return JanderType.INVALID;
     }
 
     public JanderType getPointedType(String name) {
-        for (Map<String, SymbolTableEntry> scope : scopes) {
-            if (scope.containsKey(name)) {
-                SymbolTableEntry entry = scope.get(name);
+        for (Scope scope = current; scope != null; scope = scope.parent) {
+            SymbolTableEntry entry = scope.symbols.get(name);
+            if (entry != null) {
                 if (entry.type == JanderType.POINTER) {
                     return entry.pointedType;
                 }
@@ -148,9 +232,9 @@ public class SymbolTable {
 
     /** Recupera os campos de um símbolo que é um registro */
     public Map<String, JanderType> getRecordFields(String name) {
-        for (Map<String, SymbolTableEntry> scope : scopes) {
-            if (scope.containsKey(name)) {
-                SymbolTableEntry entry = scope.get(name);
+        for (Scope scope = current; scope != null; scope = scope.parent) {
+            SymbolTableEntry entry = scope.symbols.get(name);
+            if (entry != null) {
                 if (entry.type == JanderType.RECORD) {
                     return entry.recordFields;
                 }
@@ -161,9 +245,9 @@ public class SymbolTable {
 
     /** Recupera o tipo dos elementos de um símbolo que é um array */
     public JanderType getArrayElementType(String name) {
-        for (Map<String, SymbolTableEntry> scope : scopes) {
-            if (scope.containsKey(name)) {
-                SymbolTableEntry entry = scope.get(name);
+        for (Scope scope = current; scope != null; scope = scope.parent) {
+            SymbolTableEntry entry = scope.symbols.get(name);
+            if (entry != null) {
                 if (entry.type == JanderType.ARRAY) {
                     return entry.arrayElementType;
                 }
@@ -173,10 +257,11 @@ public class SymbolTable {
     }
 
     public List<JanderType> getParamTypes(String name) {
-        for (Map<String, SymbolTableEntry> scope : scopes) {
-            if (scope.containsKey(name)) {
-                return scope.get(name).paramTypes != null
-                    ? scope.get(name).paramTypes
+        for (Scope scope = current; scope != null; scope = scope.parent) {
+            SymbolTableEntry entry = scope.symbols.get(name);
+            if (entry != null) {
+                return entry.paramTypes != null
+                    ? entry.paramTypes
                     : Collections.emptyList();
             }
         }
@@ -184,12 +269,12 @@ public class SymbolTable {
     }
 
     public JanderType getReturnType(String name) {
-        for (Map<String, SymbolTableEntry> scope : scopes) {
-            if (scope.containsKey(name)) {
-                SymbolTableEntry e = scope.get(name);
+        for (Scope scope = current; scope != null; scope = scope.parent) {
+            SymbolTableEntry e = scope.symbols.get(name);
+            if (e != null) {
                 return e.returnType != null ? e.returnType : JanderType.INVALID;
             }
         }
         return JanderType.INVALID;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+package br.ufscar.dc.compiladores;
+
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.antlr.v4.runtime.tree.IterativeParseTreeWalker;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+/**
+ * Passo que só percorre uma árvore com um listener. Passos assim que ficam prontos juntos e
+ * percorrem a mesma árvore são fundidos pelo PassManager num único percurso, com os listeners
+ * chamados em sequência em cada nó.
+ *
+ * O listener não pode depender da ordem em relação aos outros listeners do mesmo percurso.
+ */
+public interface TreeWalkingPass<L extends ParseTreeListener> extends CompilerPass {
+    /** Percurso sem recursão: cadeias longas de operadores formam espinhas esquerdas profundas na árvore */
+    ParseTreeWalker WALKER = new IterativeParseTreeWalker();
+
+    /** Árvore percorrida; precisa estar entre os inputs */
+    CompilerPass.Artifact<? extends ParseTree> tree();
+
+    /** Listener novo para um percurso */
+    L listener(PassContext ctx);
+
+    /** Chamado depois do percurso, para gravar os outputs a partir do listener */
+    void finish(L listener, PassContext ctx);
+
+    @Override
+    default void run(PassContext ctx) {
+        L listener = listener(ctx);
+        WALKER.walk(listener, ctx.get(tree()));
+        finish(listener, ctx);
+    }
+
+    static <L extends ParseTreeListener> TreeWalkingPass<L> of(String name, CompilerPass.Artifact<? extends ParseTree> tree,
+                                                               Set<CompilerPass.Artifact<?>> outputs,
+                                                               Function<PassContext, L> listener,
+                                                               BiConsumer<L, PassContext> finish) {
+        return new TreeWalkingPass<L>() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Set<CompilerPass.Artifact<?>> inputs() {
+                return Set.of(tree);
+            }
+
+            @Override
+            public Set<CompilerPass.Artifact<?>> outputs() {
+                return outputs;
+            }
+
+            @Override
+            public CompilerPass.Artifact<? extends ParseTree> tree() {
+                return tree;
+            }
+
+            @Override
+            public L listener(PassContext ctx) {
+                return listener.apply(ctx);
+            }
+
+            @Override
+            public void finish(L l, PassContext ctx) {
+                finish.accept(l, ctx);
+            }
+        };
+    }
+}